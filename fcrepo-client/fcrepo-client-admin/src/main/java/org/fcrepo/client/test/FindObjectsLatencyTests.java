@@ -0,0 +1,233 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.client.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.axis.types.NonNegativeInteger;
+
+import org.fcrepo.client.FedoraClient;
+import org.fcrepo.common.Constants;
+import org.fcrepo.server.access.FedoraAPIA;
+import org.fcrepo.server.management.FedoraAPIM;
+import org.fcrepo.server.types.gen.ComparisonOperator;
+import org.fcrepo.server.types.gen.Condition;
+import org.fcrepo.server.types.gen.FieldSearchQuery;
+import org.fcrepo.server.types.gen.FieldSearchResult;
+
+/**
+ * Measures findObjects/resumeFindObjects page latency over a large result
+ * set.
+ *
+ * <p>The requested number of objects, each with a label and a DC datastream,
+ * are ingested into their own PID namespace.  The whole result set is then
+ * paged through once for each of several sets of result fields, from PID
+ * only to all the object and DC fields, and the mean, median and 95th
+ * percentile time per page are reported.  The objects are purged at the end.
+ */
+public class FindObjectsLatencyTests
+        implements Constants {
+
+    private static final String NAMESPACE = "fslatency";
+
+    private static final int PAGE_SIZE = 100;
+
+    private static final String[][] RESULT_FIELDS =
+            new String[][] {
+                    {"pid"},
+                    {"pid", "label", "state", "ownerId", "cDate", "mDate"},
+                    {"pid", "label", "state", "ownerId", "cDate", "mDate",
+                            "dcmDate", "title", "creator", "subject",
+                            "description", "publisher", "contributor",
+                            "date", "type", "format", "identifier", "source",
+                            "language", "relation", "coverage", "rights"}};
+
+    private FedoraAPIA apia;
+
+    private FedoraAPIM apim;
+
+    public void init(String host, String port, String context,
+                     String username, String password) throws Exception {
+        String baseURL = "http://" + host + ":" + port + "/" + context;
+        FedoraClient fedoraClient = new FedoraClient(baseURL, username, password);
+        apia = fedoraClient.getAPIA();
+        apim = fedoraClient.getAPIM();
+    }
+
+    private static String getFOXML(String pid, int n) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        sb.append("<foxml:digitalObject VERSION=\"1.1\" PID=\"" + pid + "\" xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\"");
+        sb.append("  xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"info:fedora/fedora-system:def/foxml# http://www.fedora.info/definitions/1/0/foxml1-1.xsd\">");
+        sb.append("  <foxml:objectProperties>");
+        sb.append("    <foxml:property NAME=\"info:fedora/fedora-system:def/model#state\" VALUE=\"Active\"/>");
+        sb.append("    <foxml:property NAME=\"info:fedora/fedora-system:def/model#label\" VALUE=\"FindObjects Latency Test Object " + n + "\"/>");
+        sb.append("  </foxml:objectProperties>");
+        sb.append("  <foxml:datastream CONTROL_GROUP=\"X\" ID=\"DC\" STATE=\"A\" VERSIONABLE=\"true\">");
+        sb.append("    <foxml:datastreamVersion ID=\"DC1.0\" LABEL=\"Dublin Core Record\" MIMETYPE=\"text/xml\">");
+        sb.append("      <foxml:xmlContent>");
+        sb.append("        <oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/2.0/oai_dc/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">");
+        sb.append("          <dc:title>FindObjects Latency Test Object " + n + "</dc:title>");
+        sb.append("          <dc:creator>Latency Tests</dc:creator>");
+        sb.append("          <dc:subject>Performance</dc:subject>");
+        sb.append("          <dc:description>An object used to time field search result paging.</dc:description>");
+        sb.append("          <dc:identifier>" + pid + "</dc:identifier>");
+        sb.append("          <dc:rights>None</dc:rights>");
+        sb.append("        </oai_dc:dc>");
+        sb.append("      </foxml:xmlContent>");
+        sb.append("    </foxml:datastreamVersion>");
+        sb.append("  </foxml:datastream>");
+        sb.append("</foxml:digitalObject>");
+        return sb.toString();
+    }
+
+    private List<String> ingest(int numObjects) throws Exception {
+        List<String> pids = new ArrayList<String>();
+        while (pids.size() < numObjects) {
+            int count = Math.min(PAGE_SIZE, numObjects - pids.size());
+            for (String pid : apim.getNextPID(new NonNegativeInteger(""
+                    + count), NAMESPACE)) {
+                apim.ingest(getFOXML(pid, pids.size()).getBytes("UTF-8"),
+                            FOXML1_1.uri,
+                            "Ingest FindObjects Latency Test Object");
+                pids.add(pid);
+            }
+        }
+        return pids;
+    }
+
+    private void purge(List<String> pids) throws Exception {
+        for (String pid : pids) {
+            apim.purgeObject(pid,
+                             "Removing FindObjects Latency Test Object",
+                             false);
+        }
+    }
+
+    /**
+     * Pages through all the test objects, returning the time taken for each
+     * page in milliseconds.
+     */
+    private List<Long> pageThrough(String[] resultFields, int[] hits)
+            throws Exception {
+        Condition condition = new Condition();
+        condition.setProperty("pid");
+        condition.setOperator(ComparisonOperator.fromValue("has"));
+        condition.setValue(NAMESPACE + ":*");
+        FieldSearchQuery query = new FieldSearchQuery();
+        query.setConditions(new Condition[] {condition});
+
+        List<Long> times = new ArrayList<Long>();
+        long start = System.currentTimeMillis();
+        FieldSearchResult result =
+                apia.findObjects(resultFields, new NonNegativeInteger(""
+                        + PAGE_SIZE), query);
+        times.add(System.currentTimeMillis() - start);
+        hits[0] = 0;
+        while (result != null) {
+            if (result.getResultList() != null) {
+                hits[0] += result.getResultList().length;
+            }
+            if (result.getListSession() == null) {
+                result = null;
+            } else {
+                start = System.currentTimeMillis();
+                result =
+                        apia.resumeFindObjects(result.getListSession()
+                                .getToken());
+                times.add(System.currentTimeMillis() - start);
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Ingests the test objects, times paging through them with each set of
+     * result fields, and prints a line of results for each.
+     */
+    public void runTests(int numObjects) throws Exception {
+        System.out.println("Ingesting " + numObjects + " objects...");
+        List<String> pids = ingest(numObjects);
+        try {
+            // warm up the server (class loading, statement caches, connections)
+            pageThrough(RESULT_FIELDS[0], new int[1]);
+
+            System.out.println("fields, hits, pages, mean (ms), p50 (ms), p95 (ms)");
+            for (String[] resultFields : RESULT_FIELDS) {
+                int[] hits = new int[1];
+                List<Long> times = pageThrough(resultFields, hits);
+                long total = 0;
+                for (long time : times) {
+                    total += time;
+                }
+                Collections.sort(times);
+                System.out.println(Arrays.asList(resultFields).toString()
+                        .replace(", ", " ")
+                        + ", " + hits[0] + ", " + times.size() + ", "
+                        + round((double) total / times.size()) + ", "
+                        + percentile(times, 50) + ", "
+                        + percentile(times, 95));
+            }
+        } finally {
+            purge(pids);
+        }
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+
+    private static double round(double d) {
+        return Math.round(d * 100) / 100.0;
+    }
+
+    private static void usage() {
+        System.out.println("Measures findObjects page latency of a running Fedora repository "
+                + "over a large result set.");
+        System.out.println("USAGE: FindObjectsLatencyTests HOST PORT USERNAME PASSWORD "
+                + "[NUM-OBJECTS] [CONTEXT]");
+        System.out.println("Where:");
+        System.out.println("  HOST        = Host on which Fedora server is running.");
+        System.out.println("  PORT        = Port on which the Fedora server APIs can be accessed.");
+        System.out.println("  USERNAME    = A fedora user with administrative privileges.");
+        System.out.println("  PASSWORD    = The fedora user's password.");
+        System.out.println("  NUM-OBJECTS = The number of objects to ingest and page through.");
+        System.out.println("                This parameter is optional, the default is 10000.");
+        System.out.println("  CONTEXT     = The application server context Fedora is deployed in. This parameter is optional");
+        System.out.println("Example:");
+        System.out.println("FindObjectsLatencyTests localhost 8080 fedoraAdmin fedoraAdmin 10000");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4 || args.length > 6) {
+            usage();
+        }
+        int numObjects = 10000;
+        if (args.length > 4 && !args[4].equals("")) {
+            try {
+                numObjects = Integer.parseInt(args[4]);
+            } catch (NumberFormatException e) {
+                usage();
+            }
+        }
+        if (numObjects < 1) {
+            usage();
+        }
+        String context = Constants.FEDORA_DEFAULT_APP_CONTEXT;
+        if (args.length == 6 && !args[5].equals("")) {
+            context = args[5];
+        }
+
+        FindObjectsLatencyTests tests = new FindObjectsLatencyTests();
+        tests.init(args[0], args[1], context, args[2], args[3]);
+        System.out.println("Running FindObjects Latency Tests...");
+        tests.runTests(numObjects);
+    }
+}
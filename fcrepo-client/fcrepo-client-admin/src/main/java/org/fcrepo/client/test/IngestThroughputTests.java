@@ -0,0 +1,184 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.client.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.fcrepo.client.FedoraClient;
+import org.fcrepo.common.Constants;
+import org.fcrepo.server.management.FedoraAPIM;
+
+/**
+ * Measures how ingest throughput scales with the number of concurrent
+ * clients.
+ *
+ * <p>The same number of objects is ingested with 1, 2, 4, ... up to the
+ * requested maximum number of client threads.  For each run the objects per
+ * second and the speedup relative to the single-threaded run are reported.
+ * Ingested objects are purged after each run so the runs are comparable.
+ */
+public class IngestThroughputTests
+        implements Constants {
+
+    private static final String FOXML;
+
+    private FedoraAPIM apim;
+
+    static {
+        // Small FOXML object without a PID, so the server generates one
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        sb.append("<foxml:digitalObject VERSION=\"1.1\" xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\"");
+        sb.append("  xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"info:fedora/fedora-system:def/foxml# http://www.fedora.info/definitions/1/0/foxml1-1.xsd\">");
+        sb.append("  <foxml:objectProperties>");
+        sb.append("    <foxml:property NAME=\"info:fedora/fedora-system:def/model#state\" VALUE=\"Active\"/>");
+        sb.append("    <foxml:property NAME=\"info:fedora/fedora-system:def/model#label\" VALUE=\"Ingest Throughput Test Object\"/>");
+        sb.append("  </foxml:objectProperties>");
+        sb.append("  <foxml:datastream CONTROL_GROUP=\"X\" ID=\"XDS1\" STATE=\"A\" VERSIONABLE=\"true\">");
+        sb.append("    <foxml:datastreamVersion ID=\"XDS1.0\" LABEL=\"XML Datastream 1\" MIMETYPE=\"text/xml\">");
+        sb.append("      <foxml:xmlContent>");
+        sb.append("        <xml>Datastream Content</xml>");
+        sb.append("      </foxml:xmlContent>");
+        sb.append("    </foxml:datastreamVersion>");
+        sb.append("  </foxml:datastream>");
+        sb.append("  <foxml:datastream CONTROL_GROUP=\"M\" ID=\"MDS1\" STATE=\"A\" VERSIONABLE=\"true\">");
+        sb.append("    <foxml:datastreamVersion ID=\"MDS1.0\" LABEL=\"Managed Datastream 1\" MIMETYPE=\"text/xml\">");
+        sb.append("      <foxml:binaryContent>");
+        sb.append("              PHhtbD5EYXRhc3RyZWFtIENvbnRlbnQ8L3htbD4=");
+        sb.append("      </foxml:binaryContent>");
+        sb.append("    </foxml:datastreamVersion>");
+        sb.append("  </foxml:datastream>");
+        sb.append("</foxml:digitalObject>");
+        FOXML = sb.toString();
+    }
+
+    public void init(String host, String port, String context,
+                     String username, String password) throws Exception {
+        String baseURL = "http://" + host + ":" + port + "/" + context;
+        FedoraClient fedoraClient = new FedoraClient(baseURL, username, password);
+        apim = fedoraClient.getAPIM();
+    }
+
+    /**
+     * Ingests the given number of objects using the given number of threads.
+     *
+     * @return the PIDs of the ingested objects, in no particular order
+     */
+    private List<String> ingest(int numObjects, int numThreads, long[] elapsed)
+            throws Exception {
+        final byte[] foxml = FOXML.getBytes("UTF-8");
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < numObjects; i++) {
+            tasks.add(new Callable<String>() {
+                public String call() throws Exception {
+                    return apim.ingest(foxml, FOXML1_1.uri, "Ingest Throughput Test");
+                }
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            long start = System.currentTimeMillis();
+            List<Future<String>> results = pool.invokeAll(tasks);
+            elapsed[0] = System.currentTimeMillis() - start;
+            List<String> pids = new ArrayList<String>();
+            for (Future<String> result : results) {
+                pids.add(result.get());
+            }
+            return pids;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void purge(List<String> pids) throws Exception {
+        for (String pid : pids) {
+            apim.purgeObject(pid, "Removing Ingest Throughput Test Object", false);
+        }
+    }
+
+    /**
+     * Runs the ingest test with 1, 2, 4, ... maxThreads client threads and
+     * prints a line of results for each.
+     */
+    public void runTests(int numObjects, int maxThreads) throws Exception {
+        // warm up the server (class loading, schema caches, connections)
+        purge(ingest(Math.min(numObjects, 10), 1, new long[1]));
+
+        System.out.println("threads, objects, time (ms), objects/sec, speedup");
+        double baseline = 0;
+        int threads = 1;
+        while (threads <= maxThreads) {
+            long[] elapsed = new long[1];
+            List<String> pids = ingest(numObjects, threads, elapsed);
+            double rate = numObjects * 1000.0 / Math.max(1, elapsed[0]);
+            if (baseline == 0) {
+                baseline = rate;
+            }
+            System.out.println(threads + ", " + numObjects + ", " + elapsed[0]
+                    + ", " + round(rate) + ", " + round(rate / baseline));
+            purge(pids);
+            if (threads < maxThreads && threads * 2 > maxThreads) {
+                // always finish with a run at the requested maximum
+                threads = maxThreads;
+            } else {
+                threads *= 2;
+            }
+        }
+    }
+
+    private static double round(double d) {
+        return Math.round(d * 100) / 100.0;
+    }
+
+    private static void usage() {
+        System.out.println("Measures ingest throughput of a running Fedora repository "
+                + "as the number of concurrent clients grows.");
+        System.out.println("USAGE: IngestThroughputTests HOST PORT USERNAME PASSWORD "
+                + "NUM-OBJECTS MAX-THREADS [CONTEXT]");
+        System.out.println("Where:");
+        System.out.println("  HOST        = Host on which Fedora server is running.");
+        System.out.println("  PORT        = Port on which the Fedora server APIs can be accessed.");
+        System.out.println("  USERNAME    = A fedora user with administrative privileges.");
+        System.out.println("  PASSWORD    = The fedora user's password.");
+        System.out.println("  NUM-OBJECTS = The number of objects to ingest in each run.");
+        System.out.println("  MAX-THREADS = The largest number of client threads to test with.");
+        System.out.println("                Runs use 1, 2, 4, ... up to this many threads.");
+        System.out.println("  CONTEXT     = The application server context Fedora is deployed in. This parameter is optional");
+        System.out.println("Example:");
+        System.out.println("IngestThroughputTests localhost 8080 fedoraAdmin fedoraAdmin 1000 32");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 6 || args.length > 7) {
+            usage();
+        }
+        String context = Constants.FEDORA_DEFAULT_APP_CONTEXT;
+        if (args.length == 7 && !args[6].equals("")) {
+            context = args[6];
+        }
+        int numObjects = 0;
+        int maxThreads = 0;
+        try {
+            numObjects = Integer.parseInt(args[4]);
+            maxThreads = Integer.parseInt(args[5]);
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        if (numObjects < 1 || maxThreads < 1) {
+            usage();
+        }
+
+        IngestThroughputTests tests = new IngestThroughputTests();
+        tests.init(args[0], args[1], context, args[2], args[3]);
+        System.out.println("Running Ingest Throughput Tests...");
+        tests.runTests(numObjects, maxThreads);
+    }
+}
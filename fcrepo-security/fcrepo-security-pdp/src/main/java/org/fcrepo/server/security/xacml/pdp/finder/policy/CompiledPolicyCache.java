@@ -0,0 +1,135 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.xacml.pdp.finder.policy;
+
+import java.io.ByteArrayInputStream;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.xacml.AbstractPolicy;
+import com.sun.xacml.ParsingException;
+
+/**
+ * Policies already read, keyed by their name in the policy index, with the
+ * bytes they were read from.
+ *
+ * <p>A policy is read again when the index returns different bytes for its
+ * name, so updates take effect on the next request. Deleted policies are
+ * simply never asked for again; the names the index no longer has are
+ * dropped by {@link #retain(Collection)}, which the caller runs whenever
+ * {@link #startSweep(long)} says one is due.
+ *
+ * @version $Id$
+ */
+class CompiledPolicyCache {
+
+    private final PolicyReader policyReader;
+
+    private final long sweepInterval;
+
+    private final Map<String, CompiledPolicy> policies =
+            new ConcurrentHashMap<String, CompiledPolicy>();
+
+    private final AtomicLong lastSweep;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param policyReader
+     *        reads the policies
+     * @param sweepInterval
+     *        the time between sweeps, in milliseconds
+     */
+    CompiledPolicyCache(PolicyReader policyReader, long sweepInterval) {
+        this.policyReader = policyReader;
+        this.sweepInterval = sweepInterval;
+        lastSweep = new AtomicLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the policy read from the given bytes, reading them only if the
+     * policy with that name was last read from different bytes.
+     *
+     * @param name
+     *        the name of the policy in the index
+     * @param source
+     *        the policy as stored in the index
+     * @return the policy
+     * @throws ParsingException
+     */
+    AbstractPolicy get(String name, byte[] source) throws ParsingException {
+        CompiledPolicy compiled = policies.get(name);
+        if (compiled != null && Arrays.equals(compiled.source, source)) {
+            hits.incrementAndGet();
+            return compiled.policy;
+        }
+
+        misses.incrementAndGet();
+        AbstractPolicy policy =
+                policyReader.readPolicy(new ByteArrayInputStream(source));
+        policies.put(name, new CompiledPolicy(source, policy));
+        return policy;
+    }
+
+    /**
+     * Claims the next sweep, if one is due. Only one caller gets each sweep.
+     *
+     * @param now
+     *        the current time, in milliseconds
+     * @return whether the caller should sweep.
+     */
+    boolean startSweep(long now) {
+        long last = lastSweep.get();
+        return now - last >= sweepInterval
+                && lastSweep.compareAndSet(last, now);
+    }
+
+    /**
+     * Drops the policies whose names are not given.
+     *
+     * @param names
+     *        the names of all the policies in the index
+     */
+    void retain(Collection<String> names) {
+        policies.keySet().retainAll(new HashSet<String>(names));
+    }
+
+    int size() {
+        return policies.size();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Compiled policies: " + size() + " cached, " + getHitCount()
+                + " hits, " + getMissCount() + " misses";
+    }
+
+    private static class CompiledPolicy {
+
+        private final byte[] source;
+
+        private final AbstractPolicy policy;
+
+        private CompiledPolicy(byte[] source, AbstractPolicy policy) {
+            this.source = source;
+            this.policy = policy;
+        }
+    }
+}
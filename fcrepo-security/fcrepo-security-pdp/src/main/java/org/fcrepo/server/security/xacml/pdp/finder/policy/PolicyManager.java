@@ -18,8 +18,6 @@
 
 package org.fcrepo.server.security.xacml.pdp.finder.policy;
 
-import java.io.ByteArrayInputStream;
-
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -70,6 +68,11 @@ public class PolicyManager {
 
     private PolicyReader policyReader = null;
 
+    // how often the compiled policies are checked against the index
+    private static final long COMPILED_POLICY_SWEEP_INTERVAL = 60 * 1000;
+
+    private CompiledPolicyCache compiledPolicies = null;
+
     // the policy identifier for any policy sets we dynamically create
     private static final String PARENT_POLICY_ID =
             "urn:com:sun:xacml:support:finder:dynamic-policy-set";
@@ -114,6 +117,9 @@ public class PolicyManager {
         }
 
         policyReader = new PolicyReader(polFinder, null);
+        compiledPolicies =
+                new CompiledPolicyCache(policyReader,
+                                        COMPILED_POLICY_SWEEP_INTERVAL);
         parentPolicyId = new URI(PARENT_POLICY_ID);
 
         target =
@@ -148,6 +154,11 @@ public class PolicyManager {
                 policyIndex.getPolicies(eval);
         logger.debug("Obtained policies: " + potentialPolicies.size());
 
+        if (compiledPolicies.startSweep(System.currentTimeMillis())) {
+            // drop the policies that have been deleted
+            compiledPolicies.retain(policyIndex.listPolicies());
+        }
+
         AbstractPolicy policy = matchPolicies(eval, potentialPolicies);
         logger.debug("Matched policies and created abstract policy.");
 
@@ -180,8 +191,7 @@ public class PolicyManager {
         for (String policyId : policyList.keySet()) {
             try {
                 byte[] pol = policyList.get(policyId);
-                AbstractPolicy policy =
-                        policyReader.readPolicy(new ByteArrayInputStream(pol));
+                AbstractPolicy policy = compiledPolicies.get(policyId, pol);
 
                 MatchResult match = policy.match(eval);
 
@@ -215,6 +225,10 @@ public class PolicyManager {
             }
         }
 
+        if (logger.isDebugEnabled()) {
+            logger.debug(compiledPolicies.toString());
+        }
+
         // no errors happened during the search, so now take the right
         // action based on how many policies we found
         switch (list.size()) {
@@ -0,0 +1,96 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.xacml.pdp.finder.policy;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.sun.xacml.AbstractPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the CompiledPolicyCache
+ *
+ * @version $Id$
+ */
+public class CompiledPolicyCacheTest {
+
+    private static final long SWEEP_INTERVAL = 60000;
+
+    private CompiledPolicyCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new CompiledPolicyCache(new PolicyReader(null), SWEEP_INTERVAL);
+    }
+
+    @Test
+    public void testPolicyIsReadOnce() throws Exception {
+        AbstractPolicy policy = cache.get("one", policy("policy-one"));
+        assertEquals("policy-one", policy.getId().toString());
+        // the index returns a new array each time
+        assertSame(policy, cache.get("one", policy("policy-one")));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testUpdatedPolicyIsReadAgain() throws Exception {
+        AbstractPolicy policy = cache.get("one", policy("policy-one"));
+        AbstractPolicy updated = cache.get("one", policy("policy-one-v2"));
+        assertNotSame(policy, updated);
+        assertEquals("policy-one-v2", updated.getId().toString());
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testDeletedPoliciesAreDropped() throws Exception {
+        cache.get("one", policy("policy-one"));
+        AbstractPolicy two = cache.get("two", policy("policy-two"));
+        cache.get("three", policy("policy-three"));
+
+        cache.retain(Arrays.asList("two", "four"));
+
+        assertEquals(1, cache.size());
+        assertSame(two, cache.get("two", policy("policy-two")));
+        cache.retain(Collections.<String> emptyList());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSweepIsDueOncePerInterval() {
+        long now = System.currentTimeMillis();
+        assertFalse(cache.startSweep(now));
+        assertTrue(cache.startSweep(now + SWEEP_INTERVAL));
+        // already claimed
+        assertFalse(cache.startSweep(now + SWEEP_INTERVAL));
+        assertFalse(cache.startSweep(now + SWEEP_INTERVAL * 2 - 1));
+        assertTrue(cache.startSweep(now + SWEEP_INTERVAL * 2));
+    }
+
+    private static byte[] policy(String id) throws Exception {
+        return ("<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\""
+                + " PolicyId=\"" + id + "\""
+                + " RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">"
+                + "<Target/>"
+                + "<Rule RuleId=\"permit\" Effect=\"Permit\"/>"
+                + "</Policy>").getBytes("UTF-8");
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompiledPolicyCacheTest.class);
+    }
+}
@@ -42,8 +42,11 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import org.fcrepo.common.Constants;
+import org.fcrepo.server.Server;
 import org.fcrepo.server.security.xacml.MelcoeXacmlException;
 import org.fcrepo.server.security.xacml.util.ContextUtil;
+import org.fcrepo.server.storage.DOManager;
+import org.fcrepo.server.storage.ObjectChangeListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +70,9 @@ public class ContextHandlerImpl
 
     private ResponseCache responseCache = null;
 
+    // the response cache, until it listens for changes to objects
+    private volatile ObjectChangeListener pendingListener = null;
+
     /**
      * The default constructor that initialises a new ContextHandler instance.
      * This is a private constructor as this is a singleton class.
@@ -123,6 +129,7 @@ public class ContextHandlerImpl
      * org.fcrepo.server.security.xacml.pep.ContextHandler#evaluate(com.sun.xacml.ctx.RequestCtx)
      */
     public ResponseCtx evaluate(RequestCtx reqCtx) throws PEPException {
+        listenForObjectChanges();
         return evaluationEngine.evaluate(reqCtx);
     }
 
@@ -131,6 +138,7 @@ public class ContextHandlerImpl
      * @see org.fcrepo.server.security.xacml.pep.ContextHandler#evaluate(java.lang.String)
      */
     public String evaluate(String request) throws PEPException {
+        listenForObjectChanges();
         return evaluationEngine.evaluate(request);
     }
 
@@ -139,6 +147,7 @@ public class ContextHandlerImpl
      * @see org.fcrepo.server.security.xacml.pep.ContextHandler#evaluateBatch(java.lang.String[])
      */
     public String evaluateBatch(String[] requests) throws PEPException {
+        listenForObjectChanges();
         return evaluationEngine.evaluate(requests);
     }
 
@@ -255,6 +264,10 @@ public class ContextHandlerImpl
                 if (logger.isDebugEnabled()) {
                     logger.debug("Instantiated ResponseCache: " + className);
                 }
+
+                if (responseCache instanceof ObjectChangeListener) {
+                    pendingListener = (ObjectChangeListener) responseCache;
+                }
             }
 
             // Get the evaluation engine
@@ -285,4 +298,42 @@ public class ContextHandlerImpl
             throw new PEPException(e.getMessage(), e);
         }
     }
+
+    /**
+     * Registers the response cache for changes to objects, once the Fedora
+     * server is running in this JVM. The PEP is initialised by the servlet
+     * filters, which start before the server, so this is tried before each
+     * evaluation until it succeeds. If the server runs elsewhere, cached
+     * responses are only dropped when they expire.
+     */
+    private void listenForObjectChanges() {
+        ObjectChangeListener listener = pendingListener;
+        if (listener == null
+                || !Server.hasInstance(new File(Constants.FEDORA_HOME))) {
+            return;
+        }
+        synchronized (this) {
+            if (pendingListener == null) {
+                return;
+            }
+            pendingListener = null;
+        }
+        try {
+            Server server =
+                    Server.getInstance(new File(Constants.FEDORA_HOME), false);
+            DOManager manager =
+                    (DOManager) server
+                            .getModule("org.fcrepo.server.storage.DOManager");
+            if (manager != null) {
+                manager.addObjectChangeListener(listener);
+                // responses cached before now were not invalidated
+                responseCache.invalidate();
+                logger.info("Cached responses will be invalidated by "
+                        + "changes to objects");
+            }
+        } catch (Exception e) {
+            logger.warn("Could not listen for object changes: "
+                    + e.getMessage(), e);
+        }
+    }
 }
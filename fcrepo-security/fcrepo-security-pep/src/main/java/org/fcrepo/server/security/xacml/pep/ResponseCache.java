@@ -27,4 +27,12 @@ public interface ResponseCache {
      * Invalidates the cache.
      */
     public void invalidate();
+
+    /**
+     * Invalidates the cached responses to requests about the given object.
+     *
+     * @param pid
+     *        the PID of the object whose policies or relationships changed
+     */
+    public void invalidate(String pid);
 }
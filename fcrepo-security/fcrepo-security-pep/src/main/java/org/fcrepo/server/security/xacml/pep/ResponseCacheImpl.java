@@ -18,32 +18,49 @@
 
 package org.fcrepo.server.security.xacml.pep;
 
-import java.security.MessageDigest;
-
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import com.sun.xacml.ctx.Attribute;
 import com.sun.xacml.ctx.RequestCtx;
-import com.sun.xacml.ctx.Subject;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.fcrepo.common.Constants;
 import org.fcrepo.server.security.xacml.MelcoeXacmlException;
-import org.fcrepo.server.security.xacml.util.AttributeComparator;
 import org.fcrepo.server.security.xacml.util.ContextUtil;
-import org.fcrepo.server.security.xacml.util.SubjectComparator;
+import org.fcrepo.server.storage.ObjectChangeListener;
 
 /**
+ * A response cache split into segments, each with its own lock, so that
+ * concurrent requests rarely wait for each other. Within a segment the least
+ * recently used response is evicted first, and responses older than the TTL
+ * are dropped when they are next looked up.
+ * <p>
+ * Each segment indexes its responses by the objects they are about, so
+ * invalidating the responses about one object touches only those. A
+ * response evaluated while the responses about its object were invalidated
+ * is not added; this is tracked for stripes of objects rather than the whole
+ * cache, so changes to other objects don't stop the cache from filling.
+ * <p>
+ * Responses are kept by their request, with the attributes of each of its
+ * elements in sorted order, so looking a response up neither parses nor
+ * digests the request. A request is only parsed when its response is added,
+ * to find the objects it is about.
+ *
  * @author nishen@melcoe.mq.edu.au
  */
 public class ResponseCacheImpl
-        implements ResponseCache {
+        implements ResponseCache, ObjectChangeListener {
 
     private static final Logger logger =
             LoggerFactory.getLogger(ResponseCacheImpl.class);
@@ -54,17 +71,42 @@ public class ResponseCacheImpl
 
     private static final long DEFAULT_TTL = 10 * 60 * 1000; // 10 minutes
 
+    private static final int SEGMENTS = 16;
+
+    private static final int PID_STRIPES = 256;
+
+    private static final String OBJECT_PID = Constants.OBJECT.PID.uri;
+
     private final int CACHE_SIZE;
 
     private long TTL;
 
-    private Map<String, String> requestCache = null;
+    private final Segment[] segments;
+
+    // bumped by each invalidation of every response, so that a response
+    // evaluated before it is not added after it
+    private final AtomicLong generation = new AtomicLong();
+
+    // the same, for the objects in each stripe
+    private final AtomicLongArray pidGenerations =
+            new AtomicLongArray(PID_STRIPES);
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
 
-    private Map<String, Long> requestCacheTimeTracker = null;
+    private final AtomicLong expirations = new AtomicLong();
 
-    private List<String> requestCacheUsageTracker = null;
+    private final AtomicLong evictions = new AtomicLong();
 
-    private MessageDigest digest = null;
+    private static final String ATTRIBUTE_START = "<Attribute ";
+
+    private static final String ATTRIBUTE_END = "</Attribute>";
+
+    // the key of the last request this thread failed to find, which is
+    // usually the request added next
+    private final ThreadLocal<RequestKey> lastKey =
+            new ThreadLocal<RequestKey>();
 
     /**
      * The default constructor that initialises the cache with default values.
@@ -98,15 +140,10 @@ public class ResponseCacheImpl
 
         CACHE_SIZE = size.intValue();
 
-        // Note - HashMap, ArrayList are not thread-safe
-        requestCache = new HashMap<String, String>(CACHE_SIZE);
-        requestCacheTimeTracker = new HashMap<String, Long>(CACHE_SIZE);
-        requestCacheUsageTracker = new ArrayList<String>(CACHE_SIZE);
-
-        try {
-            digest = MessageDigest.getInstance("MD5");
-        } catch (Exception e) {
-            throw new PEPException("Could not initialize the ResponseCache", e);
+        segments = new Segment[SEGMENTS];
+        int segmentSize = Math.max(1, (CACHE_SIZE + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
         }
     }
 
@@ -116,33 +153,25 @@ public class ResponseCacheImpl
      * java.lang.String)
      */
     public void addCacheItem(String request, String response) {
-        String hash = null;
-
         try {
-            hash = makeHash(request);
-
-            // thread-safety on cache operations
-            synchronized (requestCache) {
-
-                // if we have a maxxed cache, remove least used item
-                if (requestCache.size() >= CACHE_SIZE) {
-                    String key = requestCacheUsageTracker.remove(0);
-                    requestCache.remove(key);
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Purging cache element");
-                    }
+            RequestKey key = getKey(request);
+            String[] pids = getPids(request);
+
+            // checked with the segment locked, as invalidations bump the
+            // generations before locking the segments to remove responses
+            Segment segment = segmentFor(key.key);
+            synchronized (segment) {
+                if (!isCurrent(key, pids)) {
+                    // invalidated while the response was being evaluated
+                    return;
                 }
-
-                requestCache.put(hash, response);
-                requestCacheUsageTracker.add(hash);
-                requestCacheTimeTracker.put(hash, new Long(System
-                                                           .currentTimeMillis()));
+                segment.putItem(key.key, new CacheItem(response,
+                                                       pids,
+                                                       System.currentTimeMillis()));
             }
 
             if (logger.isDebugEnabled()) {
-                logger.debug("Adding Cache Item (" + requestCache.size() + "/"
-                             + requestCacheUsageTracker.size() + "/"
-                             + requestCacheTimeTracker.size() + "): " + hash);
+                logger.debug("Adding Cache Item: " + describe(key.key));
             }
         } catch (Exception e) {
             logger.warn("Error adding cache item: " + e.getMessage(), e);
@@ -154,54 +183,42 @@ public class ResponseCacheImpl
      * @see org.fcrepo.server.security.xacml.pep.ResponseCache#getCacheItem(java.lang.String)
      */
     public String getCacheItem(String request) {
-        String hash = null;
-        String response = null;
-
         try {
-            hash = makeHash(request);
-
-            // thread-safety on cache operations
-            synchronized (requestCache) {
-
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Getting Cache Item (" + requestCache.size() + "/"
-                                 + requestCacheUsageTracker.size() + "/"
-                                 + requestCacheTimeTracker.size() + "): " + hash);
-                }
-
-                response = requestCache.get(hash);
-
-                if (response == null) {
-                    return null;
-                }
+            String key = canonicalize(request);
 
-                // if this item is older than CACHE_ITEM_TTL then we can't use it
-                long usedLast =
-                    System.currentTimeMillis()
-                    - requestCacheTimeTracker.get(hash).longValue();
-                if (usedLast > TTL) {
-                    requestCache.remove(hash);
-                    requestCacheUsageTracker.remove(hash);
-                    requestCacheTimeTracker.remove(hash);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Getting Cache Item: " + describe(key));
+            }
 
+            Segment segment = segmentFor(key);
+            CacheItem item;
+            synchronized (segment) {
+                item = segment.get(key);
+                if (item != null
+                        && System.currentTimeMillis() - item.created > TTL) {
+                    // if this item is older than TTL then we can't use it
+                    segment.removeItem(key);
+                    expirations.incrementAndGet();
                     if (logger.isDebugEnabled()) {
-                        logger.debug("CACHE_ITEM_TTL exceeded: " + hash);
+                        logger.debug("CACHE_ITEM_TTL exceeded: "
+                                + describe(key));
                     }
-
-                    return null;
+                    item = null;
                 }
+            }
 
-                // we just used this item, move it to the end of the list (items at
-                // beginning get removed...)
-                requestCacheUsageTracker.add(requestCacheUsageTracker
-                                             .remove(requestCacheUsageTracker.indexOf(hash)));
+            if (item == null) {
+                misses.incrementAndGet();
+                // taken before the response is evaluated
+                lastKey.set(makeKey(request, key));
+                return null;
             }
+            hits.incrementAndGet();
+            return item.response;
         } catch (Exception e) {
             logger.warn("Error getting cache item: " + e.getMessage(), e);
-            response = null;
+            return null;
         }
-
-        return response;
     }
 
     /*
@@ -209,108 +226,332 @@ public class ResponseCacheImpl
      * @see org.fcrepo.server.security.xacml.pep.ResponseCache#invalidate()
      */
     public void invalidate() {
-        // thread-safety on cache operations
-        synchronized (requestCache) {
-            requestCache = new HashMap<String, String>(CACHE_SIZE);
-            requestCacheTimeTracker = new HashMap<String, Long>(CACHE_SIZE);
-            requestCacheUsageTracker = new ArrayList<String>(CACHE_SIZE);
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clearItems();
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.fcrepo.server.security.xacml.pep.ResponseCache#invalidate(java.lang.String)
+     */
+    public void invalidate(String pid) {
+        pidGenerations.incrementAndGet(stripeFor(pid));
+        int removed = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                removed += segment.removeItemsAbout(pid);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Invalidated " + removed + " cache items for " + pid);
+        }
+    }
+
+    /**
+     * Invalidates the responses about an object when it is modified, as its
+     * policies or relationships may have changed.
+     */
+    public void objectChanged(String pid) {
+        invalidate(pid);
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of responses dropped because they outlived the TTL.
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return the number of responses dropped to make room for others.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache (size=" + getSize() + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", expirations="
+                + getExpirations() + ", evictions=" + getEvictions() + ")";
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+    }
+
+    private static int stripeFor(String pid) {
+        return (pid.hashCode() & Integer.MAX_VALUE) % PID_STRIPES;
+    }
+
+    // whether nothing the response is about has been invalidated since its
+    // key was made
+    private boolean isCurrent(RequestKey key, String[] pids) {
+        if (key.generation != generation.get()) {
+            return false;
         }
+        for (String pid : pids) {
+            int stripe = stripeFor(pid);
+            if (key.pidGenerations[stripe] != pidGenerations.get(stripe)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the key made by the last failed lookup of this request, or a new one
+    private RequestKey getKey(String request) {
+        RequestKey key = lastKey.get();
+        lastKey.remove();
+        if (key != null && key.request.equals(request)) {
+            return key;
+        }
+        return makeKey(request, canonicalize(request));
+    }
+
+    // the key, with the generations of the cache and of every stripe of
+    // objects as they are now
+    private RequestKey makeKey(String request, String key) {
+        long keyGeneration = generation.get();
+        long[] keyPidGenerations = new long[PID_STRIPES];
+        for (int i = 0; i < PID_STRIPES; i++) {
+            keyPidGenerations[i] = pidGenerations.get(i);
+        }
+        return new RequestKey(request, key, keyGeneration, keyPidGenerations);
+    }
+
+    /**
+     * Returns the request with the attributes of each of its elements in
+     * sorted order. Requests are built from sets of attributes, so two
+     * requests for the same thing may list their attributes in different
+     * orders; this gives them the same key. The request is only scanned for
+     * its attributes, and the text between them is kept as it is, so a
+     * request that is laid out differently is its own key.
+     *
+     * @param request
+     *        the request
+     * @return the key of the request
+     */
+    static String canonicalize(String request) {
+        StringBuilder key = new StringBuilder(request.length());
+        List<String> run = new ArrayList<String>();
+        int pos = 0;
+        int start;
+        while ((start = request.indexOf(ATTRIBUTE_START, pos)) != -1) {
+            int end = request.indexOf(ATTRIBUTE_END, start);
+            if (end == -1) {
+                break;
+            }
+            // attributes separated by no more than white space belong to
+            // the same element
+            if (!isBlank(request, pos, start)) {
+                appendSorted(run, key);
+                key.append(request, pos, start);
+            }
+            end += ATTRIBUTE_END.length();
+            run.add(request.substring(start, end));
+            pos = end;
+        }
+        appendSorted(run, key);
+        key.append(request, pos, request.length());
+        return key.toString();
+    }
+
+    private static boolean isBlank(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendSorted(List<String> attributes,
+                                     StringBuilder key) {
+        Collections.sort(attributes);
+        for (String attribute : attributes) {
+            key.append(attribute);
+        }
+        attributes.clear();
     }
 
     /**
-     * Given a request, this method generates a hash.
+     * Parses a request to find the PIDs of the objects it is about.
      *
      * @param request
-     *        the request to hash
-     * @return the hash
+     *        the request
+     * @return the PIDs of its resource
      * @throws CacheException
      */
     @SuppressWarnings("unchecked")
-    private String makeHash(String request) throws CacheException {
+    private String[] getPids(String request) throws CacheException {
         RequestCtx reqCtx = null;
         try {
             reqCtx = contextUtil.makeRequestCtx(request);
         } catch (MelcoeXacmlException pe) {
             throw new CacheException("Error converting request", pe);
         }
-        byte[] hash = null;
-        // ensure thread safety, don't want concurrent invocations of this method all modifying digest at once
-        // (alternative is to construct a new digest for each(
-        synchronized(digest) {
-            digest.reset();
-
-            Set<Attribute> attributes = null;
-
-            Set<Subject> subjects = new TreeSet(new SubjectComparator());
-            subjects.addAll(reqCtx.getSubjects());
-            for (Subject s : subjects) {
-                attributes = new TreeSet(new AttributeComparator());
-                attributes.addAll(s.getAttributes());
-                for (Attribute a : attributes) {
-                    hashAttribute(a, digest);
-                }
-            }
 
-            attributes = new TreeSet(new AttributeComparator());
-            attributes.addAll(reqCtx.getResource());
-            for (Attribute a : attributes) {
-                hashAttribute(a, digest);
+        List<String> pids = new ArrayList<String>(1);
+        for (Attribute a : (Set<Attribute>) reqCtx.getResource()) {
+            if (OBJECT_PID.equals(a.getId().toString())) {
+                pids.add(a.getValue().encode());
             }
+        }
+        return pids.toArray(new String[pids.size()]);
+    }
 
-            attributes = new TreeSet(new AttributeComparator());
-            attributes.addAll(reqCtx.getAction());
-            for (Attribute a : attributes) {
-                hashAttribute(a, digest);
-            }
+    // keys are whole requests, too long to log
+    private static String describe(String key) {
+        return Integer.toHexString(key.hashCode());
+    }
 
-            attributes = new TreeSet(new AttributeComparator());
-            attributes.addAll(reqCtx.getEnvironmentAttributes());
-            for (Attribute a : attributes) {
-                hashAttribute(a, digest);
-            }
+    private static class RequestKey {
+
+        private final String request;
 
-            hash = digest.digest();
+        private final String key;
+
+        private final long generation;
+
+        private final long[] pidGenerations;
+
+        private RequestKey(String request,
+                           String key,
+                           long generation,
+                           long[] pidGenerations) {
+            this.request = request;
+            this.key = key;
+            this.generation = generation;
+            this.pidGenerations = pidGenerations;
         }
+    }
 
-        return byte2hex(hash);
+    private static class CacheItem {
+
+        private final String response;
+
+        private final String[] pids;
+
+        private final long created;
+
+        private CacheItem(String response, String[] pids, long created) {
+            this.response = response;
+            this.pids = pids;
+            this.created = created;
+        }
     }
 
     /**
-     * Utility function to add an attribute to the hash digest.
-     *
-     * @param a
-     *        the attribute to hash
+     * The responses in one segment of the cache, in least recently used
+     * order, and the keys of the responses about each object. Callers
+     * synchronize on the segment, and add and remove responses through its
+     * own methods so that the index is kept up to date.
      */
-    private static void hashAttribute(Attribute a, MessageDigest dig) {
-        dig.update(a.getId().toString().getBytes());
-        dig.update(a.getType().toString().getBytes());
-        dig.update(a.getValue().encode().getBytes());
-        if (a.getIssuer() != null) {
-            dig.update(a.getIssuer().getBytes());
+    private class Segment
+            extends LinkedHashMap<String, CacheItem> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private final Map<String, Set<String>> keysByPid =
+                new HashMap<String, Set<String>>();
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
         }
-        if (a.getIssueInstant() != null) {
-            dig.update(a.getIssueInstant().encode().getBytes());
+
+        private void putItem(String key, CacheItem item) {
+            CacheItem old = put(key, item);
+            if (old != null) {
+                unindex(key, old);
+            }
+            for (String pid : item.pids) {
+                Set<String> keys = keysByPid.get(pid);
+                if (keys == null) {
+                    keys = new HashSet<String>();
+                    keysByPid.put(pid, keys);
+                }
+                keys.add(key);
+            }
         }
-    }
 
-    /**
-     * Converts a hash into its hexadecimal string representation.
-     *
-     * @param bytes
-     *        the byte array to convert
-     * @return the hexadecimal string representation
-     */
-    private String byte2hex(byte[] bytes) {
-        char[] hexChars =
-                {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b',
-                        'c', 'd', 'e', 'f'};
-
-        StringBuffer sb = new StringBuffer();
-        for (byte b : bytes) {
-            sb.append(hexChars[b >> 4 & 0xf]);
-            sb.append(hexChars[b & 0xf]);
+        private void removeItem(String key) {
+            CacheItem item = remove(key);
+            if (item != null) {
+                unindex(key, item);
+            }
         }
 
-        return new String(sb);
+        // returns the number of responses removed
+        private int removeItemsAbout(String pid) {
+            Set<String> keys = keysByPid.get(pid);
+            if (keys == null) {
+                return 0;
+            }
+            int removed = 0;
+            for (String key : new ArrayList<String>(keys)) {
+                CacheItem item = remove(key);
+                if (item != null) {
+                    unindex(key, item);
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        private void clearItems() {
+            clear();
+            keysByPid.clear();
+        }
+
+        private void unindex(String key, CacheItem item) {
+            for (String pid : item.pids) {
+                Set<String> keys = keysByPid.get(pid);
+                if (keys != null) {
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        keysByPid.remove(pid);
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheItem> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Purging cache element");
+                }
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
     }
 }
@@ -37,14 +37,13 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
+import javax.xml.namespace.QName;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -57,10 +56,6 @@ import com.sun.xacml.ctx.ResponseCtx;
 import com.sun.xacml.ctx.Result;
 import com.sun.xacml.ctx.Status;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import org.w3c.tidy.Tidy;
 
 import org.fcrepo.common.Constants;
@@ -86,7 +81,13 @@ public class RISearchFilter
     private static final String XACML_RESOURCE_ID =
             "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
 
-    private Map<String, Transformer> transformers = null;
+    private static final String RDF_NS =
+            "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+    private static final QName RDF_ABOUT = new QName(RDF_NS, "about");
+
+    // compiled stylesheets for output formats other than RDF/XML
+    private Map<String, Templates> templates = null;
 
     private Map<String, String> mimeType = null;
 
@@ -108,19 +109,11 @@ public class RISearchFilter
         tidy.setShowWarnings(false);
         tidy.setQuiet(true);
 
-        transformers = new HashMap<String, Transformer>();
+        templates = new HashMap<String, Templates>();
         mimeType = new HashMap<String, String>();
         TransformerFactory xFormerFactory = TransformerFactory.newInstance();
 
-        try {
-            Transformer transformer = xFormerFactory.newTransformer();
-            transformers.put("RDF/XML", transformer);
-            mimeType.put("RDF/XML", "text/xml");
-        } catch (TransformerConfigurationException tce) {
-            logger.warn("Error loading the rdfxml2nTriples.xsl stylesheet", tce);
-            throw new PEPException("Error loading the rdfxml2nTriples.xsl stylesheet",
-                                   tce);
-        }
+        mimeType.put("RDF/XML", "text/xml");
 
         try {
             String stylesheetLocation =
@@ -132,9 +125,8 @@ public class RISearchFilter
                 throw new FileNotFoundException("Could not find file: rdfxml2nTriples.xsl");
             }
 
-            Transformer transformer =
-                    xFormerFactory.newTransformer(new StreamSource(stylesheet));
-            transformers.put("N-Triples", transformer);
+            templates.put("N-Triples", xFormerFactory
+                    .newTemplates(new StreamSource(stylesheet)));
             mimeType.put("N-Triples", "text/plain");
         } catch (TransformerConfigurationException tce) {
             logger.warn("Error loading the rdfxml2n3.xsl stylesheet", tce);
@@ -170,85 +162,45 @@ public class RISearchFilter
      * org.fcrepo.server.security.xacml.pep.rest.filters.RESTFilter#handleResponse(javax.servlet
      * .http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
-    public RequestCtx handleResponse(HttpServletRequest request,
+    public RequestCtx handleResponse(final HttpServletRequest request,
                                      HttpServletResponse response)
             throws IOException, ServletException {
         ParameterRequestWrapper req = (ParameterRequestWrapper) request;
-        DataResponseWrapper res = (DataResponseWrapper) response;
-
-        String body = new String(res.getData());
+        final DataResponseWrapper res = (DataResponseWrapper) response;
 
-        if (body.startsWith("<html>")) {
+        byte[] data = res.getData();
+        if (new String(data, 0, Math.min(data.length, 16)).startsWith("<html>")) {
             return null;
         }
 
-        DocumentBuilder docBuilder = null;
-        Document doc = null;
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new ResultRowFilter() {
 
-        try {
-            docBuilder =
-                    DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            doc = docBuilder.parse(new ByteArrayInputStream(res.getData()));
-        } catch (Exception e) {
-            throw new ServletException(e);
-        }
-
-        Map<String, List<Node>> nodeMap = new HashMap<String, List<Node>>();
-
-        NodeList nodes = doc.getElementsByTagName("rdf:Description");
-        for (int x = 0; x < nodes.getLength(); x++) {
-            String pid =
-                    nodes.item(x).getAttributes().getNamedItem("rdf:about")
-                            .getNodeValue();
-            if (logger.isDebugEnabled()) {
-                logger.debug("RISearchIndexFilter PID: " + pid);
-            }
-
-            List<Node> nodeList = nodeMap.get(pid);
-            if (nodeList == null) {
-                nodeList = new ArrayList<Node>();
-                nodeMap.put(pid, nodeList);
+            @Override
+            protected boolean isRow(StartElement element, int depth) {
+                return RDF_NS.equals(element.getName().getNamespaceURI())
+                        && "Description".equals(element.getName()
+                                .getLocalPart())
+                        && element.getAttributeByName(RDF_ABOUT) != null;
             }
 
-            nodeList.add(nodes.item(x));
-        }
-
-        if (nodeMap.keySet().size() > 0) {
-            Map<String, List<String>> resultMap =
-                    new HashMap<String, List<String>>();
-            Set<Result> results =
-                    evaluatePids(nodeMap.keySet(), resultMap, request, res);
-
-            for (Result r : results) {
-                String rid = r.getResource();
-                if (rid == null || "".equals(rid)) {
-                    logger.warn("This resource has no resource identifier in the xacml response results!");
-                } else {
-                    logger.debug("Checking: {}", rid);
+            @Override
+            protected String getKey(List<XMLEvent> row) {
+                String pid =
+                        row.get(0).asStartElement()
+                                .getAttributeByName(RDF_ABOUT).getValue();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("RISearchIndexFilter PID: " + pid);
                 }
+                return pid;
+            }
 
-                if (r.getStatus().getCode().contains(Status.STATUS_OK)
-                        && r.getDecision() != Result.DECISION_PERMIT) {
-                    List<String> pids = resultMap.get(rid);
-                    for (String pid : pids) {
-                        List<Node> nodeList = nodeMap.get(pid);
-
-                        for (Node node : nodeList) {
-                            if (node != null && node.getParentNode() != null) {
-                                node.getParentNode().removeChild(node);
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug("Removing: " + pid + " [" + rid
-                                            + "]");
-                                }
-                            } else {
-                                logger.warn("Could not locate and/or remove: "
-                                        + pid + " [" + rid + "]");
-                            }
-                        }
-                    }
-                }
+            @Override
+            protected Set<String> getDenied(Set<String> pids)
+                    throws ServletException {
+                return getDeniedPids(pids, request, res);
             }
-        }
+        }.filter(new ByteArrayInputStream(data), os);
 
         String[] formats = req.getFormat();
         String format = null;
@@ -261,39 +213,27 @@ public class RISearchFilter
             format = "RDF/XML";
         }
 
-        Source src = new DOMSource(doc);
-        ByteArrayOutputStream os = null;
-        new ByteArrayOutputStream();
-        javax.xml.transform.Result dst = null;
-        new StreamResult(os);
         if (logger.isDebugEnabled()) {
-            os = new ByteArrayOutputStream();
-            dst = new StreamResult(os);
+            logger.debug("RDF/XML:\n" + new String(os.toByteArray()));
+        }
 
-            Transformer xFormer = transformers.get("RDF/XML");
+        Templates stylesheet = templates.get(format);
+        if (stylesheet != null) {
+            ByteArrayInputStream rdf = new ByteArrayInputStream(os.toByteArray());
+            os = new ByteArrayOutputStream();
             try {
-                xFormer.transform(src, dst);
-            } catch (Exception e) {
-                logger.error(e.getMessage());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Transforming format: " + format);
+                }
+                stylesheet.newTransformer().transform(new StreamSource(rdf),
+                                                      new StreamResult(os));
+            } catch (TransformerException te) {
+                throw new ServletException("error generating output", te);
             }
 
-            logger.debug("RDF/XML:\n" + new String(os.toByteArray()));
-        }
-
-        os = new ByteArrayOutputStream();
-        dst = new StreamResult(os);
-        try {
             if (logger.isDebugEnabled()) {
-                logger.debug("Transforming format: " + format);
+                logger.debug(format + ":\n" + new String(os.toByteArray()));
             }
-            Transformer xFormer = transformers.get(format);
-            xFormer.transform(src, dst);
-        } catch (TransformerException te) {
-            throw new ServletException("error generating output", te);
-        }
-
-        if (logger.isDebugEnabled()) {
-            logger.debug("RDF/XML:\n" + new String(os.toByteArray()));
         }
 
         res.setData(os.toByteArray());
@@ -302,6 +242,53 @@ public class RISearchFilter
         return null;
     }
 
+    /**
+     * Takes a given list of PID's and finds those that are not permitted.
+     *
+     * @param pids
+     *        the list of pids to check
+     * @param request
+     *        the http servlet request
+     * @param response
+     *        the http servlet resposne
+     * @return the pids that are not permitted.
+     * @throws ServletException
+     */
+    private Set<String> getDeniedPids(Set<String> pids,
+                                      HttpServletRequest request,
+                                      DataResponseWrapper response)
+            throws ServletException {
+        Set<String> denied = new HashSet<String>();
+        Map<String, List<String>> resultMap =
+                new HashMap<String, List<String>>();
+        Set<Result> results = evaluatePids(pids, resultMap, request, response);
+
+        for (Result r : results) {
+            String rid = r.getResource();
+            if (rid == null || "".equals(rid)) {
+                logger.warn("This resource has no resource identifier in the xacml response results!");
+            } else {
+                logger.debug("Checking: {}", rid);
+            }
+
+            if (r.getStatus().getCode().contains(Status.STATUS_OK)
+                    && r.getDecision() != Result.DECISION_PERMIT) {
+                List<String> resultPids = resultMap.get(rid);
+                if (resultPids != null) {
+                    for (String pid : resultPids) {
+                        denied.add(pid);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Removing: " + pid + " [" + rid + "]");
+                        }
+                    }
+                } else {
+                    logger.warn("Could not locate and/or remove: [" + rid + "]");
+                }
+            }
+        }
+        return denied;
+    }
+
     /**
      * Takes a given list of PID's and evaluates them.
      *
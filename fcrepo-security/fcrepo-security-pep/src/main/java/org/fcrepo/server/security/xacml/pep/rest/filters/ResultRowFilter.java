@@ -0,0 +1,257 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.xacml.pep.rest.filters;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.ServletException;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Copies an XML document of result rows, leaving out the rows that are not
+ * permitted.
+ *
+ * <p>The document is read as a stream of events. Rows are collected until a
+ * batch of them is ready, the batch is authorized with one call to
+ * {@link #getDenied(Set)}, and its permitted rows are written out in their
+ * original order. Only one batch of rows is held in memory at a time.
+ *
+ * <p>Instances are used for a single document.
+ *
+ * @version $Id$
+ */
+abstract class ResultRowFilter {
+
+    /** The number of distinct rows authorized together. */
+    static final int BATCH_SIZE = 100;
+
+    private static final XMLInputFactory inputFactory =
+            XMLInputFactory.newInstance();
+
+    private static final XMLOutputFactory outputFactory =
+            XMLOutputFactory.newInstance();
+
+    private final int batchSize;
+
+    // events and rows read but not yet written, in document order
+    private final List<Object> pending = new ArrayList<Object>();
+
+    // the keys of the pending rows
+    private final Set<String> keys = new LinkedHashSet<String>();
+
+    protected ResultRowFilter() {
+        this(BATCH_SIZE);
+    }
+
+    protected ResultRowFilter(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param element
+     *        an element of the document
+     * @param depth
+     *        the depth of the element, the root element being 1
+     * @return whether the element is a result row.
+     */
+    protected abstract boolean isRow(StartElement element, int depth);
+
+    /**
+     * @param row
+     *        the events of a row, from its start to its end element
+     * @return the key that the row is authorized by, or null to keep the
+     *         row without authorizing it.
+     */
+    protected abstract String getKey(List<XMLEvent> row);
+
+    /**
+     * @param keys
+     *        the keys of a batch of rows
+     * @return the keys of the rows that must be left out.
+     * @throws ServletException
+     */
+    protected abstract Set<String> getDenied(Set<String> keys)
+            throws ServletException;
+
+    /**
+     * Copies the document, leaving out the denied rows.
+     *
+     * @param in
+     *        the document to filter
+     * @param out
+     *        where to write the filtered document
+     * @throws ServletException
+     *         if the document can't be read or a batch can't be authorized.
+     */
+    public void filter(InputStream in, OutputStream out)
+            throws ServletException {
+        XMLEventReader reader = null;
+        XMLEventWriter writer = null;
+        try {
+            reader = inputFactory.createXMLEventReader(in);
+
+            String encoding = "UTF-8";
+            if (reader.hasNext() && reader.peek().isStartDocument()) {
+                StartDocument start = (StartDocument) reader.peek();
+                if (start.encodingSet()) {
+                    encoding = start.getCharacterEncodingScheme();
+                }
+            }
+            writer = outputFactory.createXMLEventWriter(out, encoding);
+
+            int depth = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    if (isRow(event.asStartElement(), depth)) {
+                        addRow(readRow(event, reader), writer);
+                        depth--;
+                        continue;
+                    }
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+
+                if (pending.isEmpty()) {
+                    writer.add(event);
+                } else {
+                    pending.add(event);
+                }
+            }
+            flush(writer);
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new ServletException("Error filtering results: "
+                    + e.getMessage(), e);
+        } finally {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (XMLStreamException e) {
+                // nothing left to write
+            }
+        }
+    }
+
+    /**
+     * Gets the text of the first child element of the row with the given
+     * local name.
+     *
+     * @return the text, or null if there is no such child.
+     */
+    protected static String getChildText(List<XMLEvent> row, String localName) {
+        StringBuilder text = null;
+        int depth = 0;
+        for (XMLEvent event : row) {
+            if (event.isStartElement()) {
+                depth++;
+                if (depth == 2
+                        && localName.equals(event.asStartElement().getName()
+                                .getLocalPart())) {
+                    text = new StringBuilder();
+                }
+            } else if (event.isEndElement()) {
+                if (depth == 2 && text != null) {
+                    return text.toString();
+                }
+                depth--;
+            } else if (event.isCharacters() && text != null) {
+                text.append(event.asCharacters().getData());
+            }
+        }
+        return null;
+    }
+
+    // reads the events of the row that starts with the given event
+    private List<XMLEvent> readRow(XMLEvent start, XMLEventReader reader)
+            throws XMLStreamException {
+        List<XMLEvent> row = new ArrayList<XMLEvent>();
+        row.add(start);
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+            row.add(event);
+        }
+        return row;
+    }
+
+    private void addRow(List<XMLEvent> events, XMLEventWriter writer)
+            throws XMLStreamException, ServletException {
+        Row row = new Row(getKey(events), events);
+        if (row.key == null && pending.isEmpty()) {
+            row.write(writer);
+            return;
+        }
+        pending.add(row);
+        if (row.key != null) {
+            keys.add(row.key);
+            if (keys.size() >= batchSize) {
+                flush(writer);
+            }
+        }
+    }
+
+    // authorizes the pending rows and writes out what is permitted
+    private void flush(XMLEventWriter writer) throws XMLStreamException,
+            ServletException {
+        Set<String> denied =
+                keys.isEmpty() ? Collections.<String> emptySet()
+                        : getDenied(keys);
+        for (Object item : pending) {
+            if (item instanceof Row) {
+                Row row = (Row) item;
+                if (row.key == null || !denied.contains(row.key)) {
+                    row.write(writer);
+                }
+            } else {
+                writer.add((XMLEvent) item);
+            }
+        }
+        pending.clear();
+        keys.clear();
+    }
+
+    private static class Row {
+
+        private final String key;
+
+        private final List<XMLEvent> events;
+
+        private Row(String key, List<XMLEvent> events) {
+            this.key = key;
+            this.events = events;
+        }
+
+        private void write(XMLEventWriter writer) throws XMLStreamException {
+            for (XMLEvent event : events) {
+                writer.add(event);
+            }
+        }
+    }
+}
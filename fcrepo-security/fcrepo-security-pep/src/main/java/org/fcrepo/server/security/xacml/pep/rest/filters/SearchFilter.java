@@ -27,6 +27,7 @@ import java.net.URI;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -34,11 +35,9 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
 import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -86,8 +85,6 @@ public class SearchFilter
 
     private ContextUtil contextUtil = null;
 
-    private Transformer xFormer = null;
-
     private Tidy tidy = null;
 
     /**
@@ -101,13 +98,6 @@ public class SearchFilter
 
         contextUtil = new ContextUtil();
 
-        try {
-            TransformerFactory xFactory = TransformerFactory.newInstance();
-            xFormer = xFactory.newTransformer();
-        } catch (TransformerConfigurationException tce) {
-            throw new PEPException("Error initialising SearchFilter", tce);
-        }
-
         tidy = new Tidy();
         tidy.setShowWarnings(false);
         tidy.setQuiet(true);
@@ -178,34 +168,35 @@ public class SearchFilter
         DataResponseWrapper res = (DataResponseWrapper) response;
         byte[] data = res.getData();
 
-        String result = null;
-        String body = new String(data);
+        byte[] result = null;
+        String start = new String(data, 0, Math.min(data.length, 16));
 
-        if (body.startsWith("<html>")) {
+        if (start.startsWith("<html>")) {
             if (logger.isDebugEnabled()) {
                 logger.debug("filtering html");
             }
-            result = filterHTML(request, res);
-        } else if (body.startsWith("<?xml")) {
+            result = filterHTML(request, res).getBytes();
+        } else if (start.startsWith("<?xml")) {
             if (logger.isDebugEnabled()) {
-                logger.debug("filtering html");
+                logger.debug("filtering xml");
             }
             result = filterXML(request, res);
         } else {
             if (logger.isDebugEnabled()) {
-                logger.debug("not filtering due to unexpected output: " + body);
+                logger.debug("not filtering due to unexpected output: "
+                        + new String(data));
             }
-            result = body;
+            result = data;
         }
 
-        res.setData(result.getBytes());
+        res.setData(result);
 
         return null;
     }
 
     /**
-     * Parses an XML based response and removes the items that are not
-     * permitted.
+     * Copies an XML based response, leaving out the items that are not
+     * permitted. Items are read as a stream and authorized in batches.
      *
      * @param request
      *        the http servlet request
@@ -214,88 +205,33 @@ public class SearchFilter
      * @return the new response body without non-permissable objects.
      * @throws ServletException
      */
-    private String filterXML(HttpServletRequest request,
-                             DataResponseWrapper response)
+    private byte[] filterXML(final HttpServletRequest request,
+                             final DataResponseWrapper response)
             throws ServletException {
-        String body = new String(response.getData());
-        DocumentBuilder docBuilder = null;
-        Document doc = null;
-
-        try {
-            docBuilder =
-                    DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            doc =
-                    docBuilder.parse(new ByteArrayInputStream(response
-                            .getData()));
-        } catch (Exception e) {
-            throw new ServletException(e);
-        }
-
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        NodeList rows = null;
-        try {
-            rows =
-                    (NodeList) xpath
-                            .evaluate("/result/resultList/objectFields",
-                                      doc,
-                                      XPathConstants.NODESET);
-        } catch (XPathExpressionException xpe) {
-            throw new ServletException("Error parsing HTML for search results: ",
-                                       xpe);
-        }
-
-        if (rows.getLength() == 0) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("No results to filter.");
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new ResultRowFilter() {
+
+            // rows are at /result/resultList/objectFields
+            @Override
+            protected boolean isRow(StartElement element, int depth) {
+                return depth == 3
+                        && "objectFields".equals(element.getName()
+                                .getLocalPart());
             }
 
-            return body;
-        }
-
-        Map<String, Node> pids = new HashMap<String, Node>();
-        for (int x = 0; x < rows.getLength(); x++) {
-            NodeList children = rows.item(x).getChildNodes();
-            for (int y = 0; y < children.getLength(); y++) {
-                if ("pid".equals(children.item(y).getNodeName())) {
-                    pids.put(children.item(y).getFirstChild().getNodeValue(),
-                             rows.item(x));
-                    break;
-                }
+            @Override
+            protected String getKey(List<XMLEvent> row) {
+                return getChildText(row, "pid");
             }
-        }
-
-        Set<Result> results = evaluatePids(pids.keySet(), request, response);
 
-        for (Result r : results) {
-            if (r.getResource() == null || "".equals(r.getResource())) {
-                logger.warn("This resource has no resource identifier in the xacml response results!");
-            } else if (logger.isDebugEnabled()) {
-                logger.debug("Checking: " + r.getResource());
+            @Override
+            protected Set<String> getDenied(Set<String> pids)
+                    throws ServletException {
+                return getDeniedPids(pids, request, response);
             }
+        }.filter(new ByteArrayInputStream(response.getData()), os);
 
-            String[] ridComponents = r.getResource().split("\\/");
-            String rid = ridComponents[ridComponents.length - 1];
-
-            if (r.getStatus().getCode().contains(Status.STATUS_OK)
-                    && r.getDecision() != Result.DECISION_PERMIT) {
-                Node node = pids.get(rid);
-                node.getParentNode().removeChild(node);
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Removing: " + r.getResource() + "[" + rid + "]");
-                }
-            }
-        }
-
-        Source src = new DOMSource(doc);
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        javax.xml.transform.Result dst = new StreamResult(os);
-        try {
-            xFormer.transform(src, dst);
-        } catch (TransformerException te) {
-            throw new ServletException("error generating output", te);
-        }
-
-        return new String(os.toByteArray());
+        return os.toByteArray();
     }
 
     /**
@@ -369,9 +305,43 @@ public class SearchFilter
             }
         }
 
-        Set<Result> results = evaluatePids(pids.keySet(), request, response);
+        for (String rid : getDeniedPids(pids.keySet(), request, response)) {
+            Node node = pids.get(rid);
+            node.getParentNode().removeChild(node.getNextSibling());
+            node.getParentNode().removeChild(node);
+        }
 
-        for (Result r : results) {
+        Source src = new DOMSource(doc);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        javax.xml.transform.Result dst = new StreamResult(os);
+        try {
+            TransformerFactory.newInstance().newTransformer().transform(src,
+                                                                        dst);
+        } catch (TransformerException te) {
+            throw new ServletException("error generating output", te);
+        }
+
+        return new String(os.toByteArray());
+    }
+
+    /**
+     * Takes a given list of PID's and finds those that are not permitted.
+     *
+     * @param pids
+     *        the list of pids to check
+     * @param request
+     *        the http servlet request
+     * @param response
+     *        the http servlet resposne
+     * @return the pids that are not permitted.
+     * @throws ServletException
+     */
+    private Set<String> getDeniedPids(Set<String> pids,
+                                      HttpServletRequest request,
+                                      DataResponseWrapper response)
+            throws ServletException {
+        Set<String> denied = new HashSet<String>();
+        for (Result r : evaluatePids(pids, request, response)) {
             if (r.getResource() == null || "".equals(r.getResource())) {
                 logger.warn("This resource has no resource identifier in the xacml response results!");
             } else if (logger.isDebugEnabled()) {
@@ -383,25 +353,13 @@ public class SearchFilter
 
             if (r.getStatus().getCode().contains(Status.STATUS_OK)
                     && r.getDecision() != Result.DECISION_PERMIT) {
-                Node node = pids.get(rid);
-                node.getParentNode().removeChild(node.getNextSibling());
-                node.getParentNode().removeChild(node);
+                denied.add(rid);
                 if (logger.isDebugEnabled()) {
                     logger.debug("Removing: " + r.getResource() + "[" + rid + "]");
                 }
             }
         }
-
-        Source src = new DOMSource(doc);
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        javax.xml.transform.Result dst = new StreamResult(os);
-        try {
-            xFormer.transform(src, dst);
-        } catch (TransformerException te) {
-            throw new ServletException("error generating output", te);
-        }
-
-        return new String(os.toByteArray());
+        return denied;
     }
 
     /**
@@ -0,0 +1,191 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.xacml.pep;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.common.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the ResponseCacheImpl
+ *
+ * @version $Id$
+ */
+public class ResponseCacheImplTest {
+
+    private static final String STRING_TYPE =
+            "http://www.w3.org/2001/XMLSchema#string";
+
+    private ResponseCacheImpl cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ResponseCacheImpl(new Integer(100), new Long(60000));
+    }
+
+    @Test
+    public void testResponseIsCached() {
+        assertNull(cache.getCacheItem(request("demo:1")));
+        cache.addCacheItem(request("demo:1"), "response1");
+        assertEquals("response1", cache.getCacheItem(request("demo:1")));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidatingOneObjectKeepsOthers() {
+        add("demo:1", "response1");
+        add("demo:2", "response2");
+        add("demo:3", "response3");
+
+        cache.invalidate("demo:2");
+
+        assertEquals(2, cache.getSize());
+        assertEquals("response1", cache.getCacheItem(request("demo:1")));
+        assertNull(cache.getCacheItem(request("demo:2")));
+        assertEquals("response3", cache.getCacheItem(request("demo:3")));
+    }
+
+    @Test
+    public void testObjectChangedInvalidatesItsResponses() {
+        add("demo:1", "response1");
+        add("demo:2", "response2");
+
+        cache.objectChanged("demo:1");
+
+        assertNull(cache.getCacheItem(request("demo:1")));
+        assertEquals("response2", cache.getCacheItem(request("demo:2")));
+    }
+
+    @Test
+    public void testResponseEvaluatedDuringInvalidationIsNotAdded() {
+        assertNull(cache.getCacheItem(request("demo:1")));
+        cache.invalidate("demo:1");
+        cache.addCacheItem(request("demo:1"), "stale");
+
+        assertEquals(0, cache.getSize());
+        assertNull(cache.getCacheItem(request("demo:1")));
+    }
+
+    @Test
+    public void testInvalidatingAnotherObjectDoesNotStopCaching() {
+        assertNull(cache.getCacheItem(request("demo:2")));
+        cache.invalidate("demo:1");
+        cache.addCacheItem(request("demo:2"), "response2");
+
+        assertEquals("response2", cache.getCacheItem(request("demo:2")));
+    }
+
+    @Test
+    public void testInvalidatingEverything() {
+        add("demo:1", "response1");
+        add("demo:2", "response2");
+        assertNull(cache.getCacheItem(request("demo:3")));
+
+        cache.invalidate();
+        cache.addCacheItem(request("demo:3"), "stale");
+
+        assertEquals(0, cache.getSize());
+        assertNull(cache.getCacheItem(request("demo:1")));
+    }
+
+    @Test
+    public void testEvictedResponseCanBeInvalidated() throws Exception {
+        // one response per segment
+        cache = new ResponseCacheImpl(new Integer(1), new Long(60000));
+        for (int i = 0; i < 50; i++) {
+            add("demo:" + i, "response" + i);
+        }
+        int size = cache.getSize();
+        for (int i = 0; i < 50; i++) {
+            cache.invalidate("demo:" + i);
+        }
+        assertEquals(50 - size, cache.getEvictions());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testAttributeOrderDoesNotMatter() {
+        String subjectId =
+                attribute("urn:oasis:names:tc:xacml:1.0:subject:subject-id",
+                          "fedoraAdmin");
+        String role = attribute("fedoraRole", "administrator");
+        cache.addCacheItem(request(subjectId + role, "demo:1"), "response1");
+
+        assertEquals("response1",
+                     cache.getCacheItem(request(role + subjectId, "demo:1")));
+    }
+
+    @Test
+    public void testDifferentRequestsDoNotShareResponses() {
+        String subjectId =
+                attribute("urn:oasis:names:tc:xacml:1.0:subject:subject-id",
+                          "fedoraAdmin");
+        String role = attribute("fedoraRole", "administrator");
+        cache.addCacheItem(request(subjectId + role, "demo:1"), "response1");
+
+        assertNull(cache.getCacheItem(request(subjectId, "demo:1")));
+        assertNull(cache.getCacheItem(request(subjectId + role, "demo:2")));
+    }
+
+    @Test
+    public void testCanonicalizeSortsAttributesOfEachElement() {
+        String a = attribute("a", "1");
+        String b = attribute("b", "2");
+        String c = attribute("c", "3");
+        assertEquals("<Subject>" + a + b + "</Subject><Resource>" + c
+                             + "</Resource>",
+                     ResponseCacheImpl.canonicalize("<Subject>" + b + "\n  "
+                             + a + "</Subject><Resource>" + c + "</Resource>"));
+        // attributes of different elements are not mixed
+        assertEquals("<Subject>" + b + "</Subject><Resource>" + a
+                             + "</Resource>",
+                     ResponseCacheImpl.canonicalize("<Subject>" + b
+                             + "</Subject><Resource>" + a + "</Resource>"));
+    }
+
+    private void add(String pid, String response) {
+        cache.getCacheItem(request(pid));
+        cache.addCacheItem(request(pid), response);
+    }
+
+    private static String request(String pid) {
+        return request(attribute("urn:oasis:names:tc:xacml:1.0:subject:subject-id",
+                                 "fedoraAdmin"),
+                       pid);
+    }
+
+    private static String request(String subjectAttributes, String pid) {
+        return "<Request xmlns=\"urn:oasis:names:tc:xacml:1.0:context\">"
+                + "<Subject>"
+                + subjectAttributes
+                + "</Subject>"
+                + "<Resource>"
+                + attribute(Constants.OBJECT.PID.uri, pid)
+                + "</Resource>"
+                + "<Action>"
+                + attribute(Constants.ACTION.ID.uri,
+                            Constants.ACTION.GET_OBJECT_PROFILE.uri)
+                + "</Action>"
+                + "<Environment/>"
+                + "</Request>";
+    }
+
+    private static String attribute(String id, String value) {
+        return "<Attribute AttributeId=\"" + id + "\" DataType=\""
+                + STRING_TYPE + "\"><AttributeValue>" + value
+                + "</AttributeValue></Attribute>";
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ResponseCacheImplTest.class);
+    }
+}
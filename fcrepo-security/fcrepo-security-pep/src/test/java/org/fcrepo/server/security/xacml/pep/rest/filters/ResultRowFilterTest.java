@@ -0,0 +1,191 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.xacml.pep.rest.filters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the ResultRowFilter
+ *
+ * @version $Id$
+ */
+public class ResultRowFilterTest {
+
+    @Test
+    public void testPartialLastBatch() throws Exception {
+        TestFilter filter = new TestFilter(3);
+        String out = filter.filter(results("demo:1", "demo:2", "demo:3",
+                                           "demo:4", "demo:5", "demo:6",
+                                           "demo:7"));
+
+        assertEquals(rows("demo:1", "demo:2", "demo:3", "demo:4", "demo:5",
+                          "demo:6", "demo:7"), rowsOf(out));
+        assertEquals(Arrays.asList(keys("demo:1", "demo:2", "demo:3"),
+                                   keys("demo:4", "demo:5", "demo:6"),
+                                   keys("demo:7")), filter.batches);
+    }
+
+    @Test
+    public void testDeniedRowsInTheMiddleOfABatch() throws Exception {
+        TestFilter filter = new TestFilter(4, "demo:2", "demo:3", "demo:6");
+        String out = filter.filter(results("demo:1", "demo:2", "demo:3",
+                                           "demo:4", "demo:5", "demo:6",
+                                           "demo:7", "demo:8"));
+
+        assertEquals(rows("demo:1", "demo:4", "demo:5", "demo:7", "demo:8"),
+                     rowsOf(out));
+        assertEquals(2, filter.batches.size());
+    }
+
+    @Test
+    public void testOrderIsPreserved() throws Exception {
+        // rows without a key are kept, in place, without being authorized
+        TestFilter filter = new TestFilter(2, "demo:b");
+        String out = filter.filter(results("demo:d", null, "demo:b",
+                                           "demo:a", null, "demo:c"));
+
+        assertEquals(rows("demo:d", null, "demo:a", null, "demo:c"),
+                     rowsOf(out));
+        assertEquals(Arrays.asList(keys("demo:d", "demo:b"),
+                                   keys("demo:a", "demo:c")), filter.batches);
+    }
+
+    @Test
+    public void testContentAroundRowsIsKept() throws Exception {
+        TestFilter filter = new TestFilter(2, "demo:2");
+        String out = filter.filter("<result><header>h</header>"
+                + row("demo:1") + "<between>b</between>" + row("demo:2")
+                + row("demo:3") + "<footer>f</footer></result>");
+
+        assertEquals("<result><header>h</header>" + row("demo:1")
+                + "<between>b</between>" + row("demo:3")
+                + "<footer>f</footer></result>", out);
+    }
+
+    @Test
+    public void testRepeatedKeysAreAuthorizedOnce() throws Exception {
+        TestFilter filter = new TestFilter(2, "demo:1");
+        String out = filter.filter(results("demo:1", "demo:2", "demo:1",
+                                           "demo:3"));
+
+        assertEquals(rows("demo:2", "demo:3"), rowsOf(out));
+        assertEquals(Arrays.asList(keys("demo:1", "demo:2"),
+                                   keys("demo:1", "demo:3")), filter.batches);
+    }
+
+    @Test
+    public void testNoRows() throws Exception {
+        TestFilter filter = new TestFilter(2);
+        String document = "<result><total>0</total></result>";
+        assertEquals(document, filter.filter(document));
+        assertEquals(0, filter.batches.size());
+    }
+
+    private static String results(String... pids) {
+        StringBuilder results = new StringBuilder("<result>");
+        for (String pid : pids) {
+            results.append(row(pid));
+        }
+        return results.append("</result>").toString();
+    }
+
+    private static String row(String pid) {
+        return pid == null ? "<row><label>none</label></row>"
+                : "<row><pid>" + pid + "</pid></row>";
+    }
+
+    private static List<String> rows(String... pids) {
+        List<String> rows = new ArrayList<String>();
+        for (String pid : pids) {
+            rows.add(row(pid));
+        }
+        return rows;
+    }
+
+    // the rows of the filtered document, in order
+    private static List<String> rowsOf(String document) {
+        List<String> rows = new ArrayList<String>();
+        int start = document.indexOf("<row>");
+        while (start >= 0) {
+            int end = document.indexOf("</row>", start) + "</row>".length();
+            rows.add(document.substring(start, end));
+            start = document.indexOf("<row>", end);
+        }
+        return rows;
+    }
+
+    private static Set<String> keys(String... keys) {
+        return new LinkedHashSet<String>(Arrays.asList(keys));
+    }
+
+    /**
+     * Treats each row element directly under the root as a row, keyed by
+     * its pid, and denies the keys it is given.
+     */
+    private static class TestFilter
+            extends ResultRowFilter {
+
+        private final Set<String> denied;
+
+        // the keys of each batch authorized, in order
+        private final List<Set<String>> batches = new ArrayList<Set<String>>();
+
+        private TestFilter(int batchSize, String... denied) {
+            super(batchSize);
+            this.denied = new HashSet<String>(Arrays.asList(denied));
+        }
+
+        private String filter(String document) throws Exception {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            filter(new ByteArrayInputStream(document.getBytes("UTF-8")), out);
+            String filtered = out.toString("UTF-8");
+            // leave out the XML declaration, if one was written
+            return filtered.startsWith("<?xml") ? filtered.substring(filtered
+                    .indexOf("?>") + 2) : filtered;
+        }
+
+        @Override
+        protected boolean isRow(StartElement element, int depth) {
+            return depth == 2
+                    && element.getName().getLocalPart().equals("row");
+        }
+
+        @Override
+        protected String getKey(List<XMLEvent> row) {
+            return getChildText(row, "pid");
+        }
+
+        @Override
+        protected Set<String> getDenied(Set<String> keys) {
+            batches.add(new LinkedHashSet<String>(keys));
+            Set<String> result = new HashSet<String>(keys);
+            result.retainAll(denied);
+            return result.isEmpty() ? Collections.<String> emptySet()
+                    : result;
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ResultRowFilterTest.class);
+    }
+}
@@ -1164,12 +1164,17 @@ public class DefaultAccess
                             .GetDatastream(dsID, asOfDateTime);
             mimeTypedStream =
                     new MIMETypedStream(ds.DSMIME, dmc.getContentStream(), null);
+            setContentProperties(mimeTypedStream, dmc, dmc.DSSize);
         } else if (ds.DSControlGrp.equalsIgnoreCase("X")) {
             DatastreamXMLMetadata dxm =
                     (DatastreamXMLMetadata) reader.GetDatastream(dsID,
                                                                  asOfDateTime);
             mimeTypedStream =
                     new MIMETypedStream(ds.DSMIME, dxm.getContentStream(), null);
+            setContentProperties(mimeTypedStream,
+                                 dxm,
+                                 dxm.xmlContent == null ? -1
+                                         : dxm.xmlContent.length);
         } else if (ds.DSControlGrp.equalsIgnoreCase("R")) {
             DatastreamReferencedContent drc =
                     (DatastreamReferencedContent) reader
@@ -1209,4 +1214,28 @@ public class DefaultAccess
                 + " milliseconds.");
         return mimeTypedStream;
     }
+
+    /**
+     * Describes the content of a stored datastream version, so that it can be
+     * served in ranges and revalidated by clients. Versions never change, so
+     * the checksum, or failing that, the version ID and creation date,
+     * identify the content.
+     */
+    private static void setContentProperties(MIMETypedStream stream,
+                                             Datastream ds,
+                                             long size) {
+        if (size > 0) {
+            stream.setSize(size);
+        }
+        stream.setLastModified(ds.DSCreateDT);
+        if (ds.DSChecksum != null
+                && !ds.DSChecksum.equals(Datastream.CHECKSUM_NONE)
+                && ds.DSChecksumType != null
+                && !ds.DSChecksumType.equals(Datastream.CHECKSUMTYPE_DISABLED)) {
+            stream.setEntityTag(ds.DSChecksum);
+        } else if (ds.DSCreateDT != null) {
+            stream.setEntityTag(ds.DSVersionID + "-"
+                    + ds.DSCreateDT.getTime());
+        }
+    }
 }
@@ -0,0 +1,202 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.access.dissemination;
+
+import java.sql.Timestamp;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.fcrepo.server.storage.types.DatastreamMediation;
+
+/**
+ * The datastream locations registered for mediation, by temporary ID.
+ *
+ * <p>Registrations are shared by the DisseminationService, which makes them,
+ * and the DatastreamResolverServlet, which resolves and removes them. Each
+ * registration expires a fixed time after it was made, so registrations
+ * expire in the order they were made: they are queued in that order, and
+ * each new registration removes the expired ones from the head of the queue.
+ * Neither registering nor resolving looks at the other registrations.
+ *
+ * <p>Temporary IDs have the form <code>YYYY-MM-DD hh:mm:ss.mmm:n</code>,
+ * where the timestamp is the time of registration and <code>n</code> is a
+ * sequence number that is never reused, so no two IDs are the same.
+ *
+ * <p>While registrations are being made, the number registered, resolved,
+ * expired and still live are logged at INFO level once a minute.
+ *
+ * @version $Id$
+ */
+public class DatastreamMediationRegistry {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(DatastreamMediationRegistry.class);
+
+    private static final long REPORT_INTERVAL = 60 * 1000;
+
+    private final long m_expirationMillis;
+
+    private final ConcurrentMap<String, Registration> m_registrations =
+            new ConcurrentHashMap<String, Registration>();
+
+    /** The registrations in the order they were made, including removed ones. */
+    private final Queue<Registration> m_expiryQueue =
+            new ConcurrentLinkedQueue<Registration>();
+
+    /** Whether a thread is removing expired registrations. */
+    private final AtomicBoolean m_expiring = new AtomicBoolean();
+
+    private final AtomicLong m_sequence = new AtomicLong();
+
+    private final AtomicLong m_registered = new AtomicLong();
+
+    private final AtomicLong m_resolved = new AtomicLong();
+
+    private final AtomicLong m_expired = new AtomicLong();
+
+    private final AtomicLong m_lastReportTime =
+            new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * @param expirationMillis
+     *        how long a registration is kept if it is not removed.
+     */
+    public DatastreamMediationRegistry(long expirationMillis) {
+        m_expirationMillis = expirationMillis;
+    }
+
+    /**
+     * Registers a datastream location, setting the temporary ID of the
+     * mediation.
+     *
+     * @return the temporary ID.
+     */
+    public String register(DatastreamMediation dm) {
+        long now = System.currentTimeMillis();
+        expire(now);
+
+        String tempID =
+                new Timestamp(now).toString() + ":"
+                        + m_sequence.getAndIncrement();
+        dm.mediatedDatastreamID = tempID;
+        Registration registration = new Registration(tempID, dm, now);
+        m_registrations.put(tempID, registration);
+        m_expiryQueue.offer(registration);
+        m_registered.incrementAndGet();
+
+        long last = m_lastReportTime.get();
+        if (now - last >= REPORT_INTERVAL
+                && m_lastReportTime.compareAndSet(last, now)) {
+            report();
+        }
+        return tempID;
+    }
+
+    /**
+     * Gets a registered datastream location.
+     *
+     * @return the mediation, or null if there is no such registration or it
+     *         has expired.
+     */
+    public DatastreamMediation get(String tempID) {
+        Registration registration = m_registrations.get(tempID);
+        if (registration == null
+                || isExpired(registration, System.currentTimeMillis())) {
+            return null;
+        }
+        return registration.mediation;
+    }
+
+    /**
+     * Removes a registration once it has been resolved.
+     */
+    public void remove(String tempID) {
+        if (m_registrations.remove(tempID) != null) {
+            m_resolved.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of registrations that have not been removed; some
+     *         may have expired since the last registration.
+     */
+    public int size() {
+        return m_registrations.size();
+    }
+
+    public long getRegisteredCount() {
+        return m_registered.get();
+    }
+
+    public long getResolvedCount() {
+        return m_resolved.get();
+    }
+
+    public long getExpiredCount() {
+        return m_expired.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DatastreamMediationRegistry (size=" + size() + ", registered="
+                + getRegisteredCount() + ", resolved=" + getResolvedCount()
+                + ", expired=" + getExpiredCount() + ")";
+    }
+
+    private void report() {
+        if (logger.isInfoEnabled()) {
+            logger.info("Datastream mediations: " + getRegisteredCount()
+                    + " registered, " + getResolvedCount() + " resolved, "
+                    + getExpiredCount() + " expired, " + size() + " live");
+        }
+    }
+
+    // removes the registrations that have expired, oldest first, unless
+    // another thread is already doing so
+    private void expire(long now) {
+        if (!m_expiring.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Registration oldest;
+            while ((oldest = m_expiryQueue.peek()) != null
+                    && isExpired(oldest, now)) {
+                m_expiryQueue.poll();
+                if (m_registrations.remove(oldest.tempID, oldest)) {
+                    m_expired.incrementAndGet();
+                }
+            }
+        } finally {
+            m_expiring.set(false);
+        }
+    }
+
+    private boolean isExpired(Registration registration, long now) {
+        return now - registration.time > m_expirationMillis;
+    }
+
+    private static class Registration {
+
+        final String tempID;
+
+        final DatastreamMediation mediation;
+
+        final long time;
+
+        Registration(String tempID, DatastreamMediation mediation, long time) {
+            this.tempID = tempID;
+            this.mediation = mediation;
+            this.time = time;
+        }
+    }
+}
@@ -13,7 +13,6 @@ import java.sql.Timestamp;
 
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Iterator;
 
 import javax.servlet.ServletException;
@@ -77,7 +76,7 @@ public class DatastreamResolverServlet
 
     private static DOManager m_manager;
 
-    private static Hashtable dsRegistry;
+    private static DatastreamMediationRegistry dsRegistry;
 
     private static int datastreamMediationLimit;
 
@@ -195,15 +194,10 @@ public class DatastreamResolverServlet
             // Get in-memory hashtable of mappings from Fedora server.
             ds = new DisseminationService();
             dsRegistry = DisseminationService.dsRegistry;
-            DatastreamMediation dm = (DatastreamMediation) dsRegistry.get(id);
+            DatastreamMediation dm = dsRegistry.get(id);
             if (dm == null) {
-                StringBuffer entries = new StringBuffer();
-                Iterator eIter = dsRegistry.keySet().iterator();
-                while (eIter.hasNext()) {
-                    entries.append("'" + (String) eIter.next() + "' ");
-                }
                 throw new IOException("Cannot find datastream in temp registry by key: "
-                        + id + "\n" + "Reg entries: " + entries.toString());
+                        + id + "\n" + dsRegistry);
             }
             dsPhysicalLocation = dm.dsLocation;
             dsControlGroupType = dm.dsControlGroupType;
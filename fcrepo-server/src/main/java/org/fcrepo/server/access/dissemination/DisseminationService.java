@@ -11,8 +11,6 @@ import java.io.UnsupportedEncodingException;
 
 import java.net.URLEncoder;
 
-import java.sql.Timestamp;
-
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -71,12 +69,6 @@ public class DisseminationService {
     /** The expiration limit in minutes for removing entries from the database. */
     private static int datastreamExpirationLimit = 0;
 
-    /**
-     * An incremental counter used to insure uniqueness of tempIDs used for
-     * datastream mediation.
-     */
-    private static int counter = 0;
-
     /** Datastream Mediation control flag. */
     private static boolean doDatastreamMediation;
 
@@ -148,8 +140,9 @@ public class DisseminationService {
         }
     }
 
-    /** The hashtable containing information required for datastream mediation. */
-    protected static Hashtable<String, DatastreamMediation> dsRegistry = new Hashtable<String, DatastreamMediation>(1000);
+    /** The registry of information required for datastream mediation. */
+    protected static final DatastreamMediationRegistry dsRegistry =
+            new DatastreamMediationRegistry(datastreamExpirationLimit * 1000L);
 
     /**
      * <p>
@@ -732,11 +725,11 @@ public class DisseminationService {
      * </p>
      * <p>
      * The format of the tempID is derived from <code>java.sql.Timestamp</code>
-     * with an arbitrary counter appended to the end to insure uniqueness. The
+     * with a sequence number appended to the end to insure uniqueness. The
      * syntax is of the form:
      * <ul>
      * <p>
-     * YYYY-MM-DD HH:mm:ss.mmm:dddddd where
+     * YYYY-MM-DD HH:mm:ss.mmm:n where
      * </p>
      * <ul>
      * <li>YYYY - year (1900-8099)</li>
@@ -746,7 +739,7 @@ public class DisseminationService {
      * <li>mm - minutes (0-59)</li>
      * <li>ss - seconds (0-59)</li>
      * <li>mmm - milliseconds (0-999)</li>
-     * <li>dddddd - incremental counter (0-999999)</li>
+     * <li>n - sequence number, never reused</li>
      * </ul>
      * </ul>
      *
@@ -766,94 +759,73 @@ public class DisseminationService {
             throws ServerException {
 
         String tempID = null;
-        Timestamp timeStamp = null;
-        if (counter > 999999) {
-            counter = 0;
-        }
-        long currentTime = new Timestamp(new Date().getTime()).getTime();
-        long expireLimit =
-                currentTime - (long) datastreamExpirationLimit * 1000;
-
         try {
 
-            // Remove any datastream registrations that have expired.
-            // The expiration limit can be adjusted using the Fedora config parameter
-            // named "datastreamExpirationLimit" which is in seconds.
-            for (Enumeration<String> e = dsRegistry.keys(); e.hasMoreElements();) {
-                String key = e.nextElement();
-                timeStamp = Timestamp.valueOf(extractTimestamp(key));
-                if (expireLimit > timeStamp.getTime()) {
-                    dsRegistry.remove(key);
-                    logger.debug("DatastreamMediationKey removed from Hash: "
-                            + key);
-                }
+            // Register datastream. Registrations expire after the number of
+            // seconds given by the Fedora config parameter named
+            // "datastreamExpirationLimit".
+            DatastreamMediation dm = new DatastreamMediation();
+            dm.dsLocation = dsLocation;
+            dm.dsControlGroupType = dsControlGroupType;
+            dm.methodName = methodName;
+
+            // See if datastream reference is to fedora server itself or an external location.
+            // M and X type datastreams always reference fedora server. With E type datastreams
+            // we must examine URL to see if this is referencing a remote datastream or is
+            // simply a callback to the fedora server. If the reference is remote, then use
+            // the role of the backend service that will make a callback for this datastream.
+            // If the referenc s to the fedora server, use the special role of "fedoraInternalCall-1" to
+            // denote that the callback will come from the fedora server itself.
+            String beServiceRole = null;
+            if (ServerUtility.isURLFedoraServer(dsLocation)
+                    || dsControlGroupType.equals("M")
+                    || dsControlGroupType.equals("X")) {
+                beServiceRole = BackendPolicies.FEDORA_INTERNAL_CALL;
+            } else {
+                beServiceRole = beServiceCallbackRole;
             }
 
-            // Register datastream.
-            if (tempID == null) {
-                timeStamp = new Timestamp(new Date().getTime());
-                tempID = timeStamp.toString() + ":" + counter++;
-                DatastreamMediation dm = new DatastreamMediation();
-                dm.mediatedDatastreamID = tempID;
-                dm.dsLocation = dsLocation;
-                dm.dsControlGroupType = dsControlGroupType;
-                dm.methodName = methodName;
-
-                // See if datastream reference is to fedora server itself or an external location.
-                // M and X type datastreams always reference fedora server. With E type datastreams
-                // we must examine URL to see if this is referencing a remote datastream or is
-                // simply a callback to the fedora server. If the reference is remote, then use
-                // the role of the backend service that will make a callback for this datastream.
-                // If the referenc s to the fedora server, use the special role of "fedoraInternalCall-1" to
-                // denote that the callback will come from the fedora server itself.
-                String beServiceRole = null;
-                if (ServerUtility.isURLFedoraServer(dsLocation)
-                        || dsControlGroupType.equals("M")
-                        || dsControlGroupType.equals("X")) {
-                    beServiceRole = BackendPolicies.FEDORA_INTERNAL_CALL;
-                } else {
-                    beServiceRole = beServiceCallbackRole;
-                }
-
-                // Store beSecurity info in hash
-                Hashtable<String, String> beHash =
-                        m_beSS.getSecuritySpec(beServiceRole, methodName);
-                boolean beServiceCallbackBasicAuth =
-                        new Boolean(beHash.get("callbackBasicAuth"))
-                                .booleanValue();
-                boolean beServiceCallBasicAuth =
-                        new Boolean(beHash.get("callBasicAuth"))
-                                .booleanValue();
-                boolean beServiceCallbackSSL =
-                        new Boolean(beHash.get("callbackSSL"))
-                                .booleanValue();
-                boolean beServiceCallSSL =
-                        new Boolean(beHash.get("callSSL"))
-                                .booleanValue();
-                String beServiceCallUsername =
-                        beHash.get("callUsername");
-                String beServiceCallPassword =
-                        beHash.get("callPassword");
-                if (logger.isDebugEnabled()) {
-                    logger.debug("******************Registering datastream dsLocation: {}", dsLocation);
-                    logger.debug("******************Registering datastream dsControlGroupType: {}", dsControlGroupType);
-                    logger.debug("******************Registering datastream beServiceRole: {}", beServiceRole);
-                    logger.debug("******************Registering datastream beServiceCallbackBasicAuth: {}", beServiceCallbackBasicAuth);
-                    logger.debug("******************Registering datastream beServiceCallBasicAuth: {}", beServiceCallBasicAuth);
-                    logger.debug("******************Registering datastream beServiceCallbackSSL: {}", beServiceCallbackSSL);
-                    logger.debug("******************Registering datastream beServiceCallSSL: {}", beServiceCallSSL);
-                    logger.debug("******************Registering datastream beServiceCallUsername: {}", beServiceCallUsername);
-                    logger.debug("******************Registering datastream beServiceCallPassword: {}", beServiceCallPassword);
-                }
-                dm.callbackRole = beServiceRole;
-                dm.callUsername = beServiceCallUsername;
-                dm.callPassword = beServiceCallPassword;
-                dm.callbackBasicAuth = beServiceCallbackBasicAuth;
-                dm.callBasicAuth = beServiceCallBasicAuth;
-                dm.callbackSSL = beServiceCallbackSSL;
-                dm.callSSL = beServiceCallSSL;
-                dsRegistry.put(tempID, dm);
-                logger.debug("DatastreammediationKey added to Hash: " + tempID);
+            // Store beSecurity info in hash
+            Hashtable<String, String> beHash =
+                    m_beSS.getSecuritySpec(beServiceRole, methodName);
+            boolean beServiceCallbackBasicAuth =
+                    new Boolean(beHash.get("callbackBasicAuth"))
+                            .booleanValue();
+            boolean beServiceCallBasicAuth =
+                    new Boolean(beHash.get("callBasicAuth"))
+                            .booleanValue();
+            boolean beServiceCallbackSSL =
+                    new Boolean(beHash.get("callbackSSL"))
+                            .booleanValue();
+            boolean beServiceCallSSL =
+                    new Boolean(beHash.get("callSSL"))
+                            .booleanValue();
+            String beServiceCallUsername =
+                    beHash.get("callUsername");
+            String beServiceCallPassword =
+                    beHash.get("callPassword");
+            if (logger.isDebugEnabled()) {
+                logger.debug("******************Registering datastream dsLocation: {}", dsLocation);
+                logger.debug("******************Registering datastream dsControlGroupType: {}", dsControlGroupType);
+                logger.debug("******************Registering datastream beServiceRole: {}", beServiceRole);
+                logger.debug("******************Registering datastream beServiceCallbackBasicAuth: {}", beServiceCallbackBasicAuth);
+                logger.debug("******************Registering datastream beServiceCallBasicAuth: {}", beServiceCallBasicAuth);
+                logger.debug("******************Registering datastream beServiceCallbackSSL: {}", beServiceCallbackSSL);
+                logger.debug("******************Registering datastream beServiceCallSSL: {}", beServiceCallSSL);
+                logger.debug("******************Registering datastream beServiceCallUsername: {}", beServiceCallUsername);
+                logger.debug("******************Registering datastream beServiceCallPassword: {}", beServiceCallPassword);
+            }
+            dm.callbackRole = beServiceRole;
+            dm.callUsername = beServiceCallUsername;
+            dm.callPassword = beServiceCallPassword;
+            dm.callbackBasicAuth = beServiceCallbackBasicAuth;
+            dm.callBasicAuth = beServiceCallBasicAuth;
+            dm.callbackSSL = beServiceCallbackSSL;
+            dm.callSSL = beServiceCallSSL;
+            tempID = dsRegistry.register(dm);
+            if (logger.isDebugEnabled()) {
+                logger.debug("DatastreamMediationKey added to "
+                        + dsRegistry + ": " + tempID);
             }
 
         } catch (Throwable th) {
@@ -39,6 +39,12 @@ public interface JournalConstants {
 
     String PARAMETER_JOURNAL_FILE_AGE_LIMIT = "journalFileAgeLimit";
 
+    // If "true", journaled methods on different objects may run concurrently.
+    String PARAMETER_CONCURRENT_OPERATIONS = "concurrentOperations";
+
+    // The number of threads that replay journal entries on a follower.
+    String PARAMETER_REPLAY_THREADS = "replayThreads";
+
     // Acceptable values for server parameters.
     String VALUE_TRUE = "true";
 
@@ -178,6 +184,9 @@ public interface JournalConstants {
 
     String ARGUMENT_TYPE_STREAM = "stream";
 
+    // A stream stored in a file apart from the Journal, named by the argument
+    String ARGUMENT_TYPE_STREAM_FILE = "streamFile";
+
     String ARGUMENT_TYPE_BINDING_MAP = "bindingMap";
 
     String ARGUMENT_TYPE_NULL = "null";
@@ -6,6 +6,7 @@ package org.fcrepo.server.journal;
 
 import java.util.Map;
 
+import org.fcrepo.server.errors.ModuleInitializationException;
 import org.fcrepo.server.journal.entry.ConsumerJournalEntry;
 import org.fcrepo.server.journal.helpers.JournalHelper;
 import org.fcrepo.server.journal.recoverylog.JournalRecoveryLog;
@@ -17,11 +18,16 @@ import org.slf4j.LoggerFactory;
 /**
  * Process the journal entries as a separate Thread, while the JournalConsumer
  * is blocking all calls from outside.
+ * <p>
+ * The entries are replayed by a {@link JournalReplayer}, which may use
+ * several threads, depending on the
+ * {@link JournalConstants#PARAMETER_REPLAY_THREADS} parameter.
  *
  * @author Jim Blake
  */
 public class JournalConsumerThread
-        extends Thread {
+        extends Thread
+        implements JournalConstants {
 
     private static final Logger logger =
             LoggerFactory.getLogger(JournalConsumerThread.class);
@@ -32,7 +38,9 @@ public class JournalConsumerThread
 
     private final JournalRecoveryLog recoveryLog;
 
-    private ManagementDelegate delegate;
+    private final int replayThreads;
+
+    private JournalReplayer replayer;
 
     private boolean shutdown = false;
 
@@ -45,10 +53,20 @@ public class JournalConsumerThread
                                  String role,
                                  ServerInterface server,
                                  JournalReader reader,
-                                 JournalRecoveryLog recoveryLog) {
+                                 JournalRecoveryLog recoveryLog)
+            throws ModuleInitializationException {
         this.server = server;
         this.reader = reader;
         this.recoveryLog = recoveryLog;
+
+        String threads = parameters.get(PARAMETER_REPLAY_THREADS);
+        try {
+            replayThreads = threads == null ? 1 : Integer.parseInt(threads);
+        } catch (NumberFormatException e) {
+            throw new ModuleInitializationException("'"
+                    + PARAMETER_REPLAY_THREADS
+                    + "' parameter must be a number of threads", role);
+        }
     }
 
     /**
@@ -56,7 +74,8 @@ public class JournalConsumerThread
      * start working.
      */
     public void setManagementDelegate(ManagementDelegate delegate) {
-        this.delegate = delegate;
+        replayer = new JournalReplayer(replayThreads, delegate, recoveryLog);
+        reader.setReplayer(replayer);
         start();
     }
 
@@ -80,9 +99,10 @@ public class JournalConsumerThread
                 if (cje == null) {
                     break;
                 }
-                cje.invokeMethod(delegate, recoveryLog);
-                cje.close();
+                replayer.replay(cje);
             }
+            replayer.awaitCompletion();
+            replayer.checkForFailure();
             reader.shutdown();
 
             recoveryLog.log("Recovery complete.");
@@ -100,6 +120,7 @@ public class JournalConsumerThread
             recoveryLog.log("PROBLEM: " + stackTrace);
             recoveryLog.log("Recovery terminated prematurely.");
         } finally {
+            replayer.shutdown();
             recoveryLog.shutdown();
         }
     }
@@ -10,6 +10,7 @@ import org.fcrepo.server.errors.ModuleInitializationException;
 import org.fcrepo.server.errors.ModuleShutdownException;
 import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.journal.entry.CreatorJournalEntry;
+import org.fcrepo.server.journal.helpers.ParameterHelper;
 import org.fcrepo.server.management.ManagementDelegate;
 import org.fcrepo.server.messaging.PName;
 import org.fcrepo.server.storage.types.Datastream;
@@ -30,6 +31,11 @@ import java.util.Map;
  * CreatorJournalEntry and ask it to invoke the method on the
  * ManagementDelegate. If a "read-only" Management method is called, just pass
  * it along to the ManagementDelegate.
+ * <p/>
+ * Writing methods are journaled one at a time, unless the
+ * {@link JournalConstants#PARAMETER_CONCURRENT_OPERATIONS} parameter is
+ * "true", in which case a {@link JournalEntryCommitter} lets methods on
+ * different objects run concurrently.
  *
  * @author Jim Blake
  */
@@ -41,6 +47,9 @@ public class JournalCreator
 
     private final JournalWriter writer;
 
+    /** Null unless methods are to be journaled concurrently. */
+    private final JournalEntryCommitter committer;
+
     private final String role;
 
     private ManagementDelegate delegate;
@@ -56,6 +65,15 @@ public class JournalCreator
 
         try {
             writer = JournalWriter.getInstance(parameters, role, server);
+            if (ParameterHelper
+                    .getOptionalBooleanParameter(parameters,
+                                                 PARAMETER_CONCURRENT_OPERATIONS,
+                                                 false)) {
+                committer = new JournalEntryCommitter(writer);
+                logger.info("Journaling operations concurrently");
+            } else {
+                committer = null;
+            }
         } catch (JournalException e) {
             String msg = "Problem creating the JournalWriter";
             logger.error(msg, e);
@@ -75,7 +93,11 @@ public class JournalCreator
      */
     public void shutdown() throws ModuleShutdownException {
         try {
-            writer.shutdown();
+            if (committer == null) {
+                writer.shutdown();
+            } else {
+                committer.shutdown();
+            }
         } catch (JournalException e) {
             throw new ModuleShutdownException("JournalWriter generated an error on shutdown()",
                                               role,
@@ -83,6 +105,20 @@ public class JournalCreator
         }
     }
 
+    /**
+     * Invoke the method and write the journal entry, either one at a time or
+     * concurrently, then close the entry.
+     */
+    private Object invokeAndClose(CreatorJournalEntry cje)
+            throws ServerException, JournalException {
+        if (committer == null) {
+            return cje.invokeAndClose(delegate, writer);
+        }
+        Object result = committer.invokeMethod(cje, delegate);
+        cje.close();
+        return result;
+    }
+
     //
     // -------------------------------------------------------------------------
     //
@@ -109,7 +145,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_FORMAT, format);
             cje.addArgument(ARGUMENT_NAME_ENCODING, encoding);
             cje.addArgument(ARGUMENT_NAME_NEW_PID, pid);
-            return (String) cje.invokeAndClose(delegate, writer);
+            return (String) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -134,7 +170,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_OWNERID, ownerId);
             cje.addArgument(ARGUMENT_NAME_LOG_MESSAGE, logMessage);
             cje.addArgument(ARGUMENT_NAME_LAST_MODIFIED_DATE, lastModifiedDate);
-            return (Date) cje.invokeAndClose(delegate, writer);
+            return (Date) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -151,7 +187,7 @@ public class JournalCreator
                     new CreatorJournalEntry(METHOD_PURGE_OBJECT, context);
             cje.addArgument(ARGUMENT_NAME_PID, pid);
             cje.addArgument(ARGUMENT_NAME_LOG_MESSAGE, logMessage);
-            return (Date) cje.invokeAndClose(delegate, writer);
+            return (Date) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -190,7 +226,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_CHECKSUM_TYPE, checksumType);
             cje.addArgument(ARGUMENT_NAME_CHECKSUM, checksum);
             cje.addArgument(ARGUMENT_NAME_LOG_MESSAGE, logMessage);
-            return (String) cje.invokeAndClose(delegate, writer);
+            return (String) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -226,7 +262,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_CHECKSUM, checksum);
             cje.addArgument(ARGUMENT_NAME_LOG_MESSAGE, logMessage);
             cje.addArgument(ARGUMENT_NAME_LAST_MODIFIED_DATE, lastModifiedDate);
-            return (Date) cje.invokeAndClose(delegate, writer);
+            return (Date) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -263,7 +299,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_CHECKSUM, checksum);
             cje.addArgument(ARGUMENT_NAME_LOG_MESSAGE, logMessage);
             cje.addArgument(ARGUMENT_NAME_LAST_MODIFIED_DATE, lastModifiedDate);
-            return (Date) cje.invokeAndClose(delegate, writer);
+            return (Date) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -285,7 +321,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_DS_ID, dsID);
             cje.addArgument(ARGUMENT_NAME_DS_STATE, dsState);
             cje.addArgument(ARGUMENT_NAME_LOG_MESSAGE, logMessage);
-            return (Date) cje.invokeAndClose(delegate, writer);
+            return (Date) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -308,7 +344,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_DS_ID, dsID);
             cje.addArgument(ARGUMENT_NAME_VERSIONABLE, versionable);
             cje.addArgument(ARGUMENT_NAME_LOG_MESSAGE, logMessage);
-            return (Date) cje.invokeAndClose(delegate, writer);
+            return (Date) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -331,7 +367,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_START_DATE, startDT);
             cje.addArgument(ARGUMENT_NAME_END_DATE, endDT);
             cje.addArgument(ARGUMENT_NAME_LOG_MESSAGE, logMessage);
-            return (Date[]) cje.invokeAndClose(delegate, writer);
+            return (Date[]) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -346,7 +382,7 @@ public class JournalCreator
             CreatorJournalEntry cje =
                     new CreatorJournalEntry(METHOD_PUT_TEMP_STREAM, context);
             cje.addArgument(ARGUMENT_NAME_IN, in);
-            return (String) cje.invokeAndClose(delegate, writer);
+            return (String) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -362,7 +398,7 @@ public class JournalCreator
                     new CreatorJournalEntry(METHOD_GET_NEXT_PID, context);
             cje.addArgument(ARGUMENT_NAME_NUM_PIDS, numPIDs);
             cje.addArgument(ARGUMENT_NAME_NAMESPACE, namespace);
-            return (String[]) cje.invokeAndClose(delegate, writer);
+            return (String[]) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -382,7 +418,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_OBJECT, objURI);
             cje.addArgument(ARGUMENT_NAME_IS_LITERAL, isLiteral);
             cje.addArgument(ARGUMENT_NAME_DATATYPE, datatype);
-            return (Boolean) cje.invokeAndClose(delegate, writer);
+            return (Boolean) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -402,7 +438,7 @@ public class JournalCreator
             cje.addArgument(ARGUMENT_NAME_OBJECT, object);
             cje.addArgument(ARGUMENT_NAME_IS_LITERAL, isLiteral);
             cje.addArgument(ARGUMENT_NAME_DATATYPE, datatype);
-            return (Boolean) cje.invokeAndClose(delegate, writer);
+            return (Boolean) invokeAndClose(cje);
         } catch (JournalException e) {
             throw new GeneralException("Problem creating the Journal", e);
         }
@@ -0,0 +1,278 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.journal.entry.CreatorJournalEntry;
+import org.fcrepo.server.journal.entry.JournalEntry;
+import org.fcrepo.server.management.ManagementDelegate;
+import org.fcrepo.server.utilities.StripedLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Invokes journaled Management methods concurrently, keeping the journal in
+ * order for each object rather than for the repository as a whole.
+ * <p>
+ * Used by the {@link JournalCreator} in place of
+ * {@link CreatorJournalEntry#invokeMethod(ManagementDelegate, JournalWriter)}
+ * when the {@link JournalConstants#PARAMETER_CONCURRENT_OPERATIONS} parameter
+ * is "true".
+ * <ul>
+ * <li>Methods on the same object are run one at a time, in the order they
+ * arrive, and their entries are written in that order. Methods on different
+ * objects (or on none, like getNextPID) may run at the same time.</li>
+ * <li>An ingest that is given no PID only learns which object it creates as
+ * it runs, so it can't be ordered against the other methods on that object.
+ * It runs alone instead, with the exclusive side of the file lock held,
+ * after the methods in progress have finished and before any others
+ * start.</li>
+ * <li>Each method in progress holds the shared side of the writer's
+ * {@link JournalWriter#getFileLock() file lock}. If the writer must open or
+ * close a file before the entry can be written, the method first takes the
+ * exclusive side, waiting for the methods in progress to finish, so the
+ * repository hash at the head of each file is taken when the repository is at
+ * rest.</li>
+ * <li>When a method completes, its entry is given the next sequence number
+ * and queued. Entries are written in sequence order, in groups: whichever
+ * thread gets the writer writes every entry queued so far, and flushes once,
+ * while the threads whose entries it wrote wait and then return.</li>
+ * </ul>
+ * Entries for methods that overlap in time may be written in either order,
+ * unless they are for the same object. A method that starts after another
+ * has returned always follows it in the journal.
+ *
+ * @version $Id$
+ */
+public class JournalEntryCommitter
+        implements JournalConstants {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(JournalEntryCommitter.class);
+
+    private static final String PID_URI_PREFIX = "info:fedora/";
+
+    private final JournalWriter writer;
+
+    private final ReadWriteLock fileLock;
+
+    private final StripedLock objectLocks = new StripedLock();
+
+    private final Object prepareLock = new Object();
+
+    /** Guards the queue and the sequence number. */
+    private final Object queueLock = new Object();
+
+    private List<QueuedEntry> queue = new ArrayList<QueuedEntry>();
+
+    private long lastSequence;
+
+    /** Guarded by the {@link JournalWriter#SYNCHRONIZER}. */
+    private long lastWritten;
+
+    public JournalEntryCommitter(JournalWriter writer) {
+        this.writer = writer;
+        fileLock = writer.getFileLock();
+    }
+
+    /**
+     * Invoke the method of the entry on the delegate and write the entry,
+     * after any other methods on the same object.
+     */
+    public Object invokeMethod(CreatorJournalEntry journalEntry,
+                               ManagementDelegate delegate)
+            throws ServerException, JournalException {
+        String pid = getObjectPid(journalEntry);
+        if (pid == null
+                && METHOD_INGEST.equals(journalEntry.getMethodName())) {
+            return invokeAlone(journalEntry, delegate);
+        }
+        Lock objectLock = pid == null ? null : objectLocks.get(pid);
+        if (objectLock != null) {
+            objectLock.lock();
+        }
+        try {
+            JournalOperatingMode.enforceCurrentMode();
+            lockForMethod();
+            try {
+                Object result = journalEntry.getMethod().invoke(delegate);
+                commit(journalEntry);
+                return result;
+            } finally {
+                fileLock.readLock().unlock();
+            }
+        } finally {
+            if (objectLock != null) {
+                objectLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Invoke the method of the entry on the delegate and write the entry,
+     * with no other methods in progress.
+     */
+    private Object invokeAlone(CreatorJournalEntry journalEntry,
+                               ManagementDelegate delegate)
+            throws ServerException, JournalException {
+        JournalOperatingMode.enforceCurrentMode();
+        fileLock.writeLock().lock();
+        try {
+            synchronized (JournalWriter.SYNCHRONIZER) {
+                if (!writer.isReadyToWrite()) {
+                    writer.prepareToWriteJournalEntry();
+                }
+            }
+            Object result = journalEntry.getMethod().invoke(delegate);
+            commit(journalEntry);
+            return result;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Wait for the methods in progress to finish, and shut down the writer.
+     */
+    public void shutdown() throws JournalException {
+        fileLock.writeLock().lock();
+        try {
+            writer.shutdown();
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Take the shared side of the file lock, with the writer ready to write.
+     * If it isn't, prepare it with the exclusive side held, then downgrade.
+     * Only one thread prepares at a time; those that were waiting for it will
+     * usually find the writer ready.
+     */
+    private void lockForMethod() throws JournalException {
+        if (lockIfReady()) {
+            return;
+        }
+        synchronized (prepareLock) {
+            if (lockIfReady()) {
+                return;
+            }
+            fileLock.writeLock().lock();
+            try {
+                synchronized (JournalWriter.SYNCHRONIZER) {
+                    writer.prepareToWriteJournalEntry();
+                }
+                fileLock.readLock().lock();
+            } finally {
+                fileLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Take the shared side of the file lock if the writer is ready to write.
+     */
+    private boolean lockIfReady() {
+        fileLock.readLock().lock();
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            if (writer.isReadyToWrite()) {
+                return true;
+            }
+        }
+        fileLock.readLock().unlock();
+        return false;
+    }
+
+    /**
+     * Queue the entry, then write it along with any others queued, unless
+     * another thread has already done so.
+     */
+    private void commit(CreatorJournalEntry journalEntry)
+            throws JournalException {
+        QueuedEntry queued;
+        synchronized (queueLock) {
+            queued = new QueuedEntry(++lastSequence, journalEntry);
+            queue.add(queued);
+        }
+
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            if (queued.sequence > lastWritten) {
+                List<QueuedEntry> group;
+                synchronized (queueLock) {
+                    group = queue;
+                    queue = new ArrayList<QueuedEntry>();
+                }
+                writeGroup(group);
+            }
+            if (queued.failure != null) {
+                throw queued.failure;
+            }
+        }
+    }
+
+    private void writeGroup(List<QueuedEntry> group) {
+        List<CreatorJournalEntry> entries =
+                new ArrayList<CreatorJournalEntry>(group.size());
+        for (QueuedEntry queued : group) {
+            entries.add(queued.entry);
+        }
+        try {
+            writer.writeJournalEntries(entries);
+        } catch (JournalException e) {
+            for (QueuedEntry queued : group) {
+                queued.failure = e;
+            }
+        }
+        lastWritten = group.get(group.size() - 1).sequence;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Wrote journal entries " + group.get(0).sequence
+                    + " to " + lastWritten);
+        }
+    }
+
+    /**
+     * Find the object the method works on, if it is named. Relationship
+     * methods may name it by URI, possibly that of a datastream. An ingest
+     * names none if it is given no PID, or "new".
+     */
+    static String getObjectPid(JournalEntry journalEntry) {
+        String s = journalEntry.getStringArgument(ARGUMENT_NAME_PID);
+        if (s == null || s.length() == 0) {
+            return null;
+        }
+        if (METHOD_INGEST.equals(journalEntry.getMethodName())
+                && s.equals("new")) {
+            return null;
+        }
+        if (s.startsWith(PID_URI_PREFIX)) {
+            s = s.substring(PID_URI_PREFIX.length());
+            int slash = s.indexOf('/');
+            if (slash >= 0) {
+                s = s.substring(0, slash);
+            }
+        }
+        return s;
+    }
+
+    private static class QueuedEntry {
+
+        final long sequence;
+
+        final CreatorJournalEntry entry;
+
+        /** Set if the group was not written. */
+        JournalException failure;
+
+        QueuedEntry(long sequence, CreatorJournalEntry entry) {
+            this.sequence = sequence;
+            this.entry = entry;
+        }
+    }
+}
@@ -59,6 +59,8 @@ public abstract class JournalReader
 
     private boolean ignoreHashErrors;
 
+    private JournalReplayer replayer;
+
     /**
      * Create an instance of the proper JournalReader child class, as determined
      * by the server parameters.
@@ -123,6 +125,25 @@ public abstract class JournalReader
         }
     }
 
+    /**
+     * Entries read are replayed by this replayer, possibly after more have
+     * been read.
+     */
+    public void setReplayer(JournalReplayer replayer) {
+        this.replayer = replayer;
+    }
+
+    /**
+     * Wait until the entries already read have been replayed. Concrete
+     * sub-classes should call this before they archive a journal file, since
+     * its entries may still be waiting to be replayed.
+     */
+    protected void awaitReplayedEntries() throws JournalException {
+        if (replayer != null) {
+            replayer.awaitCompletion();
+        }
+    }
+
     /**
      * Concrete sub-classes should probably synchronize this method, since it
      * can be called either from the JournalConsumerThread or from the Server.
@@ -153,6 +174,9 @@ public abstract class JournalReader
                     + "the server is fully initialized.");
         }
 
+        // the hash must include every entry from the previous file
+        awaitReplayedEntries();
+
         JournalException hashException = null;
 
         if (hash == null) {
@@ -267,6 +291,8 @@ public abstract class JournalReader
             readDateArgument(reader, journalEntry, argName);
         } else if (ARGUMENT_TYPE_STREAM.equals(argType)) {
             readStreamArgument(reader, journalEntry, argName);
+        } else if (ARGUMENT_TYPE_STREAM_FILE.equals(argType)) {
+            readStreamFileArgument(reader, journalEntry, argName);
         } else {
             throw new JournalException("Unknown argument type: name='"
                     + argName + "', type='" + argType + "'");
@@ -433,6 +459,34 @@ public abstract class JournalReader
         }
     }
 
+    /**
+     * An InputStream argument stored in a file of its own is named in the
+     * journal. The file is presented to the management method as it is.
+     */
+    private void readStreamFileArgument(XMLEventReader reader,
+                                        ConsumerJournalEntry journalEntry,
+                                        String name)
+            throws XMLStreamException, JournalException {
+        String storedName =
+                readCharactersUntilEndOfArgument(reader,
+                                                 QNAME_TAG_ARGUMENT,
+                                                 journalEntry.getMethodName(),
+                                                 name,
+                                                 ARGUMENT_TYPE_STREAM_FILE);
+        journalEntry.addArgument(name, getFileArgument(storedName));
+    }
+
+    /**
+     * Find a stream argument that the writer stored in a file of its own.
+     * Concrete sub-classes that read such journals must override this; by
+     * default, it's an error.
+     */
+    protected File getFileArgument(String storedName) throws JournalException {
+        throw new JournalException("This journal reader can't read stream "
+                + "arguments stored apart from the journal: '" + storedName
+                + "'");
+    }
+
     private void readNullArgument(XMLEventReader reader,
                                   ConsumerJournalEntry journalEntry,
                                   String name) throws XMLStreamException,
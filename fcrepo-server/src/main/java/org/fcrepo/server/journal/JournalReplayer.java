@@ -0,0 +1,313 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.journal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.fcrepo.common.Constants;
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.journal.entry.ConsumerJournalEntry;
+import org.fcrepo.server.journal.entry.JournalEntry;
+import org.fcrepo.server.journal.helpers.JournalHelper;
+import org.fcrepo.server.journal.recoverylog.JournalRecoveryLog;
+import org.fcrepo.server.management.ManagementDelegate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays the entries read by the {@link JournalConsumerThread}, on a pool of
+ * worker threads when the {@link JournalConstants#PARAMETER_REPLAY_THREADS}
+ * parameter is greater than 1.
+ * <ul>
+ * <li>Entries are given to the workers by object, so the entries for any one
+ * object are replayed by the same worker, in journal order. Entries for
+ * different objects may be replayed in any order.</li>
+ * <li>An entry whose object can't be known before it is replayed (getNextPID,
+ * or an ingest that takes its PID from the serialization) is replayed by the
+ * reading thread, once every entry before it has been replayed, and before
+ * any entry after it is read.</li>
+ * <li>Each worker holds only a limited number of waiting entries; when it is
+ * full, reading waits.</li>
+ * <li>If an entry fails, the workers discard the entries that are waiting,
+ * and the failure is reported to the reading thread the next time it hands
+ * over an entry, or waits for completion.</li>
+ * </ul>
+ * With a single thread, every entry is replayed by the reading thread, as it
+ * is read.
+ * <p>
+ * Progress is written to the recovery log once a minute: the number of
+ * entries replayed and the rate, the number waiting, and how far the latest
+ * entry replayed is behind the time it was made.
+ *
+ * @version $Id$
+ */
+public class JournalReplayer
+        implements JournalConstants {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(JournalReplayer.class);
+
+    /** The number of entries that may wait for each worker. */
+    private static final int WORKER_QUEUE_SIZE = 100;
+
+    private static final long REPORT_INTERVAL = 60 * 1000;
+
+    private final ManagementDelegate delegate;
+
+    private final JournalRecoveryLog recoveryLog;
+
+    private final Worker[] workers;
+
+    /** Guards the counts, the times and the failure. */
+    private final Object stateLock = new Object();
+
+    /** Entries handed over but not yet replayed. */
+    private int pending;
+
+    private long replayed;
+
+    /** The time the latest entry replayed was made, on the leader. */
+    private long latestEntryTime;
+
+    private Throwable failure;
+
+    private long lastReportTime = System.currentTimeMillis();
+
+    private long replayedAtLastReport;
+
+    public JournalReplayer(int threads,
+                           ManagementDelegate delegate,
+                           JournalRecoveryLog recoveryLog) {
+        this.delegate = delegate;
+        this.recoveryLog = recoveryLog;
+        workers = new Worker[threads > 1 ? threads : 0];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+        if (workers.length > 0) {
+            recoveryLog.log("Replaying journal entries with " + workers.length
+                    + " threads.");
+        }
+    }
+
+    /**
+     * Replay the entry, or hand it to the worker for its object. The entry
+     * is closed once it has been replayed.
+     *
+     * @throws JournalException
+     *         if an entry handed over earlier has failed.
+     */
+    public void replay(ConsumerJournalEntry journalEntry)
+            throws ServerException, JournalException {
+        checkForFailure();
+        String pid = workers.length == 0 ? null : getObjectPid(journalEntry);
+        if (pid == null) {
+            awaitCompletion();
+            checkForFailure();
+            synchronized (stateLock) {
+                pending++;
+            }
+            invoke(journalEntry);
+        } else {
+            synchronized (stateLock) {
+                pending++;
+            }
+            Worker worker =
+                    workers[(pid.hashCode() & Integer.MAX_VALUE)
+                            % workers.length];
+            try {
+                worker.queue.put(journalEntry);
+            } catch (InterruptedException e) {
+                journalEntry.close();
+                completed(0);
+                throw new JournalException("Interrupted while handing over "
+                        + journalEntry.getIdentifier(), e);
+            }
+        }
+        reportProgress(false);
+    }
+
+    /**
+     * Wait until every entry handed over has been replayed, or discarded
+     * after a failure.
+     */
+    public void awaitCompletion() throws JournalException {
+        synchronized (stateLock) {
+            while (pending > 0) {
+                try {
+                    stateLock.wait();
+                } catch (InterruptedException e) {
+                    throw new JournalException("Interrupted while waiting for "
+                            + pending + " journal entries to be replayed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * If an entry has failed, throw an exception that says so.
+     */
+    public void checkForFailure() throws JournalException {
+        synchronized (stateLock) {
+            if (failure != null) {
+                throw new JournalException("Failed to replay a journal entry",
+                                           failure);
+            }
+        }
+    }
+
+    /**
+     * Wait for the entries handed over, stop the workers, and report the
+     * final progress.
+     */
+    public void shutdown() {
+        try {
+            awaitCompletion();
+        } catch (JournalException e) {
+            logger.warn("Replay workers stopped with entries waiting", e);
+        }
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
+        reportProgress(true);
+    }
+
+    private void invoke(ConsumerJournalEntry journalEntry)
+            throws ServerException, JournalException {
+        long entryTime = journalEntry.getContext().now().getTime();
+        boolean succeeded = false;
+        try {
+            journalEntry.invokeMethod(delegate, recoveryLog);
+            succeeded = true;
+        } finally {
+            journalEntry.close();
+            completed(succeeded ? entryTime : 0);
+        }
+    }
+
+    /**
+     * Count the entry as no longer pending; if it was replayed, entryTime is
+     * the time it was made, otherwise 0.
+     */
+    private void completed(long entryTime) {
+        synchronized (stateLock) {
+            pending--;
+            if (entryTime > 0) {
+                replayed++;
+                latestEntryTime = Math.max(entryTime, latestEntryTime);
+            }
+            stateLock.notifyAll();
+        }
+    }
+
+    private boolean hasFailed() {
+        synchronized (stateLock) {
+            return failure != null;
+        }
+    }
+
+    private void failed(ConsumerJournalEntry journalEntry, Throwable e) {
+        synchronized (stateLock) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        logger.error("Error replaying " + journalEntry.getIdentifier(), e);
+        recoveryLog.log("PROBLEM: replaying " + journalEntry.getIdentifier()
+                + ": " + JournalHelper.captureStackTrace(e));
+    }
+
+    /**
+     * Write the progress to the recovery log, if it's time.
+     */
+    private void reportProgress(boolean force) {
+        String message;
+        synchronized (stateLock) {
+            long now = System.currentTimeMillis();
+            if (!force && now - lastReportTime < REPORT_INTERVAL) {
+                return;
+            }
+            double seconds = Math.max(now - lastReportTime, 1) / 1000.0;
+            long rate =
+                    Math.round((replayed - replayedAtLastReport) / seconds);
+            message =
+                    "Replay progress: " + replayed + " entries replayed ("
+                            + rate + " per second), " + pending
+                            + " waiting";
+            if (latestEntryTime > 0) {
+                message +=
+                        ", " + (now - latestEntryTime) / 1000
+                                + " seconds behind the journal";
+            }
+            lastReportTime = now;
+            replayedAtLastReport = replayed;
+        }
+        recoveryLog.log(message);
+    }
+
+    /**
+     * Find the object the entry works on, if it can be known before the
+     * entry is replayed. An ingest that was given no PID names the one it was
+     * assigned in its recovery values, if any.
+     */
+    static String getObjectPid(JournalEntry journalEntry) {
+        String pid = JournalEntryCommitter.getObjectPid(journalEntry);
+        if (pid == null && METHOD_INGEST.equals(journalEntry.getMethodName())) {
+            pid =
+                    journalEntry.getContext()
+                            .getRecoveryValue(Constants.RECOVERY.PID.uri);
+        }
+        if (pid == null || pid.length() == 0) {
+            return null;
+        }
+        return pid;
+    }
+
+    /**
+     * Replays the entries for its share of the objects, in the order they
+     * were handed over.
+     */
+    private class Worker
+            extends Thread {
+
+        final BlockingQueue<ConsumerJournalEntry> queue =
+                new ArrayBlockingQueue<ConsumerJournalEntry>(WORKER_QUEUE_SIZE);
+
+        Worker(int index) {
+            super("JournalReplayer-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                ConsumerJournalEntry journalEntry;
+                try {
+                    journalEntry = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (hasFailed()) {
+                    journalEntry.close();
+                    completed(0);
+                    continue;
+                }
+                long entryTime = journalEntry.getContext().now().getTime();
+                try {
+                    journalEntry.invokeMethod(delegate, recoveryLog);
+                } catch (Throwable e) {
+                    // recorded before completion, so no one misses it
+                    failed(journalEntry, e);
+                    entryTime = 0;
+                } finally {
+                    journalEntry.close();
+                    completed(entryTime);
+                }
+            }
+        }
+    }
+}
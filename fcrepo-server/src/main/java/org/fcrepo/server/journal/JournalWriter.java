@@ -10,7 +10,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
@@ -62,6 +65,16 @@ import org.slf4j.LoggerFactory;
  * journal.</li>
  * </ul>
  * </p>
+ * <p>
+ * When Management methods are journaled concurrently (see
+ * {@link JournalEntryCommitter}), each method in progress holds the shared
+ * side of the {@link #getFileLock() file lock}, and a journal file may only
+ * be opened or closed while holding the exclusive side. Each file then
+ * begins at a point where no methods are in progress, as the repository hash
+ * requires. Writers that support this override {@link #isReadyToWrite()} and
+ * {@link #writeJournalEntries(List)}; with the default implementations,
+ * methods are still journaled one at a time.
+ * </p>
  *
  * @author Jim Blake
  */
@@ -80,6 +93,12 @@ public abstract class JournalWriter
      */
     public static final Object SYNCHRONIZER = new Object();
 
+    /**
+     * Held shared by each Management method in progress in concurrent mode,
+     * and exclusively when opening or closing a journal file.
+     */
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+
     /**
      * Create an instance of the proper JournalWriter child class, as determined
      * by the server parameters.
@@ -142,6 +161,44 @@ public abstract class JournalWriter
     public abstract void writeJournalEntry(CreatorJournalEntry journalEntry)
             throws JournalException;
 
+    /**
+     * Get the lock that guards the opening and closing of journal files
+     * against Management methods in progress. It is a reentrant lock, so the
+     * exclusive side may be downgraded to the shared side. Timers that close a
+     * file should hold the exclusive side while doing so.
+     */
+    public ReadWriteLock getFileLock() {
+        return fileLock;
+    }
+
+    /**
+     * Can an entry be written without opening or closing a journal file? This
+     * is only asked in concurrent mode, while holding the shared side of the
+     * file lock and synchronized on the {@link #SYNCHRONIZER}; if the answer
+     * is no, {@link #prepareToWriteJournalEntry()} is called with the
+     * exclusive side held. The default answer is always no, which is safe,
+     * but means that methods are journaled one at a time.
+     */
+    public boolean isReadyToWrite() {
+        return false;
+    }
+
+    /**
+     * Write a group of entries, in order. In concurrent mode, this is called
+     * instead of {@link #writeJournalEntry(CreatorJournalEntry)}, holding the
+     * shared side of the file lock and synchronized on the
+     * {@link #SYNCHRONIZER}. Other methods may be in progress against the
+     * current file, so a writer that overrides {@link #isReadyToWrite()} must
+     * not open or close a file here; that is left to the next call to
+     * {@link #prepareToWriteJournalEntry()}.
+     */
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        for (CreatorJournalEntry journalEntry : journalEntries) {
+            writeJournalEntry(journalEntry);
+        }
+    }
+
     /**
      * Subclasses should call this method to initialize a new Journal file.
      */
@@ -188,20 +245,42 @@ public abstract class JournalWriter
                                      XMLEventWriter writer)
             throws JournalException {
         try {
-            writeJournaEntryStartTag(journalEntry, writer);
-
-            new ContextXmlWriter().writeContext(journalEntry.getContext(),
-                                                writer);
-
-            writeArguments(journalEntry.getArgumentsMap(), writer);
+            writeJournalEntryElement(journalEntry, writer);
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new JournalException(e);
+        }
+    }
 
-            putEndTag(writer, QNAME_TAG_JOURNAL_ENTRY);
+    /**
+     * Format a group of JournalEntry objects and write them to the journal,
+     * flushing the writer once, after the last of them.
+     */
+    protected void writeJournalEntries(List<CreatorJournalEntry> journalEntries,
+                                       XMLEventWriter writer)
+            throws JournalException {
+        try {
+            for (CreatorJournalEntry journalEntry : journalEntries) {
+                writeJournalEntryElement(journalEntry, writer);
+            }
             writer.flush();
         } catch (XMLStreamException e) {
             throw new JournalException(e);
         }
     }
 
+    private void writeJournalEntryElement(CreatorJournalEntry journalEntry,
+                                          XMLEventWriter writer)
+            throws XMLStreamException, JournalException {
+        writeJournaEntryStartTag(journalEntry, writer);
+
+        new ContextXmlWriter().writeContext(journalEntry.getContext(), writer);
+
+        writeArguments(journalEntry.getArgumentsMap(), writer);
+
+        putEndTag(writer, QNAME_TAG_JOURNAL_ENTRY);
+    }
+
     private void writeJournaEntryStartTag(CreatorJournalEntry journalEntry,
                                           XMLEventWriter writer)
             throws XMLStreamException {
@@ -324,9 +403,21 @@ public abstract class JournalWriter
      * An InputStream argument must be written as a Base64-encoded String. It is
      * read from the temp file in segments. Each segment is encoded and written
      * to the XML writer as a series of character events.
+     * <p>
+     * If the writer {@link #storeFileArgument(File) stores} the file apart
+     * from the journal instead, only its name is written.
      */
     private void writeFileArgument(String key, File file, XMLEventWriter writer)
             throws XMLStreamException, JournalException {
+        String storedName = storeFileArgument(file);
+        if (storedName != null) {
+            putStartTag(writer, QNAME_TAG_ARGUMENT);
+            putAttribute(writer, QNAME_ATTR_NAME, key);
+            putAttribute(writer, QNAME_ATTR_TYPE, ARGUMENT_TYPE_STREAM_FILE);
+            putCharacters(writer, storedName);
+            putEndTag(writer, QNAME_TAG_ARGUMENT);
+            return;
+        }
         try {
             putStartTag(writer, QNAME_TAG_ARGUMENT);
             putAttribute(writer, QNAME_ATTR_NAME, key);
@@ -345,6 +436,17 @@ public abstract class JournalWriter
         }
     }
 
+    /**
+     * Child classes may store a stream argument in a file of its own, rather
+     * than writing it into the journal, and return a name for that file that
+     * their reader will understand. The file given is the argument's temp
+     * file, which may be moved. The default is to return null, so the
+     * argument is written into the journal.
+     */
+    protected String storeFileArgument(File file) throws JournalException {
+        return null;
+    }
+
     /**
      * This method must not be called before the server has completed
      * initialization. That's the only way we can be confident that the
@@ -49,8 +49,8 @@ public class CreatorJournalEntry
      * block, we can be confident that the previous one had completed before the
      * current one started.
      * <p>
-     * There might be a way to enforce the synchronization at a lower level,
-     * thus increasing throughput, but we haven't explored it yet.
+     * To journal methods on different objects concurrently, see
+     * {@link org.fcrepo.server.journal.JournalEntryCommitter}.
      */
     public Object invokeMethod(ManagementDelegate delegate, JournalWriter writer)
             throws ServerException, JournalException {
@@ -4,13 +4,13 @@
  */
 package org.fcrepo.server.journal.helpers;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
+import java.nio.channels.FileChannel;
+
 /**
  * Provides a workaround to the fact that
  * {@link java.io.File.renameTo(java.io.File)} doesn't work across NFS file
@@ -121,24 +121,25 @@ public class FileMovingUtil {
      * @throws IOException
      *         if any problems are encountered
      */
-    private final static void copy(File fromFile, File toFile)
+    public final static void copy(File fromFile, File toFile)
             throws IOException {
-        FileInputStream in = new FileInputStream(fromFile);
-        FileOutputStream out = new FileOutputStream(toFile);
-        BufferedInputStream inBuffer = new BufferedInputStream(in);
-        BufferedOutputStream outBuffer = new BufferedOutputStream(out);
-
-        int theByte = 0;
-
-        while ((theByte = inBuffer.read()) > -1) {
-            outBuffer.write(theByte);
+        FileChannel in = new FileInputStream(fromFile).getChannel();
+        try {
+            FileChannel out = new FileOutputStream(toFile).getChannel();
+            try {
+                // transferTo may copy less than asked, so loop
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
         }
 
-        outBuffer.close();
-        inBuffer.close();
-        out.close();
-        in.close();
-
         // cleanupif files are not the same length
         if (fromFile.length() != toFile.length()) {
             toFile.delete();
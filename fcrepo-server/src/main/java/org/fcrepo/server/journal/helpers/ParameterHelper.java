@@ -128,15 +128,28 @@ public class ParameterHelper
      */
     public static long parseParametersForSizeLimit(Map<String, String> parameters)
             throws JournalException {
+        return getOptionalSizeParameter(parameters,
+                                        PARAMETER_JOURNAL_FILE_SIZE_LIMIT,
+                                        DEFAULT_SIZE_LIMIT);
+    }
+
+    /**
+     * Get an optional size parameter (or let it default), and convert it to
+     * bytes. The value is a number of bytes, optionally followed by 'K', 'M',
+     * or 'G'.
+     */
+    public static long getOptionalSizeParameter(Map<String, String> parameters,
+                                                String parameterName,
+                                                String defaultValue)
+            throws JournalException {
         String sizeString =
                 getOptionalStringParameter(parameters,
-                                           PARAMETER_JOURNAL_FILE_SIZE_LIMIT,
-                                           DEFAULT_SIZE_LIMIT);
+                                           parameterName,
+                                           defaultValue);
         Pattern p = Pattern.compile("([0-9]+)([KMG]?)");
         Matcher m = p.matcher(sizeString);
         if (!m.matches()) {
-            throw new JournalException("Parameter '"
-                    + PARAMETER_JOURNAL_FILE_SIZE_LIMIT
+            throw new JournalException("Parameter '" + parameterName
                     + "' must be an integer number of bytes, "
                     + "optionally followed by 'K', 'M', or 'G', "
                     + "or a 0 to indicate no size limit");
@@ -8,9 +8,11 @@ package org.fcrepo.server.journal.readerwriter.multicast;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.locks.Lock;
 
 import javax.xml.stream.XMLEventWriter;
 
@@ -313,6 +315,50 @@ public class MulticastJournalWriter
         }
     }
 
+    /**
+     * We can write without opening or closing a file if the file is open and
+     * hasn't reached the size limit, or if we are shut down and won't write.
+     *
+     * @see org.fcrepo.server.journal.JournalWriter#isReadyToWrite()
+     */
+    @Override
+    public boolean isReadyToWrite() {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            return state == SHUTDOWN || state == FILE_OPEN
+                    && !(sizeLimit != 0 && currentSize >= sizeLimit);
+        }
+    }
+
+    /**
+     * <p>
+     * Write a group of journal entries, in order.
+     * </p>
+     * <p>
+     * As {@link #writeJournalEntry(CreatorJournalEntry)}, except that the
+     * file is not closed if it passes the size limit. Other Management methods
+     * may still be in progress, so that is left to the next call to
+     * {@link #prepareToWriteJournalEntry()}.
+     * </p>
+     *
+     * @see org.fcrepo.server.journal.JournalWriter#writeJournalEntries(List)
+     */
+    @Override
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            if (state == SHUTDOWN) {
+                return;
+            }
+            logger.debug("Writing " + journalEntries.size()
+                    + " journal entries.");
+            for (CreatorJournalEntry journalEntry : journalEntries) {
+                sendRequestToAllTransports(new WriteEntryRequest(this,
+                                                                 journalEntry));
+                currentSize += sizeEstimator.estimateSize(journalEntry);
+            }
+        }
+    }
+
     /**
      * <p>
      * Shut it down
@@ -379,13 +425,16 @@ public class MulticastJournalWriter
     }
 
     /**
-     * When the timer goes off, close the file.
+     * When the timer goes off, close the file, waiting for any Management
+     * methods in progress to finish.
      */
     private final class CloseFileTimerTask
             extends TimerTask {
 
         @Override
         public void run() {
+            Lock fileLock = getFileLock().writeLock();
+            fileLock.lock();
             try {
                 logger.debug("Timer task requests file close.");
                 closeFile();
@@ -396,6 +445,8 @@ public class MulticastJournalWriter
                  */
                 e.printStackTrace();
                 throw new IllegalStateException(e);
+            } finally {
+                fileLock.unlock();
             }
         }
     }
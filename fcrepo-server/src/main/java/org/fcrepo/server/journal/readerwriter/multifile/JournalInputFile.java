@@ -9,6 +9,9 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -22,10 +25,14 @@ import org.fcrepo.server.journal.helpers.FileMovingUtil;
  * 
  * @author Jim Blake
  */
-class JournalInputFile {
+class JournalInputFile
+        implements MultiFileJournalConstants {
 
     private final File file;
 
+    /** The stream arguments stored apart from this file, read so far. */
+    private final List<File> fileArguments = new ArrayList<File>();
+
     private final FileReader fileReader;
 
     private final XMLEventReader xmlReader;
@@ -58,7 +65,29 @@ class JournalInputFile {
     }
 
     /**
-     * When we have processed the file, move it to the archive directory.
+     * Find a stream argument that was stored apart from this file, in the
+     * file arguments directory beside it.
+     */
+    public File getFileArgument(String storedName) throws JournalException {
+        if (storedName.indexOf('/') >= 0 || storedName.indexOf('\\') >= 0
+                || storedName.startsWith(".")) {
+            throw new JournalException("Invalid stream argument file name '"
+                    + storedName + "' in '" + file.getPath() + "'");
+        }
+        File directory =
+                new File(file.getParentFile(), FILE_ARGUMENT_DIRECTORY);
+        File argument = new File(directory, storedName);
+        if (!argument.isFile()) {
+            throw new JournalException("Stream argument file '"
+                    + argument.getPath() + "' does not exist.");
+        }
+        fileArguments.add(argument);
+        return argument;
+    }
+
+    /**
+     * When we have processed the file, move it to the archive directory,
+     * along with the stream arguments that were stored apart from it.
      */
     public void closeAndRename(File archiveDirectory) throws JournalException {
         try {
@@ -80,6 +109,7 @@ class JournalInputFile {
                         + file.getPath() + "' to '" + archiveFile.getPath()
                         + "'", e);
             }
+            archiveFileArguments(archiveDirectory);
         } catch (XMLStreamException e) {
             throw new JournalException(e);
         } catch (IOException e) {
@@ -87,6 +117,29 @@ class JournalInputFile {
         }
     }
 
+    private void archiveFileArguments(File archiveDirectory)
+            throws JournalException {
+        if (fileArguments.isEmpty()) {
+            return;
+        }
+        File directory = new File(archiveDirectory, FILE_ARGUMENT_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new JournalException("Unable to create directory '"
+                    + directory.getPath() + "'.");
+        }
+        for (File argument : fileArguments) {
+            File archived = new File(directory, argument.getName());
+            try {
+                FileMovingUtil.move(argument, archived);
+            } catch (IOException e) {
+                throw new JournalException("Failed to rename file from '"
+                        + argument.getPath() + "' to '" + archived.getPath()
+                        + "'", e);
+            }
+        }
+        fileArguments.clear();
+    }
+
     public XMLEventReader getReader() {
         return xmlReader;
     }
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.util.Date;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.locks.Lock;
 
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLEventWriter;
@@ -33,7 +34,9 @@ import org.fcrepo.server.journal.helpers.JournalHelper;
  * synchronized against the {@link JournalWriter#SYNCHRONIZER} to guard against
  * problems. Any other operations on the file or on its
  * <code>XMLEventWriter</code> should also be synchronized against the
- * {@link JournalWriter#SYNCHRONIZER}.
+ * {@link JournalWriter#SYNCHRONIZER}. The timer also holds the exclusive side
+ * of the parent's {@link JournalWriter#getFileLock() file lock}, so it can't
+ * close the file while Management methods are being journaled concurrently.
  * 
  * @author Jim Blake
  */
@@ -65,6 +68,9 @@ class JournalOutputFile
     /** Is this file still open? */
     private boolean open = true;
 
+    /** The number of stream arguments stored apart from this file. */
+    private int fileArgumentCount;
+
     /**
      * This private constructor creates a "dummy" file that is closed to start
      * with.
@@ -194,14 +200,47 @@ class JournalOutputFile
                 return;
             }
 
-            // if the size limit is 0 or negative, treat it as "no limit".
-            long currentSize = tempFile.length();
-            if (sizeLimit > 0 && currentSize > sizeLimit) {
+            if (isOverSizeLimit()) {
                 close();
             }
         }
     }
 
+    /**
+     * Has the file grown past the size limit?
+     */
+    public boolean isOverSizeLimit() {
+        // if the size limit is 0 or negative, treat it as "no limit".
+        return sizeLimit > 0 && tempFile.length() > sizeLimit;
+    }
+
+    /**
+     * Store a stream argument in the file arguments directory, under a name
+     * taken from this file, and return that name. A temp file is moved there
+     * rather than copied, when the file system allows it.
+     */
+    public String storeFileArgument(File argument) throws JournalException {
+        File directory =
+                new File(file.getParentFile(), FILE_ARGUMENT_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new JournalException("Unable to create directory '"
+                    + directory.getPath() + "'.");
+        }
+        String name = file.getName() + "." + ++fileArgumentCount;
+        File stored = new File(directory, name);
+        try {
+            if (JournalHelper.isTempFile(argument)) {
+                FileMovingUtil.move(argument, stored);
+            } else {
+                FileMovingUtil.copy(argument, stored);
+            }
+        } catch (IOException e) {
+            throw new JournalException("Failed to store stream argument as '"
+                    + stored.getPath() + "'", e);
+        }
+        return name;
+    }
+
     /**
      * Is this file available for writing?
      */
@@ -252,13 +291,16 @@ class JournalOutputFile
     }
 
     /**
-     * When the timer goes off, close the file.
+     * When the timer goes off, close the file, waiting for any Management
+     * methods in progress to finish.
      */
     private final class CloseFileTimerTask
             extends TimerTask {
 
         @Override
         public void run() {
+            Lock fileLock = parent.getFileLock().writeLock();
+            fileLock.lock();
             try {
                 close();
             } catch (JournalException e) {
@@ -268,6 +310,8 @@ class JournalOutputFile
                  */
                 e.printStackTrace();
                 throw new IllegalStateException(e);
+            } finally {
+                fileLock.unlock();
             }
         }
     }
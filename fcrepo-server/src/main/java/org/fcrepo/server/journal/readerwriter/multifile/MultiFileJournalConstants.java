@@ -16,6 +16,18 @@ public interface MultiFileJournalConstants {
 
     String PARAMETER_ARCHIVE_DIRECTORY = "archiveDirectory";
 
+    /**
+     * Stream arguments at least this large are stored apart from the journal
+     * file. Default is 0: never.
+     */
+    String PARAMETER_SEPARATE_FILE_ARGUMENT_SIZE = "separateFileArgumentSize";
+
+    /**
+     * The sub-directory of the journal (or archive) directory that holds the
+     * stream arguments stored apart from the journal files.
+     */
+    String FILE_ARGUMENT_DIRECTORY = "fileArguments";
+
     /** Used by following readers */
     String PARAMETER_FOLLOW_POLLING_INTERVAL = "followPollingInterval";
 
@@ -96,8 +96,9 @@ public class MultiFileJournalHelper
         }
 
         public boolean accept(File file) {
+            // not the directory of stream arguments, whatever the prefix
             String filename = file.getName();
-            return filename.startsWith(filenamePrefix);
+            return filename.startsWith(filenamePrefix) && file.isFile();
         }
     }
 
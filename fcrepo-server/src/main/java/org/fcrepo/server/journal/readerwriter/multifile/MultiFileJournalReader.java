@@ -226,8 +226,17 @@ public class MultiFileJournalReader
         checkRepositoryHash(hash);
     }
 
+    /**
+     * Stream arguments stored apart from a journal file are beside it.
+     */
+    @Override
+    protected File getFileArgument(String storedName) throws JournalException {
+        return currentFile.getFileArgument(storedName);
+    }
+
     private void closeCurrentFile() throws JournalException {
         if (currentFile != null) {
+            awaitReplayedEntries();
             recoveryLog.log("Closing journal file: '"
                     + currentFile.getFilename() + "'");
             currentFile.closeAndRename(archiveDirectory);
@@ -7,6 +7,7 @@ package org.fcrepo.server.journal.readerwriter.multifile;
 import java.io.File;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.XMLEventWriter;
@@ -43,6 +44,12 @@ public class MultiFileJournalWriter
     /** number of milliseconds before we start a new file - 0 means no limit */
     private final long ageLimit;
 
+    /**
+     * Stream arguments at least this large (in bytes) are stored apart from
+     * the journal file; 0 means never.
+     */
+    private final long separateFileArgumentSize;
+
     /** the current journal file - start with a dummy that is already closed. */
     private JournalOutputFile currentJournal = JournalOutputFile.DUMMY_FILE;
 
@@ -64,6 +71,11 @@ public class MultiFileJournalWriter
                 ParameterHelper.parseParametersForFilenamePrefix(parameters);
         sizeLimit = ParameterHelper.parseParametersForSizeLimit(parameters);
         ageLimit = ParameterHelper.parseParametersForAgeLimit(parameters);
+        separateFileArgumentSize =
+                ParameterHelper
+                        .getOptionalSizeParameter(parameters,
+                                                  PARAMETER_SEPARATE_FILE_ARGUMENT_SIZE,
+                                                  "0");
 
         checkForPotentialFilenameConflict();
     }
@@ -136,6 +148,46 @@ public class MultiFileJournalWriter
         }
     }
 
+    /**
+     * We can write without opening or closing a file if the current file is
+     * open and not too large (or if we are shut down, and won't write at all).
+     */
+    @Override
+    public boolean isReadyToWrite() {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            return !open || currentJournal.isOpen()
+                    && !currentJournal.isOverSizeLimit();
+        }
+    }
+
+    /**
+     * Write the entries and flush the file once. Don't close the file, even if
+     * it is now too large; the next call to prepareToWriteJournalEntry() will.
+     */
+    @Override
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        if (open) {
+            synchronized (JournalWriter.SYNCHRONIZER) {
+                super.writeJournalEntries(journalEntries, currentJournal
+                        .getXmlWriter());
+            }
+        }
+    }
+
+    /**
+     * Store a large stream argument in a file of its own, beside the current
+     * journal file, so it needn't be Base64-encoded into the journal.
+     */
+    @Override
+    protected String storeFileArgument(File file) throws JournalException {
+        if (separateFileArgumentSize > 0
+                && file.length() >= separateFileArgumentSize) {
+            return currentJournal.storeFileArgument(file);
+        }
+        return null;
+    }
+
     /**
      * Close the current journal file.
      */
@@ -169,7 +221,9 @@ public class MultiFileJournalWriter
     public String toString() {
         return super.toString() + ", journalDirectory='" + journalDirectory
                 + "', filenamePrefix='" + filenamePrefix + "', sizeLimit="
-                + sizeLimit + "(bytes), ageLimit=" + ageLimit + "(msec)";
+                + sizeLimit + "(bytes), ageLimit=" + ageLimit
+                + "(msec), separateFileArgumentSize="
+                + separateFileArgumentSize + "(bytes)";
     }
 
 }
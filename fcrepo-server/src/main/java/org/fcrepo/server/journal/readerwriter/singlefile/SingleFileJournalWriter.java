@@ -7,6 +7,7 @@ package org.fcrepo.server.journal.readerwriter.singlefile;
 import java.io.FileWriter;
 import java.io.IOException;
 
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.XMLEventWriter;
@@ -93,6 +94,23 @@ public class SingleFileJournalWriter
         }
     }
 
+    /**
+     * There is only one file, so we are ready once it has its header.
+     */
+    @Override
+    public boolean isReadyToWrite() {
+        return fileHasHeader;
+    }
+
+    /**
+     * Add the entries to the file, flushing once.
+     */
+    @Override
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        super.writeJournalEntries(journalEntries, writer);
+    }
+
     /**
      * Add the document trailer and close the journal file.
      */
@@ -14,6 +14,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -78,6 +82,14 @@ public class JMSManager {
     protected Map<String, MessageConsumer> durableSubscriptions =
             new HashMap<String, MessageConsumer>();
 
+    // Sessions and producers kept for sends to Destination objects
+    protected Map<Destination, JMSDestination> destinationSenders =
+            new ConcurrentHashMap<Destination, JMSDestination>();
+
+    // Commits the batches of transacted destinations that have waited long
+    // enough, created when the first such destination is
+    private Timer commitTimer = null;
+
     private final Properties jndiProps;
 
     // Destination type determines the method by which messages are transferred
@@ -172,6 +184,9 @@ public class JMSManager {
 
     /**
      * Creates a Destination if the Destination has not already been created.
+     * If the session is transacted, each message sent is committed as it is
+     * sent. This is the same as calling:
+     * <code>createDestination(name, type, fTransacted, ackMode, 1, 0)</code>
      *
      * @param name - the name of the destination to create
      * @param type - the destination type (topic or queue)
@@ -183,11 +198,42 @@ public class JMSManager {
                                   DestinationType type,
                                   boolean fTransacted,
                                   int ackMode) throws MessagingException {
+        return createDestination(name, type, fTransacted, ackMode, 1, 0);
+    }
+
+    /**
+     * Creates a Destination if the Destination has not already been created.
+     * If the session is transacted, messages sent to the destination are
+     * committed in batches: once <code>commitBatchSize</code> messages are
+     * waiting, or, if <code>commitInterval</code> is greater than 0, at most
+     * that many milliseconds after the first of them was sent. The batch
+     * settings are ignored for a session which is not transacted.
+     *
+     * @param name - the name of the destination to create
+     * @param type - the destination type (topic or queue)
+     * @param fTransacted - determines whether the session will maintain transactions
+     * @param ackMode - determines the session acknowledgment mode
+     * @param commitBatchSize - the number of messages sent per commit
+     * @param commitInterval - the longest time, in milliseconds, that a
+     *        message may wait to be committed, or 0 for no limit
+     * @throws MessagingException
+     */
+    public synchronized Destination createDestination(String name,
+                                  DestinationType type,
+                                  boolean fTransacted,
+                                  int ackMode,
+                                  int commitBatchSize,
+                                  long commitInterval)
+            throws MessagingException {
         // If the destination already exists, just return it
         JMSDestination jmsDest = jmsDestinations.get(name);
         if (jmsDest != null) {
             return jmsDest.destination;
         }
+        if (commitBatchSize < 1) {
+            throw new MessagingException("The commit batch size for "
+                    + name + " must be at least 1");
+        }
 
         // Create the new destination and store it
         Session session;
@@ -222,6 +268,12 @@ public class JMSManager {
         }
 
         jmsDest = new JMSDestination(destination, session, null, null);
+        if (fTransacted) {
+            jmsDest.commitBatchSize = commitBatchSize;
+            if (commitInterval > 0) {
+                scheduleCommits(jmsDest, commitInterval);
+            }
+        }
 
         jmsDestinations.put(name, jmsDest);
 
@@ -493,7 +545,7 @@ public class JMSManager {
 
         // Send the message for this destination
         try {
-            jmsDest.producer.send(msg);
+            send(jmsDest, msg);
         } catch (JMSException e) {
             throw new MessagingException(e.getMessage(), e);
         }
@@ -504,16 +556,18 @@ public class JMSManager {
     }
 
     /**
-     * Allows the caller to send a Message object to a destination
+     * Allows the caller to send a Message object to a destination. The
+     * session and producer used are kept for later sends to the same
+     * destination.
      */
     public void send(Destination dest, Message msg) throws MessagingException {
+        JMSDestination sender = getDestinationSender(dest);
         try {
-            Session s =
-                    connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            MessageProducer p = s.createProducer(dest);
-            p.send(msg);
-            s.close();
+            send(sender, msg);
         } catch (JMSException e) {
+            // Don't keep a session that may no longer be usable
+            destinationSenders.remove(dest);
+            closeSession(sender);
             throw new MessagingException(e.getMessage(), e);
         }
 
@@ -535,7 +589,7 @@ public class JMSManager {
         // Send the message for this destination
         try {
             Message msg = createJMSMessage(obj, jmsDest.session);
-            jmsDest.producer.send(msg);
+            send(jmsDest, msg);
         } catch (JMSException e) {
             throw new MessagingException(e.getMessage(), e);
         }
@@ -567,25 +621,31 @@ public class JMSManager {
             JMSDestination jmsDest =
                     jmsDestinations.get(destName);
             if (jmsDest != null) {
-                // Close out all JMS related state
-                //
-                if (jmsDest.producer != null) {
-                    jmsDest.producer.close();
-                    logger.debug("Closed producer for " + destName);
-                }
-                if (jmsDest.consumer != null) {
-                    jmsDest.consumer.close();
-                    logger.debug("Closed consumer for " + destName);
+                synchronized (jmsDest) {
+                    // Commit any messages still waiting in the batch
+                    //
+                    commitWaiting(jmsDest);
+
+                    // Close out all JMS related state
+                    //
+                    if (jmsDest.producer != null) {
+                        jmsDest.producer.close();
+                        logger.debug("Closed producer for " + destName);
+                    }
+                    if (jmsDest.consumer != null) {
+                        jmsDest.consumer.close();
+                        logger.debug("Closed consumer for " + destName);
+                    }
+                    if (jmsDest.session != null) {
+                        jmsDest.session.close();
+                        logger.debug("Closed session for " + destName);
+                    }
+
+                    jmsDest.destination = null;
+                    jmsDest.session = null;
+                    jmsDest.producer = null;
+                    jmsDest.consumer = null;
                 }
-                if (jmsDest.session != null) {
-                    jmsDest.session.close();
-                    logger.debug("Closed session for " + destName);
-                }
-
-                jmsDest.destination = null;
-                jmsDest.session = null;
-                jmsDest.producer = null;
-                jmsDest.consumer = null;
 
                 // Remove the JMS client entry
                 //
@@ -660,6 +720,17 @@ public class JMSManager {
 
     public void close() throws MessagingException {
         try {
+            synchronized (this) {
+                if (commitTimer != null) {
+                    commitTimer.cancel();
+                    commitTimer = null;
+                }
+            }
+            for (JMSDestination jmsDest : jmsDestinations.values()) {
+                commitWaiting(jmsDest);
+            }
+            destinationSenders.clear();
+
             // Closing a connection also closes all sessions, producers,
             // and consumers established over that connection
             connection.stop();
@@ -840,12 +911,120 @@ public class JMSManager {
 
     protected void setupProducer(JMSDestination jmsDest)
             throws MessagingException {
-        if (jmsDest.producer != null) return;
+        synchronized (jmsDest) {
+            if (jmsDest.producer != null) return;
+            try {
+                jmsDest.producer =
+                        jmsDest.session.createProducer(jmsDest.destination);
+            } catch (JMSException e) {
+                throw new MessagingException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Gets the session and producer kept for sending to the given
+     * Destination, creating them if there are none.
+     */
+    protected JMSDestination getDestinationSender(Destination dest)
+            throws MessagingException {
+        JMSDestination sender = destinationSenders.get(dest);
+        if (sender == null) {
+            synchronized (destinationSenders) {
+                sender = destinationSenders.get(dest);
+                if (sender == null) {
+                    try {
+                        Session s =
+                                connection.createSession(false,
+                                                         Session.AUTO_ACKNOWLEDGE);
+                        sender =
+                                new JMSDestination(dest,
+                                                   s,
+                                                   s.createProducer(dest),
+                                                   null);
+                    } catch (JMSException e) {
+                        throw new MessagingException(e.getMessage(), e);
+                    }
+                    destinationSenders.put(dest, sender);
+                }
+            }
+        }
+        return sender;
+    }
+
+    /**
+     * Sends the message with the destination's producer. A session may only
+     * be used by one thread at a time, so sends to the same destination are
+     * made one after the other. On a transacted session, the batch is
+     * committed if it is full.
+     */
+    protected void send(JMSDestination jmsDest, Message msg)
+            throws JMSException {
+        synchronized (jmsDest) {
+            jmsDest.producer.send(msg);
+            if (jmsDest.session.getTransacted()) {
+                jmsDest.uncommitted++;
+                if (jmsDest.uncommitted >= jmsDest.commitBatchSize) {
+                    commit(jmsDest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Commits the messages sent to a transacted destination, if any are
+     * waiting.
+     */
+    protected void commitWaiting(JMSDestination jmsDest) throws JMSException {
+        synchronized (jmsDest) {
+            if (jmsDest.uncommitted > 0) {
+                commit(jmsDest);
+            }
+        }
+    }
+
+    // Called while holding the lock on jmsDest
+    private void commit(JMSDestination jmsDest) throws JMSException {
+        // If the commit fails, the batch is lost either way
+        jmsDest.uncommitted = 0;
+        jmsDest.session.commit();
+        if (logger.isDebugEnabled()) {
+            logger.debug("commit() - committed messages sent to "
+                    + jmsDest.destination);
+        }
+    }
+
+    private synchronized void scheduleCommits(final JMSDestination jmsDest,
+                                              long commitInterval) {
+        if (commitTimer == null) {
+            commitTimer = new Timer("JMSManager commits", true);
+        }
+        commitTimer.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+                try {
+                    synchronized (jmsDest) {
+                        if (jmsDest.session == null) {
+                            // the destination has been stopped
+                            cancel();
+                            return;
+                        }
+                        commitWaiting(jmsDest);
+                    }
+                } catch (JMSException e) {
+                    logger.error("Unable to commit messages sent to "
+                            + jmsDest.destination, e);
+                }
+            }
+        }, commitInterval, commitInterval);
+    }
+
+    private void closeSession(JMSDestination jmsDest) {
         try {
-            jmsDest.producer =
-                    jmsDest.session.createProducer(jmsDest.destination);
+            jmsDest.session.close();
         } catch (JMSException e) {
-            throw new MessagingException(e.getMessage(), e);
+            logger.debug("Error closing session for " + jmsDest.destination, e);
         }
     }
 
@@ -985,6 +1164,12 @@ public class JMSManager {
 
         MessageConsumer consumer = null;
 
+        // For a transacted session, the number of messages sent per commit
+        int commitBatchSize = 1;
+
+        // Messages sent since the last commit, guarded by this object
+        int uncommitted = 0;
+
         public JMSDestination(Destination destination,
                               Session session,
                               MessageProducer producer,
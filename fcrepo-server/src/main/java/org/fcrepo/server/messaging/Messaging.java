@@ -37,6 +37,26 @@ public interface Messaging {
      */
     public void send(FedoraMethod method) throws MessagingException;
 
+    /**
+     * Create the message that {@link #send(FedoraMethod)} would send for the
+     * <code>FedoraMethod</code>, without sending it.
+     *
+     * @param method The method to represent.
+     * @return The message, or <code>null</code> if none would be sent.
+     * @throws MessagingException
+     */
+    public APIMMessage createMessage(FedoraMethod method)
+            throws MessagingException;
+
+    /**
+     * Send a message made by {@link #createMessage(FedoraMethod)}, or read
+     * back from its serialization, to the destination(s) for its method.
+     *
+     * @param message The message to send.
+     * @throws MessagingException
+     */
+    public void send(APIMMessage message) throws MessagingException;
+
     /**
      * Shutdown and/or close any resources and/or connections.
      *
@@ -70,16 +70,10 @@ public class MessagingImpl implements Messaging {
 
     public void send(String destName, FedoraMethod method, FedoraMessage message)
             throws MessagingException {
-        TextMessage jmsMessage = jmsMgr.createTextMessage(destName, message.toString());
-        try {
-            jmsMessage.setStringProperty("methodName", method.getName());
-            if(method.getPID() != null) {
-                jmsMessage.setStringProperty("pid", method.getPID().toString());
-            }
-        } catch(JMSException jmse) {
-            throw new MessagingException("Unable to set message properties.", jmse);
-        }
-        jmsMgr.send(destName, jmsMessage);
+        send(destName,
+             method.getName(),
+             method.getPID() == null ? null : method.getPID().toString(),
+             message);
     }
 
     /**
@@ -90,31 +84,63 @@ public class MessagingImpl implements Messaging {
      * {@inheritDoc}
      */
     public void send(FedoraMethod method) throws MessagingException {
-        if (Management.class == method.getMethod().getDeclaringClass()) {
-
-            APIMMessage message = new AtomAPIMMessage(method, fedoraBaseUrl, Server.VERSION, messageFormat);
+        APIMMessage message = createMessage(method);
+        if (message != null) {
+            send(message);
+        }
+    }
 
-            String methodName = method.getName();
-            if (methodName.startsWith("ingest")
-                    || methodName.startsWith("add")
-                    || methodName.startsWith("modify")
-                    || methodName.startsWith("purge")
-                    || methodName.startsWith("set")) {
-                for (String destName : mdMap.get(MessageType.apimUpdate.toString())) {
-                    send(destName, method, message);
-                }
-            } else {
-                for (String destName : mdMap.get(MessageType.apimAccess.toString())) {
-                    send(destName, method, message);
-                }
-            }
+    /**
+     * {@inheritDoc}
+     */
+    public APIMMessage createMessage(FedoraMethod method)
+            throws MessagingException {
+        if (Management.class == method.getMethod().getDeclaringClass()) {
+            return new AtomAPIMMessage(method, fedoraBaseUrl, Server.VERSION, messageFormat);
         } else {
             if (logger.isDebugEnabled()) {
                 logger.debug("Silently dropping non-Management method: " + method.getName());
             }
+            return null;
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void send(APIMMessage message) throws MessagingException {
+        String methodName = message.getMethodName();
+        List<String> destNames;
+        if (methodName.startsWith("ingest")
+                || methodName.startsWith("add")
+                || methodName.startsWith("modify")
+                || methodName.startsWith("purge")
+                || methodName.startsWith("set")) {
+            destNames = mdMap.get(MessageType.apimUpdate.toString());
+        } else {
+            destNames = mdMap.get(MessageType.apimAccess.toString());
+        }
+        for (String destName : destNames) {
+            send(destName, methodName, message.getPID(), message);
+        }
+    }
+
+    private void send(String destName,
+                      String methodName,
+                      String pid,
+                      FedoraMessage message) throws MessagingException {
+        TextMessage jmsMessage = jmsMgr.createTextMessage(destName, message.toString());
+        try {
+            jmsMessage.setStringProperty("methodName", methodName);
+            if(pid != null && pid.length() > 0) {
+                jmsMessage.setStringProperty("pid", pid);
+            }
+        } catch(JMSException jmse) {
+            throw new MessagingException("Unable to set message properties.", jmse);
+        }
+        jmsMgr.send(destName, jmsMessage);
+    }
+
     public void close() throws MessagingException {
         if (jmsMgr != null) {
             jmsMgr.close();
@@ -25,6 +25,7 @@ import org.fcrepo.server.errors.MessagingException;
 import org.fcrepo.server.errors.ModuleInitializationException;
 import org.fcrepo.server.errors.ModuleShutdownException;
 import org.fcrepo.server.messaging.JMSManager.DestinationType;
+import org.fcrepo.server.messaging.NotificationQueue.OverflowPolicy;
 import org.fcrepo.server.utilities.ServerUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +47,8 @@ public class MessagingModule
 
     private JMSManager jmsMgr;
 
+    private NotificationQueue notificationQueue;
+
     private static final String ACTIVEMQ_PREFIX =
             "org.apache.activemq.default.directory.prefix";
 
@@ -91,6 +94,8 @@ public class MessagingModule
                                                     getRole(),
                                                     e);
         }
+
+        notificationQueue = createNotificationQueue();
     }
 
     @Override
@@ -102,6 +107,10 @@ public class MessagingModule
     public void shutdownModule() throws ModuleShutdownException {
         if(enabled()) {
             try {
+                if (notificationQueue != null) {
+                    notificationQueue.shutdown();
+                    notificationQueue = null;
+                }
                 close();
             } catch (MessagingException e) {
                 throw new ModuleShutdownException(e.getMessage(), getRole(), e);
@@ -118,6 +127,23 @@ public class MessagingModule
         msg.send(method);
     }
 
+    public APIMMessage createMessage(FedoraMethod method)
+            throws MessagingException {
+        return msg.createMessage(method);
+    }
+
+    public void send(APIMMessage message) throws MessagingException {
+        msg.send(message);
+    }
+
+    /**
+     * @return the queue through which notifications of API-M calls are
+     *         sent, or <code>null</code> if messaging is disabled.
+     */
+    public NotificationQueue getNotificationQueue() {
+        return notificationQueue;
+    }
+
     private Properties getJNDISettings() {
 
         String contextFactory = getParameter(Context.INITIAL_CONTEXT_FACTORY);
@@ -192,6 +218,10 @@ public class MessagingModule
                         Boolean.parseBoolean(dsConfig
                                 .getParameter("transacted"));
                 String ackMode = dsConfig.getParameter("ackMode");
+                int commitBatchSize =
+                        getDatastoreNumber(dsConfig, "commitBatchSize", 1);
+                int commitInterval =
+                        getDatastoreNumber(dsConfig, "commitInterval", 0);
 
                 DestinationType destType = DestinationType.Topic;
                 if (type.equalsIgnoreCase("queue")) {
@@ -212,16 +242,20 @@ public class MessagingModule
                 try {
                     if (logger.isDebugEnabled()) {
                         logger.debug(String
-                                .format("createDestination(%s, %s, %s, %s)",
+                                .format("createDestination(%s, %s, %s, %s, %s, %s)",
                                         destName,
                                         destType,
                                         transacted,
-                                        destAckMode));
+                                        destAckMode,
+                                        commitBatchSize,
+                                        commitInterval));
                     }
                     jmsMgr.createDestination(destName,
                                              destType,
                                              transacted,
-                                             destAckMode);
+                                             destAckMode,
+                                             commitBatchSize,
+                                             commitInterval);
                 } catch (Exception e) {
                     throw new ModuleInitializationException(e.getMessage(),
                                                             getRole());
@@ -235,6 +269,70 @@ public class MessagingModule
         return mdMap;
     }
 
+    private NotificationQueue createNotificationQueue()
+            throws ModuleInitializationException {
+        int threads =
+                getPositiveNumber("notificationThreads",
+                                  NotificationQueue.DEFAULT_THREADS);
+        int queueSize =
+                getPositiveNumber("notificationQueueSize",
+                                  NotificationQueue.DEFAULT_QUEUE_SIZE);
+
+        OverflowPolicy overflowPolicy = OverflowPolicy.block;
+        String overflow = getParameter("notificationOverflow");
+        if (overflow != null && overflow.length() > 0) {
+            try {
+                overflowPolicy = OverflowPolicy.valueOf(overflow);
+            } catch (IllegalArgumentException e) {
+                throw new ModuleInitializationException("notificationOverflow "
+                        + "must be block, dropOldest or spill", getRole());
+            }
+        }
+
+        File spillDirectory = null;
+        if (overflowPolicy == OverflowPolicy.spill) {
+            String dir = getParameter("notificationSpillDirectory");
+            if (dir == null || dir.length() == 0) {
+                dir = "data/notifications";
+            }
+            spillDirectory = new File(dir);
+            if (!spillDirectory.isAbsolute()) {
+                spillDirectory = new File(Constants.FEDORA_HOME, dir);
+            }
+        }
+
+        try {
+            return new NotificationQueue(msg,
+                                         threads,
+                                         queueSize,
+                                         overflowPolicy,
+                                         spillDirectory);
+        } catch (MessagingException e) {
+            throw new ModuleInitializationException(e.getMessage(),
+                                                    getRole(),
+                                                    e);
+        }
+    }
+
+    private int getPositiveNumber(String name, int defaultValue)
+            throws ModuleInitializationException {
+        String value = getParameter(name);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        int number = 0;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        if (number < 1) {
+            throw new ModuleInitializationException(name
+                    + " must be a positive number", getRole());
+        }
+        return number;
+    }
+
     private DatastoreConfig getDatastore(String name)
             throws ModuleInitializationException {
         String value = getParameter(name);
@@ -250,6 +348,27 @@ public class MessagingModule
         return dsConfig;
     }
 
+    private int getDatastoreNumber(DatastoreConfig dsConfig,
+                                   String name,
+                                   int defaultValue)
+            throws ModuleInitializationException {
+        String value = dsConfig.getParameter(name);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        int number = -1;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        if (number < 0) {
+            throw new ModuleInitializationException(name
+                    + " must be a non-negative number", getRole());
+        }
+        return number;
+    }
+
     // Check to see if messaging is enabled
     private boolean enabled() {
         String enabled = getParameter("enabled");
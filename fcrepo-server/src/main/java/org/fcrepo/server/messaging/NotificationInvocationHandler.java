@@ -9,12 +9,9 @@ import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
 import org.fcrepo.common.Constants;
 import org.fcrepo.server.Server;
+import org.fcrepo.server.errors.MessagingException;
 import org.fcrepo.server.proxy.AbstractInvocationHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,10 +29,11 @@ public class NotificationInvocationHandler
     private static final Logger logger =
             LoggerFactory.getLogger(MessagingModule.class);
 
-    private Messaging messaging;
+    private NotificationQueue queue;
     private boolean attemptedToLoad = false;
 
-    private final ExecutorService exec = Executors.newCachedThreadPool();
+    // Whether the queue was created here, rather than by the MessagingModule
+    private boolean ownQueue = false;
 
     /**
      * Note: Setting of <code>messaging</code> does not take place in this
@@ -49,10 +47,13 @@ public class NotificationInvocationHandler
     /**
      * This constructor is intended for testing.
      * @param messaging
+     * @throws MessagingException
      */
-    public NotificationInvocationHandler(Messaging messaging) {
+    public NotificationInvocationHandler(Messaging messaging)
+            throws MessagingException {
         if (messaging != null) {
-            this.messaging = messaging;
+            queue = new NotificationQueue(messaging);
+            ownQueue = true;
             attemptedToLoad = true;
         }
     }
@@ -72,15 +73,22 @@ public class NotificationInvocationHandler
 
         if (attemptedToLoad == false) {
             Server server = Server.getInstance(new File(Constants.FEDORA_HOME), false);
-            messaging = (MessagingModule)server.getModule("org.fcrepo.server.messaging.Messaging");
+            MessagingModule messaging = (MessagingModule)server.getModule("org.fcrepo.server.messaging.Messaging");
             if (messaging == null) {
                 logger.warn("Unable to load MessagingModule.");
+            } else {
+                queue = messaging.getNotificationQueue();
             }
             attemptedToLoad = true;
         }
 
-        if (messaging != null && !exec.isShutdown()) {
-            exec.submit(new Notifier(method, args, returnValue));
+        if (queue != null) {
+            try {
+                queue.add(new FedoraMethod(method, args, returnValue));
+            } catch (MessagingException e) {
+                logger.error("Unable to queue notification of "
+                        + method.getName(), e);
+            }
         }
 
         return returnValue;
@@ -88,24 +96,8 @@ public class NotificationInvocationHandler
 
     @Override
     public void close() {
-        exec.shutdown();
-    }
-
-    class Notifier implements Callable<Void> {
-        private final Method method;
-        private final Object[] args;
-        private final Object returnValue;
-
-        public Notifier(Method method, Object[] args, Object returnValue) {
-            this.method = method;
-            this.args = args;
-            this.returnValue = returnValue;
-        }
-
-        public Void call() throws Exception {
-            FedoraMethod fm = new FedoraMethod(method, args, returnValue);
-            messaging.send(fm);
-            return null;
+        if (ownQueue) {
+            queue.shutdown();
         }
     }
 }
@@ -0,0 +1,709 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.messaging;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fcrepo.common.PID;
+import org.fcrepo.server.errors.MessagingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the notifications of API-M calls through {@link Messaging}, from a
+ * fixed number of sender threads.
+ * <ul>
+ * <li>Notifications are given to the senders by object, so those for any one
+ * object are sent by the same sender, in the order they were added.</li>
+ * <li>Each sender holds a limited number of waiting notifications. When it is
+ * full, the {@link OverflowPolicy} decides what happens to the next one: the
+ * caller waits for room, the oldest waiting notification is discarded, or the
+ * message is written to a spill log on disk and sent once the senders have
+ * caught up. While the spill log holds messages, all new ones are added to
+ * it, so that the order for each object is kept. A spill log left by an
+ * earlier run is sent when the queue starts.</li>
+ * </ul>
+ * The queue depth, the counts, and the time from adding a notification to
+ * sending it are available from the statistics methods, and are logged once a
+ * minute while notifications are being sent.
+ *
+ * @version $Id$
+ */
+public class NotificationQueue {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(NotificationQueue.class);
+
+    /** What to do with a notification when its sender is full. */
+    public static enum OverflowPolicy {
+        block, dropOldest, spill;
+    }
+
+    public static final int DEFAULT_THREADS = 4;
+
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    /** The name of the spill log, in the spill directory. */
+    public static final String SPILL_FILE_NAME = "notifications.log";
+
+    private static final long REPORT_INTERVAL = 60 * 1000;
+
+    /** How long shutdown waits for the waiting notifications to be sent. */
+    private static final long SHUTDOWN_WAIT = 30 * 1000;
+
+    /** The size of a spill log record, apart from the message. */
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    private final Messaging m_messaging;
+
+    private final OverflowPolicy m_overflowPolicy;
+
+    private final Sender[] m_senders;
+
+    private final File m_spillFile;
+
+    private final SpillReplayer m_spillReplayer;
+
+    private volatile boolean m_shutdown = false;
+
+    /** Guards the spill log and the values that describe it. */
+    private final Object m_spillLock = new Object();
+
+    /** True from the first message spilled until the log has been sent. */
+    private boolean m_spilling = false;
+
+    private DataOutputStream m_spillOut;
+
+    /** The length of the complete records in the spill log. */
+    private long m_spillWritten = 0;
+
+    /** How much of the spill log has been handed to the senders. */
+    private long m_spillRead = 0;
+
+    /** The number of messages in the spill log not yet handed over. */
+    private long m_spillWaiting = 0;
+
+    private final AtomicLong m_sent = new AtomicLong();
+
+    private final AtomicLong m_failed = new AtomicLong();
+
+    private final AtomicLong m_dropped = new AtomicLong();
+
+    private final AtomicLong m_spilled = new AtomicLong();
+
+    private final AtomicLong m_totalLatency = new AtomicLong();
+
+    private final AtomicLong m_maxLatency = new AtomicLong();
+
+    private final AtomicLong m_lastReportTime =
+            new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Creates a queue with the default number of threads and size, which
+     * blocks when it is full.
+     */
+    public NotificationQueue(Messaging messaging) throws MessagingException {
+        this(messaging,
+             DEFAULT_THREADS,
+             DEFAULT_QUEUE_SIZE,
+             OverflowPolicy.block,
+             null);
+    }
+
+    /**
+     * @param messaging where the notifications are sent.
+     * @param threads the number of sender threads.
+     * @param queueSize the number of notifications that may wait in memory,
+     *        shared evenly among the senders.
+     * @param overflowPolicy what to do when a sender is full.
+     * @param spillDirectory where the spill log is kept; required for the
+     *        spill policy, ignored otherwise.
+     * @throws MessagingException if the spill log can't be used.
+     */
+    public NotificationQueue(Messaging messaging,
+                             int threads,
+                             int queueSize,
+                             OverflowPolicy overflowPolicy,
+                             File spillDirectory)
+            throws MessagingException {
+        if (threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("threads and queueSize must "
+                    + "be at least 1");
+        }
+        m_messaging = messaging;
+        m_overflowPolicy = overflowPolicy;
+
+        if (overflowPolicy == OverflowPolicy.spill) {
+            if (spillDirectory == null) {
+                throw new MessagingException("A spill directory is required "
+                        + "for the spill overflow policy");
+            }
+            if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+                throw new MessagingException("Unable to create the spill "
+                        + "directory: " + spillDirectory.getPath());
+            }
+            m_spillFile = new File(spillDirectory, SPILL_FILE_NAME);
+            recoverSpillLog();
+        } else {
+            m_spillFile = null;
+        }
+
+        m_senders = new Sender[threads];
+        int capacity = Math.max(1, queueSize / threads);
+        for (int i = 0; i < threads; i++) {
+            m_senders[i] = new Sender(i, capacity);
+            m_senders[i].start();
+        }
+
+        if (m_spillFile != null) {
+            m_spillReplayer = new SpillReplayer();
+            m_spillReplayer.start();
+        } else {
+            m_spillReplayer = null;
+        }
+    }
+
+    /**
+     * Adds a notification of the method. Once the queue has been shut down,
+     * notifications are discarded.
+     *
+     * @throws MessagingException if the notification could not be queued or
+     *         spilled.
+     */
+    public void add(FedoraMethod method) throws MessagingException {
+        if (m_shutdown) {
+            logger.debug("Discarding notification of " + method.getName()
+                    + " after shutdown");
+            return;
+        }
+        Notification notification =
+                new Notification(method,
+                                 null,
+                                 getKey(method),
+                                 System.currentTimeMillis());
+
+        if (m_overflowPolicy == OverflowPolicy.spill) {
+            synchronized (m_spillLock) {
+                if (m_spilling) {
+                    spill(notification);
+                    return;
+                }
+            }
+        }
+
+        BlockingQueue<Notification> queue = getSender(notification.key).queue;
+        if (queue.offer(notification)) {
+            return;
+        }
+
+        switch (m_overflowPolicy) {
+            case block:
+                try {
+                    queue.put(notification);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MessagingException("Interrupted while waiting "
+                            + "to queue notification of " + method.getName(), e);
+                }
+                break;
+            case dropOldest:
+                while (!queue.offer(notification)) {
+                    Notification dropped = queue.poll();
+                    if (dropped != null) {
+                        m_dropped.incrementAndGet();
+                        logger.warn("Notification queue full, dropped "
+                                + "notification of " + dropped);
+                    }
+                }
+                break;
+            case spill:
+                synchronized (m_spillLock) {
+                    if (!m_spilling) {
+                        logger.warn("Notification queue full, spilling "
+                                + "notifications to " + m_spillFile.getPath());
+                    }
+                    m_spilling = true;
+                    spill(notification);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Stops taking notifications, and waits a while for those waiting in
+     * memory to be sent. Messages in the spill log that have not been sent
+     * are kept there for the next start.
+     */
+    public void shutdown() {
+        m_shutdown = true;
+        if (m_spillReplayer != null) {
+            m_spillReplayer.interrupt();
+            try {
+                m_spillReplayer.join(SHUTDOWN_WAIT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + SHUTDOWN_WAIT;
+        for (Sender sender : m_senders) {
+            try {
+                sender.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int unsent = 0;
+        for (Sender sender : m_senders) {
+            unsent += sender.queue.size();
+            sender.interrupt();
+        }
+        if (unsent > 0) {
+            logger.warn("Notification queue shut down with " + unsent
+                    + " notifications not sent");
+        }
+
+        if (m_spillFile != null) {
+            synchronized (m_spillLock) {
+                closeSpillLog();
+            }
+        }
+        report();
+    }
+
+    // /////////////////////////////////////////////////////////////////////////
+    // Statistics
+
+    /**
+     * @return the number of notifications waiting to be sent, in memory and
+     *         in the spill log.
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (Sender sender : m_senders) {
+            depth += sender.queue.size();
+        }
+        synchronized (m_spillLock) {
+            depth += m_spillWaiting;
+        }
+        return depth;
+    }
+
+    public long getSentCount() {
+        return m_sent.get();
+    }
+
+    public long getFailedCount() {
+        return m_failed.get();
+    }
+
+    public long getDroppedCount() {
+        return m_dropped.get();
+    }
+
+    public long getSpilledCount() {
+        return m_spilled.get();
+    }
+
+    /**
+     * @return the average time, in milliseconds, from adding a notification
+     *         to sending it.
+     */
+    public long getAverageLatency() {
+        long sent = m_sent.get();
+        return sent == 0 ? 0 : m_totalLatency.get() / sent;
+    }
+
+    /**
+     * @return the longest time, in milliseconds, from adding a notification
+     *         to sending it.
+     */
+    public long getMaxLatency() {
+        return m_maxLatency.get();
+    }
+
+    // /////////////////////////////////////////////////////////////////////////
+    // Internal worker methods
+
+    private Sender getSender(String key) {
+        if (key == null) {
+            return m_senders[0];
+        }
+        return m_senders[(key.hashCode() & Integer.MAX_VALUE)
+                % m_senders.length];
+    }
+
+    /**
+     * The object the method works on, or null if there is none.
+     */
+    private static String getKey(FedoraMethod method) {
+        try {
+            PID pid = method.getPID();
+            return pid == null ? null : pid.toString();
+        } catch (RuntimeException e) {
+            // the method has no pid parameter
+            return null;
+        }
+    }
+
+    private void send(Notification notification) {
+        try {
+            if (notification.message != null) {
+                m_messaging.send(notification.message);
+            } else {
+                m_messaging.send(notification.method);
+            }
+        } catch (Throwable e) {
+            m_failed.incrementAndGet();
+            logger.error("Unable to send notification of " + notification, e);
+            return;
+        }
+        long latency = System.currentTimeMillis() - notification.queuedTime;
+        m_sent.incrementAndGet();
+        m_totalLatency.addAndGet(latency);
+        long max = m_maxLatency.get();
+        while (latency > max && !m_maxLatency.compareAndSet(max, latency)) {
+            max = m_maxLatency.get();
+        }
+
+        long last = m_lastReportTime.get();
+        long now = System.currentTimeMillis();
+        if (now - last >= REPORT_INTERVAL
+                && m_lastReportTime.compareAndSet(last, now)) {
+            report();
+        }
+    }
+
+    private void report() {
+        if (logger.isInfoEnabled()) {
+            logger.info("Notifications: " + getSentCount() + " sent, "
+                    + getFailedCount() + " failed, " + getDroppedCount()
+                    + " dropped, " + getSpilledCount() + " spilled, "
+                    + getQueueDepth() + " waiting; latency "
+                    + getAverageLatency() + " ms average, "
+                    + getMaxLatency() + " ms maximum");
+        }
+    }
+
+    /**
+     * Writes the notification's message to the end of the spill log. Called
+     * while holding the spill lock.
+     */
+    private void spill(Notification notification) throws MessagingException {
+        APIMMessage message = m_messaging.createMessage(notification.method);
+        if (message == null) {
+            return;
+        }
+        try {
+            byte[] text = message.toString().getBytes("UTF-8");
+            if (m_spillOut == null) {
+                m_spillOut =
+                        new DataOutputStream(new FileOutputStream(m_spillFile,
+                                                                  true));
+            }
+            m_spillOut.writeLong(notification.queuedTime);
+            m_spillOut.writeInt(text.length);
+            m_spillOut.write(text);
+            m_spillOut.flush();
+            m_spillWritten += RECORD_HEADER_SIZE + text.length;
+        } catch (IOException e) {
+            throw new MessagingException("Unable to spill notification of "
+                    + notification + " to " + m_spillFile.getPath(), e);
+        }
+        m_spillWaiting++;
+        m_spilled.incrementAndGet();
+        m_spillLock.notifyAll();
+    }
+
+    /**
+     * Finds the complete records in a spill log left by an earlier run, and
+     * cuts off any partial record at the end.
+     */
+    private void recoverSpillLog() throws MessagingException {
+        if (!m_spillFile.exists()) {
+            return;
+        }
+        long length = 0;
+        long records = 0;
+        try {
+            DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(new FileInputStream(m_spillFile)));
+            try {
+                while (true) {
+                    in.readLong();
+                    int size = in.readInt();
+                    if (in.skipBytes(size) < size) {
+                        break;
+                    }
+                    length += RECORD_HEADER_SIZE + size;
+                    records++;
+                }
+            } catch (EOFException e) {
+                // the end of the complete records
+            } finally {
+                in.close();
+            }
+            if (length < m_spillFile.length()) {
+                logger.warn("Discarding a partial record at the end of "
+                        + m_spillFile.getPath());
+                copyRange(m_spillFile, 0, length);
+            }
+        } catch (IOException e) {
+            throw new MessagingException("Unable to read the spill log "
+                    + m_spillFile.getPath(), e);
+        }
+        if (records == 0) {
+            m_spillFile.delete();
+            return;
+        }
+        logger.info("Sending " + records + " notifications left in "
+                + m_spillFile.getPath());
+        m_spilling = true;
+        m_spillWritten = length;
+        m_spillWaiting = records;
+    }
+
+    /**
+     * Closes the spill log; what has not been handed to the senders is kept
+     * for the next start. Called while holding the spill lock.
+     */
+    private void closeSpillLog() {
+        try {
+            if (m_spillOut != null) {
+                m_spillOut.close();
+                m_spillOut = null;
+            }
+            if (m_spillRead > 0 && m_spillRead < m_spillWritten) {
+                copyRange(m_spillFile, m_spillRead, m_spillWritten);
+            } else if (m_spillRead >= m_spillWritten) {
+                m_spillFile.delete();
+            }
+        } catch (IOException e) {
+            logger.error("Unable to keep the notifications in "
+                    + m_spillFile.getPath(), e);
+        }
+        m_spillWritten -= m_spillRead;
+        m_spillRead = 0;
+    }
+
+    /**
+     * Replaces the file with the given range of its contents.
+     */
+    private static void copyRange(File file, long start, long end)
+            throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        InputStream in = new FileInputStream(file);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            long skipped = 0;
+            while (skipped < start) {
+                long n = in.skip(start - skipped);
+                if (n <= 0) {
+                    throw new EOFException("Unable to skip to " + start
+                            + " in " + file.getPath());
+                }
+                skipped += n;
+            }
+            byte[] buffer = new byte[8192];
+            long remaining = end - start;
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of " + file.getPath());
+                }
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+        if (!file.delete() || !temp.renameTo(file)) {
+            throw new IOException("Unable to replace " + file.getPath());
+        }
+    }
+
+    /**
+     * A notification waiting to be sent: the method, or the message read
+     * back from the spill log.
+     */
+    private static class Notification {
+
+        final FedoraMethod method;
+
+        final APIMMessage message;
+
+        final String key;
+
+        final long queuedTime;
+
+        Notification(FedoraMethod method,
+                     APIMMessage message,
+                     String key,
+                     long queuedTime) {
+            this.method = method;
+            this.message = message;
+            this.key = key;
+            this.queuedTime = queuedTime;
+        }
+
+        @Override
+        public String toString() {
+            String name =
+                    method != null ? method.getName() : message.getMethodName();
+            return key == null ? name : name + " (" + key + ")";
+        }
+    }
+
+    /**
+     * Sends the notifications for its share of the objects, in the order
+     * they were queued, until the queue is shut down and it has none left.
+     */
+    private class Sender
+            extends Thread {
+
+        final BlockingQueue<Notification> queue;
+
+        Sender(int index, int capacity) {
+            super("NotificationSender-" + index);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<Notification>(capacity);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Notification notification;
+                try {
+                    notification = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (notification != null) {
+                    send(notification);
+                } else if (m_shutdown) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the spill log and hands its messages to the senders, waiting for
+     * room as needed. When the end of the log is reached, the log is removed
+     * and new notifications are queued in memory again.
+     */
+    private class SpillReplayer
+            extends Thread {
+
+        private DataInputStream in;
+
+        SpillReplayer() {
+            super("NotificationSpillReplayer");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    synchronized (m_spillLock) {
+                        while (m_spillRead == m_spillWritten) {
+                            if (m_spilling) {
+                                finishSpillLog();
+                            }
+                            m_spillLock.wait();
+                        }
+                    }
+                    // the records before m_spillWritten are complete
+                    if (in == null) {
+                        in =
+                                new DataInputStream(new BufferedInputStream(new FileInputStream(m_spillFile)));
+                    }
+                    long queuedTime = in.readLong();
+                    byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    APIMMessage message =
+                            new AtomAPIMMessage(new String(text, "UTF-8"));
+                    String key = message.getPID();
+                    if (key != null && key.length() == 0) {
+                        key = null;
+                    }
+                    Notification notification =
+                            new Notification(null, message, key, queuedTime);
+                    getSender(key).queue.put(notification);
+                    synchronized (m_spillLock) {
+                        m_spillRead += RECORD_HEADER_SIZE + text.length;
+                        m_spillWaiting--;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // shutting down
+            } catch (Exception e) {
+                logger.error("Unable to read the spill log "
+                        + m_spillFile.getPath()
+                        + "; the notifications in it will be sent after a "
+                        + "restart", e);
+            } finally {
+                closeInput();
+            }
+        }
+
+        /**
+         * Everything spilled has been handed over: remove the log, and
+         * let new notifications go to the senders again. Called while holding
+         * the spill lock.
+         */
+        private void finishSpillLog() {
+            closeInput();
+            try {
+                if (m_spillOut != null) {
+                    m_spillOut.close();
+                    m_spillOut = null;
+                }
+            } catch (IOException e) {
+                logger.warn("Error closing " + m_spillFile.getPath(), e);
+            }
+            if (!m_spillFile.delete()) {
+                // at least empty it, as it will be written from the start
+                try {
+                    new FileOutputStream(m_spillFile).close();
+                } catch (IOException e) {
+                    logger.error("Unable to empty " + m_spillFile.getPath(), e);
+                }
+            }
+            m_spillRead = 0;
+            m_spillWritten = 0;
+            m_spilling = false;
+            logger.info("All spilled notifications have been queued");
+        }
+
+        private void closeInput() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    logger.debug("Error closing " + m_spillFile.getPath(), e);
+                }
+                in = null;
+            }
+        }
+    }
+}
@@ -4,30 +4,39 @@
  */
 package org.fcrepo.server.rest;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.io.Writer;
 import java.net.URI;
 
+import java.nio.channels.FileChannel;
+
+import java.util.Date;
+import java.util.List;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import net.sf.saxon.FeatureKeys;
-
+import org.apache.commons.httpclient.util.DateParseException;
+import org.apache.commons.httpclient.util.DateUtil;
 import org.apache.commons.io.IOUtils;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.fcrepo.common.Constants;
@@ -68,6 +77,13 @@ public class BaseRestResource {
     public static final MediaType TEXT_HTML = new MediaType("text", "html");
     public static final MediaType TEXT_XML = new MediaType("text", "xml");
 
+    private static final int PARTIAL_CONTENT = 206;
+
+    private static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+    /** Compiled stylesheets, shared by all resources. */
+    private static final TemplatesCache templatesCache = new TemplatesCache();
+
     protected Server fedoraServer;
     protected Management apiMService;
     protected Access apiAService;
@@ -85,6 +101,9 @@ public class BaseRestResource {
     @javax.ws.rs.core.Context
     protected HttpHeaders headers;
 
+    @javax.ws.rs.core.Context
+    protected Request request;
+
     public BaseRestResource() {
         try {
             this.fedoraServer = Server.getInstance(new File(Constants.FEDORA_HOME), false);
@@ -107,20 +126,35 @@ public class BaseRestResource {
         return new DefaultSerializer(fedoraServerHost, context);
     }
 
-    protected void transform(String xml, String xslt, Writer out)
-    throws TransformerFactoryConfigurationError,
-           TransformerConfigurationException,
-           TransformerException {
+    /**
+     * Transforms the XML with a stylesheet, encoding the result as UTF-8 for
+     * the response. The result is produced before the response starts, so a
+     * failing transformation is reported as an error rather than as a
+     * truncated page; these pages are small.
+     *
+     * @param xslt
+     *        the path of the stylesheet, relative to the server home
+     * @throws TransformerException
+     *         if the stylesheet can't be compiled or the transformation
+     *         fails.
+     */
+    protected byte[] transform(String xml, String xslt)
+    throws TransformerException {
         File xslFile = new File(fedoraServer.getHomeDir(), xslt);
-        TransformerFactory factory = TransformerFactory.newInstance();
-        if (factory.getClass().getName().equals("net.sf.saxon.TransformerFactoryImpl")) {
-            factory.setAttribute(FeatureKeys.VERSION_WARNING, Boolean.FALSE);
-        }
-        Templates template = factory.newTemplates(new StreamSource(xslFile));
+        Templates template = templatesCache.getTemplates(xslFile);
         Transformer transformer = template.newTransformer();
         String appContext = getContext().getEnvironmentValue(Constants.FEDORA_APP_CONTEXT_NAME);
         transformer.setParameter("fedora", appContext);
-        transformer.transform(new StreamSource(new StringReader(xml)), new StreamResult(out));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        try {
+            Writer writer = new OutputStreamWriter(out, DEFAULT_ENC);
+            transformer.transform(new StreamSource(new StringReader(xml)),
+                                  new StreamResult(writer));
+            writer.flush();
+        } catch (IOException e) {
+            throw new TransformerException(e);
+        }
+        return out.toByteArray();
     }
 
     protected Response buildResponse(MIMETypedStream result) throws Exception {
@@ -128,7 +162,82 @@ public class BaseRestResource {
             URI location = URI.create(IOUtils.toString(result.getStream()));
             return Response.temporaryRedirect(location).build();
         } else {
-            ResponseBuilder builder = Response.ok();
+            Date lastModified = result.getLastModified();
+            if (lastModified != null) {
+                // HTTP dates have no milliseconds
+                lastModified =
+                        new Date(lastModified.getTime() / 1000 * 1000);
+            }
+            EntityTag entityTag =
+                    result.getEntityTag() == null ? null : new EntityTag(result
+                            .getEntityTag());
+
+            ResponseBuilder builder = null;
+            if (request != null && entityTag != null) {
+                builder =
+                        lastModified == null ? request
+                                .evaluatePreconditions(entityTag) : request
+                                .evaluatePreconditions(lastModified, entityTag);
+            }
+            if (builder != null) {
+                // not modified, or a precondition failed
+                result.close();
+                return builder.build();
+            }
+
+            long size = result.getSize();
+            InputStream content = result.getStream();
+            FileChannel channel = null;
+            long offset = 0;
+            if (content instanceof FileInputStream) {
+                // managed content kept in a file is sent from the file
+                channel = ((FileInputStream) content).getChannel();
+                offset = channel.position();
+                if (size < 0) {
+                    size = channel.size() - offset;
+                }
+            }
+            Object entity = content;
+            ByteRange range = null;
+            if (size >= 0 && isRangeCurrent(entityTag, lastModified)) {
+                range = ByteRange.parse(getHeader("Range"), size);
+            }
+            if (range == null) {
+                builder = Response.ok();
+                if (size >= 0) {
+                    builder.header("Content-Length", size);
+                }
+                if (channel != null) {
+                    entity = new FileChannelOutput(channel, offset, size);
+                }
+            } else if (!range.isSatisfiable(size)) {
+                content.close();
+                return Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header("Content-Range",
+                                ByteRange.getUnsatisfiedContentRange(size))
+                        .build();
+            } else {
+                if (channel != null) {
+                    entity =
+                            new FileChannelOutput(channel,
+                                                  offset + range.first,
+                                                  range.getLength());
+                } else {
+                    entity = range.getStream(content);
+                }
+                builder = Response.status(PARTIAL_CONTENT);
+                builder.header("Content-Range", range.getContentRange(size));
+                builder.header("Content-Length", range.getLength());
+            }
+            if (size >= 0) {
+                builder.header("Accept-Ranges", "bytes");
+            }
+            if (entityTag != null) {
+                builder.tag(entityTag);
+            }
+            if (lastModified != null) {
+                builder.lastModified(lastModified);
+            }
 
             if (result.header != null) {
                 for (Property header : result.header) {
@@ -143,11 +252,44 @@ public class BaseRestResource {
             if (!result.MIMEType.equals("")){
                 builder.type(result.MIMEType);
             }
-            builder.entity(result.getStream());
+            builder.entity(entity);
             return builder.build();
         }
     }
 
+    /**
+     * Tells whether a range may be sent, given the If-Range header, which
+     * asks for the whole content if it has changed.
+     */
+    private boolean isRangeCurrent(EntityTag entityTag, Date lastModified) {
+        String ifRange = getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("W/")) {
+            // weak tags can't vouch for a range
+            return false;
+        }
+        if (ifRange.startsWith("\"")) {
+            return entityTag != null
+                    && EntityTag.valueOf(ifRange).equals(entityTag);
+        }
+        try {
+            return lastModified != null
+                    && DateUtil.parseDate(ifRange).equals(lastModified);
+        } catch (DateParseException e) {
+            return false;
+        }
+    }
+
+    private String getHeader(String name) {
+        if (headers == null) {
+            return null;
+        }
+        List<String> values = headers.getRequestHeader(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
     protected Response handleException(Exception ex) {
         if (ex instanceof ObjectNotInLowlevelStorageException ||
             ex instanceof DatastreamNotFoundException) {
@@ -0,0 +1,185 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.rest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A single range of bytes requested with an HTTP <code>Range</code> header.
+ *
+ * <p>Only requests for one range are honored. Requests for several ranges,
+ * or in units other than bytes, are answered with the whole content, as
+ * HTTP allows.
+ *
+ * @version $Id$
+ */
+class ByteRange {
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    /** The offset of the first byte. */
+    final long first;
+
+    /** The offset of the last byte, inclusive. */
+    final long last;
+
+    private ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Parses a Range header.
+     *
+     * @param header
+     *        the header value, or null if there is none
+     * @param size
+     *        the size of the content
+     * @return the range, or null if the whole content should be sent. The
+     *         range is not {@link #isSatisfiable(long) satisfiable} if it lies
+     *         beyond the end of the content.
+     */
+    static ByteRange parse(String header, long size) {
+        if (header == null || size < 0) {
+            return null;
+        }
+        String spec = header.trim();
+        if (!spec.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        spec = spec.substring(BYTES_UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        try {
+            String start = spec.substring(0, dash).trim();
+            String end = spec.substring(dash + 1).trim();
+            if (start.length() == 0) {
+                // the last n bytes
+                long suffix = Long.parseLong(end);
+                if (suffix <= 0) {
+                    return new ByteRange(size, size);
+                }
+                return new ByteRange(Math.max(0, size - suffix), size - 1);
+            }
+            long first = Long.parseLong(start);
+            long last = end.length() == 0 ? Long.MAX_VALUE : Long.parseLong(end);
+            if (first < 0 || last < first) {
+                return null;
+            }
+            return new ByteRange(first, Math.min(last, size - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    boolean isSatisfiable(long size) {
+        return first < size && first <= last;
+    }
+
+    long getLength() {
+        return last - first + 1;
+    }
+
+    /**
+     * @return the value of the Content-Range header for the range.
+     */
+    String getContentRange(long size) {
+        return "bytes " + first + "-" + last + "/" + size;
+    }
+
+    /**
+     * @return the value of the Content-Range header when no range can be
+     *         sent.
+     */
+    static String getUnsatisfiedContentRange(long size) {
+        return "bytes */" + size;
+    }
+
+    /**
+     * Gets the bytes of the range from a stream of the whole content.
+     *
+     * <p>The stream is skipped to the start of the range. Datastream content
+     * from file-backed low-level storage is read through a FileInputStream,
+     * for which skipping is a seek, so the bytes before the range are not
+     * read.
+     *
+     * @throws IOException
+     *         if the stream ends before the range starts.
+     */
+    InputStream getStream(InputStream content) throws IOException {
+        long remaining = first;
+        while (remaining > 0) {
+            long skipped = content.skip(remaining);
+            if (skipped <= 0) {
+                if (content.read() < 0) {
+                    throw new IOException("Content ended before byte "
+                            + first);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        return new LimitedInputStream(content, getLength());
+    }
+
+    /**
+     * Reads no more than a given number of bytes.
+     */
+    private static class LimitedInputStream
+            extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
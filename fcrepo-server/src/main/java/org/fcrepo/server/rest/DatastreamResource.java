@@ -5,7 +5,6 @@
 
 package org.fcrepo.server.rest;
 
-import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -96,9 +95,8 @@ public class DatastreamResource
                                                             dsDefs);
 
             if (TEXT_HTML.isCompatible(mime)) {
-                CharArrayWriter writer = new CharArrayWriter();
-                transform(output, "access/listDatastreams.xslt", writer);
-                output = writer.toString();
+                return Response.ok(transform(output, "access/listDatastreams.xslt"), mime)
+                        .build();
             }
 
             return Response.ok(output, mime).build();
@@ -151,9 +149,8 @@ public class DatastreamResource
             MediaType mime = RestHelper.getContentType(format);
 
             if (TEXT_HTML.isCompatible(mime)) {
-                CharArrayWriter writer = new CharArrayWriter();
-                transform(xml, "management/viewDatastreamProfile.xslt", writer);
-                xml = writer.toString();
+                return Response.ok(transform(xml, "management/viewDatastreamProfile.xslt"), mime)
+                        .build();
             }
 
             return Response.ok(xml, mime).build();
@@ -204,9 +201,8 @@ public class DatastreamResource
             MediaType mime = RestHelper.getContentType(format);
 
             if (TEXT_HTML.isCompatible(mime)) {
-                CharArrayWriter writer = new CharArrayWriter();
-                transform(xml, "management/viewDatastreamHistory.xslt", writer);
-                xml = writer.toString();
+                return Response.ok(transform(xml, "management/viewDatastreamHistory.xslt"), mime)
+                        .build();
             }
 
             return Response.ok(xml, mime).build();
@@ -20,7 +20,6 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.ByteArrayInputStream;
-import java.io.CharArrayWriter;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
@@ -125,9 +124,8 @@ public class FedoraObjectResource extends BaseRestResource {
             MediaType mime = RestHelper.getContentType(format);
 
             if (TEXT_HTML.isCompatible(mime)) {
-                CharArrayWriter writer = new CharArrayWriter();
-                transform(xml, "access/viewObjectHistory.xslt", writer);
-                xml = writer.toString();
+                return Response.ok(transform(xml, "access/viewObjectHistory.xslt"), mime)
+                        .build();
             }
 
             return Response.ok(xml, mime).build();
@@ -187,9 +185,8 @@ public class FedoraObjectResource extends BaseRestResource {
             MediaType mime = RestHelper.getContentType(format);
 
             if (TEXT_HTML.isCompatible(mime)) {
-                CharArrayWriter writer = new CharArrayWriter();
-                transform(xml, "access/viewObjectProfile.xslt", writer);
-                xml = writer.toString();
+                return Response.ok(transform(xml, "access/viewObjectProfile.xslt"), mime)
+                        .build();
             }
 
             return Response.ok(xml, mime).build();
@@ -0,0 +1,93 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Sends a region of a file to the response straight from its
+ * {@link FileChannel}.
+ *
+ * <p>The bytes go from the file to the response without passing through
+ * the input streams of the low-level store or the entity provider's 8 KB
+ * copy loop, and a range is read at its offset without reading or skipping
+ * the bytes before it.
+ *
+ * <p>The servlet API only offers the response as an
+ * <code>OutputStream</code>, so the bytes must pass through a heap array on
+ * their way out. <code>FileChannel.transferTo</code> can't avoid that for
+ * such a target, and copies through small buffers twice as it does, so the
+ * region is read with positional reads into one large buffer instead.
+ * Mapping the file would save another copy, but would keep the file mapped
+ * until the mapping is garbage collected.
+ *
+ * <p>The channel is closed once the region has been written.
+ *
+ * @version $Id$
+ */
+class FileChannelOutput
+        implements StreamingOutput {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final FileChannel channel;
+
+    private final long position;
+
+    private final long count;
+
+    /**
+     * @param channel
+     *        the channel of the file
+     * @param position
+     *        the offset of the first byte to send
+     * @param count
+     *        the number of bytes to send
+     */
+    FileChannelOutput(FileChannel channel, long position, long count) {
+        this.channel = channel;
+        this.position = position;
+        this.count = count;
+    }
+
+    /**
+     * @throws IOException
+     *         if the file ends before the region does.
+     */
+    public void write(OutputStream out) throws IOException,
+            WebApplicationException {
+        // the response stream is not closed here; the container does that
+        try {
+            ByteBuffer buffer =
+                    ByteBuffer.allocate((int) Math.min(BUFFER_SIZE,
+                                                       Math.max(count, 1)));
+            long next = position;
+            long remaining = count;
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                int read = channel.read(buffer, next);
+                if (read <= 0) {
+                    throw new IOException("Content ended before byte "
+                            + next);
+                }
+                out.write(buffer.array(), 0, read);
+                next += read;
+                remaining -= read;
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -4,7 +4,6 @@
  */
 package org.fcrepo.server.rest;
 
-import java.io.CharArrayWriter;
 import java.util.Date;
 
 import javax.ws.rs.DefaultValue;
@@ -115,9 +114,8 @@ public class MethodResource extends BaseRestResource {
             MediaType mime = RestHelper.getContentType(format);
 
             if (TEXT_HTML.isCompatible(mime)) {
-                CharArrayWriter writer = new CharArrayWriter();
-                transform(xml, "access/listMethods.xslt", writer);
-                xml = writer.toString();
+                return Response.ok(transform(xml, "access/listMethods.xslt"), mime)
+                        .build();
             }
 
             return Response.ok(xml, mime).build();
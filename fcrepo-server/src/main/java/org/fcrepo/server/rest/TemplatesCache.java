@@ -0,0 +1,109 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.rest;
+
+import java.io.File;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import net.sf.saxon.FeatureKeys;
+
+/**
+ * Compiled stylesheets, by file.
+ *
+ * <p>Compiling a stylesheet costs far more than running it, so each one is
+ * compiled once and the compiled <code>Templates</code>, which are
+ * thread-safe, are shared. A stylesheet is compiled again when the
+ * modification time of its file changes, so edits take effect without a
+ * restart. Changes to stylesheets it includes or imports are not noticed.
+ *
+ * @version $Id$
+ */
+class TemplatesCache {
+
+    private final ConcurrentMap<String, Entry> entries =
+            new ConcurrentHashMap<String, Entry>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong compilations = new AtomicLong();
+
+    /**
+     * Gets the compiled form of a stylesheet, compiling it if it has not been
+     * compiled or its file has changed since.
+     *
+     * @throws TransformerConfigurationException
+     *         if the stylesheet can't be compiled.
+     */
+    Templates getTemplates(File xslFile)
+            throws TransformerConfigurationException {
+        String path = xslFile.getAbsolutePath();
+        long lastModified = xslFile.lastModified();
+        Entry entry = entries.get(path);
+        if (entry != null && entry.lastModified == lastModified) {
+            hits.incrementAndGet();
+            return entry.templates;
+        }
+        // threads that miss together each compile; the last one is kept
+        Templates templates = compile(xslFile);
+        entries.put(path, new Entry(templates, lastModified));
+        compilations.incrementAndGet();
+        return templates;
+    }
+
+    /**
+     * Discards all compiled stylesheets.
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getCompilationCount() {
+        return compilations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TemplatesCache (size=" + size() + ", hits=" + getHitCount()
+                + ", compilations=" + getCompilationCount() + ")";
+    }
+
+    private static Templates compile(File xslFile)
+            throws TransformerConfigurationException {
+        // factories aren't thread-safe, and are only needed to compile
+        TransformerFactory factory = TransformerFactory.newInstance();
+        if (factory.getClass().getName().equals("net.sf.saxon.TransformerFactoryImpl")) {
+            factory.setAttribute(FeatureKeys.VERSION_WARNING, Boolean.FALSE);
+        }
+        return factory.newTemplates(new StreamSource(xslFile));
+    }
+
+    private static class Entry {
+
+        final Templates templates;
+
+        final long lastModified;
+
+        Entry(Templates templates, long lastModified) {
+            this.templates = templates;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -4,10 +4,16 @@
  */
 package org.fcrepo.server.search;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 import java.text.ParseException;
 
@@ -20,27 +26,33 @@ import org.slf4j.LoggerFactory;
 
 import org.fcrepo.server.ReadOnlyContext;
 import org.fcrepo.server.Server;
+import org.fcrepo.server.errors.InvalidOperatorException;
 import org.fcrepo.server.errors.ObjectIntegrityException;
 import org.fcrepo.server.errors.QueryParseException;
 import org.fcrepo.server.errors.RepositoryConfigurationException;
 import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.errors.StorageDeviceException;
 import org.fcrepo.server.errors.StreamIOException;
+import org.fcrepo.server.errors.UnknownSessionTokenException;
 import org.fcrepo.server.errors.UnrecognizedFieldException;
 import org.fcrepo.server.storage.ConnectionPool;
 import org.fcrepo.server.storage.DOReader;
 import org.fcrepo.server.storage.RepositoryReader;
 import org.fcrepo.server.storage.types.Datastream;
 import org.fcrepo.server.utilities.DateUtility;
-import org.fcrepo.server.utilities.MD5Utility;
+import org.fcrepo.utilities.Base64;
 
 
 /**
  * A FieldSearchResults object returned as the result of a FieldSearchSQLImpl
  * search.
  * <p>
- * A FieldSearchResultSQLImpl is intended to be re-used in cases where the
- * results of a query require more than one call to the server.
+ * Each chunk of results is obtained with its own query, and no database
+ * resources are held between chunks.  Results are ordered by PID, and when
+ * more remain, the session token encodes the query along with the last PID
+ * returned, so the next chunk can be found with a keyset query (pid &gt; last
+ * PID) by this or any other server sharing the database.  See
+ * {@link #resume}.
  * </p>
  *
  * @author Chris Wilper
@@ -51,6 +63,9 @@ public class FieldSearchResultSQLImpl
     private static final Logger logger =
             LoggerFactory.getLogger(FieldSearchResultSQLImpl.class);
 
+    /** Version of the session token format. */
+    private static final int TOKEN_VERSION = 1;
+
     /* fields supporting public accessors */
     private ArrayList m_objectFields;
 
@@ -62,11 +77,7 @@ public class FieldSearchResultSQLImpl
 
     private Date m_expirationDate;
 
-    private String m_nextPID;
-
     /* invariants */
-    private final Connection m_conn;
-
     private final ConnectionPool m_cPool;
 
     private final RepositoryReader m_repoReader;
@@ -77,27 +88,21 @@ public class FieldSearchResultSQLImpl
 
     private final int m_maxSeconds;
 
-    private long m_startMillis;
+    private final FieldSearchQuery m_query;
 
-    /* internal state */
-    private Statement m_statement;
+    private final String m_whereClause;
 
-    private ResultSet m_resultSet;
+    /* internal state */
 
-    private long m_nextCursor = 0;
+    // the last PID of the previous chunk, or null for the first chunk
+    private String m_lastPID;
 
-    private boolean m_expired;
+    private long m_nextCursor;
 
     /**
      * Construct a FieldSearchResultSQLImpl object.
      * <p />
-     * Upon construction, a connection is obtained from the connectionPool, and
-     * the query is executed. (The connection will be returned to the pool only
-     * after the last result has been obtained from the ResultSet, the session
-     * is expired, or some non-recoverable error has occurred)
-     * <p />
-     * Once the ResultSet is obtained, one result is requested of it (and
-     * remembered for use in step()); then the call returns.
+     * The query is parsed, but not executed until step() is called.
      *
      * @param cPool
      *        the connectionPool
@@ -118,69 +123,214 @@ public class FieldSearchResultSQLImpl
                                        int maxResults,
                                        int maxSeconds,
                                        FieldSearchQuery query)
-            throws SQLException, QueryParseException {
+            throws QueryParseException {
+        this(cPool, repoReader, resultFields, maxResults, maxSeconds, query,
+             null, 0);
+    }
+
+    private FieldSearchResultSQLImpl(ConnectionPool cPool,
+                                     RepositoryReader repoReader,
+                                     String[] resultFields,
+                                     int maxResults,
+                                     int maxSeconds,
+                                     FieldSearchQuery query,
+                                     String lastPID,
+                                     long nextCursor)
+            throws QueryParseException {
         m_cPool = cPool;
         m_repoReader = repoReader;
         m_resultFields = resultFields;
         m_maxResults = maxResults;
         m_maxSeconds = maxSeconds;
-        m_conn = m_cPool.getReadOnlyConnection();
-        boolean success = false;
+        m_query = query;
+        m_lastPID = lastPID;
+        m_nextCursor = nextCursor;
+        if (query.getType() == FieldSearchQuery.TERMS_TYPE) {
+            m_whereClause = getWhereClause(query.getTerms());
+        } else {
+            m_whereClause = getWhereClause(query.getConditions());
+        }
+    }
+
+    /**
+     * Get a FieldSearchResultSQLImpl that will continue the search a session
+     * token was issued for.
+     *
+     * @param maxResults
+     *        the server limit on results at a time; applied again in case
+     *        the token has been altered
+     * @param token
+     *        a token from getToken()
+     * @throws UnknownSessionTokenException
+     *         if the token is malformed or expired
+     */
+    protected static FieldSearchResultSQLImpl resume(ConnectionPool cPool,
+                                                     RepositoryReader repoReader,
+                                                     int maxResults,
+                                                     int maxSeconds,
+                                                     String token)
+            throws UnknownSessionTokenException {
         try {
-            m_statement = m_conn.createStatement();
-            m_resultSet =
-                    m_statement
-                            .executeQuery(logAndGetQueryText(query,
-                                                             m_resultFields)); //2004.05.02 wdn5e
-            success = true;
-        } finally {
-            if (!success) {
-                try {
-                    if (m_resultSet != null) {
-                        m_resultSet.close();
-                    }
-                    if (m_statement != null) {
-                        m_statement.close();
-                    }
-                    if (m_conn != null) {
-                        m_cPool.free(m_conn);
-                    }
-                } catch (SQLException e) {
-                    logger.warn("SQL error during failed query cleanup", e);
-                } finally {
-                    m_resultSet = null;
-                    m_statement = null;
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(decodeToken(token)));
+            if (in.readByte() != TOKEN_VERSION) {
+                throw new UnknownSessionTokenException("Session token is "
+                        + "not valid.");
+            }
+            if (in.readLong() < System.currentTimeMillis()) {
+                throw new UnknownSessionTokenException("Session is expired "
+                        + "or never existed.");
+            }
+            long nextCursor = in.readLong();
+            int max = Math.min(maxResults, in.readInt());
+            String lastPID = in.readUTF();
+            String[] resultFields = new String[in.readInt()];
+            for (int i = 0; i < resultFields.length; i++) {
+                resultFields[i] = in.readUTF();
+            }
+            FieldSearchQuery query;
+            if (in.readInt() == FieldSearchQuery.TERMS_TYPE) {
+                query = new FieldSearchQuery(in.readUTF());
+            } else {
+                List<Condition> conditions = new ArrayList<Condition>();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    conditions.add(new Condition(in.readUTF(), in.readUTF(), in
+                            .readUTF()));
                 }
+                query = new FieldSearchQuery(conditions);
+            }
+            if (in.read() != -1 || max < 1) {
+                throw new UnknownSessionTokenException("Session token is "
+                        + "not valid.");
             }
+            return new FieldSearchResultSQLImpl(cPool, repoReader,
+                    resultFields, max, maxSeconds, query, lastPID, nextCursor);
+        } catch (IOException e) {
+            throw new UnknownSessionTokenException("Session token is "
+                    + "not valid.");
+        } catch (IllegalArgumentException e) {
+            throw new UnknownSessionTokenException("Session token is "
+                    + "not valid.");
+        } catch (QueryParseException e) {
+            throw new UnknownSessionTokenException("Session token is "
+                    + "not valid.");
+        } catch (InvalidOperatorException e) {
+            throw new UnknownSessionTokenException("Session token is "
+                    + "not valid.");
         }
     }
 
-    //2004.05.02 wdn5e -- sort on selected fields
-    private String logAndGetQueryText(FieldSearchQuery query,
-                                      String[] resultFields) //2004.05.02 wdn5e
-            throws SQLException, QueryParseException {
-        StringBuffer queryText = new StringBuffer("SELECT");
-        if (query.getType() == FieldSearchQuery.TERMS_TYPE) {
-            queryText.append(" doFields.pid FROM doFields"
-                    + getWhereClause(query.getTerms()));
-        } else {
-            StringBuffer resultFieldsString = new StringBuffer();
-            if (resultFields.length > 0) {
-                String delimiter = " ";
-                for (String element : resultFields) {
-                    String dbColumn = "doFields." + dcFixup(element);
-                    resultFieldsString.append(delimiter + dbColumn);
-                    delimiter = ", ";
+    /**
+     * Get the session token that lets the search continue after the given
+     * PID.  The token is the base64 (using - and _ in place of + and /, and
+     * without padding, so it can be used as is in URLs) of the token
+     * version, expiration time, cursor, maxResults, last PID, resultFields
+     * and query.
+     */
+    String getToken(String lastPID, long nextCursor, Date expirationDate) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(TOKEN_VERSION);
+            out.writeLong(expirationDate.getTime());
+            out.writeLong(nextCursor);
+            out.writeInt(m_maxResults);
+            out.writeUTF(lastPID);
+            out.writeInt(m_resultFields.length);
+            for (String field : m_resultFields) {
+                out.writeUTF(field);
+            }
+            out.writeInt(m_query.getType());
+            if (m_query.getType() == FieldSearchQuery.TERMS_TYPE) {
+                out.writeUTF(m_query.getTerms());
+            } else {
+                out.writeInt(m_query.getConditions().size());
+                for (Condition cond : m_query.getConditions()) {
+                    out.writeUTF(cond.getProperty());
+                    out.writeUTF(cond.getOperator().getAbbreviation());
+                    out.writeUTF(cond.getValue());
+                }
+            }
+            out.flush();
+            String token = Base64.encodeToString(bytes.toByteArray());
+            StringBuilder urlSafe = new StringBuilder(token.length());
+            for (int i = 0; i < token.length(); i++) {
+                char c = token.charAt(i);
+                if (c == '+') {
+                    urlSafe.append('-');
+                } else if (c == '/') {
+                    urlSafe.append('_');
+                } else if (c != '=' && !Character.isWhitespace(c)) {
+                    urlSafe.append(c);
                 }
             }
-            queryText.append(resultFieldsString);
-            queryText.append(" FROM doFields");
-            queryText.append(getWhereClause(query.getConditions()));
-            // disabled sorting: see bug 78
-            //            queryText.append(" ORDER BY");
-            //            queryText.append(resultFieldsString);
+            return urlSafe.toString();
+        } catch (IOException e) {
+            // can't happen writing to a ByteArrayOutputStream
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] decodeToken(String token) {
+        if (token.length() % 4 == 1) {
+            throw new IllegalArgumentException("Bad token length");
+        }
+        StringBuilder base64 = new StringBuilder(token.length() + 2);
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '-') {
+                base64.append('+');
+            } else if (c == '_') {
+                base64.append('/');
+            } else if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')
+                    || (c >= '0' && c <= '9')) {
+                base64.append(c);
+            } else {
+                throw new IllegalArgumentException("Bad token character");
+            }
+        }
+        while (base64.length() % 4 != 0) {
+            base64.append('=');
+        }
+        return Base64.decode(base64.toString());
+    }
 
+    /**
+     * Get the text of the query for the next chunk of results: the PIDs (and
+     * result values) of objects matching the where clause, after m_lastPID
+     * if it's set, in PID order.  If m_lastPID is set, the query has a
+     * single parameter for it.
+     */
+    String getQueryText() {
+        // Select every column needed to build results (see
+        // getObjectFields(ResultSet)), whatever the requested resultFields
+        StringBuffer queryText = new StringBuffer("SELECT");
+        queryText.append(" doFields.pid, doFields.state, doFields.cDate,"
+                + " doFields.mDate, doFields.dcmDate, doFieldValues.valuesPid,"
+                + " doFieldValues.valuesLabel, doFieldValues.valuesOwnerId,"
+                + " doFieldValues.dcValues");
+        queryText.append(" FROM doFields LEFT JOIN doFieldValues"
+                + " ON doFields.pid=doFieldValues.valuesPid");
+        if (m_lastPID == null) {
+            queryText.append(m_whereClause);
+        } else {
+            // the where clause may begin with a join, and any values in it
+            // come after the WHERE, so the first WHERE is the keyword
+            int where = m_whereClause.indexOf(" WHERE");
+            if (where == -1) {
+                queryText.append(m_whereClause);
+                queryText.append(" WHERE doFields.pid > ?");
+            } else {
+                queryText.append(m_whereClause.substring(0, where));
+                queryText.append(" WHERE doFields.pid > ? AND (");
+                queryText.append(m_whereClause.substring(where + 6));
+                queryText.append(" )");
+            }
         }
+        // disabled sorting on result fields: see bug 78.  Sorting on pid is
+        // what makes each chunk an independent query.
+        queryText.append(" ORDER BY doFields.pid");
         String qt = queryText.toString();
         logger.debug(qt);
         return qt;
@@ -342,123 +492,124 @@ public class FieldSearchResultSQLImpl
         return whereClause.toString();
     }
 
-    protected boolean isExpired() {
-        long passedSeconds =
-                (System.currentTimeMillis() - m_startMillis) / 1000;
-        m_expired = passedSeconds > m_maxSeconds;
-        logger.debug("has fieldSearchResultSQL expired? "+m_expired +
-                  ", passed: "+passedSeconds);
-        if (m_expired) {
-            // clean up
-            try {
-                if (m_resultSet != null) {
-                    m_resultSet.close();
-                }
-                if (m_statement != null) {
-                    m_statement.close();
-                }
-                if (m_conn != null) {
-                    m_cPool.free(m_conn);
-                }
-            } catch (SQLException sqle) {
-            } finally {
-                m_resultSet = null;
-                m_statement = null;
-            }
-        }
-        return m_expired;
-    }
-
     /**
      * Update object with the next chunk of results. if getToken() is null after
-     * this call, the resultSet was exhausted.
+     * this call, there are no more results.
      */
     protected void step() throws UnrecognizedFieldException,
             ObjectIntegrityException, RepositoryConfigurationException,
             StreamIOException, ServerException {
         m_objectFields = new ArrayList();
-        int resultCount = 0;
-        // Run through resultSet, adding each result to m_objectFields
-        // for up to maxResults objects, or until the result set is
-        // empty, whichever comes first.
-        // Note: If this is the first chunk of results for the entire search,
-        // m_nextPID will be null, and will require the cursor to be advanced
-        // to the first result.  For all remaining chunks, the cursor will
-        // already be in the correct position (and m_nextPID will have been set)
-        // so a call to m_resultSet.next() is not initially necessary.
+        Connection conn = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
         try {
-            while (resultCount < m_maxResults
-                    && (m_nextPID != null || m_resultSet.next())) {
+            conn = m_cPool.getReadOnlyConnection();
+            statement = conn.prepareStatement(getQueryText());
+            if (m_lastPID != null) {
+                statement.setString(1, m_lastPID);
+            }
+            // one more than we need, to tell whether there are more results
+            statement.setMaxRows(m_maxResults + 1);
+            resultSet = statement.executeQuery();
+            // Run through resultSet, adding each result to m_objectFields
+            // for up to maxResults objects, or until the result set is
+            // empty, whichever comes first.
+            String lastPID = null;
+            int resultCount = 0;
+            while (resultCount < m_maxResults && resultSet.next()) {
                 resultCount++;
-                // add the current object's info to m_objectFields
-                String pid;
-                if (m_nextPID == null) {
-                    pid = m_resultSet.getString("pid");
-                } else {
-                    pid = m_nextPID;
-                    m_nextPID = null;
-                }
-                m_objectFields.add(getObjectFields(pid));
+                lastPID = resultSet.getString(1);
+                m_objectFields.add(getObjectFields(resultSet));
             }
+            m_cursor = m_nextCursor;
+            m_nextCursor += resultCount;
             // done with this block. now, are there more results?
-            if (resultCount == m_maxResults && m_resultSet.next()) {
-                // yes, and we've now advanced the cursor so we must remember
-                // the pid so the next chunk can use it
-                m_nextPID = m_resultSet.getString("pid");
-                // generate a token, make sure the cursor is set,
-                // and make sure the expirationDate is set
-                long now = System.currentTimeMillis();
-                m_token = MD5Utility.getBase16Hash(hashCode() + "" + now);
-                m_cursor = m_nextCursor;
-                // keep m_nextCursor updated for next block
-                m_nextCursor += resultCount;
-                m_startMillis = now;
+            if (resultCount == m_maxResults && resultSet.next()) {
+                // yes, so the next chunk starts after the last pid of this one
                 Date dt = new Date();
-                dt.setTime(m_startMillis + 1000 * m_maxSeconds);
+                dt.setTime(System.currentTimeMillis() + 1000L * m_maxSeconds);
                 m_expirationDate = dt;
+                m_token = getToken(lastPID, m_nextCursor, dt);
+                m_lastPID = lastPID;
             } else {
-                // no, so make sure the token is null and clean up
                 m_token = null;
-                try {
-                    if (m_resultSet != null) {
-                        m_resultSet.close();
-                    }
-                    if (m_statement != null) {
-                        m_statement.close();
-                    }
-                    if (m_conn != null) {
-                        m_cPool.free(m_conn);
-                    }
-                } catch (SQLException sqle2) {
-                    throw new StorageDeviceException("Error closing statement "
-                            + "or result set." + sqle2.getMessage());
-                } finally {
-                    m_resultSet = null;
-                    m_statement = null;
-                }
             }
         } catch (SQLException sqle) {
+            throw new StorageDeviceException("Error with sql database. "
+                    + sqle.getMessage());
+        } finally {
             try {
-                if (m_resultSet != null) {
-                    m_resultSet.close();
+                if (resultSet != null) {
+                    resultSet.close();
                 }
-                if (m_statement != null) {
-                    m_statement.close();
+                if (statement != null) {
+                    statement.close();
                 }
-                if (m_conn != null) {
-                    m_cPool.free(m_conn);
-                }
-                throw new StorageDeviceException("Error with sql database. "
-                        + sqle.getMessage());
-            } catch (SQLException sqle2) {
-                throw new StorageDeviceException("Error closing statement "
-                        + "or result set." + sqle.getMessage()
-                        + sqle2.getMessage());
+            } catch (SQLException sqle) {
+                logger.warn("Error closing statement or result set", sqle);
             } finally {
-                m_resultSet = null;
-                m_statement = null;
+                if (conn != null) {
+                    m_cPool.free(conn);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get an ObjectFields object with resultFields fields populated from the
+     * current row of the given result set, which holds the doFields and
+     * doFieldValues columns selected by getQueryText.  Only if the
+     * object has no doFieldValues row (it hasn't been updated since that
+     * table was added) is the object itself read from the repository.
+     *
+     * @param row
+     *        the result set, positioned at the object's row.
+     * @return ObjectFields populated with the requested fields
+     */
+    private ObjectFields getObjectFields(ResultSet row) throws SQLException,
+            ServerException {
+        String pid = row.getString(1);
+        if (row.getString(6) == null) {
+            return getObjectFields(pid);
+        }
+        ObjectFields f = new ObjectFields(m_resultFields);
+        String dcValues = row.getString(9);
+        if (dcValues != null) {
+            FieldSearchSQLImpl.addDCValues(dcValues, f);
+        }
+        for (String n : m_resultFields) {
+            if (n.equals("pid")) {
+                f.setPid(pid);
+            }
+            if (n.equals("label")) {
+                f.setLabel(row.getString(7));
+            }
+            if (n.equals("state")) {
+                // stored lowercase; states are single uppercase letters
+                String state = row.getString(2);
+                if (state != null) {
+                    f.setState(state.toUpperCase());
+                }
+            }
+            if (n.equals("ownerId")) {
+                f.setOwnerId(row.getString(8));
+            }
+            if (n.equals("cDate")) {
+                f.setCDate(new Date(row.getLong(3)));
+            }
+            if (n.equals("mDate")) {
+                f.setMDate(new Date(row.getLong(4)));
+            }
+            if (n.equals("dcmDate")) {
+                // zero if there is no DC datastream
+                long dcmDate = row.getLong(5);
+                if (dcmDate != 0) {
+                    f.setDCMDate(new Date(dcmDate));
+                }
             }
         }
+        return f;
     }
 
     /**
@@ -726,15 +877,4 @@ public class FieldSearchResultSQLImpl
         return false;
     }
 
-    //2004.05.18 wdn5e --  logic now needed > 1 places
-    private static final String dcFixup(String st) {
-        String dcFixed;
-        if (isDCProp(st)) {
-            dcFixed = "dc" + st.substring(0, 1).toUpperCase() + st.substring(1);
-        } else {
-            dcFixed = st;
-        }
-        return dcFixed;
-    }
-
 }
@@ -11,9 +11,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -76,9 +75,23 @@ public class FieldSearchSQLImpl
     private static boolean[] s_dbColumnNumericNoDC =
             new boolean[] {false, false, false, false, true, true, true};
 
-    // a hash of token-keyed FieldSearchResultSQLImpls
-    private final HashMap<String, FieldSearchResultSQLImpl> m_currentResults =
-            new HashMap<String, FieldSearchResultSQLImpl>();
+    /**
+     * Columns of the doFieldValues table, which keeps the original values of
+     * the fields that doFields stores normalized.
+     */
+    public static String[] VALUES_COLUMN_NAMES =
+            new String[] {"valuesPid", "valuesLabel", "valuesOwnerId",
+                    "dcValues"};
+
+    private static boolean[] s_valuesColumnNumeric =
+            new boolean[] {false, false, false, false};
+
+    /** DC element names, in the order they are stored in dcValues. */
+    static final String[] DC_ELEMENT_NAMES =
+            new String[] {"title", "creator", "subject", "description",
+                    "publisher", "contributor", "date", "type", "format",
+                    "identifier", "source", "language", "relation",
+                    "coverage", "rights"};
 
     /**
      * Construct a FieldSearchSQLImpl that indexes DC fields.
@@ -182,14 +195,15 @@ public class FieldSearchSQLImpl
                         + reader.GetObjectPID()
                         + " has a DC datastream, but it's not inline XML.");
             }
+            DCFields dc = null;
             if (dcmd == null) {
                 dbRowValues[6] = "0";
             } else {
                 dbRowValues[6] = "" + dcmd.DSCreateDT.getTime();
+                InputStream in = dcmd.getContentStream();
+                dc = new DCFields(in);
             }
             if (dcmd != null && m_indexDCFields) {
-                InputStream in = dcmd.getContentStream();
-                DCFields dc = new DCFields(in);
 
                 dbRowValues[7] = getDbValue(dc.titles());
                 dbRowValues[8] = getDbValue(dc.creators());
@@ -252,6 +266,19 @@ public class FieldSearchSQLImpl
                                        "pid",
                                        s_dbColumnNumericNoDC);
             }
+
+            // keep the original values too, so search results can be
+            // built without reading the object
+            String[] valuesRowValues =
+                    new String[] {pid, reader.GetObjectLabel(),
+                            reader.getOwnerId(),
+                            dc == null ? null : getDCValues(dc)};
+            SQLUtility.replaceInto(conn,
+                                   "doFieldValues",
+                                   VALUES_COLUMN_NAMES,
+                                   valuesRowValues,
+                                   "valuesPid",
+                                   s_valuesColumnNumeric);
         } catch (SQLException sqle) {
             throw new StorageDeviceException("Error attempting FieldSearch "
                     + "update of " + pid, sqle);
@@ -283,6 +310,8 @@ public class FieldSearchSQLImpl
             st = conn.createStatement();
             st.executeUpdate("DELETE FROM doFields WHERE pid='" + pid + "'");
             st.executeUpdate("DELETE FROM dcDates WHERE pid='" + pid + "'");
+            st.executeUpdate("DELETE FROM doFieldValues WHERE valuesPid='"
+                    + pid + "'");
             return true;
         } catch (SQLException sqle) {
             throw new StorageDeviceException("Error attempting delete of "
@@ -312,69 +341,40 @@ public class FieldSearchSQLImpl
             throws UnrecognizedFieldException, ObjectIntegrityException,
             RepositoryConfigurationException, StreamIOException,
             ServerException, StorageDeviceException {
-        closeAndForgetOldResults();
         int actualMax = maxResults;
         if (m_maxResults < maxResults) {
             actualMax = m_maxResults;
         }
-        try {
-            return stepAndRemember(new FieldSearchResultSQLImpl(m_cPool,
-                                                                m_repoReader,
-                                                                resultFields,
-                                                                actualMax,
-                                                                m_maxSecondsPerSession,
-                                                                query));
-        } catch (SQLException sqle) {
-            throw new StorageDeviceException("Error querying sql db: "
-                    + sqle.getMessage(), sqle);
-        }
+        FieldSearchResultSQLImpl result =
+                new FieldSearchResultSQLImpl(m_cPool,
+                                             m_repoReader,
+                                             resultFields,
+                                             actualMax,
+                                             m_maxSecondsPerSession,
+                                             query);
+        result.step();
+        return result;
     }
 
+    /**
+     * Get the next chunk of results of a search.  Nothing is kept on the
+     * server between chunks: the session token itself says how to continue
+     * the search.
+     */
     public FieldSearchResult resumeFindObjects(String sessionToken)
             throws UnrecognizedFieldException, ObjectIntegrityException,
             RepositoryConfigurationException, StreamIOException,
             ServerException, UnknownSessionTokenException {
-        closeAndForgetOldResults();
         FieldSearchResultSQLImpl result =
-                m_currentResults
-                .remove(sessionToken);
-        if (result == null) {
-            throw new UnknownSessionTokenException("Session is expired "
-                    + "or never existed.");
-        }
-        return stepAndRemember(result);
-    }
-
-    private FieldSearchResult stepAndRemember(FieldSearchResultSQLImpl result)
-            throws UnrecognizedFieldException, ObjectIntegrityException,
-            RepositoryConfigurationException, StreamIOException,
-            ServerException, UnrecognizedFieldException {
+                FieldSearchResultSQLImpl.resume(m_cPool,
+                                                m_repoReader,
+                                                m_maxResults,
+                                                m_maxSecondsPerSession,
+                                                sessionToken);
         result.step();
-        if (result.getToken() != null) {
-            m_currentResults.put(result.getToken(), result);
-        }
         return result;
     }
 
-    // erase and cleanup expired stuff
-    private void closeAndForgetOldResults() {
-        Iterator<FieldSearchResultSQLImpl> iter =
-                m_currentResults.values().iterator();
-        ArrayList<String> toRemove = new ArrayList<String>();
-        while (iter.hasNext()) {
-            FieldSearchResultSQLImpl r = iter.next();
-            if (r.isExpired()) {
-                logger.debug("listSession " + r.getToken()
-                        + " expired; will forget it.");
-                toRemove.add(r.getToken());
-            }
-        }
-        for (int i = 0; i < toRemove.size(); i++) {
-            String token = toRemove.get(i);
-            m_currentResults.remove(token);
-        }
-    }
-
     /**
      * Get the string that should be inserted for a repeating-value column,
      * given a list of values. Turn each value to lowercase and separate them
@@ -398,6 +398,78 @@ public class FieldSearchSQLImpl
         return out.toString();
     }
 
+    /**
+     * Get the string stored in doFieldValues.dcValues for the given DC
+     * values: one line per value, in the form element:value, with
+     * backslashes, carriage returns and newlines in the value escaped.
+     */
+    static String getDCValues(DCFields dc) {
+        List<List<DCField>> lists =
+                Arrays.asList(dc.titles(), dc.creators(), dc.subjects(), dc
+                        .descriptions(), dc.publishers(), dc.contributors(), dc
+                        .dates(), dc.types(), dc.formats(), dc.identifiers(), dc
+                        .sources(), dc.languages(), dc.relations(), dc
+                        .coverages(), dc.rights());
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < DC_ELEMENT_NAMES.length; i++) {
+            for (DCField field : lists.get(i)) {
+                out.append(DC_ELEMENT_NAMES[i]);
+                out.append(':');
+                String value = field.getValue();
+                for (int j = 0; j < value.length(); j++) {
+                    char c = value.charAt(j);
+                    if (c == '\\') {
+                        out.append("\\\\");
+                    } else if (c == '\n') {
+                        out.append("\\n");
+                    } else if (c == '\r') {
+                        out.append("\\r");
+                    } else {
+                        out.append(c);
+                    }
+                }
+                out.append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Add the values in a doFieldValues.dcValues string to the given
+     * ObjectFields.  Only values of the fields it was constructed to want are
+     * added.
+     *
+     * @see #getDCValues(DCFields)
+     */
+    static void addDCValues(String dcValues, ObjectFields fields) {
+        int start = 0;
+        while (start < dcValues.length()) {
+            int end = dcValues.indexOf('\n', start);
+            if (end == -1) {
+                end = dcValues.length();
+            }
+            int colon = dcValues.indexOf(':', start);
+            if (colon != -1 && colon < end) {
+                StringBuilder value = new StringBuilder(end - colon);
+                for (int i = colon + 1; i < end; i++) {
+                    char c = dcValues.charAt(i);
+                    if (c == '\\' && i + 1 < end) {
+                        c = dcValues.charAt(++i);
+                        if (c == 'n') {
+                            c = '\n';
+                        } else if (c == 'r') {
+                            c = '\r';
+                        }
+                    }
+                    value.append(c);
+                }
+                fields.addDCField(dcValues.substring(start, colon), value
+                        .toString());
+            }
+            start = end + 1;
+        }
+    }
+
     // same as above, but for case sensitive repeating values
     private static String getDbValueCaseSensitive(List<String> dcItem) {
         if (dcItem.size() == 0) {
@@ -207,36 +207,46 @@ public class ObjectFields
         } else if (m_want[DCMDATE] && localName.equals("dcmDate")) {
             setDCMDate(DateUtility.convertStringToDate(m_currentContent
                     .toString()));
-        } else if (m_want[TITLE] && localName.equals("title")) {
-            titles().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[CREATOR] && localName.equals("creator")) {
-            creators().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[SUBJECT] && localName.equals("subject")) {
-            subjects().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[DESCRIPTION] && localName.equals("description")) {
-            descriptions().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[PUBLISHER] && localName.equals("publisher")) {
-            publishers().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[CONTRIBUTOR] && localName.equals("contributor")) {
-            contributors().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[DATE] && localName.equals("date")) {
-            dates().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[TYPE] && localName.equals("type")) {
-            types().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[FORMAT] && localName.equals("format")) {
-            formats().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[IDENTIFIER] && localName.equals("identifier")) {
-            identifiers().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[SOURCE] && localName.equals("source")) {
-            sources().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[LANGUAGE] && localName.equals("language")) {
-            languages().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[RELATION] && localName.equals("relation")) {
-            relations().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[COVERAGE] && localName.equals("coverage")) {
-            coverages().add(new DCField(m_currentContent.toString()));
-        } else if (m_want[RIGHTS] && localName.equals("rights")) {
-            rights().add(new DCField(m_currentContent.toString()));
+        } else {
+            addDCField(localName, m_currentContent.toString());
+        }
+    }
+
+    /**
+     * Adds a value for the DC element with the given local name ("title",
+     * "creator", and so on), if it is one of the wanted fields.
+     */
+    public void addDCField(String name, String value) {
+        if (m_want[TITLE] && name.equals("title")) {
+            titles().add(new DCField(value));
+        } else if (m_want[CREATOR] && name.equals("creator")) {
+            creators().add(new DCField(value));
+        } else if (m_want[SUBJECT] && name.equals("subject")) {
+            subjects().add(new DCField(value));
+        } else if (m_want[DESCRIPTION] && name.equals("description")) {
+            descriptions().add(new DCField(value));
+        } else if (m_want[PUBLISHER] && name.equals("publisher")) {
+            publishers().add(new DCField(value));
+        } else if (m_want[CONTRIBUTOR] && name.equals("contributor")) {
+            contributors().add(new DCField(value));
+        } else if (m_want[DATE] && name.equals("date")) {
+            dates().add(new DCField(value));
+        } else if (m_want[TYPE] && name.equals("type")) {
+            types().add(new DCField(value));
+        } else if (m_want[FORMAT] && name.equals("format")) {
+            formats().add(new DCField(value));
+        } else if (m_want[IDENTIFIER] && name.equals("identifier")) {
+            identifiers().add(new DCField(value));
+        } else if (m_want[SOURCE] && name.equals("source")) {
+            sources().add(new DCField(value));
+        } else if (m_want[LANGUAGE] && name.equals("language")) {
+            languages().add(new DCField(value));
+        } else if (m_want[RELATION] && name.equals("relation")) {
+            relations().add(new DCField(value));
+        } else if (m_want[COVERAGE] && name.equals("coverage")) {
+            coverages().add(new DCField(value));
+        } else if (m_want[RIGHTS] && name.equals("rights")) {
+            rights().add(new DCField(value));
         }
     }
 
@@ -148,6 +148,9 @@ public class DefaultAuthorization
 
     private static final String OWNER_ID_SEPARATOR_KEY = "OWNER-ID-SEPARATOR";
 
+    private static final String OBJECT_POLICY_CACHE_SIZE_KEY =
+            "OBJECT-POLICY-CACHE-SIZE";
+
     private final PolicyParser m_policyParser;
 
     private PolicyEnforcementPoint xacmlPep;
@@ -252,6 +255,21 @@ public class DefaultAuthorization
                                                         e);
             }
         }
+        if (moduleParameters.containsKey(OBJECT_POLICY_CACHE_SIZE_KEY)) {
+            try {
+                objectPolicyCacheSize =
+                        Integer.parseInt((String) moduleParameters
+                                .get(OBJECT_POLICY_CACHE_SIZE_KEY));
+            } catch (NumberFormatException e) {
+                objectPolicyCacheSize = -1;
+            }
+            if (objectPolicyCacheSize < 0) {
+                throw new ModuleInitializationException("bad init parm value for "
+                                                        + OBJECT_POLICY_CACHE_SIZE_KEY
+                                                        + "; must be a number, 0 or more",
+                                                        role);
+            }
+        }
     }
 
     @Override
@@ -262,6 +280,8 @@ public class DefaultAuthorization
 
     private boolean validateObjectPoliciesFromDatastream = false;
 
+    private int objectPolicyCacheSize = 1000;
+
     private static boolean mkdir(String dirPath) {
         boolean createdOnThisCall = false;
         File directory = new File(dirPath);
@@ -403,7 +423,8 @@ public class DefaultAuthorization
                              validateRepositoryPolicies,
                              validateObjectPoliciesFromDatastream,
                              m_policyParser,
-                             ownerIdSeparator);
+                             ownerIdSeparator,
+                             objectPolicyCacheSize);
         } catch (Throwable e1) {
             throw new ModuleInitializationException(e1.getMessage(),
                                                     getRole(),
@@ -0,0 +1,268 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.sun.xacml.AbstractPolicy;
+
+import org.fcrepo.server.ReadOnlyContext;
+import org.fcrepo.server.Server;
+import org.fcrepo.server.errors.ObjectNotInLowlevelStorageException;
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.storage.DOReader;
+import org.fcrepo.server.storage.ObjectChangeListener;
+import org.fcrepo.server.storage.RepositoryReader;
+import org.fcrepo.server.storage.types.Datastream;
+
+/**
+ * The parsed POLICY datastreams of objects, shared by every request.
+ *
+ * <p>Each entry records the version ID and creation date of the datastream
+ * it was parsed from, or that the object had no POLICY datastream. An entry
+ * is used without reading the object until the object is committed or
+ * purged, as {@link #objectChanged(String) told} by the DOManager. After
+ * that, the object is read again, and the policy is only parsed again if its
+ * datastream version has changed.
+ *
+ * <p>The cache holds at most the given number of objects. When it is full,
+ * entries that have not been used since the previous pass are evicted first.
+ * A size of 0 turns caching off: each lookup reads and parses the policy.
+ *
+ * @version $Id$
+ */
+public class ObjectPolicyCache
+        implements ObjectChangeListener {
+
+    private static final int STRIPES = 64;
+
+    private final RepositoryReader m_repoReader;
+
+    private final PolicyParser m_policyParser;
+
+    private final boolean m_validate;
+
+    private final int m_maxEntries;
+
+    private final ConcurrentMap<String, Entry> m_entries =
+            new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Counts the changes to the objects in each stripe, so that a policy read
+     * before a change is not cached after it.
+     */
+    private final AtomicLongArray m_changes = new AtomicLongArray(STRIPES);
+
+    /** Parser copies, as a parser may only be used by one thread at a time. */
+    private final ThreadLocal<PolicyParser> m_parsers =
+            new ThreadLocal<PolicyParser>() {
+
+                @Override
+                protected PolicyParser initialValue() {
+                    return m_policyParser.copy();
+                }
+            };
+
+    private final AtomicLong m_hits = new AtomicLong();
+
+    private final AtomicLong m_revalidations = new AtomicLong();
+
+    private final AtomicLong m_misses = new AtomicLong();
+
+    private final AtomicLong m_evictions = new AtomicLong();
+
+    public ObjectPolicyCache(RepositoryReader repoReader,
+                             PolicyParser policyParser,
+                             boolean validate,
+                             int maxEntries) {
+        m_repoReader = repoReader;
+        m_policyParser = policyParser;
+        m_validate = validate;
+        m_maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets the policy in the object's POLICY datastream.
+     *
+     * @return the parsed policy, or null if the object does not exist or has
+     *         no POLICY datastream.
+     */
+    public AbstractPolicy getPolicy(String pid) throws ServerException {
+        Entry entry = m_entries.get(pid);
+        if (entry != null && !entry.stale) {
+            entry.used = true;
+            m_hits.incrementAndGet();
+            return entry.policy;
+        }
+
+        long changes = m_changes.get(stripe(pid));
+        Datastream ds;
+        try {
+            DOReader reader =
+                    m_repoReader.getReader(Server.USE_DEFINITIVE_STORE,
+                                           ReadOnlyContext.EMPTY,
+                                           pid);
+            ds = reader.GetDatastream("POLICY", null);
+        } catch (ObjectNotInLowlevelStorageException e) {
+            m_entries.remove(pid);
+            return null;
+        }
+        String version = getVersion(ds);
+
+        AbstractPolicy policy;
+        if (entry != null && equal(entry.version, version)) {
+            m_revalidations.incrementAndGet();
+            policy = entry.policy;
+        } else {
+            m_misses.incrementAndGet();
+            policy =
+                    ds == null ? null : m_parsers.get()
+                            .parse(ds.getContentStream(), m_validate);
+        }
+
+        if (m_maxEntries > 0) {
+            Entry loaded = new Entry(version, policy);
+            m_entries.put(pid, loaded);
+            if (m_changes.get(stripe(pid)) != changes) {
+                // changed while it was read; don't trust what was read
+                m_entries.remove(pid, loaded);
+            } else if (entry == null && m_entries.size() > m_maxEntries) {
+                evict();
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * Marks the object's entry as needing to be checked against the object.
+     */
+    public void objectChanged(String pid) {
+        m_changes.incrementAndGet(stripe(pid));
+        Entry entry = m_entries.get(pid);
+        if (entry != null && !entry.stale) {
+            m_entries.replace(pid, entry, entry.toStale());
+        }
+    }
+
+    /**
+     * Discards every entry.
+     */
+    public void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            m_changes.incrementAndGet(i);
+        }
+        m_entries.clear();
+    }
+
+    public int size() {
+        return m_entries.size();
+    }
+
+    public long getHits() {
+        return m_hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found a changed object's policy
+     *         still current, without parsing it.
+     */
+    public long getRevalidations() {
+        return m_revalidations.get();
+    }
+
+    public long getMisses() {
+        return m_misses.get();
+    }
+
+    public long getEvictions() {
+        return m_evictions.get();
+    }
+
+    /**
+     * @return the fraction of lookups that did not parse a policy.
+     */
+    public double getHitRate() {
+        long hits = m_hits.get() + m_revalidations.get();
+        long total = hits + m_misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectPolicyCache (size=" + size() + ", hits=" + getHits()
+                + ", revalidations=" + getRevalidations() + ", misses="
+                + getMisses() + ", evictions=" + getEvictions() + ")";
+    }
+
+    /**
+     * Removes entries until there is room, giving those used since the last
+     * pass a second chance.
+     */
+    private void evict() {
+        Iterator<java.util.Map.Entry<String, Entry>> iter =
+                m_entries.entrySet().iterator();
+        while (m_entries.size() > m_maxEntries) {
+            if (!iter.hasNext()) {
+                iter = m_entries.entrySet().iterator();
+                if (!iter.hasNext()) {
+                    return;
+                }
+            }
+            java.util.Map.Entry<String, Entry> candidate = iter.next();
+            if (candidate.getValue().used) {
+                candidate.getValue().used = false;
+            } else if (m_entries.remove(candidate.getKey(), candidate
+                    .getValue())) {
+                m_evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static int stripe(String pid) {
+        return (pid.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    // the version of the datastream, or null if there is none
+    private static String getVersion(Datastream ds) {
+        if (ds == null) {
+            return null;
+        }
+        return ds.DSVersionID + " "
+                + (ds.DSCreateDT == null ? "" : ds.DSCreateDT.getTime());
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static class Entry {
+
+        final String version;
+
+        final AbstractPolicy policy;
+
+        final boolean stale;
+
+        volatile boolean used;
+
+        Entry(String version, AbstractPolicy policy) {
+            this(version, policy, false);
+        }
+
+        private Entry(String version, AbstractPolicy policy, boolean stale) {
+            this.version = version;
+            this.policy = policy;
+            this.stale = stale;
+        }
+
+        Entry toStale() {
+            return new Entry(version, policy, true);
+        }
+    }
+}
@@ -186,10 +186,9 @@ public class PolicyEnforcementPoint {
                                        globalPolicyConfig,
                                        globalBackendPolicyConfig,
                                        globalPolicyGuiToolConfig,
-                                       manager,
                                        validateRepositoryPolicies,
-                                       validateObjectPoliciesFromDatastream,
-                                       policyParser);
+                                       policyParser,
+                                       objectPolicyCache);
         logger.debug("after constucting fedora policy finder module");
         logger.debug("before adding fedora policy finder module to policy finder hashset");
         policyModules.add(combinedPolicyModule);
@@ -223,6 +222,10 @@ public class PolicyEnforcementPoint {
 
     String ownerIdSeparator = ",";
 
+    // kept across newPdp(), as reloading repository policies doesn't
+    // change those of objects
+    ObjectPolicyCache objectPolicyCache = null;
+
     public void initPep(String enforceMode,
                         String combiningAlgorithm,
                         String globalPolicyConfig,
@@ -232,7 +235,8 @@ public class PolicyEnforcementPoint {
                         boolean validateRepositoryPolicies,
                         boolean validateObjectPoliciesFromDatastream,
                         PolicyParser policyParser,
-                        String ownerIdSeparator) throws Exception {
+                        String ownerIdSeparator,
+                        int objectPolicyCacheSize) throws Exception {
         logger.debug("in initPep()");
         destroy();
         this.policyParser = policyParser;
@@ -252,9 +256,24 @@ public class PolicyEnforcementPoint {
         this.validateObjectPoliciesFromDatastream =
                 validateObjectPoliciesFromDatastream;
         this.ownerIdSeparator = ownerIdSeparator;
+        if (objectPolicyCache == null) {
+            objectPolicyCache =
+                    new ObjectPolicyCache(manager,
+                                          policyParser,
+                                          validateObjectPoliciesFromDatastream,
+                                          objectPolicyCacheSize);
+            manager.addObjectChangeListener(objectPolicyCache);
+        }
         newPdp();
     }
 
+    /**
+     * @return the cache of parsed object policies, for its statistics.
+     */
+    public ObjectPolicyCache getObjectPolicyCache() {
+        return objectPolicyCache;
+    }
+
     public void inactivate() {
         destroy();
     }
@@ -29,15 +29,10 @@ import com.sun.xacml.finder.PolicyFinderResult;
 
 import org.fcrepo.common.Constants;
 import org.fcrepo.common.FaultException;
-import org.fcrepo.server.ReadOnlyContext;
-import org.fcrepo.server.Server;
 import org.fcrepo.server.errors.GeneralException;
-import org.fcrepo.server.errors.ObjectNotInLowlevelStorageException;
 import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.errors.ValidationException;
-import org.fcrepo.server.storage.DOReader;
 import org.fcrepo.server.storage.RepositoryReader;
-import org.fcrepo.server.storage.types.Datastream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,16 +56,18 @@ public class PolicyFinderModule
 
     private final String m_combiningAlgorithm;
 
-    private final RepositoryReader m_repoReader;
-
     private final boolean m_validateRepositoryPolicies;
 
-    private final boolean m_validateObjectPoliciesFromDatastream;
-
     private final PolicyParser m_policyParser;
 
+    private final ObjectPolicyCache m_objectPolicies;
+
     private final List<AbstractPolicy> m_repositoryPolicies;
 
+    /**
+     * Creates a module that reads and parses the POLICY datastream of the
+     * object for every request.
+     */
     public PolicyFinderModule(String combiningAlgorithm,
                               String repositoryPolicyDirectoryPath,
                               String repositoryBackendPolicyDirectoryPath,
@@ -80,12 +77,34 @@ public class PolicyFinderModule
                               boolean validateObjectPoliciesFromDatastream,
                               PolicyParser policyParser)
             throws GeneralException {
+        this(combiningAlgorithm,
+             repositoryPolicyDirectoryPath,
+             repositoryBackendPolicyDirectoryPath,
+             repositoryPolicyGuiToolDirectoryPath,
+             validateRepositoryPolicies,
+             policyParser,
+             new ObjectPolicyCache(repoReader,
+                                   policyParser,
+                                   validateObjectPoliciesFromDatastream,
+                                   0));
+    }
+
+    /**
+     * Creates a module that gets object policies from the given cache.
+     */
+    public PolicyFinderModule(String combiningAlgorithm,
+                              String repositoryPolicyDirectoryPath,
+                              String repositoryBackendPolicyDirectoryPath,
+                              String repositoryPolicyGuiToolDirectoryPath,
+                              boolean validateRepositoryPolicies,
+                              PolicyParser policyParser,
+                              ObjectPolicyCache objectPolicies)
+            throws GeneralException {
 
         m_combiningAlgorithm = combiningAlgorithm;
-        m_repoReader = repoReader;
         m_validateRepositoryPolicies = validateRepositoryPolicies;
-        m_validateObjectPoliciesFromDatastream = validateObjectPoliciesFromDatastream;
         m_policyParser = policyParser;
+        m_objectPolicies = objectPolicies;
 
         logger.info("Loading repository policies...");
         m_repositoryPolicies = new ArrayList<AbstractPolicy>();
@@ -156,24 +175,13 @@ public class PolicyFinderModule
         return policyFinderResult;
     }
 
-    // if the object exists and has a POLICY datastream, parse and return it
+    // if the object exists and has a POLICY datastream, return it parsed
     private AbstractPolicy loadObjectPolicy(String pid) throws ServerException {
-        try {
-            DOReader reader = m_repoReader.getReader(Server.USE_DEFINITIVE_STORE,
-                                                     ReadOnlyContext.EMPTY,
-                                                     pid);
-            Datastream ds = reader.GetDatastream("POLICY", null);
-            if (ds != null) {
-                logger.debug("Using POLICY for " + pid);
-                return m_policyParser //TODO performance hole. Each copy() performs schema parsing, which is expensive
-                        .copy().parse(ds.getContentStream(),
-                                      m_validateObjectPoliciesFromDatastream);
-            } else {
-                return null;
-            }
-        } catch (ObjectNotInLowlevelStorageException e) {
-            return null;
+        AbstractPolicy policy = m_objectPolicies.getPolicy(pid);
+        if (policy != null) {
+            logger.debug("Using POLICY for " + pid);
         }
+        return policy;
     }
 
     // get the pid from the context, or null if unable
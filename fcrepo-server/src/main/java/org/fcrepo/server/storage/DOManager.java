@@ -113,4 +113,10 @@ public interface DOManager
      */
     public String getRepositoryHash() throws ServerException;
 
+    /**
+     * Registers a listener to be told each time an object is committed or
+     * purged.
+     */
+    public void addObjectChangeListener(ObjectChangeListener listener);
+
 }
@@ -1,80 +1,96 @@
 /* The contents of this file are subject to the license and copyright terms
- * detailed in the license directory at the root of the source tree (also 
+ * detailed in the license directory at the root of the source tree (also
  * available online at http://fedora-commons.org/license/).
  */
 package org.fcrepo.server.storage;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class DOReaderCache
-        extends Thread {
+import org.fcrepo.server.storage.types.AuditRecord;
+import org.fcrepo.server.storage.types.Datastream;
+import org.fcrepo.server.storage.types.DatastreamXMLMetadata;
+import org.fcrepo.server.storage.types.DigitalObject;
+
+/**
+ * A cache of recently used DOReaders, bounded both by the number of readers
+ * and by their estimated size in memory.
+ *
+ * <p>Lookups go straight to a ConcurrentHashMap and take no lock.  Eviction
+ * uses the CLOCK ("second chance") approximation of LRU: readers are queued
+ * in insertion order, a hit just marks the reader as recently used, and when
+ * the cache is over either bound, the oldest reader is evicted unless it has
+ * been used since it was last looked at, in which case it is moved to the
+ * back of the queue.  Each eviction is amortized O(1).
+ *
+ * <p>A reader that has not been used for longer than the configured number
+ * of seconds is treated as absent and dropped the next time it is seen.
+ *
+ * @version $Id$
+ */
+public class DOReaderCache {
+
+    /** Rough fixed cost of a deserialized object, in bytes. */
+    static final long OBJECT_OVERHEAD = 2048;
+
+    /** Rough fixed cost of each datastream version, in bytes. */
+    static final long DATASTREAM_OVERHEAD = 512;
+
+    /** Rough fixed cost of each audit record, in bytes. */
+    static final long AUDIT_RECORD_OVERHEAD = 256;
 
     private final int m_maxReaders;
 
-    private final int m_maxCachedSeconds;
+    private final long m_maxBytes;
 
-    private final Map m_readers;
+    private final long m_maxIdleMillis;
 
-    private final List m_pidList;
+    private final ConcurrentMap<String, Entry> m_readers;
 
-    private boolean m_stopRequested;
+    private final Queue<Entry> m_clock;
 
-    public DOReaderCache(int maxReaders, int maxCachedSeconds) {
+    private final AtomicInteger m_size = new AtomicInteger();
 
-        m_maxReaders = maxReaders;
-        m_maxCachedSeconds = maxCachedSeconds;
+    private final AtomicLong m_bytes = new AtomicLong();
 
-        m_readers = new HashMap();
-        m_pidList = new ArrayList();
+    /** Entries still in m_clock that are no longer in m_readers. */
+    private final AtomicInteger m_retired = new AtomicInteger();
 
-        m_stopRequested = false;
-        start();
-    }
+    private final AtomicLong m_hits = new AtomicLong();
+
+    private final AtomicLong m_misses = new AtomicLong();
+
+    private final AtomicLong m_evictions = new AtomicLong();
 
     /**
-     * Until closed, check for and remove any expired entries every second.
+     * Creates a cache bounded only by the number of readers.
      */
-    @Override
-    public void run() {
-        while (!m_stopRequested) {
-            removeExpired();
-            if (!m_stopRequested) {
-                try {
-                    Thread.sleep(1000);
-                } catch (Exception e) {
-                }
-            }
-        }
+    public DOReaderCache(int maxReaders, int maxCachedSeconds) {
+        this(maxReaders, Long.MAX_VALUE, maxCachedSeconds);
     }
 
-    private void removeExpired() {
-        long cutoffTime =
-                System.currentTimeMillis() - 1000 * m_maxCachedSeconds;
-        synchronized (m_readers) {
-            if (m_pidList.size() > 0) {
-                boolean done = false;
-                List expiredList = new ArrayList();
-                Iterator pids = m_pidList.iterator();
-                while (pids.hasNext() && !done) {
-                    String pid = (String) pids.next();
-                    List l = (List) m_readers.get(pid);
-                    long cachedTime = ((Long) l.get(1)).longValue();
-                    if (cachedTime < cutoffTime) {
-                        expiredList.add(pid);
-                    } else {
-                        done = true;
-                    }
-                }
-                pids = expiredList.iterator();
-                while (pids.hasNext()) {
-                    remove((String) pids.next());
-                }
-            }
-        }
+    /**
+     * Creates a cache bounded by the number of readers and by their
+     * estimated total size in bytes.
+     *
+     * @param maxReaders the maximum number of readers to hold.
+     * @param maxBytes the maximum estimated size of all readers held.
+     * @param maxCachedSeconds how long a reader may go unused before it
+     *        is no longer served from the cache.
+     */
+    public DOReaderCache(int maxReaders, long maxBytes, int maxCachedSeconds) {
+        m_maxReaders = maxReaders;
+        m_maxBytes = maxBytes;
+        m_maxIdleMillis = 1000L * maxCachedSeconds;
+        m_readers = new ConcurrentHashMap<String, Entry>();
+        m_clock = new ConcurrentLinkedQueue<Entry>();
     }
 
     /**
@@ -82,16 +98,19 @@ public class DOReaderCache
      * nothing.
      */
     public void remove(String pid) {
-        synchronized (m_readers) {
-            if (m_readers.remove(pid) != null) {
-                m_pidList.remove(pid);
-            }
+        if (pid == null) {
+            return;
+        }
+        Entry entry = m_readers.remove(pid);
+        if (entry != null) {
+            retire(entry);
         }
     }
 
     /**
      * Add a DOReader to the cache. If it already exists in the cache, refresh
-     * the DOReader in the cache.
+     * the DOReader in the cache.  Readers that are larger than the whole
+     * cache are not added.
      */
     public void put(DOReader reader) {
         String pid = null;
@@ -99,47 +118,193 @@ public class DOReaderCache
             pid = reader.GetObjectPID();
         } catch (Exception e) {
         }
-        Long time = new Long(System.currentTimeMillis());
-        List l = new ArrayList();
-        l.add(reader);
-        l.add(time);
-        synchronized (m_readers) {
-            m_readers.put(pid, l);
-            if (m_pidList.contains(pid)) {
-                // ensure it only appears in the list once, at the end
-                m_pidList.remove(pid);
-            }
-            m_pidList.add(pid);
-            if (m_readers.size() > m_maxReaders) {
-                Object overflowPid = m_pidList.remove(0);
-                m_readers.remove(overflowPid);
-            }
+        if (pid == null) {
+            return;
+        }
+        long weight = estimateSize(reader.getObject());
+        if (weight > m_maxBytes) {
+            remove(pid);
+            return;
+        }
+        Entry entry = new Entry(pid, reader, weight);
+        m_size.incrementAndGet();
+        m_bytes.addAndGet(weight);
+        Entry old = m_readers.put(pid, entry);
+        if (old != null) {
+            retire(old);
         }
+        m_clock.offer(entry);
+        evict();
     }
 
     /**
      * Get a DOReader from the cache. If it doesn't exist in the cache, return
-     * null. If it does exist, set its time to the current time and return it.
+     * null. If it does exist, mark it as recently used and return it.
      */
     public DOReader get(String pid) {
-        DOReader reader = null;
-        synchronized (m_readers) {
-            List l = (List) m_readers.get(pid);
-            if (l != null) {
-                reader = (DOReader) l.get(0);
-                l.remove(1);
-                l.add(new Long(System.currentTimeMillis()));
-                // move it to the end of the list so the list stays sorted
-                m_pidList.remove(pid);
-                m_pidList.add(pid);
+        Entry entry = m_readers.get(pid);
+        if (entry != null) {
+            // null if another thread removed the entry since we looked it up
+            DOReader reader = entry.reader;
+            long now = System.currentTimeMillis();
+            if (reader != null && now - entry.lastAccess <= m_maxIdleMillis) {
+                entry.lastAccess = now;
+                entry.referenced = true;
+                m_hits.incrementAndGet();
+                return reader;
+            }
+            if (m_readers.remove(pid, entry)) {
+                retire(entry);
             }
         }
-        return reader;
+        m_misses.incrementAndGet();
+        return null;
     }
 
+    /**
+     * Removes all readers from the cache.
+     */
     public void close() {
-        // make sure the thread finishes
-        m_stopRequested = true;
+        for (String pid : m_readers.keySet()) {
+            remove(pid);
+        }
+        m_clock.clear();
+        m_retired.set(0);
+    }
+
+    /** The number of readers currently cached. */
+    public int size() {
+        return m_size.get();
+    }
+
+    /** The estimated size, in bytes, of all readers currently cached. */
+    public long getEstimatedBytes() {
+        return m_bytes.get();
+    }
+
+    /** The number of lookups answered from the cache. */
+    public long getHitCount() {
+        return m_hits.get();
+    }
+
+    /** The number of lookups not answered from the cache. */
+    public long getMissCount() {
+        return m_misses.get();
     }
 
-}
\ No newline at end of file
+    /** The number of readers dropped to stay within the cache bounds. */
+    public long getEvictionCount() {
+        return m_evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DOReaderCache[readers=" + size() + ", bytes="
+                + getEstimatedBytes() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions="
+                + getEvictionCount() + "]";
+    }
+
+    /**
+     * Estimates how much memory a deserialized object occupies: its inline
+     * XML datastream content and audit trail, plus a fixed allowance per
+     * object, datastream version and audit record.
+     */
+    static long estimateSize(DigitalObject obj) {
+        long size = OBJECT_OVERHEAD;
+        if (obj == null) {
+            return size;
+        }
+        Iterator<String> dsIDs = obj.datastreamIdIterator();
+        while (dsIDs.hasNext()) {
+            for (Datastream ds : obj.datastreams(dsIDs.next())) {
+                size += DATASTREAM_OVERHEAD;
+                if (ds instanceof DatastreamXMLMetadata) {
+                    byte[] content = ((DatastreamXMLMetadata) ds).xmlContent;
+                    if (content != null) {
+                        size += content.length;
+                    }
+                }
+            }
+        }
+        List<AuditRecord> audits = obj.getAuditRecords();
+        if (audits != null) {
+            for (AuditRecord audit : audits) {
+                size += AUDIT_RECORD_OVERHEAD;
+                if (audit.justification != null) {
+                    size += 2 * audit.justification.length();
+                }
+            }
+        }
+        return size;
+    }
+
+    private void retire(Entry entry) {
+        if (entry.retired.compareAndSet(false, true)) {
+            m_size.decrementAndGet();
+            m_bytes.addAndGet(-entry.weight);
+            entry.reader = null;
+            // don't let removed entries pile up in the clock queue
+            if (m_retired.incrementAndGet() > Math.max(64, m_size.get())) {
+                purgeRetired();
+            }
+        }
+    }
+
+    private void purgeRetired() {
+        m_retired.set(0);
+        Iterator<Entry> entries = m_clock.iterator();
+        while (entries.hasNext()) {
+            if (entries.next().retired.get()) {
+                entries.remove();
+            }
+        }
+    }
+
+    private void evict() {
+        long cutoff = System.currentTimeMillis() - m_maxIdleMillis;
+        while (m_size.get() > m_maxReaders || m_bytes.get() > m_maxBytes) {
+            Entry entry = m_clock.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entry.retired.get()) {
+                m_retired.decrementAndGet();
+                continue;
+            }
+            if (entry.referenced && entry.lastAccess >= cutoff) {
+                // used since we last looked; give it a second chance
+                entry.referenced = false;
+                m_clock.offer(entry);
+                continue;
+            }
+            if (m_readers.remove(entry.pid, entry)) {
+                retire(entry);
+                m_retired.decrementAndGet();
+                m_evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        final String pid;
+
+        final long weight;
+
+        final AtomicBoolean retired = new AtomicBoolean();
+
+        volatile DOReader reader;
+
+        volatile long lastAccess;
+
+        volatile boolean referenced;
+
+        Entry(String pid, DOReader reader, long weight) {
+            this.pid = pid;
+            this.reader = reader;
+            this.weight = weight;
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+}
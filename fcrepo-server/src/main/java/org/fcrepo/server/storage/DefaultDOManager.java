@@ -5,7 +5,6 @@
 package org.fcrepo.server.storage;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -15,6 +14,7 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -24,15 +24,28 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Pattern;
 
+import javax.xml.parsers.SAXParser;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
 import org.fcrepo.common.Constants;
 import org.fcrepo.common.Models;
 
@@ -47,6 +60,7 @@ import org.fcrepo.server.errors.LowlevelStorageException;
 import org.fcrepo.server.errors.ModuleInitializationException;
 import org.fcrepo.server.errors.ObjectAlreadyInLowlevelStorageException;
 import org.fcrepo.server.errors.ObjectExistsException;
+import org.fcrepo.server.errors.ObjectIntegrityException;
 import org.fcrepo.server.errors.ObjectLockedException;
 import org.fcrepo.server.errors.ObjectNotFoundException;
 import org.fcrepo.server.errors.ObjectNotInLowlevelStorageException;
@@ -72,11 +86,14 @@ import org.fcrepo.server.storage.types.RelationshipTuple;
 import org.fcrepo.server.storage.types.XMLDatastreamProcessor;
 import org.fcrepo.server.utilities.DCField;
 import org.fcrepo.server.utilities.DCFields;
+import org.fcrepo.server.utilities.ReadableByteArrayOutputStream;
 import org.fcrepo.server.utilities.SQLUtility;
 import org.fcrepo.server.utilities.StreamUtility;
+import org.fcrepo.server.utilities.StripedLock;
 import org.fcrepo.server.validation.DOValidator;
 import org.fcrepo.server.validation.DOValidatorImpl;
 import org.fcrepo.server.validation.ValidationUtility;
+import org.fcrepo.utilities.XmlParserUtility;
 
 
 
@@ -97,6 +114,27 @@ public class DefaultDOManager
 
     private static final Pattern URL_PROTOCOL = Pattern.compile("^\\w+:\\/.*$");
 
+    /** Commit verification: store the serialized object unchecked. */
+    public static final String COMMIT_VERIFICATION_NONE = "none";
+
+    /** Commit verification: check the serialized object is well-formed XML. */
+    public static final String COMMIT_VERIFICATION_WELLFORMED = "wellformed";
+
+    /** Commit verification: check the serialized object can be deserialized. */
+    public static final String COMMIT_VERIFICATION_FULL = "full";
+
+    /** Index updates: one after another, as part of the commit. */
+    public static final String INDEX_UPDATE_SEQUENTIAL = "sequential";
+
+    /**
+     * Index updates: concurrently with storage, as part of the commit.  An
+     * index failure is reported after the object has been stored.
+     */
+    public static final String INDEX_UPDATE_PARALLEL = "parallel";
+
+    /** Index updates: queued persistently, after the commit returns. */
+    public static final String INDEX_UPDATE_WRITE_BEHIND = "writeBehind";
+
     private String m_pidNamespace;
 
     protected String m_storagePool;
@@ -107,6 +145,22 @@ public class DefaultDOManager
 
     private String m_storageCharacterEncoding;
 
+    private String m_commitVerification;
+
+    private String m_indexUpdateMode;
+
+    private int m_indexThreads;
+
+    private String m_indexQueueDir;
+
+    /** Runs index updates in parallel mode; null otherwise. */
+    private ExecutorService m_indexExecutor;
+
+    /** Holds pending index updates in write-behind mode; null otherwise. */
+    private IndexUpdateQueue m_indexQueue;
+
+    private Thread m_indexQueueStarter;
+
     protected PIDGenerator m_pidGenerator;
 
     protected DOTranslator m_translator;
@@ -127,8 +181,30 @@ public class DefaultDOManager
 
     private DOReaderCache m_readerCache;
 
+    private final DisseminationPlanCache m_planCache =
+            new DisseminationPlanCache();
+
+    private final List<ObjectChangeListener> m_changeListeners =
+            new CopyOnWriteArrayList<ObjectChangeListener>();
+
+    private ObjectRegistry m_registry;
+
+    private RepositoryHash m_repositoryHash;
+
+    private boolean m_verifyRepositoryHash;
+
     private final Set<String> m_lockedPIDs;
 
+    /**
+     * Serializes the registry check and registration of a new object among
+     * ingests of the same PID, while letting ingests of different PIDs
+     * proceed in parallel.
+     */
+    private final StripedLock m_ingestLocks;
+
+    /** Guards PID generation and reservation during ingest. */
+    private final Object m_pidGenerationLock = new Object();
+
     protected ConnectionPool m_connectionPool;
 
     protected Connection m_connection;
@@ -142,6 +218,7 @@ public class DefaultDOManager
             throws ModuleInitializationException {
         super(moduleParameters, server, role);
         m_lockedPIDs = new HashSet<String>();
+        m_ingestLocks = new StripedLock();
     }
 
     /**
@@ -252,9 +329,102 @@ public class DefaultDOManager
                                                     getRole());
         }
 
+        // readerCacheMaxBytes (optional, default = 64MB)
+        String rcMaxBytes = getParameter("readerCacheMaxBytes");
+        if (rcMaxBytes == null) {
+            logger.debug("Parameter readerCacheMaxBytes not given, using 67108864");
+            rcMaxBytes = "67108864";
+        }
+        long readerCacheMaxBytes;
+        try {
+            readerCacheMaxBytes = Long.parseLong(rcMaxBytes);
+            if (readerCacheMaxBytes < 1) {
+                throw new Exception("Cannot be less than one");
+            }
+        } catch (Exception e) {
+            throw new ModuleInitializationException("Bad value for readerCacheMaxBytes parameter: "
+                                                            + e.getMessage(),
+                                                    getRole());
+        }
+
+        // commitVerification (optional, default = wellformed)
+        m_commitVerification = getParameter("commitVerification");
+        if (m_commitVerification == null) {
+            logger.debug("Parameter commitVerification not given, using "
+                    + COMMIT_VERIFICATION_WELLFORMED);
+            m_commitVerification = COMMIT_VERIFICATION_WELLFORMED;
+        } else if (!m_commitVerification.equals(COMMIT_VERIFICATION_NONE)
+                && !m_commitVerification.equals(COMMIT_VERIFICATION_WELLFORMED)
+                && !m_commitVerification.equals(COMMIT_VERIFICATION_FULL)) {
+            throw new ModuleInitializationException("Bad value for commitVerification parameter: "
+                                                            + m_commitVerification
+                                                            + " (expected "
+                                                            + COMMIT_VERIFICATION_NONE
+                                                            + ", "
+                                                            + COMMIT_VERIFICATION_WELLFORMED
+                                                            + " or "
+                                                            + COMMIT_VERIFICATION_FULL
+                                                            + ")",
+                                                    getRole());
+        }
+
+        // indexUpdateMode (optional, default = sequential)
+        m_indexUpdateMode = getParameter("indexUpdateMode");
+        if (m_indexUpdateMode == null) {
+            logger.debug("Parameter indexUpdateMode not given, using "
+                    + INDEX_UPDATE_SEQUENTIAL);
+            m_indexUpdateMode = INDEX_UPDATE_SEQUENTIAL;
+        } else if (!m_indexUpdateMode.equals(INDEX_UPDATE_SEQUENTIAL)
+                && !m_indexUpdateMode.equals(INDEX_UPDATE_PARALLEL)
+                && !m_indexUpdateMode.equals(INDEX_UPDATE_WRITE_BEHIND)) {
+            throw new ModuleInitializationException("Bad value for indexUpdateMode parameter: "
+                                                            + m_indexUpdateMode
+                                                            + " (expected "
+                                                            + INDEX_UPDATE_SEQUENTIAL
+                                                            + ", "
+                                                            + INDEX_UPDATE_PARALLEL
+                                                            + " or "
+                                                            + INDEX_UPDATE_WRITE_BEHIND
+                                                            + ")",
+                                                    getRole());
+        }
+
+        // indexThreads (optional, default = 4)
+        String indexThreads = getParameter("indexThreads");
+        if (indexThreads == null) {
+            logger.debug("Parameter indexThreads not given, using 4");
+            indexThreads = "4";
+        }
+        try {
+            m_indexThreads = Integer.parseInt(indexThreads);
+            if (m_indexThreads < 1) {
+                throw new Exception("Cannot be less than one");
+            }
+        } catch (Exception e) {
+            throw new ModuleInitializationException("Bad value for indexThreads parameter: "
+                                                            + e.getMessage(),
+                                                    getRole());
+        }
+
+        // indexQueueDir (optional, default = data/index-queue)
+        m_indexQueueDir = getParameter("indexQueueDir");
+        if (m_indexQueueDir == null) {
+            logger.debug("Parameter indexQueueDir not given, using data/index-queue");
+            m_indexQueueDir = "data/index-queue";
+        }
+
+        // verifyRepositoryHash (optional, default = false)
+        m_verifyRepositoryHash =
+                "true".equalsIgnoreCase(getParameter("verifyRepositoryHash"));
+        if (m_verifyRepositoryHash) {
+            logger.info("Repository hash will be verified against the database");
+        }
+
         if (readerCacheSize > 0) {
             m_readerCache =
-                    new DOReaderCache(readerCacheSize, readerCacheSeconds);
+                    new DOReaderCache(readerCacheSize,
+                                      readerCacheMaxBytes,
+                                      readerCacheSeconds);
         }
     }
 
@@ -348,6 +518,7 @@ public class DefaultDOManager
             throw new ModuleInitializationException("Couldn't get required "
                     + "connection pool; wasn't found", getRole());
         }
+        m_registry = new ObjectRegistry(m_connectionPool);
         try {
             String dbSpec =
                     "org/fcrepo/server/storage/resources/DefaultDOManager.dbspec";
@@ -381,6 +552,62 @@ public class DefaultDOManager
 
         /* Load the service deployment cache from the registry */
         initializeCModelDeploymentCache();
+
+        initRepositoryHash();
+
+        initIndexUpdates();
+    }
+
+    /**
+     * Sets up the thread pool or queue used for index updates, if the
+     * indexUpdateMode calls for one.
+     */
+    private void initIndexUpdates() throws ModuleInitializationException {
+        if (m_indexUpdateMode.equals(INDEX_UPDATE_PARALLEL)) {
+            m_indexExecutor = Executors.newFixedThreadPool(m_indexThreads);
+        } else if (m_indexUpdateMode.equals(INDEX_UPDATE_WRITE_BEHIND)) {
+            File dir = new File(m_indexQueueDir);
+            if (!dir.isAbsolute()) {
+                dir = new File(getServer().getHomeDir(), m_indexQueueDir);
+            }
+            try {
+                m_indexQueue =
+                        new IndexUpdateQueue(dir,
+                                             m_indexThreads,
+                                             new IndexUpdateQueue.Replayer() {
+
+                                                 public void replay(String pid,
+                                                                    InputStream oldObject)
+                                                         throws Exception {
+                                                     replayIndexUpdate(pid,
+                                                                       oldObject);
+                                                 }
+                                             });
+            } catch (IOException e) {
+                throw new ModuleInitializationException("Unable to open index queue: "
+                                                                + e.getMessage(),
+                                                        getRole());
+            }
+            // the indexes may not be ready until every module is, so hold
+            // any replayed updates until the server is up (or the first
+            // commit, whichever is sooner)
+            m_indexQueueStarter = new Thread("IndexUpdateQueue-starter") {
+
+                @Override
+                public void run() {
+                    try {
+                        while (!getServer().hasInitialized()) {
+                            Thread.sleep(1000);
+                        }
+                        m_indexQueue.start();
+                    } catch (InterruptedException e) {
+                        // shutting down
+                    }
+                }
+            };
+            m_indexQueueStarter.setDaemon(true);
+            m_indexQueueStarter.start();
+        }
     }
 
     public String lookupDeploymentForCModel(String cModelPid, String sDefPid) {
@@ -471,6 +698,9 @@ public class DefaultDOManager
             }
         }
 
+        /* Any plan made from the old deployment is out of date */
+        m_planCache.remove(sDep);
+
         /* Read in the old deployment map from the cache */
         Set<ServiceContext> oldContext =
                 m_cModelDeploymentMap.getContextFor(sDep);
@@ -496,16 +726,15 @@ public class DefaultDOManager
                                DigitalObject sDep,
                                Connection c) throws SQLException {
 
-        Statement s = c.createStatement();
+        PreparedStatement s =
+                c.prepareStatement("INSERT INTO modelDeploymentMap "
+                        + "(cModel, sDef, sDep) VALUES (?, ?, ?)");
 
         try {
-            s
-                    .executeUpdate("INSERT INTO modelDeploymentMap (cModel, sDef, sDep) VALUES ('"
-                            + context.cModel
-                            + "' , '"
-                            + context.sDef
-                            + "', '"
-                            + sDep.getPid() + "')");
+            s.setString(1, context.cModel);
+            s.setString(2, context.sDef);
+            s.setString(3, sDep.getPid());
+            s.executeUpdate();
         } finally {
             if (s != null) {
                 s.close();
@@ -529,12 +758,15 @@ public class DefaultDOManager
     private void removeDeployment(ServiceContext context,
                                   DigitalObject sDep,
                                   Connection c) throws SQLException {
-        Statement s = c.createStatement();
+        PreparedStatement s =
+                c.prepareStatement("DELETE FROM modelDeploymentMap "
+                        + "WHERE cModel = ? AND sDef = ? AND sDep = ?");
 
         try {
-            s.executeUpdate("DELETE FROM modelDeploymentMap "
-                    + "WHERE cModel = '" + context.cModel + "' AND sDef ='"
-                    + context.sDef + "' AND sDep = '" + sDep.getPid() + "'");
+            s.setString(1, context.cModel);
+            s.setString(2, context.sDef);
+            s.setString(3, sDep.getPid());
+            s.executeUpdate();
         } finally {
             if (s != null) {
                 s.close();
@@ -547,8 +779,19 @@ public class DefaultDOManager
     @Override
     public void shutdownModule() {
         if (m_readerCache != null) {
+            logger.info("Shutting down " + m_readerCache);
             m_readerCache.close();
         }
+        logger.info("Shutting down " + m_planCache);
+        m_planCache.clear();
+        if (m_indexExecutor != null) {
+            m_indexExecutor.shutdown();
+        }
+        if (m_indexQueue != null) {
+            m_indexQueueStarter.interrupt();
+            logger.info("Shutting down " + m_indexQueue);
+            m_indexQueue.shutdown();
+        }
     }
 
     public void releaseWriter(DOWriter writer) {
@@ -677,16 +920,13 @@ public class DefaultDOManager
                                                               Context context,
                                                               String pid)
             throws ServerException {
-        {
-            return new SimpleServiceDeploymentReader(context,
-                                                     this,
-                                                     m_translator,
-                                                     m_defaultExportFormat,
-                                                     m_defaultStorageFormat,
-                                                     m_storageCharacterEncoding,
-                                                     m_permanentStore
-                                                             .retrieveObject(pid));
-        }
+        return new SimpleServiceDeploymentReader(context,
+                                                 this,
+                                                 m_translator,
+                                                 m_defaultExportFormat,
+                                                 m_storageCharacterEncoding,
+                                                 getDisseminationPlan(context,
+                                                                      pid));
     }
 
     /**
@@ -696,16 +936,46 @@ public class DefaultDOManager
                                                               Context context,
                                                               String pid)
             throws ServerException {
-        {
-            return new SimpleServiceDefinitionReader(context,
-                                                     this,
-                                                     m_translator,
-                                                     m_defaultExportFormat,
-                                                     m_defaultStorageFormat,
-                                                     m_storageCharacterEncoding,
-                                                     m_permanentStore
-                                                             .retrieveObject(pid));
+        return new SimpleServiceDefinitionReader(context,
+                                                 this,
+                                                 m_translator,
+                                                 m_defaultExportFormat,
+                                                 m_storageCharacterEncoding,
+                                                 getDisseminationPlan(context,
+                                                                      pid));
+    }
+
+    /**
+     * Gets the dissemination plan for a service object, reading the object
+     * from permanent storage if there is none. The plan is only kept if the
+     * object really is a service object.
+     */
+    private DisseminationPlanCache.Plan getDisseminationPlan(Context context,
+                                                             String pid)
+            throws ServerException {
+        DisseminationPlanCache.Plan plan = m_planCache.get(pid);
+        if (plan == null) {
+            Object reservation = m_planCache.reserve(pid);
+            DOReader reader;
+            try {
+                reader =
+                        new SimpleDOReader(context,
+                                           this,
+                                           m_translator,
+                                           m_defaultExportFormat,
+                                           m_defaultStorageFormat,
+                                           m_storageCharacterEncoding,
+                                           m_permanentStore.retrieveObject(pid));
+            } catch (ServerException e) {
+                m_planCache.cancel(pid, reservation);
+                throw e;
+            } catch (RuntimeException e) {
+                m_planCache.cancel(pid, reservation);
+                throw e;
+            }
+            plan = m_planCache.put(pid, reader.getObject(), reservation);
         }
+        return plan;
     }
 
     /**
@@ -743,6 +1013,10 @@ public class DefaultDOManager
      * validation or generation, object registry functions, getting a writer for
      * the digital object, and ultimately writing the object to persistent
      * storage via the writer.
+     * <p>
+     * Ingests are not serialized against each other: spooling, validation and
+     * deserialization run in parallel, and only the registry check and
+     * registration of the resulting PID happen under a per-PID lock.
      *
      * @param context
      * @param in
@@ -755,17 +1029,18 @@ public class DefaultDOManager
      *        "new" if the system should generate a new PID for the object, otherwise
      *        the value of the additional pid parameter for ingests (may be null or any valid pid)
      */
-    public synchronized DOWriter getIngestWriter(boolean cachedObjectRequired,
-                                                 Context context,
-                                                 InputStream in,
-                                                 String format,
-                                                 String encoding,
-                                                 String pid)
+    public DOWriter getIngestWriter(boolean cachedObjectRequired,
+                                    Context context,
+                                    InputStream in,
+                                    String format,
+                                    String encoding,
+                                    String pid)
             throws ServerException {
         logger.debug("Entered getIngestWriter");
 
         DOWriter w = null;
         BasicDigitalObject obj = null;
+        boolean locked = false;
 
         File tempFile = null;
         if (cachedObjectRequired) {
@@ -877,7 +1152,9 @@ public class DefaultDOManager
                                 .getPid().split(":")[0]))) {
                     logger.debug("Stream contained PID with retainable namespace-id; will use PID from stream");
                     try {
-                        m_pidGenerator.neverGeneratePID(obj.getPid());
+                        synchronized (m_pidGenerationLock) {
+                            m_pidGenerator.neverGeneratePID(obj.getPid());
+                        }
                     } catch (IOException e) {
                         throw new GeneralException("Error calling pidGenerator.neverGeneratePID(): "
                                 + e.getMessage());
@@ -895,12 +1172,14 @@ public class DefaultDOManager
                                         (RecoveryContext) context;
                                 p = rContext.getRecoveryValue(Constants.RECOVERY.PID.uri);
                             }
-                            if (p == null) {
-                                p = m_pidGenerator.generatePID(m_pidNamespace)
-                                        .toString();
-                            } else {
-                                logger.debug("Using new PID from recovery context");
-                                m_pidGenerator.neverGeneratePID(p);
+                            synchronized (m_pidGenerationLock) {
+                                if (p == null) {
+                                    p = m_pidGenerator.generatePID(m_pidNamespace)
+                                            .toString();
+                                } else {
+                                    logger.debug("Using new PID from recovery context");
+                                    m_pidGenerator.neverGeneratePID(p);
+                                }
                             }
                         } catch (Exception e) {
                             throw new GeneralException("Error generating PID", e);
@@ -914,14 +1193,6 @@ public class DefaultDOManager
 
                 logger.info("New object PID is {}", obj.getPid());
 
-                // CHECK REGISTRY:
-                // ensure the object doesn't already exist
-                if (objectExists(obj.getPid())) {
-                    throw new ObjectExistsException("The PID '"
-                            + obj.getPid()
-                            + "' already exists in the registry; the object can't be re-created.");
-                }
-
                 // GET DIGITAL OBJECT WRITER:
                 // get an object writer configured with the DEFAULT export format
                 logger.debug("Getting new writer with default export format: "
@@ -934,24 +1205,41 @@ public class DefaultDOManager
                                        m_storageCharacterEncoding,
                                        obj);
 
-                // WRITE LOCK:
-                // ensure no one else can modify the object now
-                getWriteLock(obj.getPid());
-
                 // DEFAULT DATASTREAMS:
                 populateDC(context, obj, w, nowUTC);
 
                 // DATASTREAM VALIDATION
                 ValidationUtility.validateReservedDatastreams(w);
 
-                // REGISTRY:
-                // at this point the object is valid, so make a record
-                // of it in the digital object registry
-                registerObject(obj);
+                // Only concurrent ingests of the same PID need to agree on
+                // who registers it; everything else runs unlocked.
+                Lock pidLock = m_ingestLocks.get(obj.getPid());
+                pidLock.lock();
+                try {
+                    // CHECK REGISTRY:
+                    // ensure the object doesn't already exist
+                    if (objectExists(obj.getPid())) {
+                        throw new ObjectExistsException("The PID '"
+                                + obj.getPid()
+                                + "' already exists in the registry; the object can't be re-created.");
+                    }
+
+                    // WRITE LOCK:
+                    // ensure no one else can modify the object now
+                    getWriteLock(obj.getPid());
+                    locked = true;
+
+                    // REGISTRY:
+                    // at this point the object is valid, so make a record
+                    // of it in the digital object registry
+                    registerObject(obj);
+                } finally {
+                    pidLock.unlock();
+                }
                 return w;
             } catch (IOException e) {
 
-                if (w != null) {
+                if (locked) {
                     releaseWriteLock(obj.getPid());
                 }
 
@@ -959,7 +1247,7 @@ public class DefaultDOManager
                         + "ingest file", e);
             } catch (Exception e) {
 
-                if (w != null) {
+                if (locked) {
                     releaseWriteLock(obj.getPid());
                 }
 
@@ -1061,6 +1349,20 @@ public class DefaultDOManager
 
             logger.info("Committing removal of " + obj.getPid());
 
+            // PENDING INDEX UPDATES:
+            // let any queued updates finish, so they don't re-index the
+            // object after it's gone
+            if (m_indexQueue != null) {
+                m_indexQueue.start();
+                try {
+                    m_indexQueue.flush(obj.getPid());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new GeneralException("Interrupted while waiting for "
+                            + "index updates to " + obj.getPid());
+                }
+            }
+
             // RESOURCE INDEX:
             // remove digital object from the resourceIndex
             // (nb: must happen before datastream storage removal - as relationships might be in managed datastreams)
@@ -1122,6 +1424,8 @@ public class DefaultDOManager
             if (m_readerCache != null) {
                 m_readerCache.remove(obj.getPid());
             }
+            m_planCache.remove(obj.getPid());
+            fireObjectChanged(obj.getPid());
 
             // REGISTRY:
             // Remove digital object from the registry
@@ -1141,6 +1445,13 @@ public class DefaultDOManager
                         + "), but that might be ok; continuing with purge");
             }
 
+            // REPOSITORY HASH:
+            // if this was the latest object modified, the latest date must
+            // be looked up again
+            Date lastModDate = obj.getLastModDate();
+            m_repositoryHash.objectPurged(lastModDate == null ? null
+                    : lastModDate.getTime());
+
 
             // OBJECT INGEST (ADD) OR MODIFY...
         } else {
@@ -1262,7 +1573,8 @@ public class DefaultDOManager
                 // MODIFIED DATE:
                 // set digital object last modified date, in UTC
                 obj.setLastModDate(Server.getCurrentDate(context));
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ReadableByteArrayOutputStream out =
+                        new ReadableByteArrayOutputStream();
 
                 // FINAL XML SERIALIZATION:
                 // serialize the object in its final form for persistent storage
@@ -1280,144 +1592,41 @@ public class DefaultDOManager
                 // is a large amount of the overhead of ingest.  Instead of a second run
                 // of the validation module, we depend on the integrity of our code to
                 // create valid XML files for persistent storage of digital objects.  As
-                // a sanity check, we check that we can deserialize the object we just serialized
+                // a sanity check, we check the object we just serialized according
+                // to the commitVerification setting.  All of these read the one
+                // serialized copy in place rather than copying it.
                 if (logger.isDebugEnabled()) {
-                    ByteArrayInputStream inV =
-                            new ByteArrayInputStream(out.toByteArray());
                     logger.debug("Final Validation (storage phase)");
-                    m_validator.validate(inV,
+                    m_validator.validate(out.toInputStream(),
                                          m_defaultStorageFormat,
                                          DOValidatorImpl.VALIDATE_ALL,
                                          "store");
                 }
-                /* Verify that we can deserialize our object.  */
-                m_translator
-                        .deserialize(new ByteArrayInputStream(out.toByteArray()),
-                             new BasicDigitalObject(),
-                             m_defaultStorageFormat,
-                             m_storageCharacterEncoding,
-                             DOTranslationUtility.SERIALIZE_STORAGE_INTERNAL);
-
-
-                // RESOURCE INDEX:
-                if (m_resourceIndex != null
-                        && m_resourceIndex.getIndexLevel() != ResourceIndex.INDEX_LEVEL_OFF) {
-                    logger.info("Adding to ResourceIndex");
-                    if (obj.isNew()) {
-                        m_resourceIndex.addObject(new SimpleDOReader(null,
-                                                                     null,
-                                                                     null,
-                                                                     null,
-                                                                     null,
-                                                                     obj));
-                    } else {
-                        m_resourceIndex.modifyObject(getReader(false, null, obj
-                                .getPid()), new SimpleDOReader(null,
-                                                               null,
-                                                               null,
-                                                               null,
-                                                               null,
-                                                               obj));
-
-                    }
-                    logger.debug("Finished adding to ResourceIndex.");
+                verifySerialization(obj.getPid(), out);
+
+
+                // RESOURCE INDEX, STORAGE, REGISTRY AND FIELDSEARCH INDEX:
+                // the resource index is updated from the difference between
+                // the stored and the new version, so read the stored version
+                // before it's replaced
+                boolean indexRI =
+                        m_resourceIndex != null
+                                && m_resourceIndex.getIndexLevel() != ResourceIndex.INDEX_LEVEL_OFF;
+                DOReader oldReader = null;
+                if (indexRI && !obj.isNew()) {
+                    oldReader = getReader(false, null, obj.getPid());
                 }
-
-                // STORAGE:
-                // write XML serialization of object to persistent storage
-                logger.debug("Storing digital object");
-                if (obj.isNew()) {
-                    m_permanentStore.addObject(obj.getPid(),
-                                               new ByteArrayInputStream(out
-                                                       .toByteArray()));
+                if (m_indexQueue != null) {
+                    commitWriteBehind(obj, out, indexRI, oldReader);
+                } else if (m_indexExecutor != null) {
+                    commitParallel(obj, out, indexRI, oldReader);
                 } else {
-                    m_permanentStore.replaceObject(obj.getPid(),
-                                                   new ByteArrayInputStream(out
-                                                           .toByteArray()));
-                }
-
-                // INVALIDATE DOREADER CACHE:
-                // now that the object xml is stored, make sure future DOReaders
-                // will get the latest copy
-                if (m_readerCache != null) {
-                    m_readerCache.remove(obj.getPid());
-                }
-
-                // REGISTRY:
-                /*
-                 * update systemVersion in doRegistry (add one), and update
-                 * deploymene maps if necesssary.
-                 */
-                logger.debug("Updating registry");
-                Connection conn = null;
-                Statement s = null;
-                ResultSet results = null;
-                try {
-                    conn = m_connectionPool.getReadWriteConnection();
-                    String query =
-                            "SELECT systemVersion " + "FROM doRegistry "
-                                    + "WHERE doPID='" + obj.getPid() + "'";
-                    s = conn.createStatement();
-                    results = s.executeQuery(query);
-                    if (!results.next()) {
-                        throw new ObjectNotFoundException("Error creating replication job: The requested object doesn't exist in the registry.");
+                    if (indexRI) {
+                        updateResourceIndex(obj, oldReader);
                     }
-                    int systemVersion = results.getInt("systemVersion");
-                    systemVersion++;
-                    s.executeUpdate("UPDATE doRegistry SET systemVersion="
-                            + systemVersion + " " + "WHERE doPID='"
-                            + obj.getPid() + "'");
-
-                    //TODO hasModel
-                    if (obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0)) {
-                        updateDeploymentMap(obj, conn, false);
-                    }
-                } catch (SQLException sqle) {
-                    throw new StorageDeviceException("Error creating replication job: "
-                            + sqle.getMessage());
-                } finally {
-                    try {
-                        if (results != null) {
-                            results.close();
-                        }
-                        if (s != null) {
-                            s.close();
-                        }
-                        if (conn != null) {
-                            m_connectionPool.free(conn);
-                        }
-                    } catch (SQLException sqle) {
-                        throw new StorageDeviceException("Unexpected error from SQL database: "
-                                + sqle.getMessage());
-                    } finally {
-                        results = null;
-                        s = null;
-                    }
-                }
-
-                // REPLICATE:
-                // add to replication jobs table and do replication to db
-                logger.info("Updating dissemination index");
-                String whichIndex = "FieldSearch";
-
-                try {
-                    logger.info("Updating FieldSearch index");
-                    m_fieldSearch.update(new SimpleDOReader(null,
-                                                            null,
-                                                            null,
-                                                            null,
-                                                            null,
-                                                            obj));
-
-                    // FIXME: also remove from temp storage if this is successful
-                    //                    removeReplicationJob(obj.getPid());
-                } catch (ServerException se) {
-                    logger.error("Error updating " + whichIndex + " index", se);
-                    throw se;
-                } catch (Throwable th) {
-                    String msg = "Error updating " + whichIndex + " index";
-                    logger.error(msg, th);
-                    throw new GeneralException(msg, th);
+                    storeObject(obj, out);
+                    updateRegistry(obj);
+                    updateFieldSearch(obj);
                 }
             } catch (Throwable th) {
                 if (obj.isNew()) {
@@ -1451,6 +1660,337 @@ public class DefaultDOManager
         return dates;
     }
 
+    /**
+     * Stores the object and updates the registry on the calling thread while
+     * the indexes are updated on others, then waits for all of them.  If any
+     * step fails, the first failure is thrown once all have finished.
+     * <p>
+     * So unlike a sequential commit, in which a ResourceIndex failure stops
+     * the commit before the object is stored, an index failure is only
+     * thrown after the object has been stored and registered.  The commit
+     * still fails, and a new object is removed again as for any failed
+     * ingest, but a modified object keeps its new stored version while the
+     * index that failed still describes the old one.
+     */
+    private void commitParallel(final DigitalObject obj,
+                                ReadableByteArrayOutputStream out,
+                                boolean indexRI,
+                                final DOReader oldReader)
+            throws ServerException {
+        List<Future<Void>> updates = new ArrayList<Future<Void>>(2);
+        if (indexRI) {
+            updates.add(m_indexExecutor.submit(new Callable<Void>() {
+
+                public Void call() throws Exception {
+                    updateResourceIndex(obj, oldReader);
+                    return null;
+                }
+            }));
+        }
+        updates.add(m_indexExecutor.submit(new Callable<Void>() {
+
+            public Void call() throws Exception {
+                updateFieldSearch(obj);
+                return null;
+            }
+        }));
+
+        Throwable failure = null;
+        try {
+            storeObject(obj, out);
+            updateRegistry(obj);
+        } catch (Throwable th) {
+            failure = th;
+        }
+        // always wait, so nothing is still indexing the object if the
+        // commit is rolled back
+        for (Future<Void> update : updates) {
+            try {
+                update.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure instanceof ServerException) {
+            throw (ServerException) failure;
+        } else if (failure != null) {
+            throw new GeneralException("Error committing " + obj.getPid(),
+                                       failure);
+        }
+    }
+
+    /**
+     * Stores the object and updates the registry, leaving the index updates
+     * to the index queue.  The update is recorded in the queue before the
+     * object is stored, so it will be replayed if the server stops before
+     * the update is applied.
+     */
+    private void commitWriteBehind(final DigitalObject obj,
+                                   ReadableByteArrayOutputStream out,
+                                   final boolean indexRI,
+                                   final DOReader oldReader)
+            throws ServerException {
+        m_indexQueue.start();
+        InputStream oldObject = null;
+        if (indexRI && !obj.isNew()) {
+            oldObject = m_permanentStore.retrieveObject(obj.getPid());
+        }
+        IndexUpdateQueue.Entry entry;
+        try {
+            entry = m_indexQueue.persist(obj.getPid(), oldObject);
+        } catch (IOException e) {
+            throw new StorageDeviceException("Unable to queue index update for "
+                    + obj.getPid() + ": " + e.getMessage());
+        }
+        try {
+            storeObject(obj, out);
+        } catch (ServerException e) {
+            m_indexQueue.discard(entry);
+            throw e;
+        } catch (RuntimeException e) {
+            m_indexQueue.discard(entry);
+            throw e;
+        }
+        m_indexQueue.submit(entry, new Callable<Void>() {
+
+            public Void call() throws Exception {
+                if (indexRI) {
+                    updateResourceIndex(obj, oldReader);
+                }
+                updateFieldSearch(obj);
+                return null;
+            }
+        });
+        updateRegistry(obj);
+    }
+
+    /**
+     * Brings the indexes up to date with the stored version of an object,
+     * for an index update left in the queue by a previous run.
+     */
+    private void replayIndexUpdate(String pid, InputStream oldObject)
+            throws ServerException {
+        if (!objectExists(pid)) {
+            // purged since; the purge cleaned up the indexes
+            logger.info("Not replaying index update for " + pid
+                    + "; it no longer exists");
+            return;
+        }
+        if (!isStored(pid)) {
+            // a new object whose commit stopped before it was stored; it
+            // would fail this way at every startup
+            logger.warn("Dropping index update for " + pid
+                    + "; it is registered but not in the object store");
+            return;
+        }
+        logger.info("Replaying index update for " + pid);
+        DOReader reader = getReader(false, null, pid);
+        if (m_resourceIndex.getIndexLevel() != ResourceIndex.INDEX_LEVEL_OFF) {
+            if (oldObject == null) {
+                m_resourceIndex.addObject(reader);
+            } else {
+                BasicDigitalObject old = new BasicDigitalObject();
+                m_translator.deserialize(oldObject,
+                                         old,
+                                         m_defaultStorageFormat,
+                                         m_storageCharacterEncoding,
+                                         DOTranslationUtility.DESERIALIZE_INSTANCE);
+                m_resourceIndex.modifyObject(new SimpleDOReader(null,
+                                                                null,
+                                                                null,
+                                                                null,
+                                                                null,
+                                                                old), reader);
+            }
+        }
+        m_fieldSearch.update(reader);
+    }
+
+    /**
+     * Tells whether the object store has a serialization of the object.
+     */
+    private boolean isStored(String pid) throws LowlevelStorageException {
+        try {
+            m_permanentStore.retrieveObject(pid).close();
+            return true;
+        } catch (ObjectNotInLowlevelStorageException e) {
+            return false;
+        } catch (IOException e) {
+            // it was there to open
+            return true;
+        }
+    }
+
+    private void updateResourceIndex(DigitalObject obj, DOReader oldReader)
+            throws ServerException {
+        logger.info("Adding to ResourceIndex");
+        if (obj.isNew()) {
+            m_resourceIndex.addObject(new SimpleDOReader(null,
+                                                         null,
+                                                         null,
+                                                         null,
+                                                         null,
+                                                         obj));
+        } else {
+            m_resourceIndex.modifyObject(oldReader,
+                                         new SimpleDOReader(null,
+                                                            null,
+                                                            null,
+                                                            null,
+                                                            null,
+                                                            obj));
+        }
+        logger.debug("Finished adding to ResourceIndex.");
+    }
+
+    private void storeObject(DigitalObject obj,
+                             ReadableByteArrayOutputStream out)
+            throws ServerException {
+        // STORAGE:
+        // write XML serialization of object to persistent storage
+        logger.debug("Storing digital object");
+        if (obj.isNew()) {
+            m_permanentStore.addObject(obj.getPid(), out.toInputStream());
+        } else {
+            m_permanentStore.replaceObject(obj.getPid(), out.toInputStream());
+        }
+
+        // INVALIDATE DOREADER CACHE:
+        // now that the object xml is stored, make sure future DOReaders
+        // will get the latest copy
+        if (m_readerCache != null) {
+            m_readerCache.remove(obj.getPid());
+        }
+        m_planCache.remove(obj.getPid());
+        fireObjectChanged(obj.getPid());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addObjectChangeListener(ObjectChangeListener listener) {
+        m_changeListeners.add(listener);
+    }
+
+    private void fireObjectChanged(String pid) {
+        for (ObjectChangeListener listener : m_changeListeners) {
+            try {
+                listener.objectChanged(pid);
+            } catch (RuntimeException e) {
+                logger.warn("Error telling " + listener + " of change to "
+                        + pid, e);
+            }
+        }
+    }
+
+    private void updateRegistry(DigitalObject obj) throws ServerException {
+        // REGISTRY:
+        /*
+         * update systemVersion in doRegistry (add one), and update
+         * deploymene maps if necesssary.
+         */
+        logger.debug("Updating registry");
+        Connection conn = null;
+        try {
+            if (!m_registry.incrementSystemVersion(obj.getPid())) {
+                throw new ObjectNotFoundException("Error creating replication job: The requested object doesn't exist in the registry.");
+            }
+            m_repositoryHash.objectCommitted(obj.getLastModDate().getTime());
+
+            //TODO hasModel
+            if (obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0)) {
+                conn = m_connectionPool.getReadWriteConnection();
+                updateDeploymentMap(obj, conn, false);
+            }
+        } catch (SQLException sqle) {
+            throw new StorageDeviceException("Error creating replication job: "
+                    + sqle.getMessage());
+        } finally {
+            if (conn != null) {
+                m_connectionPool.free(conn);
+            }
+        }
+    }
+
+    private void updateFieldSearch(DigitalObject obj) throws ServerException {
+        // REPLICATE:
+        // add to replication jobs table and do replication to db
+        logger.info("Updating dissemination index");
+        String whichIndex = "FieldSearch";
+
+        try {
+            logger.info("Updating FieldSearch index");
+            m_fieldSearch.update(new SimpleDOReader(null,
+                                                    null,
+                                                    null,
+                                                    null,
+                                                    null,
+                                                    obj));
+
+            // FIXME: also remove from temp storage if this is successful
+            //                    removeReplicationJob(obj.getPid());
+        } catch (ServerException se) {
+            logger.error("Error updating " + whichIndex + " index", se);
+            throw se;
+        } catch (Throwable th) {
+            String msg = "Error updating " + whichIndex + " index";
+            logger.error(msg, th);
+            throw new GeneralException(msg, th);
+        }
+    }
+
+    /**
+     * Checks the final serialization of an object before it is stored, as
+     * configured by the commitVerification parameter: not at all, by parsing
+     * it for well-formedness, or by fully deserializing it.
+     */
+    private void verifySerialization(String pid,
+                                     ReadableByteArrayOutputStream out)
+            throws ServerException {
+        if (m_commitVerification.equals(COMMIT_VERIFICATION_FULL)) {
+            m_translator.deserialize(out.toInputStream(),
+                                     new BasicDigitalObject(),
+                                     m_defaultStorageFormat,
+                                     m_storageCharacterEncoding,
+                                     DOTranslationUtility.SERIALIZE_STORAGE_INTERNAL);
+        } else if (m_commitVerification.equals(COMMIT_VERIFICATION_WELLFORMED)) {
+            checkWellFormed(pid, out);
+        }
+    }
+
+    /**
+     * Parses the serialization of an object with a no-op handler, reading
+     * it from the buffer it was written to rather than from a copy.
+     *
+     * @throws ObjectIntegrityException
+     *         if the serialization is not well-formed.
+     */
+    static void checkWellFormed(String pid, ReadableByteArrayOutputStream out)
+            throws ServerException {
+        SAXParser parser = null;
+        try {
+            parser = XmlParserUtility.getSAXParser();
+            parser.parse(out.toInputStream(), new DefaultHandler());
+        } catch (SAXException e) {
+            throw new ObjectIntegrityException("Serialization of " + pid
+                    + " is not well-formed: " + e.getMessage());
+        } catch (Exception e) {
+            throw new GeneralException("Unable to check serialization of "
+                    + pid + ": " + e.getMessage(), e);
+        } finally {
+            if (parser != null) {
+                XmlParserUtility.releaseSAXParser(parser);
+            }
+        }
+    }
+
     private void deletePurgedDatastreams(DigitalObject obj, Context context) {
         try {
             // for each datastream that existed before the change:
@@ -1506,38 +2046,11 @@ public class DefaultDOManager
      */
     public boolean objectExists(String pid) throws StorageDeviceException {
         logger.debug("Checking if " + pid + " already exists");
-        Connection conn = null;
-        Statement s = null;
-        ResultSet results = null;
         try {
-            String query =
-                    "SELECT doPID " + "FROM doRegistry " + "WHERE doPID='"
-                            + pid + "'";
-            conn = m_connectionPool.getReadOnlyConnection();
-            s = conn.createStatement();
-            results = s.executeQuery(query);
-            return results.next(); // 'true' if match found, else 'false'
+            return m_registry.exists(pid);
         } catch (SQLException sqle) {
             throw new StorageDeviceException("Unexpected error from SQL database: "
                     + sqle.getMessage());
-        } finally {
-            try {
-                if (results != null) {
-                    results.close();
-                }
-                if (s != null) {
-                    s.close();
-                }
-                if (conn != null) {
-                    m_connectionPool.free(conn);
-                }
-            } catch (SQLException sqle) {
-                throw new StorageDeviceException("Unexpected error from SQL database: "
-                        + sqle.getMessage());
-            } finally {
-                results = null;
-                s = null;
-            }
         }
     }
 
@@ -1546,20 +2059,9 @@ public class DefaultDOManager
      * exist in the registry before calling this method.
      */
     private void registerObject(DigitalObject obj) throws StorageDeviceException {
-        String theLabel = "the label field is no longer used";
-        String ownerID = "the ownerID field is no longer used";
-        String pid = obj.getPid();
-
-        Connection conn = null;
-        Statement st = null;
         try {
-            String query =
-                    "INSERT INTO doRegistry (doPID,  " + "ownerId, label) "
-                            + "VALUES ('" + pid + "', '" + ownerID + "', '"
-                            + theLabel + "')";
-            conn = m_connectionPool.getReadWriteConnection();
-            st = conn.createStatement();
-            st.executeUpdate(query);
+            m_registry.register(obj.getPid());
+            m_repositoryHash.objectRegistered();
         } catch (SQLException sqle) {
             // clean up if the INSERT didn't succeeed
             try {
@@ -1569,20 +2071,6 @@ public class DefaultDOManager
             // ...then notify the caller with the original exception
             throw new StorageDeviceException("Unexpected error from SQL database while registering object: "
                     + sqle.getMessage());
-        } finally {
-            try {
-                if (st != null) {
-                    st.close();
-                }
-                if (conn != null) {
-                    m_connectionPool.free(conn);
-                }
-            } catch (Exception sqle) {
-                throw new StorageDeviceException("Unexpected error from SQL database while registering object: "
-                        + sqle.getMessage());
-            } finally {
-                st = null;
-            }
         }
     }
 
@@ -1591,36 +2079,23 @@ public class DefaultDOManager
      */
     private void unregisterObject(DigitalObject obj)
             throws StorageDeviceException {
-        String pid = obj.getPid();
         Connection conn = null;
-        Statement st = null;
         try {
-            conn = m_connectionPool.getReadWriteConnection();
-            st = conn.createStatement();
-            st
-                    .executeUpdate("DELETE FROM doRegistry WHERE doPID='" + pid
-                            + "'");
+            if (m_registry.unregister(obj.getPid())) {
+                m_repositoryHash.objectUnregistered();
+            }
 
             //TODO hasModel
             if (obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0)) {
+                conn = m_connectionPool.getReadWriteConnection();
                 updateDeploymentMap(obj, conn, true);
             }
         } catch (SQLException sqle) {
             throw new StorageDeviceException("Unexpected error from SQL database while unregistering object: "
                     + sqle.getMessage());
         } finally {
-            try {
-                if (st != null) {
-                    st.close();
-                }
-                if (conn != null) {
-                    m_connectionPool.free(conn);
-                }
-            } catch (Exception sqle) {
-                throw new StorageDeviceException("Unexpected error from SQL database while unregistering object: "
-                        + sqle.getMessage());
-            } finally {
-                st = null;
+            if (conn != null) {
+                m_connectionPool.free(conn);
             }
         }
     }
@@ -1849,24 +2324,69 @@ public class DefaultDOManager
         }
     }
 
+    /**
+     * Reads the repository hash from the database, to be kept up to date in
+     * memory from now on.
+     */
+    private void initRepositoryHash() throws ModuleInitializationException {
+        Connection conn = null;
+        try {
+            conn = m_connectionPool.getReadOnlyConnection();
+            m_repositoryHash =
+                    new RepositoryHash(getNumObjectsWithVersion(conn, 0),
+                                       getLatestModificationDate(conn, ""));
+            logger.info("Initial repository hash is "
+                    + m_repositoryHash.getValue());
+        } catch (SQLException e) {
+            throw new ModuleInitializationException("Error reading repository hash: "
+                                                            + e.getMessage(),
+                                                    getRole());
+        } finally {
+            if (conn != null) {
+                m_connectionPool.free(conn);
+            }
+        }
+    }
+
     public String getRepositoryHash() throws ServerException {
 
         // This implementation returns a string containing the
         // total number of objects in the repository, followed by the
         // latest object's modification date (utc millis)
         // in the format: "10|194861293462"
+        //
+        // Both are kept in memory; the database is only consulted when the
+        // most recently modified object has been purged, or to verify them.
+
+        String hash = m_repositoryHash.getValue();
+        if (hash != null && !m_verifyRepositoryHash) {
+            return hash;
+        }
 
         Connection conn = null;
         try {
             conn = m_connectionPool.getReadOnlyConnection();
-
-            StringBuffer hash = new StringBuffer();
-            hash.append(getNumObjectsWithVersion(conn, 0));
-            hash.append("|");
-
-            hash.append(getLatestModificationDate(conn, ""));
-
-            return hash.toString();
+            while (hash == null) {
+                // unknown again if another purge happens during the lookup
+                long generation = m_repositoryHash.getGeneration();
+                m_repositoryHash.setLatestModDate(getLatestModificationDate(conn,
+                                                                            ""),
+                                                  generation);
+                hash = m_repositoryHash.getValue();
+            }
+            if (m_verifyRepositoryHash) {
+                int count = getNumObjectsWithVersion(conn, 0);
+                long latest = getLatestModificationDate(conn, "");
+                String stored = count + "|" + latest;
+                if (!stored.equals(hash)) {
+                    logger.warn("Repository hash " + hash
+                            + " doesn't match the database (" + stored
+                            + "); using the database's");
+                    m_repositoryHash.reset(count, latest);
+                    hash = stored;
+                }
+            }
+            return hash;
 
         } catch (SQLException e) {
             throw new GeneralException("SQL error encountered while computing "
@@ -0,0 +1,232 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fcrepo.common.Models;
+
+import org.fcrepo.server.storage.types.DeploymentDSBindSpec;
+import org.fcrepo.server.storage.types.DigitalObject;
+import org.fcrepo.server.storage.types.MethodDef;
+import org.fcrepo.server.storage.types.MethodDefOperationBind;
+
+/**
+ * The service definition and deployment objects used by disseminations,
+ * kept deserialized along with what has been parsed from their METHODMAP,
+ * WSDL and DSINPUTSPEC datastreams.
+ *
+ * <p>A plan is made the first time a service object is read, and its
+ * datastreams are parsed the first time the reader asks for them. Plans are
+ * only used for the current version of an object; readers asked for an
+ * earlier version parse the datastreams themselves. The DOManager removes an
+ * object's plan whenever the object is committed or purged, and whenever the
+ * deployment map changes, so that a plan always reflects the last modified
+ * date of its object.
+ *
+ * <p>Before an object is read, its slot in the cache is reserved, and the
+ * plan made from it only replaces that reservation. Removing the object's
+ * plan also removes the reservation, so a plan read while the object was
+ * being changed is not kept. Removals of other objects don't matter.
+ *
+ * <p>Only plans for service definitions and deployments are kept, since the
+ * PID of the service object comes from the request and may name any object.
+ * Service objects are few, so the number of plans is bounded only as a
+ * guard: when it is reached, an arbitrary plan is dropped to make room.
+ *
+ * <p>What a plan holds is shared by every request and must not be modified.
+ *
+ * @version $Id$
+ */
+public class DisseminationPlanCache {
+
+    /** The default maximum number of plans. */
+    public static final int DEFAULT_MAX_PLANS = 1000;
+
+    private final int m_maxPlans;
+
+    /** Plans, and reservations (slots without a plan). */
+    private final ConcurrentMap<String, Slot> m_slots =
+            new ConcurrentHashMap<String, Slot>();
+
+    private final AtomicLong m_hits = new AtomicLong();
+
+    private final AtomicLong m_misses = new AtomicLong();
+
+    public DisseminationPlanCache() {
+        this(DEFAULT_MAX_PLANS);
+    }
+
+    /**
+     * @param maxPlans
+     *        the maximum number of plans to keep.
+     */
+    public DisseminationPlanCache(int maxPlans) {
+        m_maxPlans = maxPlans;
+    }
+
+    /**
+     * Gets the plan for an object.
+     *
+     * @return the plan, or null if there is none.
+     */
+    public Plan get(String pid) {
+        Slot slot = m_slots.get(pid);
+        if (slot != null && slot.plan != null) {
+            m_hits.incrementAndGet();
+            return slot.plan;
+        }
+        m_misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Reserves the slot for an object that is about to be read, unless it is
+     * already reserved.
+     *
+     * @return the reservation, to be passed to
+     *         {@link #put(String, DigitalObject, Object)} along with the
+     *         object once it has been read.
+     */
+    public Object reserve(String pid) {
+        Slot reservation = new Slot(null);
+        Slot current = m_slots.putIfAbsent(pid, reservation);
+        return current == null ? reservation : current;
+    }
+
+    /**
+     * Makes a plan for an object that has just been read.
+     *
+     * @param pid
+     *        the PID the object was read by.
+     * @param reservation
+     *        the reservation made before the object was read.
+     * @return the plan, which is only cached if the object is a service
+     *         definition or deployment and its slot is still reserved.
+     */
+    public Plan put(String pid, DigitalObject obj, Object reservation) {
+        Plan plan = new Plan(obj);
+        if (!pid.equals(obj.getPid()) || !isServiceObject(obj)) {
+            // another form of the PID wouldn't be removed on commit
+            m_slots.remove(pid, reservation);
+        } else if (m_slots.replace(pid, (Slot) reservation, new Slot(plan))) {
+            makeRoom(pid);
+        }
+        return plan;
+    }
+
+    /**
+     * Gives up a reservation, if the object could not be read.
+     */
+    public void cancel(String pid, Object reservation) {
+        m_slots.remove(pid, reservation);
+    }
+
+    /**
+     * Removes the plan for an object, or the reservation for it, if there is
+     * one.
+     */
+    public void remove(String pid) {
+        m_slots.remove(pid);
+    }
+
+    /**
+     * Removes every plan and reservation.
+     */
+    public void clear() {
+        m_slots.clear();
+    }
+
+    /**
+     * @return the number of plans and reservations.
+     */
+    public int size() {
+        return m_slots.size();
+    }
+
+    public long getHitCount() {
+        return m_hits.get();
+    }
+
+    public long getMissCount() {
+        return m_misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DisseminationPlanCache (size=" + size() + ", hits="
+                + getHitCount() + ", misses=" + getMissCount() + ")";
+    }
+
+    private static boolean isServiceObject(DigitalObject obj) {
+        return obj.hasContentModel(Models.SERVICE_DEFINITION_3_0)
+                || obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0);
+    }
+
+    /**
+     * Drops slots other than the one just filled until the cache is within
+     * its bound.
+     */
+    private void makeRoom(String keep) {
+        Iterator<String> pids = m_slots.keySet().iterator();
+        while (m_slots.size() > m_maxPlans && pids.hasNext()) {
+            String pid = pids.next();
+            if (!pid.equals(keep)) {
+                pids.remove();
+            }
+        }
+    }
+
+    private static class Slot {
+
+        /** Null if the slot is only reserved. */
+        final Plan plan;
+
+        Slot(Plan plan) {
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * A service object and what has been parsed from its current
+     * datastreams.
+     *
+     * <p>Each part is parsed at most once per plan, give or take a race
+     * between the first requests; parsing again gives an equivalent result.
+     */
+    public static class Plan {
+
+        private final DigitalObject m_obj;
+
+        private final long m_lastModified;
+
+        volatile MethodDef[] methods;
+
+        volatile MethodDefOperationBind[] bindings;
+
+        volatile DeploymentDSBindSpec dsInputSpec;
+
+        Plan(DigitalObject obj) {
+            m_obj = obj;
+            m_lastModified =
+                    obj.getLastModDate() == null ? 0 : obj.getLastModDate()
+                            .getTime();
+        }
+
+        public DigitalObject getObject() {
+            return m_obj;
+        }
+
+        /**
+         * @return the last modified date of the object, in milliseconds.
+         */
+        public long getLastModified() {
+            return m_lastModified;
+        }
+    }
+}
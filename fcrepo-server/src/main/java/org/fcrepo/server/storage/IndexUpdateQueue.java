@@ -0,0 +1,443 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent queue of pending index updates, used when the DOManager is
+ * configured to update the ResourceIndex and FieldSearch index behind the
+ * commit rather than as part of it.
+ *
+ * <p>Before an object is stored, an entry is written (and synced) to the
+ * queue directory recording the PID and, for modified objects, the object's
+ * previous serialization.  Once the object is stored, the in-memory update
+ * is handed to a worker and the commit returns.  The entry is deleted when
+ * the update succeeds.  Entries left behind by a crash or a failed update
+ * are replayed the next time the queue is created, by diffing the recorded
+ * previous version against the object as it is now stored.
+ *
+ * <p>Updates for the same PID always go to the same worker and so are
+ * applied in commit order; updates for different PIDs are spread over all
+ * workers.  No update runs until {@link #start()} has been called.
+ *
+ * <p>While updates are being applied, the number applied, failed and
+ * waiting, and how long the oldest has waited, are logged at INFO level
+ * once a minute.
+ *
+ * @version $Id$
+ */
+public class IndexUpdateQueue {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(IndexUpdateQueue.class);
+
+    private static final String ENTRY_SUFFIX = ".idx";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final long REPORT_INTERVAL = 60 * 1000;
+
+    /**
+     * Re-applies an index update from a persisted queue entry.
+     */
+    public interface Replayer {
+
+        /**
+         * Brings the indexes for the given object up to date with its stored
+         * version.
+         *
+         * @param pid the object's PID.
+         * @param oldObject the previous serialization of the object, or null
+         *        if the object was new.
+         */
+        void replay(String pid, InputStream oldObject) throws Exception;
+    }
+
+    /**
+     * A persisted queue entry.
+     */
+    public static class Entry {
+
+        private final long m_seq;
+
+        private final String m_pid;
+
+        private final File m_file;
+
+        private Entry(long seq, String pid, File file) {
+            m_seq = seq;
+            m_pid = pid;
+            m_file = file;
+        }
+
+        public String getPid() {
+            return m_pid;
+        }
+    }
+
+    private final File m_dir;
+
+    private final ExecutorService[] m_workers;
+
+    private final Replayer m_replayer;
+
+    private final CountDownLatch m_started = new CountDownLatch(1);
+
+    private final AtomicLong m_nextSeq;
+
+    /** Creation time of each pending entry, by sequence number. */
+    private final Map<Long, Long> m_pending =
+            new ConcurrentSkipListMap<Long, Long>();
+
+    private final AtomicLong m_completed = new AtomicLong();
+
+    private final AtomicLong m_failed = new AtomicLong();
+
+    private final AtomicLong m_lastReportTime =
+            new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Creates the queue, queueing any entries found in the directory for
+     * replay.
+     *
+     * @param dir the directory in which entries are kept.
+     * @param workers the number of worker threads.
+     * @param replayer applies entries left over from a previous run.
+     * @throws IOException if the directory can't be created or read.
+     */
+    public IndexUpdateQueue(File dir, int workers, Replayer replayer)
+            throws IOException {
+        m_dir = dir;
+        m_replayer = replayer;
+        if (!m_dir.isDirectory() && !m_dir.mkdirs()) {
+            throw new IOException("Unable to create index queue directory: "
+                    + m_dir.getPath());
+        }
+        m_workers = new ExecutorService[workers];
+        for (int i = 0; i < workers; i++) {
+            m_workers[i] =
+                    Executors.newSingleThreadExecutor(new WorkerFactory(i));
+        }
+        m_nextSeq = new AtomicLong(recover() + 1);
+    }
+
+    /**
+     * Lets queued updates run.  Until this is called, updates (including
+     * any being replayed) are only queued.  Calling it again has no effect.
+     */
+    public void start() {
+        m_started.countDown();
+    }
+
+    /**
+     * Durably records that the indexes for an object are about to change.
+     *
+     * @param pid the object's PID.
+     * @param oldObject the object's current serialization, or null if the
+     *        object is new.  The stream is read fully and closed.
+     * @return the entry, to be given to {@link #submit} once the object is
+     *         stored, or to {@link #discard} if it is not.
+     */
+    public Entry persist(String pid, InputStream oldObject) throws IOException {
+        long seq = m_nextSeq.getAndIncrement();
+        long created = System.currentTimeMillis();
+        File temp = new File(m_dir, seq + TEMP_SUFFIX);
+        FileOutputStream fileOut = new FileOutputStream(temp);
+        try {
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeUTF(pid);
+            out.writeLong(created);
+            out.writeBoolean(oldObject != null);
+            if (oldObject != null) {
+                // not StreamUtility.pipeStream: it closes the file before we
+                // can sync it
+                byte[] buf = new byte[8192];
+                int len;
+                while ((len = oldObject.read(buf)) > 0) {
+                    out.write(buf, 0, len);
+                }
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+            if (oldObject != null) {
+                oldObject.close();
+            }
+        }
+        File file = new File(m_dir, seq + ENTRY_SUFFIX);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to create index queue entry: "
+                    + file.getPath());
+        }
+        m_pending.put(seq, created);
+        return new Entry(seq, pid, file);
+    }
+
+    /**
+     * Forgets an entry whose object was not stored after all.
+     */
+    public void discard(Entry entry) {
+        m_pending.remove(entry.m_seq);
+        if (!entry.m_file.delete()) {
+            logger.warn("Unable to delete index queue entry: "
+                    + entry.m_file.getPath());
+        }
+    }
+
+    /**
+     * Queues the update for an entry.  The entry is deleted once the update
+     * succeeds; if it fails, the entry is kept to be replayed when the
+     * server next starts.
+     */
+    public void submit(Entry entry, Callable<?> update) {
+        workerFor(entry.m_pid).execute(new Task(entry, update));
+    }
+
+    /**
+     * Waits until every update submitted so far for the given PID has been
+     * applied (or has failed).
+     */
+    public void flush(String pid) throws InterruptedException {
+        Future<?> marker = workerFor(pid).submit(new Runnable() {
+
+            public void run() {
+            }
+        });
+        try {
+            marker.get();
+        } catch (ExecutionException e) {
+            // the marker does nothing, so can't fail
+        }
+    }
+
+    /**
+     * Stops the workers, waiting a while for queued updates to finish.  Any
+     * that don't finish are replayed when the server next starts.
+     */
+    public void shutdown() {
+        for (ExecutorService worker : m_workers) {
+            worker.shutdown();
+        }
+        try {
+            for (ExecutorService worker : m_workers) {
+                worker.awaitTermination(30, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (ExecutorService worker : m_workers) {
+            worker.shutdownNow();
+        }
+    }
+
+    /** The number of updates queued but not yet applied. */
+    public int getDepth() {
+        return m_pending.size();
+    }
+
+    /**
+     * How long ago, in milliseconds, the oldest pending update was queued;
+     * zero if nothing is pending.
+     */
+    public long getLagMillis() {
+        for (Long created : m_pending.values()) {
+            return Math.max(0, System.currentTimeMillis() - created);
+        }
+        return 0;
+    }
+
+    /** The number of updates applied since the queue was created. */
+    public long getCompletedCount() {
+        return m_completed.get();
+    }
+
+    /** The number of updates that failed and were left for replay. */
+    public long getFailedCount() {
+        return m_failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "IndexUpdateQueue[depth=" + getDepth() + ", lagMillis="
+                + getLagMillis() + ", completed=" + getCompletedCount()
+                + ", failed=" + getFailedCount() + "]";
+    }
+
+    private void report() {
+        if (logger.isInfoEnabled()) {
+            logger.info("Index updates: " + getCompletedCount() + " applied, "
+                    + getFailedCount() + " failed, " + getDepth()
+                    + " waiting; oldest waiting " + getLagMillis() + " ms");
+        }
+    }
+
+    private ExecutorService workerFor(String pid) {
+        return m_workers[(pid.hashCode() & 0x7fffffff) % m_workers.length];
+    }
+
+    /**
+     * Queues leftover entries for replay, in sequence order.
+     *
+     * @return the highest sequence number found.
+     */
+    private long recover() throws IOException {
+        File[] files = m_dir.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list index queue directory: "
+                    + m_dir.getPath());
+        }
+        long maxSeq = 0;
+        long[] seqs = new long[files.length];
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // never completed, so its object was never stored
+                file.delete();
+            } else if (name.endsWith(ENTRY_SUFFIX)) {
+                try {
+                    long seq = Long.parseLong(name.substring(0, name.length()
+                            - ENTRY_SUFFIX.length()));
+                    seqs[count++] = seq;
+                    maxSeq = Math.max(maxSeq, seq);
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unrecognized file in index queue "
+                            + "directory: " + file.getPath());
+                }
+            }
+        }
+        seqs = Arrays.copyOf(seqs, count);
+        Arrays.sort(seqs);
+        for (long seq : seqs) {
+            File file = new File(m_dir, seq + ENTRY_SUFFIX);
+            DataInputStream in =
+                    new DataInputStream(new FileInputStream(file));
+            try {
+                String pid = in.readUTF();
+                long created = in.readLong();
+                Entry entry = new Entry(seq, pid, file);
+                m_pending.put(seq, created);
+                submit(entry, new ReplayUpdate(entry));
+            } finally {
+                in.close();
+            }
+        }
+        if (count > 0) {
+            logger.info("Replaying " + count + " pending index update(s) from "
+                    + m_dir.getPath());
+        }
+        return maxSeq;
+    }
+
+    private class ReplayUpdate
+            implements Callable<Void> {
+
+        private final Entry m_entry;
+
+        ReplayUpdate(Entry entry) {
+            m_entry = entry;
+        }
+
+        public Void call() throws Exception {
+            DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(new FileInputStream(m_entry.m_file)));
+            try {
+                in.readUTF();
+                in.readLong();
+                m_replayer.replay(m_entry.m_pid, in.readBoolean() ? in : null);
+            } finally {
+                in.close();
+            }
+            return null;
+        }
+    }
+
+    private class Task
+            implements Runnable {
+
+        private final Entry m_entry;
+
+        private final Callable<?> m_update;
+
+        Task(Entry entry, Callable<?> update) {
+            m_entry = entry;
+            m_update = update;
+        }
+
+        public void run() {
+            try {
+                m_started.await();
+            } catch (InterruptedException e) {
+                // shutting down before we started; leave it for replay
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                m_update.call();
+                m_pending.remove(m_entry.m_seq);
+                m_completed.incrementAndGet();
+                if (!m_entry.m_file.delete()) {
+                    logger.warn("Unable to delete index queue entry: "
+                            + m_entry.m_file.getPath());
+                }
+            } catch (Throwable th) {
+                m_pending.remove(m_entry.m_seq);
+                m_failed.incrementAndGet();
+                logger.error("Index update for " + m_entry.m_pid
+                        + " failed; it will be replayed at next startup", th);
+            }
+
+            long last = m_lastReportTime.get();
+            long now = System.currentTimeMillis();
+            if (now - last >= REPORT_INTERVAL
+                    && m_lastReportTime.compareAndSet(last, now)) {
+                report();
+            }
+        }
+    }
+
+    private static class WorkerFactory
+            implements ThreadFactory {
+
+        private final int m_index;
+
+        WorkerFactory(int index) {
+            m_index = index;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "IndexUpdateQueue-" + m_index);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
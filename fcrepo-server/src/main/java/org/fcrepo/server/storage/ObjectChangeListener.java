@@ -0,0 +1,23 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+/**
+ * Told by the {@link DOManager} when an object has been committed or purged,
+ * so that anything derived from the stored object can be discarded.
+ *
+ * <p>Listeners are called on the committing thread, after the object has been
+ * written to (or removed from) permanent storage, and should return quickly.
+ *
+ * @version $Id$
+ */
+public interface ObjectChangeListener {
+
+    /**
+     * The object with the given PID has been ingested, modified or purged.
+     */
+    public void objectChanged(String pid);
+
+}
@@ -0,0 +1,150 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to the doRegistry table, the record of which objects exist.
+ *
+ * <p>Every statement is prepared from fixed SQL text with the PID bound as a
+ * parameter.  Objects are registered and unregistered one at a time, and a
+ * statement is prepared for each call; the connection pool doesn't keep
+ * them.  Because the text doesn't vary with the PID, a database or JDBC
+ * driver that caches statements (enabled with a <code>connection.</code>
+ * parameter of the datastore, where the driver supports it) can reuse one
+ * plan for each kind of lookup or update.
+ *
+ * @version $Id$
+ */
+public class ObjectRegistry {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(ObjectRegistry.class);
+
+    /** Values of columns that are no longer used, but can't be null. */
+    private static final String UNUSED_LABEL =
+            "the label field is no longer used";
+
+    private static final String UNUSED_OWNER_ID =
+            "the ownerID field is no longer used";
+
+    private static final String EXISTS_SQL =
+            "SELECT doPID FROM doRegistry WHERE doPID = ?";
+
+    private static final String REGISTER_SQL =
+            "INSERT INTO doRegistry (doPID, ownerId, label) VALUES (?, ?, ?)";
+
+    private static final String UNREGISTER_SQL =
+            "DELETE FROM doRegistry WHERE doPID = ?";
+
+    private static final String INCREMENT_SQL =
+            "UPDATE doRegistry SET systemVersion = systemVersion + 1 "
+                    + "WHERE doPID = ?";
+
+    private final ConnectionPool m_connectionPool;
+
+    public ObjectRegistry(ConnectionPool connectionPool) {
+        m_connectionPool = connectionPool;
+    }
+
+    /**
+     * Tells whether the given object is registered.
+     */
+    public boolean exists(String pid) throws SQLException {
+        Connection conn = m_connectionPool.getReadOnlyConnection();
+        PreparedStatement st = null;
+        ResultSet results = null;
+        try {
+            st = conn.prepareStatement(EXISTS_SQL);
+            st.setString(1, pid);
+            results = st.executeQuery();
+            return results.next();
+        } finally {
+            close(results, st);
+            m_connectionPool.free(conn);
+        }
+    }
+
+    /**
+     * Registers an object.  The caller must ensure it isn't registered
+     * already.
+     */
+    public void register(String pid) throws SQLException {
+        Connection conn = m_connectionPool.getReadWriteConnection();
+        PreparedStatement st = null;
+        try {
+            st = conn.prepareStatement(REGISTER_SQL);
+            setRegisterParameters(st, pid);
+            st.executeUpdate();
+        } finally {
+            close(null, st);
+            m_connectionPool.free(conn);
+        }
+    }
+
+    /**
+     * Removes an object from the registry.  Does nothing if it isn't
+     * registered.
+     *
+     * @return false if the object isn't registered.
+     */
+    public boolean unregister(String pid) throws SQLException {
+        Connection conn = m_connectionPool.getReadWriteConnection();
+        PreparedStatement st = null;
+        try {
+            st = conn.prepareStatement(UNREGISTER_SQL);
+            st.setString(1, pid);
+            return st.executeUpdate() > 0;
+        } finally {
+            close(null, st);
+            m_connectionPool.free(conn);
+        }
+    }
+
+    /**
+     * Adds one to the system version of an object.
+     *
+     * @return false if the object isn't registered.
+     */
+    public boolean incrementSystemVersion(String pid) throws SQLException {
+        Connection conn = m_connectionPool.getReadWriteConnection();
+        PreparedStatement st = null;
+        try {
+            st = conn.prepareStatement(INCREMENT_SQL);
+            st.setString(1, pid);
+            return st.executeUpdate() > 0;
+        } finally {
+            close(null, st);
+            m_connectionPool.free(conn);
+        }
+    }
+
+    private static void setRegisterParameters(PreparedStatement st, String pid)
+            throws SQLException {
+        st.setString(1, pid);
+        st.setString(2, UNUSED_OWNER_ID);
+        st.setString(3, UNUSED_LABEL);
+    }
+
+    private static void close(ResultSet results, PreparedStatement st) {
+        try {
+            if (results != null) {
+                results.close();
+            }
+            if (st != null) {
+                st.close();
+            }
+        } catch (SQLException e) {
+            logger.warn("Unable to close statement", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+/**
+ * The repository hash, kept in memory: the number of objects in the registry
+ * and the latest modification date of any object, in the form
+ * <code>count|millis</code>.
+ *
+ * <p>The values are read from the database once, then kept up to date as
+ * objects are registered, committed and purged, so the hash can be had without
+ * scanning the registry.  The only case that can't be followed in memory is
+ * the purge of the most recently modified object; the latest date is then
+ * unknown until it is {@link #setLatestModDate(long, long) found again} from
+ * the database.
+ *
+ * @version $Id$
+ */
+public class RepositoryHash {
+
+    private long m_objectCount;
+
+    private long m_latestModDate;
+
+    private boolean m_latestModDateKnown;
+
+    /**
+     * The latest date committed since the latest date became unknown, which
+     * any value found in the database must not be allowed to go below.
+     */
+    private long m_latestSinceUnknown;
+
+    /** Changes each time the latest date becomes unknown. */
+    private long m_generation;
+
+    public RepositoryHash(long objectCount, long latestModDate) {
+        reset(objectCount, latestModDate);
+    }
+
+    /**
+     * Replaces both values, for instance with those found in the database.
+     */
+    public synchronized void reset(long objectCount, long latestModDate) {
+        m_objectCount = objectCount;
+        m_latestModDate = latestModDate;
+        m_latestModDateKnown = true;
+        m_generation++;
+    }
+
+    public synchronized void objectRegistered() {
+        m_objectCount++;
+    }
+
+    public synchronized void objectUnregistered() {
+        m_objectCount--;
+    }
+
+    /**
+     * Records the commit of an object with the given modification date.
+     */
+    public synchronized void objectCommitted(long modDate) {
+        if (modDate > m_latestModDate) {
+            m_latestModDate = modDate;
+        }
+        if (modDate > m_latestSinceUnknown) {
+            m_latestSinceUnknown = modDate;
+        }
+    }
+
+    /**
+     * Records the purge of an object whose last modification date was the
+     * given one, or is unknown (null).
+     */
+    public synchronized void objectPurged(Long modDate) {
+        // while the latest date is unknown, any object may have been the latest
+        if (!m_latestModDateKnown || modDate == null
+                || modDate.longValue() >= m_latestModDate) {
+            m_latestModDateKnown = false;
+            m_latestSinceUnknown = 0;
+            m_generation++;
+        }
+    }
+
+    /**
+     * Gets the hash, or null if the latest modification date must first be
+     * found again.
+     */
+    public synchronized String getValue() {
+        if (!m_latestModDateKnown) {
+            return null;
+        }
+        return m_objectCount + "|" + m_latestModDate;
+    }
+
+    /**
+     * Gets a value to pass to {@link #setLatestModDate(long, long)}, to be
+     * taken before the latest modification date is looked up.
+     */
+    public synchronized long getGeneration() {
+        return m_generation;
+    }
+
+    /**
+     * Sets the latest modification date, found in the database after
+     * {@link #getGeneration()} returned the given generation.  It is
+     * ignored if another purge (or a reset) has happened since.
+     */
+    public synchronized void setLatestModDate(long latestModDate,
+                                              long generation) {
+        if (!m_latestModDateKnown && generation == m_generation) {
+            m_latestModDate = Math.max(latestModDate, m_latestSinceUnknown);
+            m_latestModDateKnown = true;
+        }
+    }
+}
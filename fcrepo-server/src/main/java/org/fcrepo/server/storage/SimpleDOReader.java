@@ -398,11 +398,17 @@ public class SimpleDOReader
         if (sDefReader == null) {
             return null;
         }
-        MethodDef[] methods = sDefReader.getAbstractMethods(versDateTime);
+        MethodDef[] abstractMethods =
+                sDefReader.getAbstractMethods(versDateTime);
         // Filter out parms that are internal to the mechanism and not part
         // of the abstract method definition. We just want user parms.
+        // The reader's methods may be shared, so filter copies of them.
+        MethodDef[] methods = new MethodDef[abstractMethods.length];
         for (int i = 0; i < methods.length; i++) {
-            methods[i].methodParms = filterParms(methods[i]);
+            methods[i] = new MethodDef();
+            methods[i].methodName = abstractMethods[i].methodName;
+            methods[i].methodLabel = abstractMethods[i].methodLabel;
+            methods[i].methodParms = filterParms(abstractMethods[i]);
         }
         return methods;
     }
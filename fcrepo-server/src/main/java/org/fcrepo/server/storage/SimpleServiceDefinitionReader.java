@@ -36,6 +36,8 @@ public class SimpleServiceDefinitionReader
 
     private final ServiceMapper serviceMapper;
 
+    private final DisseminationPlanCache.Plan plan;
+
     public SimpleServiceDefinitionReader(Context context,
                             RepositoryReader repoReader,
                             DOTranslator translator,
@@ -53,6 +55,7 @@ public class SimpleServiceDefinitionReader
               encoding,
               serializedObject);
         serviceMapper = new ServiceMapper(GetObjectPID());
+        plan = null;
     }
 
     /**
@@ -65,13 +68,57 @@ public class SimpleServiceDefinitionReader
                             String exportFormat,
                             String encoding,
                             DigitalObject obj) {
+        this(context, repoReader, translator, exportFormat, encoding, obj, null);
+    }
+
+    /**
+     * Constructor for an object from a dissemination plan. The parsed
+     * methods of the current version are taken from, and kept in, the plan.
+     */
+    public SimpleServiceDefinitionReader(Context context,
+                            RepositoryReader repoReader,
+                            DOTranslator translator,
+                            String exportFormat,
+                            String encoding,
+                            DisseminationPlanCache.Plan plan) {
+        this(context,
+             repoReader,
+             translator,
+             exportFormat,
+             encoding,
+             plan.getObject(),
+             plan);
+    }
+
+    private SimpleServiceDefinitionReader(Context context,
+                            RepositoryReader repoReader,
+                            DOTranslator translator,
+                            String exportFormat,
+                            String encoding,
+                            DigitalObject obj,
+                            DisseminationPlanCache.Plan plan) {
         super(context, repoReader, translator, exportFormat, encoding, obj);
         serviceMapper = new ServiceMapper(GetObjectPID());
+        this.plan = plan;
     }
 
     public MethodDef[] getAbstractMethods(Date versDateTime)
             throws DatastreamNotFoundException, ObjectIntegrityException,
             RepositoryConfigurationException, GeneralException {
+        if (plan == null || versDateTime != null) {
+            return parseAbstractMethods(versDateTime);
+        }
+        MethodDef[] methods = plan.methods;
+        if (methods == null) {
+            methods = parseAbstractMethods(null);
+            plan.methods = methods;
+        }
+        return methods;
+    }
+
+    private MethodDef[] parseAbstractMethods(Date versDateTime)
+            throws DatastreamNotFoundException, ObjectIntegrityException,
+            RepositoryConfigurationException, GeneralException {
         return serviceMapper
                 .getMethodDefs(new InputSource(new ByteArrayInputStream(getMethodMapDatastream(versDateTime).xmlContent)));
     }
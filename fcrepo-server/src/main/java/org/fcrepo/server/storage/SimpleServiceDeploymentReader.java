@@ -40,6 +40,8 @@ public class SimpleServiceDeploymentReader
 
     private final ServiceMapper serviceMapper;
 
+    private final DisseminationPlanCache.Plan plan;
+
     public SimpleServiceDeploymentReader(Context context,
                              RepositoryReader repoReader,
                              DOTranslator translator,
@@ -57,6 +59,7 @@ public class SimpleServiceDeploymentReader
               encoding,
               serializedObject);
         serviceMapper = new ServiceMapper(GetObjectPID());
+        plan = null;
     }
 
     /**
@@ -69,15 +72,53 @@ public class SimpleServiceDeploymentReader
                              String exportFormat,
                              String encoding,
                              DigitalObject obj) {
+        this(context, repoReader, translator, exportFormat, encoding, obj, null);
+    }
+
+    /**
+     * Constructor for an object from a dissemination plan. The parsed
+     * datastreams of the current version are taken from, and kept in, the
+     * plan.
+     */
+    public SimpleServiceDeploymentReader(Context context,
+                             RepositoryReader repoReader,
+                             DOTranslator translator,
+                             String exportFormat,
+                             String encoding,
+                             DisseminationPlanCache.Plan plan) {
+        this(context,
+             repoReader,
+             translator,
+             exportFormat,
+             encoding,
+             plan.getObject(),
+             plan);
+    }
+
+    private SimpleServiceDeploymentReader(Context context,
+                             RepositoryReader repoReader,
+                             DOTranslator translator,
+                             String exportFormat,
+                             String encoding,
+                             DigitalObject obj,
+                             DisseminationPlanCache.Plan plan) {
         super(context, repoReader, translator, exportFormat, encoding, obj);
         serviceMapper = new ServiceMapper(GetObjectPID());
+        this.plan = plan;
     }
 
     public MethodDef[] getServiceMethods(Date versDateTime)
             throws DatastreamNotFoundException, ObjectIntegrityException,
             RepositoryConfigurationException, GeneralException {
-        return serviceMapper
-                .getMethodDefs(new InputSource(new ByteArrayInputStream(getMethodMapDatastream(versDateTime).xmlContent)));
+        if (plan == null || versDateTime != null) {
+            return parseServiceMethods(versDateTime);
+        }
+        MethodDef[] methods = plan.methods;
+        if (methods == null) {
+            methods = parseServiceMethods(null);
+            plan.methods = methods;
+        }
+        return methods;
     }
 
     public MethodParmDef[] getServiceMethodParms(String methodName,
@@ -89,16 +130,29 @@ public class SimpleServiceDeploymentReader
     public MethodDefOperationBind[] getServiceMethodBindings(Date versDateTime)
             throws DatastreamNotFoundException, ObjectIntegrityException,
             RepositoryConfigurationException, GeneralException {
-        return serviceMapper
-                .getMethodDefBindings(new InputSource(new ByteArrayInputStream(getWSDLDatastream(versDateTime).xmlContent)),
-                                      new InputSource(new ByteArrayInputStream(getMethodMapDatastream(versDateTime).xmlContent)));
+        if (plan == null || versDateTime != null) {
+            return parseServiceMethodBindings(versDateTime);
+        }
+        MethodDefOperationBind[] bindings = plan.bindings;
+        if (bindings == null) {
+            bindings = parseServiceMethodBindings(null);
+            plan.bindings = bindings;
+        }
+        return bindings;
     }
 
     public DeploymentDSBindSpec getServiceDSInputSpec(Date versDateTime)
             throws DatastreamNotFoundException, ObjectIntegrityException,
             RepositoryConfigurationException, GeneralException {
-        return serviceMapper
-                .getDSInputSpec(new InputSource(new ByteArrayInputStream(getDSInputSpecDatastream(versDateTime).xmlContent)));
+        if (plan == null || versDateTime != null) {
+            return parseServiceDSInputSpec(versDateTime);
+        }
+        DeploymentDSBindSpec dsInputSpec = plan.dsInputSpec;
+        if (dsInputSpec == null) {
+            dsInputSpec = parseServiceDSInputSpec(null);
+            plan.dsInputSpec = dsInputSpec;
+        }
+        return dsInputSpec;
     }
 
     public InputStream getServiceMethodsXML(Date versDateTime)
@@ -106,6 +160,28 @@ public class SimpleServiceDeploymentReader
         return new ByteArrayInputStream(getMethodMapDatastream(versDateTime).xmlContent);
     }
 
+    private MethodDef[] parseServiceMethods(Date versDateTime)
+            throws DatastreamNotFoundException, ObjectIntegrityException,
+            RepositoryConfigurationException, GeneralException {
+        return serviceMapper
+                .getMethodDefs(new InputSource(new ByteArrayInputStream(getMethodMapDatastream(versDateTime).xmlContent)));
+    }
+
+    private MethodDefOperationBind[] parseServiceMethodBindings(Date versDateTime)
+            throws DatastreamNotFoundException, ObjectIntegrityException,
+            RepositoryConfigurationException, GeneralException {
+        return serviceMapper
+                .getMethodDefBindings(new InputSource(new ByteArrayInputStream(getWSDLDatastream(versDateTime).xmlContent)),
+                                      new InputSource(new ByteArrayInputStream(getMethodMapDatastream(versDateTime).xmlContent)));
+    }
+
+    private DeploymentDSBindSpec parseServiceDSInputSpec(Date versDateTime)
+            throws DatastreamNotFoundException, ObjectIntegrityException,
+            RepositoryConfigurationException, GeneralException {
+        return serviceMapper
+                .getDSInputSpec(new InputSource(new ByteArrayInputStream(getDSInputSpecDatastream(versDateTime).xmlContent)));
+    }
+
     /**
      * Get the parms out of a particular service method definition.
      * 
@@ -15,11 +15,15 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -33,6 +37,21 @@ import org.fcrepo.server.storage.ConnectionPool;
 import org.fcrepo.server.utilities.SQLUtility;
 
 /**
+ * A PathRegistry kept in a database table (objectPaths or datastreamPaths).
+ * <p>
+ * Statements are prepared from fixed SQL text with the PIDs and paths bound
+ * as parameters, each time they are used.  Paths are put and removed one at
+ * a time, except while the registry is rebuilt, when they are put in
+ * batches of BATCH_SIZE.
+ * </p>
+ * <p>
+ * If the <code>pathRegistryCache</code> configuration value is true, every
+ * path in the table is loaded into a {@link PathIndex} when the registry is
+ * created, and the index is kept up to date as paths are put and removed.
+ * Lookups are then answered from memory alone; the table remains the
+ * durable copy, written before the index on every change.
+ * </p>
+ *
  * @author Bill Niebel
  */
 public class DBPathRegistry
@@ -41,33 +60,118 @@ public class DBPathRegistry
     private static final Logger logger =
             LoggerFactory.getLogger(DBPathRegistry.class);
 
+    /** The maximum number of paths sent to the database at once. */
+    public static final int BATCH_SIZE = 1000;
+
     private ConnectionPool connectionPool = null;
 
     private final boolean backslashIsEscape;
 
-    public DBPathRegistry(Map<String, ?> configuration) {
+    private final String getSql;
+
+    private final String updateSql;
+
+    private final String insertSql;
+
+    private final String deleteSql;
+
+    /** Every path in the table, or null if paths aren't kept in memory. */
+    private final PathIndex index;
+
+    /** Paths waiting to be put while the registry is rebuilt. */
+    private Map<String, String> rebuildBatch;
+
+    public DBPathRegistry(Map<String, ?> configuration)
+            throws LowlevelStorageException {
         super(configuration);
         connectionPool = (ConnectionPool) configuration.get("connectionPool");
         backslashIsEscape =
                 Boolean
                         .valueOf((String) configuration
                                 .get("backslashIsEscape")).booleanValue();
+        getSql = "SELECT path FROM " + getRegistryName() + " WHERE token = ?";
+        updateSql =
+                "UPDATE " + getRegistryName() + " SET path = ? WHERE token = ?";
+        insertSql =
+                "INSERT INTO " + getRegistryName()
+                        + " (token, path) VALUES (?, ?)";
+        deleteSql = "DELETE FROM " + getRegistryName() + " WHERE token = ?";
+        if (Boolean.valueOf((String) configuration.get("pathRegistryCache"))
+                .booleanValue()) {
+            index = new PathIndex();
+            load();
+        } else {
+            index = null;
+        }
+    }
+
+    /**
+     * Fills the index with every path in the table.
+     */
+    private void load() throws LowlevelStorageException {
+        long start = System.currentTimeMillis();
+        Connection connection = null;
+        Statement statement = null;
+        ResultSet rs = null;
+        try {
+            connection = connectionPool.getReadOnlyConnection();
+            statement = connection.createStatement();
+            statement.setFetchSize(BATCH_SIZE);
+            rs = statement.executeQuery("SELECT token, path FROM "
+                    + getRegistryName());
+            while (rs.next()) {
+                // a null path is indexed as empty, so get() can report it
+                String path = rs.getString(2);
+                index.put(rs.getString(1), path == null ? "" : path);
+            }
+        } catch (SQLException e1) {
+            throw new LowlevelStorageException(true, "sql failure (load)", e1);
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (statement != null) {
+                    statement.close();
+                }
+                if (connection != null) {
+                    connectionPool.free(connection);
+                }
+            } catch (SQLException e2) {
+                logger.warn("sql failure cleaning up (load)", e2);
+            }
+        }
+        logger.info("Loaded " + index.size() + " paths from "
+                + getRegistryName() + " into memory ("
+                + index.getMemoryUsage() / 1024 + " KB) in "
+                + (System.currentTimeMillis() - start) + "ms");
     }
 
     @Override
     public String get(String pid) throws ObjectNotInLowlevelStorageException,
             LowlevelStorageInconsistencyException, LowlevelStorageException {
         String path = null;
+        if (index != null) {
+            path = index.get(pid);
+            if (path == null) {
+                throw new ObjectNotInLowlevelStorageException("no path in db registry for ["
+                        + pid + "]");
+            }
+            if (path.length() == 0) {
+                throw new LowlevelStorageInconsistencyException("[" + pid
+                        + "] has -null- path in db registry");
+            }
+            return path;
+        }
         Connection connection = null;
-        Statement statement = null;
+        PreparedStatement statement = null;
         ResultSet rs = null;
         try {
             int paths = 0;
             connection = connectionPool.getReadOnlyConnection();
-            statement = connection.createStatement();
-            rs =
-                    statement.executeQuery("SELECT path FROM "
-                            + getRegistryName() + " WHERE token='" + pid + "'");
+            statement = connection.prepareStatement(getSql);
+            statement.setString(1, pid);
+            rs = statement.executeQuery();
             for (; rs.next(); paths++) {
                 path = rs.getString(1);
             }
@@ -111,12 +215,29 @@ public class DBPathRegistry
     public void executeSql(String sql)
             throws ObjectNotInLowlevelStorageException,
             LowlevelStorageInconsistencyException, LowlevelStorageException {
+        executeSql(sql, null);
+    }
+
+    /**
+     * Executes an update that should affect exactly one row.
+     *
+     * @param sql
+     *        the update, with at most one parameter.
+     * @param parameter
+     *        the value of the parameter, or null if there is none.
+     */
+    private void executeSql(String sql, String parameter)
+            throws ObjectNotInLowlevelStorageException,
+            LowlevelStorageInconsistencyException, LowlevelStorageException {
         Connection connection = null;
-        Statement statement = null;
+        PreparedStatement statement = null;
         try {
             connection = connectionPool.getReadWriteConnection();
-            statement = connection.createStatement();
-            if (statement.execute(sql)) {
+            statement = connection.prepareStatement(sql);
+            if (parameter != null) {
+                statement.setString(1, parameter);
+            }
+            if (statement.execute()) {
                 throw new LowlevelStorageException(true,
                                                    "sql returned query results for a nonquery");
             }
@@ -151,26 +272,19 @@ public class DBPathRegistry
     public void put(String pid, String path)
             throws ObjectNotInLowlevelStorageException,
             LowlevelStorageInconsistencyException, LowlevelStorageException {
-        if (backslashIsEscape) {
-            StringBuffer buffer = new StringBuffer();
-            String backslash = "\\"; //Java quotes will interpolate this as 1 backslash
-            String escapedBackslash = "\\\\"; //Java quotes will interpolate these as 2 backslashes
-            /*
-             * Escape each backspace so that DB will correctly record a single
-             * backspace, instead of incorrectly escaping the following
-             * character.
-             */
-            for (int i = 0; i < path.length(); i++) {
-                String s = path.substring(i, i + 1);
-                buffer.append(s.equals(backslash) ? escapedBackslash : s);
+        if (rebuildBatch != null) {
+            rebuildBatch.put(pid, path);
+            if (rebuildBatch.size() >= BATCH_SIZE) {
+                putAll(rebuildBatch);
+                rebuildBatch.clear();
             }
-            path = buffer.toString();
+            return;
         }
         Connection conn = null;
         try {
             conn = connectionPool.getReadWriteConnection();
             SQLUtility.replaceInto(conn, getRegistryName(), new String[] {
-                    "token", "path"}, new String[] {pid, path}, "token");
+                    "token", "path"}, new String[] {pid, escape(path)}, "token");
         } catch (SQLException e1) {
             throw new ObjectNotInLowlevelStorageException("put into db registry failed for ["
                                                                   + pid + "]",
@@ -180,21 +294,158 @@ public class DBPathRegistry
                 connectionPool.free(conn);
             }
         }
+        if (index != null) {
+            // as it would be read back from the database
+            index.put(pid, escape(path));
+        }
+    }
+
+    /**
+     * Puts several paths in a single transaction, sending up to BATCH_SIZE
+     * at a time.  Existing paths for the PIDs are replaced.
+     *
+     * @param paths
+     *        paths keyed by PID.
+     */
+    public void putAll(Map<String, String> paths)
+            throws LowlevelStorageException {
+        if (paths.isEmpty()) {
+            return;
+        }
+        Connection conn = null;
+        PreparedStatement update = null;
+        PreparedStatement insert = null;
+        boolean committed = false;
+        try {
+            conn = connectionPool.getReadWriteConnection();
+            conn.setAutoCommit(false);
+            update = conn.prepareStatement(updateSql);
+            insert = conn.prepareStatement(insertSql);
+            List<String> pids = new ArrayList<String>(BATCH_SIZE);
+            for (Map.Entry<String, String> entry : paths.entrySet()) {
+                pids.add(entry.getKey());
+                update.setString(1, escape(entry.getValue()));
+                update.setString(2, entry.getKey());
+                update.addBatch();
+                if (pids.size() == BATCH_SIZE) {
+                    insertMissing(update, insert, pids, paths);
+                }
+            }
+            insertMissing(update, insert, pids, paths);
+            conn.commit();
+            committed = true;
+        } catch (SQLException e1) {
+            throw new LowlevelStorageException(true, "sql failure (putAll)",
+                                               e1);
+        } finally {
+            try {
+                if (conn != null && !committed) {
+                    conn.rollback();
+                }
+                if (update != null) {
+                    update.close();
+                }
+                if (insert != null) {
+                    insert.close();
+                }
+                if (conn != null) {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e2) {
+                logger.warn("sql failure cleaning up (putAll)", e2);
+            } finally {
+                if (conn != null) {
+                    connectionPool.free(conn);
+                }
+            }
+        }
+        if (index != null) {
+            for (Map.Entry<String, String> entry : paths.entrySet()) {
+                index.put(entry.getKey(), escape(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Executes the batched updates for the given PIDs, then inserts the
+     * paths of those that had no row to update.
+     */
+    private void insertMissing(PreparedStatement update,
+                               PreparedStatement insert,
+                               List<String> pids,
+                               Map<String, String> paths) throws SQLException {
+        if (pids.isEmpty()) {
+            return;
+        }
+        int[] counts = update.executeBatch();
+        boolean inserts = false;
+        for (int i = 0; i < pids.size(); i++) {
+            int count = i < counts.length ? counts[i] : 0;
+            if (count == Statement.SUCCESS_NO_INFO) {
+                // the driver can't say whether the row existed
+                if (exists(update.getConnection(), pids.get(i))) {
+                    continue;
+                }
+                count = 0;
+            }
+            if (count == 0) {
+                insert.setString(1, pids.get(i));
+                insert.setString(2, escape(paths.get(pids.get(i))));
+                insert.addBatch();
+                inserts = true;
+            }
+        }
+        if (inserts) {
+            insert.executeBatch();
+        }
+        pids.clear();
+    }
+
+    private boolean exists(Connection conn, String pid) throws SQLException {
+        PreparedStatement statement = conn.prepareStatement(getSql);
+        try {
+            statement.setString(1, pid);
+            ResultSet rs = statement.executeQuery();
+            try {
+                return rs.next();
+            } finally {
+                rs.close();
+            }
+        } finally {
+            statement.close();
+        }
     }
 
     @Override
     public void remove(String pid) throws ObjectNotInLowlevelStorageException,
             LowlevelStorageInconsistencyException, LowlevelStorageException {
         try {
-            executeSql("DELETE FROM " + getRegistryName() + " WHERE "
-                    + getRegistryName() + ".token='" + pid + "'");
+            executeSql(deleteSql, pid);
         } catch (ObjectNotInLowlevelStorageException e1) {
+            if (index != null) {
+                index.remove(pid);
+            }
             throw new ObjectNotInLowlevelStorageException("[" + pid
                     + "] not in db registry to delete", e1);
         } catch (LowlevelStorageInconsistencyException e2) {
             throw new LowlevelStorageInconsistencyException("[" + pid
                     + "] deleted from db registry -multiple- times", e2);
         }
+        if (index != null) {
+            index.remove(pid);
+        }
+    }
+
+    /**
+     * Escape each backslash so that a DB that treats it as an escape
+     * character will correctly record a single backslash, instead of
+     * incorrectly escaping the following character.
+     */
+    private String escape(String path) {
+        if (!backslashIsEscape) {
+            return path;
+        }
+        return path.replace("\\", "\\\\");
     }
 
     @Override
@@ -205,9 +456,19 @@ public class DBPathRegistry
         } catch (ObjectNotInLowlevelStorageException e1) {
         } catch (LowlevelStorageInconsistencyException e2) {
         }
+        if (index != null) {
+            index.clear();
+        }
         try {
             logger.info("begin rebuilding registry from files");
-            traverseFiles(storeBases, REBUILD, false, report); // continues, ignoring bad files
+            // put() adds to the batch, which is written BATCH_SIZE at a time
+            rebuildBatch = new HashMap<String, String>();
+            try {
+                traverseFiles(storeBases, REBUILD, false, report); // continues, ignoring bad files
+                putAll(rebuildBatch);
+            } finally {
+                rebuildBatch = null;
+            }
             logger.info("end rebuilding registry from files (ending normally)");
         } catch (Exception e) {
             if (report != NO_REPORT) {
@@ -73,6 +73,19 @@ public class DefaultLowlevelStorageModule
                                                     getRole());
         }
 
+        // optional parameter used by DBPathRegistry
+        String pathRegistryCache = getParameter("path_registry_cache");
+        if (pathRegistryCache == null) {
+            pathRegistryCache = "false";
+        } else {
+            pathRegistryCache = pathRegistryCache.toLowerCase();
+            if (!pathRegistryCache.equals("true")
+                    && !pathRegistryCache.equals("false")) {
+                throw new ModuleInitializationException("path_registry_cache parameter must be either true or false",
+                                                        getRole());
+            }
+        }
+
         // get connectionPool from ConnectionPoolManager
         ConnectionPoolManager cpm =
                 (ConnectionPoolManager) getServer()
@@ -101,6 +114,7 @@ public class DefaultLowlevelStorageModule
                           datastreamStoreBase);
         configuration.put("connectionPool", cPool);
         configuration.put("backslashIsEscape", backslashIsEscape);
+        configuration.put("pathRegistryCache", pathRegistryCache);
 
         return configuration;
     }
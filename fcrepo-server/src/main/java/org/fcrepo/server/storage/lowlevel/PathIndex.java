@@ -0,0 +1,349 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage.lowlevel;
+
+import java.nio.charset.Charset;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A compact in-memory map of PIDs to paths.
+ * <p>
+ * Each entry is stored as its UTF-8 key and value bytes, packed one after
+ * another into large byte pages, so the index costs a few object headers
+ * per page rather than several objects per entry.  Entries are found
+ * through an open-addressing (linear probing) table of page offsets, with
+ * the hash of each key kept alongside so that probes rarely touch the pages.
+ * Space left behind by replaced or removed entries is reclaimed when the
+ * table is next resized, or when it exceeds the space in use.
+ * </p>
+ * <p>
+ * Lookups may run concurrently; changes are serialized.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class PathIndex {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int PAGE_BITS = 20;
+
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /** The longest key or value, in UTF-8 bytes. */
+    public static final int MAX_LENGTH = 0xFFFF;
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final long EMPTY = 0;
+
+    private static final long REMOVED = -1;
+
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    /** Entry locations (address + 1), or EMPTY or REMOVED. */
+    private long[] m_slots;
+
+    /** The hash of the key in each occupied slot. */
+    private int[] m_hashes;
+
+    private byte[][] m_pages;
+
+    private int m_pageCount;
+
+    /** The number of bytes used in the last page. */
+    private int m_pageUsed;
+
+    private int m_size;
+
+    /** Slots that are occupied or have been (live plus REMOVED). */
+    private int m_filled;
+
+    /** Bytes in the pages belonging to replaced or removed entries. */
+    private long m_garbage;
+
+    public PathIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an index sized for the given number of entries.
+     */
+    public PathIndex(int expectedSize) {
+        init(capacityFor(expectedSize));
+    }
+
+    /**
+     * Gets the path of the given PID, or null if it has none.
+     */
+    public String get(String pid) {
+        byte[] key = pid.getBytes(UTF8);
+        int hash = hash(pid);
+        m_lock.readLock().lock();
+        try {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            long address = m_slots[slot] - 1;
+            byte[] page = m_pages[(int) (address >>> PAGE_BITS)];
+            int offset = (int) (address & (PAGE_SIZE - 1));
+            offset += 2 + getLength(page, offset);
+            return new String(page, offset + 2, getLength(page, offset), UTF8);
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the path of the given PID, replacing any it had.
+     *
+     * @throws IllegalArgumentException
+     *         if the PID or path is longer than MAX_LENGTH bytes.
+     */
+    public void put(String pid, String path) {
+        byte[] key = pid.getBytes(UTF8);
+        byte[] value = path.getBytes(UTF8);
+        if (key.length > MAX_LENGTH || value.length > MAX_LENGTH) {
+            throw new IllegalArgumentException("PID or path too long to index: "
+                    + pid);
+        }
+        int hash = hash(pid);
+        m_lock.writeLock().lock();
+        try {
+            int slot = find(key, hash);
+            if (slot >= 0) {
+                m_garbage += entryLength(m_slots[slot] - 1);
+                m_slots[slot] = append(key, value) + 1;
+                return;
+            }
+            if ((m_filled + 1) * 4L > m_slots.length * 3L) {
+                resize(capacityFor(m_size + 1));
+            }
+            slot = freeSlot(hash);
+            if (m_slots[slot] == EMPTY) {
+                m_filled++;
+            }
+            m_slots[slot] = append(key, value) + 1;
+            m_hashes[slot] = hash;
+            m_size++;
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the path of the given PID.
+     *
+     * @return whether the PID had a path.
+     */
+    public boolean remove(String pid) {
+        byte[] key = pid.getBytes(UTF8);
+        int hash = hash(pid);
+        m_lock.writeLock().lock();
+        try {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return false;
+            }
+            m_garbage += entryLength(m_slots[slot] - 1);
+            m_slots[slot] = REMOVED;
+            m_size--;
+            if (m_garbage > PAGE_SIZE
+                    && m_garbage > (long) (m_pageCount - 1) * PAGE_SIZE
+                            + m_pageUsed - m_garbage) {
+                resize(m_slots.length);
+            }
+            return true;
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all entries and releases their memory.
+     */
+    public void clear() {
+        m_lock.writeLock().lock();
+        try {
+            init(MIN_CAPACITY);
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of entries.
+     */
+    public int size() {
+        m_lock.readLock().lock();
+        try {
+            return m_size;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the approximate number of bytes of memory held by the index.
+     */
+    public long getMemoryUsage() {
+        m_lock.readLock().lock();
+        try {
+            return (long) m_slots.length * 12 + (long) m_pageCount * PAGE_SIZE;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    private void init(int capacity) {
+        m_slots = new long[capacity];
+        m_hashes = new int[capacity];
+        m_pages = new byte[16][];
+        m_pageCount = 0;
+        m_pageUsed = PAGE_SIZE;
+        m_size = 0;
+        m_filled = 0;
+        m_garbage = 0;
+    }
+
+    /**
+     * Gets the slot holding the given key, or -1 if there is none.
+     */
+    private int find(byte[] key, int hash) {
+        int mask = m_slots.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            long entry = m_slots[slot];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != REMOVED && m_hashes[slot] == hash
+                    && keyEquals(entry - 1, key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Gets the first slot in which a key with the given hash can be added.
+     */
+    private int freeSlot(int hash) {
+        int mask = m_slots.length - 1;
+        int slot = hash & mask;
+        while (m_slots[slot] != EMPTY && m_slots[slot] != REMOVED) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean keyEquals(long address, byte[] key) {
+        byte[] page = m_pages[(int) (address >>> PAGE_BITS)];
+        int offset = (int) (address & (PAGE_SIZE - 1));
+        if (getLength(page, offset) != key.length) {
+            return false;
+        }
+        offset += 2;
+        for (int i = 0; i < key.length; i++) {
+            if (page[offset + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int entryLength(long address) {
+        byte[] page = m_pages[(int) (address >>> PAGE_BITS)];
+        int offset = (int) (address & (PAGE_SIZE - 1));
+        int keyLength = getLength(page, offset);
+        return 4 + keyLength + getLength(page, offset + 2 + keyLength);
+    }
+
+    /**
+     * Copies an entry into the pages.
+     *
+     * @return the entry's address.
+     */
+    private long append(byte[] key, byte[] value) {
+        int length = 4 + key.length + value.length;
+        if (m_pageUsed + length > PAGE_SIZE) {
+            if (m_pageCount == m_pages.length) {
+                byte[][] pages = new byte[m_pages.length * 2][];
+                System.arraycopy(m_pages, 0, pages, 0, m_pageCount);
+                m_pages = pages;
+            }
+            m_pages[m_pageCount++] = new byte[PAGE_SIZE];
+            m_pageUsed = 0;
+        }
+        byte[] page = m_pages[m_pageCount - 1];
+        long address = ((long) (m_pageCount - 1) << PAGE_BITS) + m_pageUsed;
+        int offset = m_pageUsed;
+        setLength(page, offset, key.length);
+        System.arraycopy(key, 0, page, offset + 2, key.length);
+        offset += 2 + key.length;
+        setLength(page, offset, value.length);
+        System.arraycopy(value, 0, page, offset + 2, value.length);
+        m_pageUsed += length;
+        return address;
+    }
+
+    /**
+     * Rebuilds the table with the given capacity, copying the live entries
+     * into new pages.
+     */
+    private void resize(int capacity) {
+        long[] oldSlots = m_slots;
+        int[] oldHashes = m_hashes;
+        byte[][] oldPages = m_pages;
+        init(capacity);
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] == EMPTY || oldSlots[i] == REMOVED) {
+                continue;
+            }
+            long address = oldSlots[i] - 1;
+            byte[] page = oldPages[(int) (address >>> PAGE_BITS)];
+            int offset = (int) (address & (PAGE_SIZE - 1));
+            int keyLength = getLength(page, offset);
+            byte[] key = new byte[keyLength];
+            System.arraycopy(page, offset + 2, key, 0, keyLength);
+            offset += 2 + keyLength;
+            byte[] value = new byte[getLength(page, offset)];
+            System.arraycopy(page, offset + 2, value, 0, value.length);
+            int slot = freeSlot(oldHashes[i]);
+            m_slots[slot] = append(key, value) + 1;
+            m_hashes[slot] = oldHashes[i];
+            m_size++;
+            m_filled++;
+        }
+    }
+
+    /**
+     * Gets the smallest power of two capacity that keeps the table at most
+     * half full with the given number of entries.
+     */
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(String pid) {
+        // spread the bits, since slots are chosen by the low bits alone
+        int h = pid.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int getLength(byte[] page, int offset) {
+        return (page[offset] & 0xFF) << 8 | page[offset + 1] & 0xFF;
+    }
+
+    private static void setLength(byte[] page, int offset, int length) {
+        page[offset] = (byte) (length >>> 8);
+        page[offset + 1] = (byte) length;
+    }
+}
@@ -17,6 +17,7 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 
 import java.net.URISyntaxException;
 
@@ -68,6 +69,7 @@ import org.fcrepo.server.storage.types.DigitalObject;
 import org.fcrepo.server.utilities.DateUtility;
 import org.fcrepo.server.validation.ValidationUtility;
 
+import org.fcrepo.utilities.Base64DecodingWriter;
 import org.fcrepo.utilities.FileUtils;
 import org.fcrepo.utilities.NormalizedURI;
 
@@ -346,7 +348,11 @@ public class AtomDODeserializer
                              out,
                              m_encoding);
             } else {
-                IOUtils.copy(entry.getContentStream(), out);
+                // decode as we write, rather than via getContentStream(),
+                // which decodes the whole of the content into memory first
+                Writer decoder = new Base64DecodingWriter(out);
+                decoder.write(entry.getContent());
+                decoder.close();
             }
             ds.DSLocation = DatastreamManagedContent.TEMP_SCHEME + temp.getAbsolutePath();
         } catch (IOException e) {
@@ -6,11 +6,11 @@
 package org.fcrepo.server.storage.translation;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 
 import java.text.ParseException;
 
@@ -23,7 +23,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -52,7 +51,8 @@ import org.fcrepo.server.utilities.DateUtility;
 import org.fcrepo.server.utilities.StreamUtility;
 import org.fcrepo.server.validation.ValidationUtility;
 
-import org.fcrepo.utilities.Base64;
+import org.fcrepo.utilities.Base64DecodingWriter;
+import org.fcrepo.utilities.XmlParserUtility;
 
 
 
@@ -106,6 +106,8 @@ public class FOXMLDODeserializer
 
     private File m_binaryContentTempFile;
 
+    private Writer m_binaryContentWriter; // decodes into the temp file
+
     private boolean m_inXMLMetadata;
 
     // Indicator for FOXML within FOXML (inline XML datastream contains FOXML)
@@ -235,10 +237,7 @@ public class FOXMLDODeserializer
 
         // initialize sax for this parse
         try {
-            SAXParserFactory spf = SAXParserFactory.newInstance();
-            spf.setValidating(false);
-            spf.setNamespaceAware(true);
-            m_parser = spf.newSAXParser();
+            m_parser = XmlParserUtility.getSAXParser();
         } catch (Exception e) {
             throw new RuntimeException("Error initializing SAX parser", e);
         }
@@ -257,6 +256,20 @@ public class FOXMLDODeserializer
         } catch (SAXException se) {
             throw new ObjectIntegrityException("FOXML IO stream was bad : "
                     + se.getMessage(), se);
+        } finally {
+            if (m_binaryContentWriter != null) {
+                // parsing stopped inside binaryContent
+                try {
+                    m_binaryContentWriter.close();
+                } catch (IOException e) {
+                    logger.warn("Unable to close temporary file for binary content", e);
+                }
+                m_binaryContentWriter = null;
+                m_binaryContentTempFile.delete();
+                m_binaryContentTempFile = null;
+            }
+            XmlParserUtility.releaseSAXParser(m_parser);
+            m_parser = null;
         }
         logger.debug("Just finished parse.");
 
@@ -464,6 +477,8 @@ public class FOXMLDODeserializer
                     try {
                         m_binaryContentTempFile =
                                 File.createTempFile("binary-datastream", null);
+                        m_binaryContentWriter =
+                                new Base64DecodingWriter(new FileOutputStream(m_binaryContentTempFile));
                     } catch (IOException ioe) {
                         throw new SAXException(new StreamIOException("Unable to create temporary file for binary content"));
                     }
@@ -508,7 +523,17 @@ public class FOXMLDODeserializer
      * {@inheritDoc}
      */
     @Override
-    public void characters(char[] ch, int start, int length) {
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        // decode base64 binary content straight into its temp file
+        if (m_binaryContentWriter != null) {
+            try {
+                m_binaryContentWriter.write(ch, start, length);
+            } catch (IOException ioe) {
+                throw new SAXException(new StreamIOException("Error writing to temporary file created for binary content"));
+            }
+            return;
+        }
         // read normal element content into a string buffer
         if (m_elementContent != null) {
             m_elementContent.append(ch, start, length);
@@ -519,9 +544,6 @@ public class FOXMLDODeserializer
             // we need to make sure special characters &, <, >, ", and '
             // are re-converted to the xml-acceptable equivalents.
             StreamUtility.enc(ch, start, length, m_dsXMLBuffer);
-        } else if (m_readingBinaryContent) {
-            // append it to something...
-            // FIXME: IMPLEMENT HERE IN POST v2.0
         }
     }
 
@@ -610,21 +632,14 @@ public class FOXMLDODeserializer
         } else if (uri.equals(FOXML.uri) && localName.equals("binaryContent")) {
             if (m_binaryContentTempFile != null) {
                 try {
-                    FileOutputStream os =
-                            new FileOutputStream(m_binaryContentTempFile);
-                    // remove all spaces and newlines, this might not be necessary.
-                    String elementStr =
-                            m_elementContent.toString().replaceAll("\\s", "");
-                    byte elementBytes[] = Base64.decode(elementStr);
-                    os.write(elementBytes);
-                    os.close();
+                    Writer writer = m_binaryContentWriter;
+                    m_binaryContentWriter = null;
+                    writer.close();
                     m_dsLocationType = "INTERNAL_ID";
                     m_dsLocation =
                         DatastreamManagedContent.TEMP_SCHEME
                                     + m_binaryContentTempFile.getAbsolutePath();
                     instantiateDatastream(new DatastreamManagedContent());
-                } catch (FileNotFoundException fnfe) {
-                    throw new SAXException(new StreamIOException("Unable to open temporary file created for binary content"));
                 } catch (IOException fnfe) {
                     throw new SAXException(new StreamIOException("Error writing to temporary file created for binary content"));
                 }
@@ -6,11 +6,11 @@
 package org.fcrepo.server.storage.translation;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 
 import java.text.ParseException;
 
@@ -22,7 +22,6 @@ import java.util.Iterator;
 import java.util.List;
 
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -46,7 +45,8 @@ import org.fcrepo.server.storage.types.Disseminator;
 import org.fcrepo.server.utilities.DateUtility;
 import org.fcrepo.server.utilities.StreamUtility;
 import org.fcrepo.server.validation.ValidationUtility;
-import org.fcrepo.utilities.Base64;
+import org.fcrepo.utilities.Base64DecodingWriter;
+import org.fcrepo.utilities.XmlParserUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -165,6 +165,8 @@ public class METSFedoraExtDODeserializer
 
     private File m_binaryContentTempFile;
 
+    private Writer m_binaryContentWriter; // decodes into the temp file
+
     private StringBuffer m_elementContent; // single element
 
     /** While parsing, are we inside XML metadata? */
@@ -264,10 +266,7 @@ public class METSFedoraExtDODeserializer
 
         // initialize sax for this parse
         try {
-            SAXParserFactory spf = SAXParserFactory.newInstance();
-            spf.setValidating(false);
-            spf.setNamespaceAware(true);
-            m_parser = spf.newSAXParser();
+            m_parser = XmlParserUtility.getSAXParser();
         } catch (Exception e) {
             throw new RuntimeException("Error initializing SAX parser", e);
         }
@@ -286,6 +285,20 @@ public class METSFedoraExtDODeserializer
         } catch (SAXException se) {
             throw new ObjectIntegrityException("METS stream was bad : "
                     + se.getMessage());
+        } finally {
+            if (m_binaryContentWriter != null) {
+                // parsing stopped inside FContent
+                try {
+                    m_binaryContentWriter.close();
+                } catch (IOException e) {
+                    logger.warn("Unable to close temporary file for binary content", e);
+                }
+                m_binaryContentWriter = null;
+                m_binaryContentTempFile.delete();
+                m_binaryContentTempFile = null;
+            }
+            XmlParserUtility.releaseSAXParser(m_parser);
+            m_parser = null;
         }
         if (!m_rootElementFound) {
             throw new ObjectIntegrityException("METS root element not found");
@@ -579,6 +592,8 @@ public class METSFedoraExtDODeserializer
                     try {
                         m_binaryContentTempFile =
                                 File.createTempFile("binary-datastream", null);
+                        m_binaryContentWriter =
+                                new Base64DecodingWriter(new FileOutputStream(m_binaryContentTempFile));
                     } catch (IOException ioe) {
                         throw new SAXException(new StreamIOException("Unable to create temporary file for binary content"));
                     }
@@ -628,8 +643,16 @@ public class METSFedoraExtDODeserializer
      * {@inheritDoc}
      */
     @Override
-    public void characters(char[] ch, int start, int length) {
-        if (m_inXMLMetadata) {
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        if (m_binaryContentWriter != null) {
+            // decode base64 binary content straight into its temp file
+            try {
+                m_binaryContentWriter.write(ch, start, length);
+            } catch (IOException ioe) {
+                throw new SAXException(new StreamIOException("Error writing to temporary file created for binary content"));
+            }
+        } else if (m_inXMLMetadata) {
             if (m_auditBuffer != null) {
                 m_auditBuffer.append(ch, start, length);
             } else {
@@ -718,23 +741,15 @@ public class METSFedoraExtDODeserializer
                 if (uri.equals(METS.uri) && localName.equals("FContent")) {
                     if (m_binaryContentTempFile != null) {
                         try {
-                            FileOutputStream os =
-                                    new FileOutputStream(m_binaryContentTempFile);
-                            // remove all spaces and newlines, this might not be necessary.
-                            String elementStr =
-                                    m_elementContent.toString()
-                                            .replaceAll("\\s", "");
-                            byte elementBytes[] = Base64.decode(elementStr);
-                            os.write(elementBytes);
-                            os.close();
+                            Writer writer = m_binaryContentWriter;
+                            m_binaryContentWriter = null;
+                            writer.close();
                             m_dsLocationType = "INTERNAL_ID";
                             m_dsLocation =
                                 DatastreamManagedContent.TEMP_SCHEME
                                             + m_binaryContentTempFile
                                                     .getAbsolutePath();
                             instantiateDatastream(new DatastreamManagedContent());
-                        } catch (FileNotFoundException fnfe) {
-                            throw new SAXException(new StreamIOException("Unable to open temporary file created for binary content"));
                         } catch (IOException fnfe) {
                             throw new SAXException(new StreamIOException("Error writing to temporary file created for binary content"));
                         }
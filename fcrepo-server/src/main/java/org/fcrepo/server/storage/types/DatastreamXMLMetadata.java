@@ -13,7 +13,6 @@ import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import com.sun.org.apache.xml.internal.serialize.OutputFormat;
@@ -22,6 +21,7 @@ import com.sun.org.apache.xml.internal.serialize.XMLSerializer;
 import org.w3c.dom.Document;
 
 import org.xml.sax.SAXException;
+import org.fcrepo.utilities.XmlParserUtility;
 
 /**
  * @author Sandy Payette
@@ -91,6 +91,7 @@ public class DatastreamXMLMetadata
     @Override
     public InputStream getContentStreamForChecksum() {
         BufferedReader br;
+        DocumentBuilder builder = null;
         try {
             ByteArrayOutputStream outStream = new ByteArrayOutputStream();
             OutputFormat fmt = new OutputFormat("XML", "UTF-8", false);
@@ -98,10 +99,7 @@ public class DatastreamXMLMetadata
             fmt.setLineWidth(0);
             fmt.setPreserveSpace(false);
             XMLSerializer ser = new XMLSerializer(outStream, fmt);
-            DocumentBuilderFactory factory =
-                    DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
+            builder = XmlParserUtility.getDocumentBuilder();
             Document doc = builder.parse(new ByteArrayInputStream(xmlContent));
             ser.serialize(doc);
 
@@ -125,6 +123,10 @@ public class DatastreamXMLMetadata
             return getContentStream();
         } catch (SAXException e) {
             return getContentStream();
+        } finally {
+            if (builder != null) {
+                XmlParserUtility.releaseDocumentBuilder(builder);
+            }
         }
     }
 
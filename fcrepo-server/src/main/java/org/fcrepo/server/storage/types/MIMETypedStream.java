@@ -7,6 +7,8 @@ package org.fcrepo.server.storage.types;
 import java.io.IOException;
 import java.io.InputStream;
 
+import java.util.Date;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +31,12 @@ public class MIMETypedStream {
 
     private boolean gotStream = false;
 
+    private long size = -1;
+
+    private Date lastModified;
+
+    private String entityTag;
+
     /**
      * Constructs a MIMETypedStream.
      *
@@ -63,6 +71,46 @@ public class MIMETypedStream {
         this.stream = stream;
     }
 
+    /**
+     * Gets the number of bytes in the stream.
+     *
+     * @return the size, or -1 if it is not known.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Gets the time the content last changed.
+     *
+     * @return the time, or null if it is not known.
+     */
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Gets a value that changes whenever the content does, such as its
+     * checksum.
+     *
+     * @return the value, or null if there is none.
+     */
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    public void setEntityTag(String entityTag) {
+        this.entityTag = entityTag;
+    }
+
     /**
      * Closes the underlying stream if it's not already closed.
      *
@@ -0,0 +1,41 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+/**
+ * A ByteArrayOutputStream whose content can be read back without being
+ * copied.
+ *
+ * <p>Each call to {@link #toInputStream()} returns a new stream over the
+ * internal buffer, so the same bytes can be read several times (for
+ * instance, checked and then stored) while only ever existing once in
+ * memory.  The streams see the content as it was when they were created and
+ * must not be used after this stream is written to again.
+ *
+ * @version $Id$
+ */
+public class ReadableByteArrayOutputStream
+        extends ByteArrayOutputStream {
+
+    public ReadableByteArrayOutputStream() {
+        super();
+    }
+
+    public ReadableByteArrayOutputStream(int size) {
+        super(size);
+    }
+
+    /**
+     * Gets a stream over the bytes written so far, sharing this stream's
+     * buffer.
+     */
+    public synchronized InputStream toInputStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+}
@@ -0,0 +1,76 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks, indexed by the hash of a key (typically a PID).
+ *
+ * <p>Callers working on the same key always get the same lock, while callers
+ * working on different keys will usually get different locks and can proceed
+ * concurrently.  Two unrelated keys may share a stripe; this costs some
+ * concurrency but never correctness, so critical sections guarded by a
+ * stripe should be short and must not try to acquire a second stripe.
+ *
+ * @version $Id$
+ */
+public final class StripedLock {
+
+    /** Default number of stripes; a power of two. */
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final Lock[] m_locks;
+
+    private final int m_mask;
+
+    public StripedLock() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a striped lock with at least the given number of stripes.
+     * The actual number is rounded up to the next power of two.
+     */
+    public StripedLock(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        m_locks = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            m_locks[i] = new ReentrantLock();
+        }
+        m_mask = size - 1;
+    }
+
+    /**
+     * Gets the lock for the given key.  The same key always yields the same
+     * lock instance.
+     */
+    public Lock get(String key) {
+        return m_locks[indexFor(key)];
+    }
+
+    /**
+     * Gets the number of stripes.
+     */
+    public int size() {
+        return m_locks.length;
+    }
+
+    int indexFor(String key) {
+        int h = key == null ? 0 : key.hashCode();
+        // spread the bits so keys that differ only in their high bits
+        // (e.g. a shared namespace prefix) don't pile onto one stripe
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h & m_mask;
+    }
+}
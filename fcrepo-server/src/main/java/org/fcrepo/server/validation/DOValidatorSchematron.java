@@ -11,8 +11,8 @@ import java.io.InputStream;
 
 import java.net.URL;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -51,8 +51,9 @@ public class DOValidatorSchematron {
 
     private final StreamSource validatingStyleSheet;
 
+    // shared by concurrent ingests, so must be safe for concurrent access
     private static Map<String, ByteArrayOutputStream> generatedStyleSheets =
-        new HashMap<String, ByteArrayOutputStream>();
+        new ConcurrentHashMap<String, ByteArrayOutputStream>();
 
     /**
      * Constructs a DOValidatorSchematron instance with a Schematron
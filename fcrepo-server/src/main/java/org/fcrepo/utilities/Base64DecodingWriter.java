@@ -0,0 +1,163 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.utilities;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import java.util.Arrays;
+
+/**
+ * A Writer that decodes the base 64 characters written to it, writing the
+ * decoded bytes to an output stream.
+ * <p>
+ * Input can arrive in pieces of any size, split anywhere, so base 64
+ * content of any length can be decoded in constant memory as it is read
+ * (for instance, from SAX <code>characters</code> events).  As with
+ * {@link Base64#decode(String)}, whitespace and other characters outside
+ * the base 64 alphabet are ignored, and decoding stops at the first
+ * padding character.
+ * <p>
+ * Closing the writer decodes any final partial group and closes the
+ * output stream.
+ *
+ * @version $Id$
+ */
+public class Base64DecodingWriter
+        extends Writer {
+
+    private static final String ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            VALUES[ALPHABET.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final OutputStream m_out;
+
+    private final byte[] m_buf = new byte[8190];
+
+    private int m_bufCount;
+
+    /** The bits of the group read so far, six per character. */
+    private int m_group;
+
+    /** The number of characters in the current group. */
+    private int m_groupCount;
+
+    private boolean m_padded;
+
+    private boolean m_closed;
+
+    /**
+     * Creates a writer that writes the decoded bytes to the given stream.
+     */
+    public Base64DecodingWriter(OutputStream out) {
+        m_out = out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        decode((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            decode(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        // not the default, which copies the string into a new array
+        for (int i = off; i < off + len; i++) {
+            decode(str.charAt(i));
+        }
+    }
+
+    /**
+     * Writes out the bytes decoded so far.  Bytes from an incomplete group
+     * aren't written until the group is completed or the writer is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        m_out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (m_closed) {
+            return;
+        }
+        m_closed = true;
+        try {
+            finishGroup();
+            flushBuffer();
+        } finally {
+            m_out.close();
+        }
+    }
+
+    private void decode(char c) throws IOException {
+        if (m_padded) {
+            return;
+        }
+        if (c == '=') {
+            m_padded = true;
+            finishGroup();
+            return;
+        }
+        int value = c < 128 ? VALUES[c] : -1;
+        if (value < 0) {
+            return;
+        }
+        m_group = m_group << 6 | value;
+        if (++m_groupCount == 4) {
+            if (m_bufCount + 3 > m_buf.length) {
+                flushBuffer();
+            }
+            m_buf[m_bufCount++] = (byte) (m_group >> 16);
+            m_buf[m_bufCount++] = (byte) (m_group >> 8);
+            m_buf[m_bufCount++] = (byte) m_group;
+            m_group = 0;
+            m_groupCount = 0;
+        }
+    }
+
+    /**
+     * Writes the bytes of a partial group: two characters make one byte and
+     * three make two.  A single character carries too few bits to make a
+     * byte and is dropped.
+     */
+    private void finishGroup() throws IOException {
+        if (m_groupCount > 1) {
+            if (m_bufCount + 2 > m_buf.length) {
+                flushBuffer();
+            }
+            int bits = m_group << (6 * (4 - m_groupCount));
+            m_buf[m_bufCount++] = (byte) (bits >> 16);
+            if (m_groupCount == 3) {
+                m_buf[m_bufCount++] = (byte) (bits >> 8);
+            }
+        }
+        m_group = 0;
+        m_groupCount = 0;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (m_bufCount > 0) {
+            m_out.write(m_buf, 0, m_bufCount);
+            m_bufCount = 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.utilities;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Namespace-aware, non-validating SAX parsers and DOM document builders,
+ * reused within each thread.
+ * <p>
+ * The factories are looked up once, rather than through the JAXP service
+ * lookup on every parse, and each thread keeps one idle parser and one idle
+ * builder.  A caller gets one with <code>get...</code> and, when finished
+ * with it, gives it back with the matching <code>release...</code>, which
+ * resets it for the next use.  If the thread's idle instance is already in
+ * use (for instance, by a parse that is itself in progress further up the
+ * stack), a new one is created, so nested use is safe.  An instance that
+ * isn't released is simply left for the garbage collector.
+ *
+ * @version $Id$
+ */
+public class XmlParserUtility {
+
+    private static final SAXParserFactory SAX_PARSER_FACTORY;
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
+
+    static {
+        SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+        SAX_PARSER_FACTORY.setNamespaceAware(true);
+        SAX_PARSER_FACTORY.setValidating(false);
+        DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+        DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+        DOCUMENT_BUILDER_FACTORY.setValidating(false);
+    }
+
+    private static final ThreadLocal<SAXParser> IDLE_SAX_PARSER =
+            new ThreadLocal<SAXParser>();
+
+    private static final ThreadLocal<DocumentBuilder> IDLE_DOCUMENT_BUILDER =
+            new ThreadLocal<DocumentBuilder>();
+
+    /**
+     * Gets a namespace-aware, non-validating SAX parser for the current
+     * thread to use.
+     */
+    public static SAXParser getSAXParser() throws ParserConfigurationException,
+            SAXException {
+        SAXParser parser = IDLE_SAX_PARSER.get();
+        if (parser != null) {
+            IDLE_SAX_PARSER.set(null);
+            return parser;
+        }
+        // the factories aren't guaranteed to be thread safe
+        synchronized (SAX_PARSER_FACTORY) {
+            return SAX_PARSER_FACTORY.newSAXParser();
+        }
+    }
+
+    /**
+     * Resets a parser from {@link #getSAXParser()} and keeps it for the
+     * current thread's next use.  The parser must not be used by the caller
+     * afterwards.
+     */
+    public static void releaseSAXParser(SAXParser parser) {
+        try {
+            parser.reset();
+        } catch (UnsupportedOperationException e) {
+            // can't be reused
+            return;
+        }
+        IDLE_SAX_PARSER.set(parser);
+    }
+
+    /**
+     * Gets a namespace-aware, non-validating DOM document builder for the
+     * current thread to use.
+     */
+    public static DocumentBuilder getDocumentBuilder()
+            throws ParserConfigurationException {
+        DocumentBuilder builder = IDLE_DOCUMENT_BUILDER.get();
+        if (builder != null) {
+            IDLE_DOCUMENT_BUILDER.set(null);
+            return builder;
+        }
+        synchronized (DOCUMENT_BUILDER_FACTORY) {
+            return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        }
+    }
+
+    /**
+     * Resets a builder from {@link #getDocumentBuilder()} and keeps it for
+     * the current thread's next use.  The builder must not be used by the
+     * caller afterwards.
+     */
+    public static void releaseDocumentBuilder(DocumentBuilder builder) {
+        try {
+            builder.reset();
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+        IDLE_DOCUMENT_BUILDER.set(builder);
+    }
+}
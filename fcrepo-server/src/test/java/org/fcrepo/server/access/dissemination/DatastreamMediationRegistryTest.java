@@ -0,0 +1,109 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.access.dissemination;
+
+import java.sql.Timestamp;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.fcrepo.server.storage.types.DatastreamMediation;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the DatastreamMediationRegistry
+ *
+ * @version $Id$
+ */
+public class DatastreamMediationRegistryTest {
+
+    @Test
+    public void testRegisteredLocationIsResolved() {
+        DatastreamMediationRegistry registry =
+                new DatastreamMediationRegistry(60000);
+        DatastreamMediation dm = getMediation("http://example.org/ds");
+        String tempID = registry.register(dm);
+        assertEquals(tempID, dm.mediatedDatastreamID);
+        assertSame(dm, registry.get(tempID));
+
+        registry.remove(tempID);
+        assertNull(registry.get(tempID));
+        assertEquals(0, registry.size());
+        assertEquals(1, registry.getRegisteredCount());
+        assertEquals(1, registry.getResolvedCount());
+    }
+
+    @Test
+    public void testTempIDStartsWithTimestamp() {
+        DatastreamMediationRegistry registry =
+                new DatastreamMediationRegistry(60000);
+        String tempID = registry.register(getMediation("x"));
+        String timestamp = tempID.substring(0, tempID.lastIndexOf(":"));
+        long time = Timestamp.valueOf(timestamp).getTime();
+        assertTrue(Math.abs(System.currentTimeMillis() - time) < 60000);
+    }
+
+    @Test
+    public void testTempIDsAreUniqueAcrossThreads() throws Exception {
+        final DatastreamMediationRegistry registry =
+                new DatastreamMediationRegistry(60000);
+        final Set<String> tempIDs =
+                Collections.synchronizedSet(new HashSet<String>());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        tempIDs.add(registry.register(getMediation("x")));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8000, tempIDs.size());
+        assertEquals(8000, registry.size());
+    }
+
+    @Test
+    public void testExpiredRegistrationsAreRemoved() throws Exception {
+        DatastreamMediationRegistry registry =
+                new DatastreamMediationRegistry(50);
+        String first = registry.register(getMediation("1"));
+        String second = registry.register(getMediation("2"));
+        registry.remove(second);
+        Thread.sleep(100);
+        assertNull(registry.get(first));
+
+        String third = registry.register(getMediation("3"));
+        assertEquals(1, registry.size());
+        assertEquals(1, registry.getExpiredCount());
+        assertEquals("3", registry.get(third).dsLocation);
+    }
+
+    private static DatastreamMediation getMediation(String dsLocation) {
+        DatastreamMediation dm = new DatastreamMediation();
+        dm.dsLocation = dsLocation;
+        dm.dsControlGroupType = "E";
+        return dm;
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DatastreamMediationRegistryTest.class);
+    }
+}
@@ -11,7 +11,8 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses( {org.fcrepo.server.journal.helpers.AllUnitTests.class,
         org.fcrepo.server.journal.readerwriter.AllUnitTests.class,
         org.fcrepo.server.journal.xmlhelpers.AllUnitTests.class,
-        TestJournalRoundTrip.class})
+        TestJournalRoundTrip.class, TestJournalEntryCommitter.class,
+        TestJournalReplayer.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -23,6 +24,8 @@ public class AllUnitTests {
         suite.addTest(org.fcrepo.server.journal.readerwriter.AllUnitTests.suite());
         suite.addTest(org.fcrepo.server.journal.xmlhelpers.AllUnitTests.suite());
         suite.addTest(TestJournalRoundTrip.suite());
+        suite.addTest(TestJournalEntryCommitter.suite());
+        suite.addTest(TestJournalReplayer.suite());
 
         return suite;
     }
@@ -71,6 +71,11 @@ public class MockJournalWriter
         }
     }
 
+    @Override
+    public boolean isReadyToWrite() {
+        return !firstEntry;
+    }
+
     @Override
     public void shutdown() throws JournalException {
         try {
@@ -0,0 +1,372 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fcrepo.server.Context;
+import org.fcrepo.server.errors.GeneralException;
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.journal.entry.CreatorJournalEntry;
+import org.fcrepo.server.journal.entry.JournalEntryContext;
+import org.fcrepo.server.management.MockManagementDelegate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Journal Management methods concurrently, through a {@link JournalCreator}
+ * with the "concurrentOperations" parameter set.
+ */
+public class TestJournalEntryCommitter {
+
+    private static final long TIMEOUT = 10;
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TestJournalEntryCommitter.class);
+    }
+
+    private Map<String, String> journalParameters;
+
+    @Before
+    public void initializeJournalParameters() {
+        journalParameters = new HashMap<String, String>();
+        journalParameters
+                .put(JournalConstants.PARAMETER_JOURNAL_WRITER_CLASSNAME,
+                     MockJournalWriter.class.getName());
+        journalParameters
+                .put(JournalConstants.PARAMETER_CONCURRENT_OPERATIONS, "true");
+    }
+
+    @Test
+    public void methodsOnDifferentObjectsRunConcurrently() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        MockManagementDelegate delegate = new MockManagementDelegate() {
+
+            @Override
+            public Date modifyObject(Context context,
+                                     String pid,
+                                     String state,
+                                     String label,
+                                     String ownerId,
+                                     String logMessage,
+                                     Date lastModifiedDate)
+                    throws ServerException {
+                // neither can finish unless both are in progress at once
+                bothStarted.countDown();
+                try {
+                    if (!bothStarted.await(TIMEOUT, TimeUnit.SECONDS)) {
+                        throw new GeneralException("Not concurrent: " + pid);
+                    }
+                } catch (InterruptedException e) {
+                    throw new GeneralException("Interrupted", e);
+                }
+                synchronized (this) {
+                    return super.modifyObject(context,
+                                              pid,
+                                              state,
+                                              label,
+                                              ownerId,
+                                              logMessage,
+                                              lastModifiedDate);
+                }
+            }
+        };
+        JournalCreator creator = createCreator(delegate);
+
+        List<Throwable> failures =
+                runConcurrently(creator, new String[] {"demo:1", "demo:2"});
+        creator.shutdown();
+
+        assertEquals(new ArrayList<Throwable>(), failures);
+        assertEquals(2, delegate.getCallCount());
+        assertEquals(2, countEntries(MockJournalWriter.getBuffer()));
+    }
+
+    @Test
+    public void methodsOnTheSameObjectRunOneAtATime() throws Exception {
+        final AtomicInteger inProgress = new AtomicInteger();
+        final AtomicInteger maxInProgress = new AtomicInteger();
+        MockManagementDelegate delegate = new MockManagementDelegate() {
+
+            @Override
+            public Date modifyObject(Context context,
+                                     String pid,
+                                     String state,
+                                     String label,
+                                     String ownerId,
+                                     String logMessage,
+                                     Date lastModifiedDate)
+                    throws ServerException {
+                int n = inProgress.incrementAndGet();
+                synchronized (maxInProgress) {
+                    maxInProgress.set(Math.max(n, maxInProgress.get()));
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new GeneralException("Interrupted", e);
+                }
+                inProgress.decrementAndGet();
+                synchronized (this) {
+                    return super.modifyObject(context,
+                                              pid,
+                                              state,
+                                              label,
+                                              ownerId,
+                                              logMessage,
+                                              lastModifiedDate);
+                }
+            }
+        };
+        JournalCreator creator = createCreator(delegate);
+
+        // the URI form names the same object
+        List<Throwable> failures =
+                runConcurrently(creator, new String[] {"demo:1", "demo:1",
+                        "info:fedora/demo:1", "demo:1"});
+        creator.shutdown();
+
+        assertEquals(new ArrayList<Throwable>(), failures);
+        assertEquals(1, maxInProgress.get());
+        assertEquals(4, countEntries(MockJournalWriter.getBuffer()));
+    }
+
+    /**
+     * An ingest that isn't given a PID may create an object that a method
+     * starting while it runs works on. That method must wait, and follow the
+     * ingest in the journal.
+     */
+    @Test
+    public void ingestWithoutPidRunsAlone() throws Exception {
+        final CountDownLatch ingestStarted = new CountDownLatch(1);
+        final CountDownLatch ingestReleased = new CountDownLatch(1);
+        final AtomicInteger modifiesStarted = new AtomicInteger();
+        MockManagementDelegate delegate = new MockManagementDelegate() {
+
+            @Override
+            public String ingest(Context context,
+                                 InputStream serialization,
+                                 String logMessage,
+                                 String format,
+                                 String encoding,
+                                 String pid) throws ServerException {
+                ingestStarted.countDown();
+                try {
+                    if (!ingestReleased.await(TIMEOUT, TimeUnit.SECONDS)) {
+                        throw new GeneralException("Ingest not released");
+                    }
+                } catch (InterruptedException e) {
+                    throw new GeneralException("Interrupted", e);
+                }
+                synchronized (this) {
+                    return super.ingest(context,
+                                        serialization,
+                                        logMessage,
+                                        format,
+                                        encoding,
+                                        pid);
+                }
+            }
+
+            @Override
+            public Date modifyObject(Context context,
+                                     String pid,
+                                     String state,
+                                     String label,
+                                     String ownerId,
+                                     String logMessage,
+                                     Date lastModifiedDate)
+                    throws ServerException {
+                modifiesStarted.incrementAndGet();
+                synchronized (this) {
+                    return super.modifyObject(context,
+                                              pid,
+                                              state,
+                                              label,
+                                              ownerId,
+                                              logMessage,
+                                              lastModifiedDate);
+                }
+            }
+        };
+        final JournalCreator creator = createCreator(delegate);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        Thread ingest = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    creator.ingest(new JournalEntryContext(),
+                                   new ByteArrayInputStream("<foxml/>"
+                                           .getBytes("UTF-8")),
+                                   "message",
+                                   "format",
+                                   "UTF-8",
+                                   "new");
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }
+        };
+        ingest.start();
+        assertTrue(ingestStarted.await(TIMEOUT, TimeUnit.SECONDS));
+
+        Thread modify = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    creator.modifyObject(new JournalEntryContext(),
+                                         "demo:1",
+                                         "A",
+                                         "label",
+                                         "owner",
+                                         "message",
+                                         null);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }
+        };
+        modify.start();
+        modify.join(200);
+        assertTrue(modify.isAlive());
+        assertEquals(0, modifiesStarted.get());
+
+        ingestReleased.countDown();
+        ingest.join(TIMEOUT * 1000);
+        modify.join(TIMEOUT * 1000);
+        assertFalse(ingest.isAlive());
+        assertFalse(modify.isAlive());
+        creator.shutdown();
+
+        assertEquals(new ArrayList<Throwable>(), failures);
+        assertEquals(2, delegate.getCallCount());
+        String journal = MockJournalWriter.getBuffer();
+        assertEquals(2, countEntries(journal));
+        int ingestEntry =
+                journal.indexOf("method=\"" + JournalConstants.METHOD_INGEST
+                        + "\"");
+        int modifyEntry =
+                journal.indexOf("method=\""
+                        + JournalConstants.METHOD_MODIFY_OBJECT + "\"");
+        assertTrue(ingestEntry >= 0);
+        assertTrue(modifyEntry > ingestEntry);
+    }
+
+    @Test
+    public void getObjectPid() throws Exception {
+        assertEquals("demo:1", pidOf("demo:1"));
+        assertEquals("demo:1", pidOf("info:fedora/demo:1"));
+        assertEquals("demo:1", pidOf("info:fedora/demo:1/DC"));
+        assertNull(pidOf(null));
+    }
+
+    @Test
+    public void getObjectPidOfIngest() throws Exception {
+        assertEquals("demo:1", ingestPidOf("demo:1"));
+        assertNull(ingestPidOf("new"));
+        assertNull(ingestPidOf(""));
+        assertNull(ingestPidOf(null));
+    }
+
+    private String pidOf(String pid) {
+        CreatorJournalEntry entry =
+                new CreatorJournalEntry(JournalConstants.METHOD_ADD_RELATIONSHIP,
+                                        new JournalEntryContext());
+        entry.addArgument(JournalConstants.ARGUMENT_NAME_PID, pid);
+        return JournalEntryCommitter.getObjectPid(entry);
+    }
+
+    private String ingestPidOf(String pid) {
+        CreatorJournalEntry entry =
+                new CreatorJournalEntry(JournalConstants.METHOD_INGEST,
+                                        new JournalEntryContext());
+        entry.addArgument(JournalConstants.ARGUMENT_NAME_NEW_PID, pid);
+        return JournalEntryCommitter.getObjectPid(entry);
+    }
+
+    private JournalCreator createCreator(MockManagementDelegate delegate)
+            throws Exception {
+        JournalCreator creator =
+                new JournalCreator(journalParameters,
+                                   "theRole",
+                                   new MockServerForJournalTesting(delegate,
+                                                                   "theHash"));
+        creator.setManagementDelegate(delegate);
+        return creator;
+    }
+
+    /**
+     * Call modifyObject on each PID in its own thread, and wait for them all.
+     */
+    private List<Throwable> runConcurrently(final JournalCreator creator,
+                                            String[] pids)
+            throws InterruptedException {
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final String pid : pids) {
+            threads.add(new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        creator.modifyObject(new JournalEntryContext(),
+                                             pid,
+                                             "A",
+                                             "label",
+                                             "owner",
+                                             "message",
+                                             null);
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT * 1000);
+        }
+        return failures;
+    }
+
+    private static int countEntries(String journal) {
+        int count = 0;
+        int i = -1;
+        while ((i = journal.indexOf("<JournalEntry ", i + 1)) >= 0) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,238 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.journal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fcrepo.common.Constants;
+import org.fcrepo.server.Context;
+import org.fcrepo.server.errors.GeneralException;
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.journal.entry.ConsumerJournalEntry;
+import org.fcrepo.server.journal.entry.JournalEntryContext;
+import org.fcrepo.server.management.MockManagementDelegate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Replaying journal entries on several threads, through a
+ * {@link JournalReplayer}.
+ */
+public class TestJournalReplayer
+        implements JournalConstants {
+
+    private static final long TIMEOUT = 10;
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TestJournalReplayer.class);
+    }
+
+    private MockJournalRecoveryLog recoveryLog;
+
+    /** "pid label" for each modifyObject, in the order they were made. */
+    private List<String> modified;
+
+    @Before
+    public void initialize() throws Exception {
+        recoveryLog =
+                new MockJournalRecoveryLog(new HashMap<String, String>(),
+                                           "theRole",
+                                           null);
+        modified = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @Test
+    public void entriesForEachObjectAreReplayedInOrder() throws Exception {
+        JournalReplayer replayer =
+                new JournalReplayer(4, new RecordingDelegate(), recoveryLog);
+        for (int i = 0; i < 200; i++) {
+            replayer.replay(modifyObject("demo:" + i % 7, i));
+        }
+        replayer.awaitCompletion();
+        replayer.checkForFailure();
+        replayer.shutdown();
+
+        assertEquals(200, modified.size());
+        int[] last = new int[7];
+        Arrays.fill(last, -1);
+        for (String call : modified) {
+            String[] parts = call.split(" ");
+            int object = Integer.parseInt(parts[0].substring("demo:".length()));
+            int sequence = Integer.parseInt(parts[1]);
+            assertTrue(call + " after " + last[object], sequence > last[object]);
+            last[object] = sequence;
+        }
+    }
+
+    @Test
+    public void entriesForDifferentObjectsAreReplayedConcurrently()
+            throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        JournalReplayer replayer =
+                new JournalReplayer(2, new RecordingDelegate() {
+
+                    @Override
+                    protected void modifying(String pid) throws ServerException {
+                        // neither can finish unless both are in progress
+                        bothStarted.countDown();
+                        try {
+                            if (!bothStarted.await(TIMEOUT, TimeUnit.SECONDS)) {
+                                throw new GeneralException("Not concurrent: "
+                                        + pid);
+                            }
+                        } catch (InterruptedException e) {
+                            throw new GeneralException("Interrupted", e);
+                        }
+                    }
+                }, recoveryLog);
+
+        // two objects that go to different workers
+        String first = "demo:1";
+        String second = "demo:2";
+        while ((first.hashCode() & Integer.MAX_VALUE) % 2 == (second
+                .hashCode() & Integer.MAX_VALUE) % 2) {
+            second = second + "0";
+        }
+        replayer.replay(modifyObject(first, 1));
+        replayer.replay(modifyObject(second, 2));
+        replayer.awaitCompletion();
+        replayer.checkForFailure();
+        replayer.shutdown();
+
+        assertEquals(2, modified.size());
+    }
+
+    @Test
+    public void entryWithoutAnObjectWaitsForThoseBefore() throws Exception {
+        RecordingDelegate delegate = new RecordingDelegate() {
+
+            @Override
+            protected void modifying(String pid) throws ServerException {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new GeneralException("Interrupted", e);
+                }
+            }
+        };
+        JournalReplayer replayer = new JournalReplayer(4, delegate, recoveryLog);
+        replayer.replay(modifyObject("demo:1", 1));
+        replayer.replay(modifyObject("demo:2", 2));
+
+        ConsumerJournalEntry getNextPid =
+                new ConsumerJournalEntry(METHOD_GET_NEXT_PID,
+                                         new JournalEntryContext());
+        getNextPid.addArgument(ARGUMENT_NAME_NUM_PIDS, 1);
+        getNextPid.addArgument(ARGUMENT_NAME_NAMESPACE, "demo");
+        replayer.replay(getNextPid);
+
+        // replayed by this thread, after the others
+        assertEquals(2, modified.size());
+        assertEquals(1, delegate.getCallCount());
+        replayer.shutdown();
+    }
+
+    @Test
+    public void failureIsReported() throws Exception {
+        JournalReplayer replayer =
+                new JournalReplayer(2, new RecordingDelegate() {
+
+                    @Override
+                    protected void modifying(String pid) throws ServerException {
+                        if (pid.equals("demo:bad")) {
+                            throw new GeneralException("Bad object");
+                        }
+                    }
+                }, recoveryLog);
+        replayer.replay(modifyObject("demo:bad", 1));
+        replayer.awaitCompletion();
+        try {
+            replayer.checkForFailure();
+            fail("Expected a JournalException");
+        } catch (JournalException e) {
+            assertEquals("Bad object", e.getCause().getMessage());
+        }
+        try {
+            replayer.replay(modifyObject("demo:good", 2));
+            fail("Expected a JournalException");
+        } catch (JournalException e) {
+            // expected
+        }
+        replayer.shutdown();
+        assertEquals(0, modified.size());
+    }
+
+    @Test
+    public void getObjectPid() throws Exception {
+        assertEquals("demo:1", JournalReplayer
+                .getObjectPid(modifyObject("demo:1", 1)));
+
+        ConsumerJournalEntry ingest =
+                new ConsumerJournalEntry(METHOD_INGEST,
+                                         new JournalEntryContext());
+        ingest.addArgument(ARGUMENT_NAME_NEW_PID, "new");
+        assertNull(JournalReplayer.getObjectPid(ingest));
+
+        JournalEntryContext context = new JournalEntryContext();
+        context.setRecoveryValue(Constants.RECOVERY.PID.uri, "demo:5");
+        ingest = new ConsumerJournalEntry(METHOD_INGEST, context);
+        ingest.addArgument(ARGUMENT_NAME_NEW_PID, "new");
+        assertEquals("demo:5", JournalReplayer.getObjectPid(ingest));
+    }
+
+    private ConsumerJournalEntry modifyObject(String pid, int sequence) {
+        ConsumerJournalEntry entry =
+                new ConsumerJournalEntry(METHOD_MODIFY_OBJECT,
+                                         new JournalEntryContext());
+        entry.addArgument(ARGUMENT_NAME_PID, pid);
+        entry.addArgument(ARGUMENT_NAME_STATE, "A");
+        entry.addArgument(ARGUMENT_NAME_LABEL, String.valueOf(sequence));
+        entry.addArgument(ARGUMENT_NAME_OWNERID, "owner");
+        entry.addArgument(ARGUMENT_NAME_LOG_MESSAGE, "message");
+        entry.addArgument(ARGUMENT_NAME_LAST_MODIFIED_DATE, (Date) null);
+        entry.setIdentifier(pid + " " + sequence);
+        return entry;
+    }
+
+    /**
+     * Records each modifyObject, and passes other calls to the mock.
+     */
+    private class RecordingDelegate
+            extends MockManagementDelegate {
+
+        @Override
+        public Date modifyObject(Context context,
+                                 String pid,
+                                 String state,
+                                 String label,
+                                 String ownerId,
+                                 String logMessage,
+                                 Date lastModifiedDate)
+                throws ServerException {
+            modifying(pid);
+            modified.add(pid + " " + label);
+            return new Date();
+        }
+
+        protected void modifying(String pid) throws ServerException {
+        }
+    }
+}
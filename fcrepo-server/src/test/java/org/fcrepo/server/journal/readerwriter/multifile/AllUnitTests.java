@@ -8,7 +8,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {TestLockingFollowingJournalReader.class})
+@Suite.SuiteClasses( {TestLockingFollowingJournalReader.class,
+        TestFileArguments.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -18,6 +19,7 @@ public class AllUnitTests {
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
 
         suite.addTestSuite(TestLockingFollowingJournalReader.class);
+        suite.addTest(TestFileArguments.suite());
 
         return suite;
     }
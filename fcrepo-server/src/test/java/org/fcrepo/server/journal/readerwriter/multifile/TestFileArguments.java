@@ -0,0 +1,185 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.journal.readerwriter.multifile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fcrepo.server.journal.JournalConstants;
+import org.fcrepo.server.journal.MockJournalRecoveryLog;
+import org.fcrepo.server.journal.MockServerForJournalTesting;
+import org.fcrepo.server.journal.entry.ConsumerJournalEntry;
+import org.fcrepo.server.journal.entry.CreatorJournalEntry;
+import org.fcrepo.server.journal.entry.JournalEntryContext;
+import org.fcrepo.server.management.MockManagementDelegate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stream arguments stored apart from the journal files, when the
+ * "separateFileArgumentSize" parameter is set.
+ */
+public class TestFileArguments
+        implements JournalConstants, MultiFileJournalConstants {
+
+    private static final String LARGE = "a large stream argument";
+
+    private static final String SMALL = "small";
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TestFileArguments.class);
+    }
+
+    private File journalDirectory;
+
+    private File archiveDirectory;
+
+    private Map<String, String> parameters;
+
+    private MockServerForJournalTesting server;
+
+    @Before
+    public void initialize() throws Exception {
+        journalDirectory = createTempDirectory("fedoraTestingJournalFiles");
+        archiveDirectory = createTempDirectory("fedoraTestingArchiveFiles");
+        parameters = new HashMap<String, String>();
+        parameters.put(PARAMETER_JOURNAL_DIRECTORY, journalDirectory.getPath());
+        parameters.put(PARAMETER_ARCHIVE_DIRECTORY, archiveDirectory.getPath());
+        parameters.put(PARAMETER_SEPARATE_FILE_ARGUMENT_SIZE, "10");
+        server =
+                new MockServerForJournalTesting(new MockManagementDelegate(),
+                                                "theHash");
+    }
+
+    @After
+    public void cleanUp() {
+        deleteDirectory(journalDirectory);
+        deleteDirectory(archiveDirectory);
+    }
+
+    @Test
+    public void largeArgumentsAreStoredApart() throws Exception {
+        writeEntry();
+
+        File[] journalFiles = listJournalFiles(journalDirectory);
+        assertEquals(1, journalFiles.length);
+        String journal = read(new FileInputStream(journalFiles[0]));
+        assertTrue(journal.contains("type=\"" + ARGUMENT_TYPE_STREAM_FILE
+                + "\""));
+        assertTrue(journal.contains("type=\"" + ARGUMENT_TYPE_STREAM + "\""));
+        assertFalse(journal.contains(LARGE));
+
+        File[] stored =
+                new File(journalDirectory, FILE_ARGUMENT_DIRECTORY)
+                        .listFiles();
+        assertEquals(1, stored.length);
+        assertEquals(LARGE, read(new FileInputStream(stored[0])));
+    }
+
+    @Test
+    public void readerFindsAndArchivesStoredArguments() throws Exception {
+        writeEntry();
+
+        MultiFileJournalReader reader =
+                new MultiFileJournalReader(parameters,
+                                           "theRole",
+                                           new MockJournalRecoveryLog(parameters,
+                                                                      "theRole",
+                                                                      server),
+                                           server);
+        ConsumerJournalEntry entry = reader.readJournalEntry();
+        assertEquals(LARGE, read(entry.getStreamArgument("large")));
+        assertEquals(SMALL, read(entry.getStreamArgument("small")));
+        entry.close();
+        assertNull(reader.readJournalEntry());
+        reader.shutdown();
+
+        assertEquals(0, new File(journalDirectory, FILE_ARGUMENT_DIRECTORY)
+                .listFiles().length);
+        File[] archived =
+                new File(archiveDirectory, FILE_ARGUMENT_DIRECTORY)
+                        .listFiles();
+        assertEquals(1, archived.length);
+        assertEquals(LARGE, read(new FileInputStream(archived[0])));
+    }
+
+    @Test
+    public void argumentsAreInlineByDefault() throws Exception {
+        parameters.remove(PARAMETER_SEPARATE_FILE_ARGUMENT_SIZE);
+        writeEntry();
+
+        assertFalse(new File(journalDirectory, FILE_ARGUMENT_DIRECTORY)
+                .exists());
+    }
+
+    private void writeEntry() throws Exception {
+        MultiFileJournalWriter writer =
+                new MultiFileJournalWriter(parameters, "theRole", server);
+        CreatorJournalEntry entry =
+                new CreatorJournalEntry(METHOD_PUT_TEMP_STREAM,
+                                        new JournalEntryContext());
+        entry.addArgument("large", new ByteArrayInputStream(LARGE.getBytes()));
+        entry.addArgument("small", new ByteArrayInputStream(SMALL.getBytes()));
+        writer.prepareToWriteJournalEntry();
+        writer.writeJournalEntry(entry);
+        entry.close();
+        writer.shutdown();
+    }
+
+    private File[] listJournalFiles(File directory) {
+        return MultiFileJournalHelper
+                .getSortedArrayOfJournalFiles(directory,
+                                              DEFAULT_FILENAME_PREFIX);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toString();
+    }
+
+    private File createTempDirectory(String name) {
+        File directory = new File(System.getProperty("java.io.tmpdir"), name);
+        deleteDirectory(directory);
+        directory.mkdir();
+        return directory;
+    }
+
+    private void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDirectory(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        directory.delete();
+    }
+}
@@ -13,7 +13,8 @@ import org.fcrepo.server.messaging.AllUnitTests;
 import junit.framework.JUnit4TestAdapter;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {org.fcrepo.server.messaging.JMSManagerTest.class})
+@Suite.SuiteClasses( {org.fcrepo.server.messaging.JMSManagerTest.class,
+        org.fcrepo.server.messaging.NotificationQueueTest.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
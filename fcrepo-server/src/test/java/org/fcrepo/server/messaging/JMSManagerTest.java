@@ -15,6 +15,7 @@ import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.ObjectMessage;
 import javax.jms.Queue;
+import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.jms.Topic;
 
@@ -44,8 +45,9 @@ public class JMSManagerTest extends TestCase implements MessageListener {
     private Properties properties;
     private final String messageText = "Message Text";
     private Message currentMessage = null;
-    private int messageCount = 0;
+    private volatile int messageCount = 0;
     private final int timeout = 5000; // Maximum number of milliseconds to wait for a message
+    private final int volumeMessages = 5000; // Number of messages sent by the volume test
 
     @Override
     @Before
@@ -246,6 +248,87 @@ public class JMSManagerTest extends TestCase implements MessageListener {
         jmsMgr.close();
     }
 
+    @Test
+    public void testSendToDestinationVolume() throws Exception {
+        String topic = "jmsmanager.test";
+        JMSManager jmsMgr = new JMSManager(properties);
+        Destination destination =
+            jmsMgr.createDestination(topic, DestinationType.Topic);
+        jmsMgr.listen(destination, this);
+
+        // The session and producer are kept between sends
+        int sentMessages = 0;
+        for (int i = 0; i < volumeMessages; i++) {
+            jmsMgr.send(destination,
+                        jmsMgr.createTextMessage(topic, messageText));
+            ++sentMessages;
+        }
+
+        waitForMessages(sentMessages);
+
+        jmsMgr.close();
+    }
+
+    @Test
+    public void testTransactedBatches() throws Exception {
+        String queue = "jmsmanager.transacted";
+        JMSManager jmsMgr = new JMSManager(properties);
+        jmsMgr.createDestination(queue,
+                                 DestinationType.Queue,
+                                 true,
+                                 Session.AUTO_ACKNOWLEDGE,
+                                 10,
+                                 0);
+        JMSManager listenerMgr = new JMSManager(properties);
+        listenerMgr.createDestination(queue, DestinationType.Queue);
+        listenerMgr.listen(queue, this);
+
+        // Nothing is delivered until the batch is full
+        for (int i = 0; i < 9; i++) {
+            jmsMgr.send(queue, messageText);
+        }
+        checkNoMessage();
+        jmsMgr.send(queue, messageText);
+        waitForMessages(10);
+        messageCount = 0;
+
+        // Messages left waiting are committed on stop
+        jmsMgr.send(queue, messageText);
+        jmsMgr.stop(queue);
+        waitForMessages(1);
+
+        listenerMgr.close();
+        jmsMgr.close();
+    }
+
+    @Test
+    public void testTransactedBatchInterval() throws Exception {
+        String queue = "jmsmanager.transacted.interval";
+        JMSManager jmsMgr = new JMSManager(properties);
+        jmsMgr.createDestination(queue,
+                                 DestinationType.Queue,
+                                 true,
+                                 Session.AUTO_ACKNOWLEDGE,
+                                 1000,
+                                 200);
+        JMSManager listenerMgr = new JMSManager(properties);
+        listenerMgr.createDestination(queue, DestinationType.Queue);
+        listenerMgr.listen(queue, this);
+
+        // Far fewer than a batch, committed once the interval has passed
+        int sentMessages = 0;
+        long sendStart = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            jmsMgr.send(queue, messageText);
+            ++sentMessages;
+        }
+        waitForMessages(sentMessages);
+        assertTrue(System.currentTimeMillis() - sendStart < timeout);
+
+        listenerMgr.close();
+        jmsMgr.close();
+    }
+
     @Test
     public void testInvalidProperties() throws Exception {
         // Null properties
@@ -327,6 +410,20 @@ public class JMSManagerTest extends TestCase implements MessageListener {
         } catch(MessagingException expected) {}
     }
 
+    /**
+     * Waits until the given number of messages have been received.
+     */
+    private void waitForMessages(int count) throws Exception {
+        long startTime = System.currentTimeMillis();
+        while (messageCount < count) {
+            if (System.currentTimeMillis() > (startTime + timeout)) {
+                fail("Expected " + count + " messages but only received "
+                        + messageCount + " messages");
+            }
+            Thread.sleep(10);
+        }
+    }
+
     /**
      * Waits for a message and checks to see if it is valid.
      */
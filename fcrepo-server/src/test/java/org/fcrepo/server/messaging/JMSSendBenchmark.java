@@ -0,0 +1,209 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.messaging;
+
+import java.util.Properties;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.naming.Context;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+
+import org.fcrepo.server.messaging.JMSManager.DestinationType;
+
+/**
+ * Measures the cost of sending messages through JMSManager against an
+ * embedded, non-persistent ActiveMQ broker.
+ *
+ * <p>Not a unit test; run it from the command line with the test classpath,
+ * optionally giving the number of messages per measurement round (default
+ * 5000).  Four ways of sending are compared:
+ * <ul>
+ * <li>a new session and producer for every message, as send(Destination,
+ * Message) did before sessions were kept;</li>
+ * <li>send(Destination, Message), which keeps one session and producer per
+ * destination;</li>
+ * <li>a transacted destination committed after every message;</li>
+ * <li>a transacted destination committed in batches of 100.</li>
+ * </ul>
+ * Each way is warmed up with one round, then timed over five.  The mean and
+ * the best round are reported in messages per second.  Nothing listens on
+ * the topics, so only the cost of sending is measured.
+ *
+ * @version $Id$
+ */
+public class JMSSendBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final String BROKER_URL =
+            "vm://localhost?broker.persistent=false";
+
+    private static final String MESSAGE_TEXT = "Message Text";
+
+    private final int m_messagesPerRound;
+
+    private final JMSManager m_jmsMgr;
+
+    private final Connection m_connection;
+
+    public JMSSendBenchmark(int messagesPerRound) throws Exception {
+        m_messagesPerRound = messagesPerRound;
+        Properties properties = new Properties();
+        properties.setProperty(Context.INITIAL_CONTEXT_FACTORY,
+                               "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+        properties.setProperty(Context.PROVIDER_URL, BROKER_URL);
+        properties.setProperty(JMSManager.CONNECTION_FACTORY_NAME,
+                               "ConnectionFactory");
+        m_jmsMgr = new JMSManager(properties);
+        m_connection =
+                new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+        m_connection.start();
+    }
+
+    /**
+     * Times sending with a new session and producer for each message,
+     * returning messages per second.
+     */
+    private double sessionPerSendRound(Destination destination)
+            throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < m_messagesPerRound; i++) {
+            Session session =
+                    m_connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            try {
+                MessageProducer producer = session.createProducer(destination);
+                producer.send(session.createTextMessage(MESSAGE_TEXT));
+                producer.close();
+            } finally {
+                session.close();
+            }
+        }
+        return rate(start);
+    }
+
+    /**
+     * Times sending with send(Destination, Message), returning messages per
+     * second.
+     */
+    private double keptSessionRound(Destination destination,
+                                    String name) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < m_messagesPerRound; i++) {
+            m_jmsMgr.send(destination,
+                          m_jmsMgr.createTextMessage(name, MESSAGE_TEXT));
+        }
+        return rate(start);
+    }
+
+    /**
+     * Times sending to a named transacted destination, returning messages
+     * per second.  Messages left in a part-filled batch at the end of a
+     * round are committed during the next one.
+     */
+    private double transactedRound(String name) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < m_messagesPerRound; i++) {
+            m_jmsMgr.send(name, MESSAGE_TEXT);
+        }
+        return rate(start);
+    }
+
+    private double rate(long start) {
+        double seconds = (System.nanoTime() - start) / 1000000000.0;
+        return m_messagesPerRound / seconds;
+    }
+
+    public void run() throws Exception {
+        Destination perSend =
+                m_jmsMgr.createDestination("benchmark.perSend",
+                                           DestinationType.Topic);
+        Destination kept =
+                m_jmsMgr.createDestination("benchmark.kept",
+                                           DestinationType.Topic);
+        m_jmsMgr.createDestination("benchmark.commitEach",
+                                   DestinationType.Topic,
+                                   true,
+                                   Session.AUTO_ACKNOWLEDGE,
+                                   1,
+                                   0);
+        m_jmsMgr.createDestination("benchmark.commitBatch",
+                                   DestinationType.Topic,
+                                   true,
+                                   Session.AUTO_ACKNOWLEDGE,
+                                   BATCH_SIZE,
+                                   0);
+
+        sessionPerSendRound(perSend);
+        keptSessionRound(kept, "benchmark.kept");
+        transactedRound("benchmark.commitEach");
+        transactedRound("benchmark.commitBatch");
+        double[] sessionPerSend = new double[ROUNDS];
+        double[] keptSession = new double[ROUNDS];
+        double[] commitEach = new double[ROUNDS];
+        double[] commitBatch = new double[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            sessionPerSend[i] = sessionPerSendRound(perSend);
+            keptSession[i] = keptSessionRound(kept, "benchmark.kept");
+            commitEach[i] = transactedRound("benchmark.commitEach");
+            commitBatch[i] = transactedRound("benchmark.commitBatch");
+        }
+        System.out.println("path, messages, mean (msg/s), best (msg/s)");
+        print("session per send", sessionPerSend);
+        print("kept session", keptSession);
+        print("commit each", commitEach);
+        print("commit batch of " + BATCH_SIZE, commitBatch);
+    }
+
+    public void close() throws Exception {
+        m_jmsMgr.close();
+        m_connection.close();
+    }
+
+    private void print(String path, double[] rates) {
+        System.out.println(path + ", " + m_messagesPerRound + ", "
+                + Math.round(mean(rates)) + ", " + Math.round(max(rates)));
+    }
+
+    private static double mean(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total / values.length;
+    }
+
+    private static double max(double[] values) {
+        double max = values[0];
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int messagesPerRound = 5000;
+        if (args.length > 0) {
+            try {
+                messagesPerRound = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.out.println("USAGE: JMSSendBenchmark [MESSAGES]");
+                System.exit(1);
+            }
+        }
+        JMSSendBenchmark benchmark = new JMSSendBenchmark(messagesPerRound);
+        try {
+            benchmark.run();
+        } finally {
+            benchmark.close();
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.messaging;
+
+import java.io.File;
+
+import java.lang.reflect.Method;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fcrepo.server.Context;
+import org.fcrepo.server.errors.MessagingException;
+import org.fcrepo.server.management.Management;
+import org.fcrepo.server.messaging.NotificationQueue.OverflowPolicy;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the NotificationQueue
+ *
+ * @version $Id$
+ */
+public class NotificationQueueTest {
+
+    private static final long TIMEOUT = 10000;
+
+    // The sequence number is carried as the author of the Atom entry
+    private static final String ENTRY =
+            "<entry xmlns=\"http://www.w3.org/2005/Atom\">"
+                    + "<id>urn:uuid:test</id>"
+                    + "<updated>2010-01-01T00:00:00Z</updated>"
+                    + "<author><name>%s</name>"
+                    + "<uri>http://localhost:8080/fedora</uri></author>"
+                    + "<title type=\"text\">%s</title>"
+                    + "<summary type=\"text\">%s</summary>"
+                    + "</entry>";
+
+    private static Method modifyObject;
+
+    private File spillDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        modifyObject =
+                Management.class.getMethod("modifyObject",
+                                           Context.class,
+                                           String.class,
+                                           String.class,
+                                           String.class,
+                                           String.class,
+                                           String.class,
+                                           Date.class);
+        spillDirectory =
+                new File(System.getProperty("java.io.tmpdir"),
+                         "fedoraTestingNotifications");
+        deleteDirectory(spillDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        deleteDirectory(spillDirectory);
+    }
+
+    @Test
+    public void testNotificationsForEachObjectAreSentInOrder()
+            throws Exception {
+        RecordingMessaging messaging = new RecordingMessaging(false);
+        NotificationQueue queue =
+                new NotificationQueue(messaging,
+                                      4,
+                                      1000,
+                                      OverflowPolicy.block,
+                                      null);
+        for (int i = 0; i < 200; i++) {
+            queue.add(modifyObject("demo:" + i % 7, i));
+        }
+        messaging.waitForSent(200);
+        queue.shutdown();
+
+        int[] last = new int[7];
+        Arrays.fill(last, -1);
+        for (String sent : messaging.sent) {
+            String[] parts = sent.split(" ");
+            int object = Integer.parseInt(parts[0].substring("demo:".length()));
+            int sequence = Integer.parseInt(parts[1]);
+            assertTrue(sent + " after " + last[object], sequence > last[object]);
+            last[object] = sequence;
+        }
+        assertEquals(200, queue.getSentCount());
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+    @Test
+    public void testBlockWaitsForRoom() throws Exception {
+        RecordingMessaging messaging = new RecordingMessaging(true);
+        final NotificationQueue queue =
+                new NotificationQueue(messaging,
+                                      1,
+                                      1,
+                                      OverflowPolicy.block,
+                                      null);
+        queue.add(modifyObject("demo:1", 0));
+        messaging.waitForStarted(1);
+        queue.add(modifyObject("demo:1", 1));
+
+        Thread caller = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    queue.add(modifyObject("demo:1", 2));
+                } catch (MessagingException e) {
+                    fail(e.getMessage());
+                }
+            }
+        };
+        caller.start();
+        caller.join(200);
+        assertTrue("The caller should wait for room", caller.isAlive());
+
+        messaging.release();
+        caller.join(TIMEOUT);
+        messaging.waitForSent(3);
+        queue.shutdown();
+
+        assertEquals(Arrays.asList("demo:1 0", "demo:1 1", "demo:1 2"),
+                     messaging.sent);
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testDropOldestDiscardsWaitingNotifications() throws Exception {
+        RecordingMessaging messaging = new RecordingMessaging(true);
+        NotificationQueue queue =
+                new NotificationQueue(messaging,
+                                      1,
+                                      1,
+                                      OverflowPolicy.dropOldest,
+                                      null);
+        queue.add(modifyObject("demo:1", 0));
+        messaging.waitForStarted(1);
+        queue.add(modifyObject("demo:1", 1));
+        queue.add(modifyObject("demo:1", 2));
+        queue.add(modifyObject("demo:1", 3));
+
+        messaging.release();
+        messaging.waitForSent(2);
+        queue.shutdown();
+
+        assertEquals(Arrays.asList("demo:1 0", "demo:1 3"), messaging.sent);
+        assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testSpilledNotificationsAreSentInOrder() throws Exception {
+        RecordingMessaging messaging = new RecordingMessaging(true);
+        NotificationQueue queue =
+                new NotificationQueue(messaging,
+                                      1,
+                                      1,
+                                      OverflowPolicy.spill,
+                                      spillDirectory);
+        queue.add(modifyObject("demo:1", 0));
+        messaging.waitForStarted(1);
+        for (int i = 1; i < 10; i++) {
+            queue.add(modifyObject("demo:1", i));
+        }
+        assertTrue(queue.getSpilledCount() > 0);
+        assertEquals(9, queue.getQueueDepth());
+
+        messaging.release();
+        messaging.waitForSent(10);
+        waitForNoSpillFile();
+
+        // back to memory once the spill log has been sent
+        queue.add(modifyObject("demo:1", 10));
+        messaging.waitForSent(11);
+        long spilled = queue.getSpilledCount();
+        queue.shutdown();
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i <= 10; i++) {
+            expected.add("demo:1 " + i);
+        }
+        assertEquals(expected, messaging.sent);
+        assertEquals(spilled, queue.getSpilledCount());
+        assertEquals(11, queue.getSentCount());
+        assertTrue(queue.getMaxLatency() >= queue.getAverageLatency());
+    }
+
+    @Test
+    public void testSpillLogIsSentAfterRestart() throws Exception {
+        final RecordingMessaging messaging = new RecordingMessaging(true);
+        NotificationQueue queue =
+                new NotificationQueue(messaging,
+                                      1,
+                                      1,
+                                      OverflowPolicy.spill,
+                                      spillDirectory);
+        queue.add(modifyObject("demo:1", 0));
+        messaging.waitForStarted(1);
+        for (int i = 1; i < 5; i++) {
+            queue.add(modifyObject("demo:1", i));
+        }
+
+        // let the senders finish once shutdown has begun
+        new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                }
+                messaging.release();
+            }
+        }.start();
+        queue.shutdown();
+        assertEquals(Arrays.asList("demo:1 0", "demo:1 1"), messaging.sent);
+        assertTrue(new File(spillDirectory, NotificationQueue.SPILL_FILE_NAME)
+                .exists());
+
+        RecordingMessaging restarted = new RecordingMessaging(false);
+        queue =
+                new NotificationQueue(restarted,
+                                      1,
+                                      1,
+                                      OverflowPolicy.spill,
+                                      spillDirectory);
+        restarted.waitForSent(3);
+        waitForNoSpillFile();
+        queue.shutdown();
+        assertEquals(Arrays.asList("demo:1 2", "demo:1 3", "demo:1 4"),
+                     restarted.sent);
+    }
+
+    private FedoraMethod modifyObject(String pid, int sequence) {
+        return new FedoraMethod(modifyObject, new Object[] {null, pid, "A",
+                String.valueOf(sequence), "owner", "message", null}, null);
+    }
+
+    private void waitForNoSpillFile() throws InterruptedException {
+        File spillFile =
+                new File(spillDirectory, NotificationQueue.SPILL_FILE_NAME);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (spillFile.exists()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The spill log was not removed");
+            }
+            Thread.sleep(10);
+        }
+        assertFalse(spillFile.exists());
+    }
+
+    private void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(NotificationQueueTest.class);
+    }
+
+    /**
+     * Records "pid sequence" for each notification sent, optionally holding
+     * each send until released.
+     */
+    private static class RecordingMessaging
+            implements Messaging {
+
+        final List<String> sent =
+                Collections.synchronizedList(new ArrayList<String>());
+
+        private final CountDownLatch gate;
+
+        private final Semaphore started = new Semaphore(0);
+
+        RecordingMessaging(boolean held) {
+            gate = new CountDownLatch(held ? 1 : 0);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        void waitForStarted(int count) throws InterruptedException {
+            assertTrue(started.tryAcquire(count, TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+
+        void waitForSent(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (sent.size() < count) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Expected " + count + " notifications but only "
+                            + sent.size() + " were sent");
+                }
+                Thread.sleep(10);
+            }
+        }
+
+        public void send(FedoraMethod method) throws MessagingException {
+            record(method.getPID().toString(),
+                   (String) method.getParameters()[3]);
+        }
+
+        public void send(APIMMessage message) throws MessagingException {
+            record(message.getPID(), ((AtomAPIMMessage) message).getAuthor());
+        }
+
+        public APIMMessage createMessage(FedoraMethod method)
+                throws MessagingException {
+            return new AtomAPIMMessage(String.format(ENTRY,
+                                                     method.getParameters()[3],
+                                                     method.getName(),
+                                                     method.getPID()));
+        }
+
+        public void send(String destName, FedoraMessage message)
+                throws MessagingException {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() throws MessagingException {
+        }
+
+        private void record(String pid, String sequence)
+                throws MessagingException {
+            started.release();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new MessagingException("Interrupted");
+            }
+            sent.add(pid + " " + sequence);
+        }
+    }
+}
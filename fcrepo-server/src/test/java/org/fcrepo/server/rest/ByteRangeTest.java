@@ -0,0 +1,93 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ByteRange
+ *
+ * @version $Id$
+ */
+public class ByteRangeTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes();
+
+    @Test
+    public void testBoundedRange() throws Exception {
+        ByteRange range = ByteRange.parse("bytes=2-5", 10);
+        assertEquals(2, range.first);
+        assertEquals(5, range.last);
+        assertEquals(4, range.getLength());
+        assertEquals("bytes 2-5/10", range.getContentRange(10));
+        assertEquals("2345", read(range));
+    }
+
+    @Test
+    public void testOpenRange() throws Exception {
+        ByteRange range = ByteRange.parse("bytes=7-", 10);
+        assertEquals("789", read(range));
+    }
+
+    @Test
+    public void testSuffixRange() throws Exception {
+        ByteRange range = ByteRange.parse("bytes=-3", 10);
+        assertEquals("bytes 7-9/10", range.getContentRange(10));
+        assertEquals("789", read(range));
+        assertEquals("0123456789", read(ByteRange.parse("bytes=-30", 10)));
+    }
+
+    @Test
+    public void testRangeIsClippedToContent() throws Exception {
+        ByteRange range = ByteRange.parse("bytes=8-100", 10);
+        assertEquals("89", read(range));
+    }
+
+    @Test
+    public void testUnsatisfiableRange() {
+        assertFalse(ByteRange.parse("bytes=10-", 10).isSatisfiable(10));
+        assertFalse(ByteRange.parse("bytes=-0", 10).isSatisfiable(10));
+        assertTrue(ByteRange.parse("bytes=9-", 10).isSatisfiable(10));
+        assertEquals("bytes */10", ByteRange.getUnsatisfiedContentRange(10));
+    }
+
+    @Test
+    public void testIgnoredRanges() {
+        assertNull(ByteRange.parse(null, 10));
+        assertNull(ByteRange.parse("bytes=0-1", -1));
+        assertNull(ByteRange.parse("bytes=0-1,5-6", 10));
+        assertNull(ByteRange.parse("items=0-1", 10));
+        assertNull(ByteRange.parse("bytes=5-2", 10));
+        assertNull(ByteRange.parse("bytes=a-b", 10));
+    }
+
+    @Test(expected = IOException.class)
+    public void testShortContent() throws Exception {
+        ByteRange.parse("bytes=5-", 10)
+                .getStream(new ByteArrayInputStream(new byte[3]));
+    }
+
+    private static String read(ByteRange range) throws IOException {
+        InputStream in = range.getStream(new ByteArrayInputStream(CONTENT));
+        return new String(IOUtils.toByteArray(in));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ByteRangeTest.class);
+    }
+}
@@ -0,0 +1,179 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.rest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Measures the throughput of sending managed content from a file, the way
+ * the REST API did before and after FileChannelOutput.
+ *
+ * <p>Not a unit test; run it from the command line with the test classpath,
+ * optionally giving the size of the content in megabytes (default 1024) and
+ * the directory to create it in (default the system temp directory).  The
+ * content is written once, then each way of sending it is warmed up with
+ * one read and timed over three.  The mean and the best read are reported
+ * in megabytes per second.  The response is a stream that discards what it
+ * is given, so only the cost of reading and copying is measured; the file
+ * will usually be in the page cache after the first read.
+ *
+ * @version $Id$
+ */
+public class ContentDeliveryBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    /** As used by the entity provider for InputStream entities. */
+    private static final int PROVIDER_BUFFER_SIZE = 8192;
+
+    private final File m_file;
+
+    public ContentDeliveryBenchmark(File file) {
+        m_file = file;
+    }
+
+    private static void createContent(File file, int megabytes)
+            throws IOException {
+        byte[] block = new byte[MEGABYTE];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) i;
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < megabytes; i++) {
+                out.write(block);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Times copying the content from wrapped streams, as for the stream the
+     * low-level store hands back, returning megabytes per second.
+     */
+    private double streamRound() throws IOException {
+        long start = System.nanoTime();
+        // the store's own stream, and the one that closes its connection
+        InputStream in =
+                new PassThroughInputStream(new PassThroughInputStream(new FileInputStream(m_file)));
+        try {
+            OutputStream out = new NullOutputStream();
+            byte[] buffer = new byte[PROVIDER_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return rate(start);
+    }
+
+    /**
+     * Times sending the content with a FileChannelOutput, returning
+     * megabytes per second.
+     */
+    private double channelRound() throws IOException {
+        long start = System.nanoTime();
+        new FileChannelOutput(new FileInputStream(m_file).getChannel(),
+                              0,
+                              m_file.length()).write(new NullOutputStream());
+        return rate(start);
+    }
+
+    private double rate(long start) {
+        double seconds = (System.nanoTime() - start) / 1000000000.0;
+        return m_file.length() / (double) MEGABYTE / seconds;
+    }
+
+    public void run() throws IOException {
+        streamRound();
+        channelRound();
+        double[] stream = new double[ROUNDS];
+        double[] channel = new double[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            stream[i] = streamRound();
+            channel[i] = channelRound();
+        }
+        System.out.println("path, bytes, mean (MB/s), best (MB/s)");
+        System.out.println("stream, " + m_file.length() + ", "
+                + round(mean(stream)) + ", " + round(max(stream)));
+        System.out.println("channel, " + m_file.length() + ", "
+                + round(mean(channel)) + ", " + round(max(channel)));
+    }
+
+    private static double mean(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total / values.length;
+    }
+
+    private static double max(double[] values) {
+        double max = values[0];
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    private static double round(double d) {
+        return Math.round(d * 10) / 10.0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = 1024;
+        File dir = null;
+        try {
+            if (args.length > 0) {
+                megabytes = Integer.parseInt(args[0]);
+            }
+            if (args.length > 1) {
+                dir = new File(args[1]);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("USAGE: ContentDeliveryBenchmark [MEGABYTES [DIR]]");
+            System.exit(1);
+        }
+        File file = File.createTempFile("ContentDeliveryBenchmark", null, dir);
+        try {
+            createContent(file, megabytes);
+            new ContentDeliveryBenchmark(file).run();
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static class PassThroughInputStream
+            extends FilterInputStream {
+
+        PassThroughInputStream(InputStream in) {
+            super(in);
+        }
+    }
+
+    private static class NullOutputStream
+            extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the FileChannelOutput
+ *
+ * @version $Id$
+ */
+public class FileChannelOutputTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("FileChannelOutputTest", null);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write("0123456789".getBytes());
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testWholeFile() throws Exception {
+        assertEquals("0123456789", write(0, 10));
+    }
+
+    @Test
+    public void testRegion() throws Exception {
+        assertEquals("2345", write(2, 4));
+    }
+
+    @Test
+    public void testChannelIsClosed() throws Exception {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        new FileChannelOutput(channel, 0, 10)
+                .write(new ByteArrayOutputStream());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testShortFile() throws Exception {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            new FileChannelOutput(channel, 5, 10)
+                    .write(new ByteArrayOutputStream());
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertFalse(channel.isOpen());
+        }
+    }
+
+    private String write(long position, long count) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FileChannelOutput(new FileInputStream(file).getChannel(),
+                              position,
+                              count).write(out);
+        return new String(out.toByteArray());
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FileChannelOutputTest.class);
+    }
+}
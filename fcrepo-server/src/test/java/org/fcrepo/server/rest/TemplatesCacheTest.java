@@ -0,0 +1,108 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.rest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the TemplatesCache
+ *
+ * @version $Id$
+ */
+public class TemplatesCacheTest {
+
+    private TemplatesCache cache;
+
+    private File xslFile;
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new TemplatesCache();
+        xslFile = File.createTempFile("TemplatesCacheTest", ".xslt");
+        writeStylesheet("one");
+    }
+
+    @After
+    public void tearDown() {
+        xslFile.delete();
+    }
+
+    @Test
+    public void testTemplatesAreCompiledOnce() throws Exception {
+        Templates templates = cache.getTemplates(xslFile);
+        assertSame(templates, cache.getTemplates(xslFile));
+        assertEquals(1, cache.getCompilationCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals("one", transform(templates));
+    }
+
+    @Test
+    public void testChangedStylesheetIsRecompiled() throws Exception {
+        Templates templates = cache.getTemplates(xslFile);
+        writeStylesheet("two");
+        xslFile.setLastModified(xslFile.lastModified() + 2000);
+        Templates changed = cache.getTemplates(xslFile);
+        assertNotSame(templates, changed);
+        assertEquals("two", transform(changed));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getCompilationCount());
+    }
+
+    @Test(expected = TransformerConfigurationException.class)
+    public void testInvalidStylesheet() throws Exception {
+        Writer writer = new FileWriter(xslFile);
+        try {
+            writer.write("<notAStylesheet/>");
+        } finally {
+            writer.close();
+        }
+        cache.getTemplates(xslFile);
+    }
+
+    private void writeStylesheet(String text) throws IOException {
+        Writer writer = new FileWriter(xslFile);
+        try {
+            writer.write("<xsl:stylesheet version=\"1.0\""
+                    + " xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                    + "<xsl:output method=\"text\"/>"
+                    + "<xsl:template match=\"/\">" + text + "</xsl:template>"
+                    + "</xsl:stylesheet>");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String transform(Templates templates) throws Exception {
+        StringWriter out = new StringWriter();
+        templates.newTransformer()
+                .transform(new StreamSource(new StringReader("<doc/>")),
+                           new StreamResult(out));
+        return out.toString();
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TemplatesCacheTest.class);
+    }
+}
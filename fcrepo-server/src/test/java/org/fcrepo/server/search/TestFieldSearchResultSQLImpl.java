@@ -0,0 +1,138 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.search;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.errors.UnknownSessionTokenException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the session tokens and keyset queries of
+ * {@link FieldSearchResultSQLImpl}.
+ */
+public class TestFieldSearchResultSQLImpl {
+
+    private static final String[] FIELDS = new String[] {"pid", "title"};
+
+    private static FieldSearchResultSQLImpl newResult(FieldSearchQuery query,
+                                                      int maxResults)
+            throws ServerException {
+        return new FieldSearchResultSQLImpl(null, null, FIELDS, maxResults,
+                                            60, query);
+    }
+
+    private static Date future() {
+        return new Date(System.currentTimeMillis() + 60000);
+    }
+
+    @Test
+    public void testConditionsTokenRoundTrip() throws Exception {
+        FieldSearchQuery query =
+                new FieldSearchQuery(Condition
+                        .getConditions("pid~demo:* title~'a b?' mDate>2010-01-01"));
+        FieldSearchResultSQLImpl result = newResult(query, 10);
+        assertFalse(result.getQueryText().contains("?"));
+
+        Date expires = future();
+        String token = result.getToken("demo:5", 10, expires);
+        assertTrue(token, token.matches("[A-Za-z0-9_-]+"));
+        FieldSearchResultSQLImpl resumed =
+                FieldSearchResultSQLImpl.resume(null, null, 100, 60, token);
+        assertEquals(token, resumed.getToken("demo:5", 10, expires));
+        String queryText = resumed.getQueryText();
+        assertTrue(queryText, queryText
+                .contains(" WHERE doFields.pid > ? AND ( doFields.pid LIKE"));
+        assertTrue(queryText, queryText.endsWith(" ) ORDER BY doFields.pid"));
+    }
+
+    @Test
+    public void testTermsTokenRoundTrip() throws Exception {
+        FieldSearchResultSQLImpl result =
+                newResult(new FieldSearchQuery("*sandy*"), 10);
+        Date expires = future();
+        String token = result.getToken("demo:5", 20, expires);
+        FieldSearchResultSQLImpl resumed =
+                FieldSearchResultSQLImpl.resume(null, null, 100, 60, token);
+        assertEquals(token, resumed.getToken("demo:5", 20, expires));
+    }
+
+    @Test
+    public void testJoinKeptBeforeKeyset() throws Exception {
+        FieldSearchQuery query =
+                new FieldSearchQuery(Condition.getConditions("date>2010-01-01"));
+        String token = newResult(query, 10).getToken("demo:5", 10, future());
+        String queryText =
+                FieldSearchResultSQLImpl.resume(null, null, 100, 60, token)
+                        .getQueryText();
+        assertTrue(queryText, queryText.contains(" LEFT JOIN dcDates ON "
+                + "doFields.pid=dcDates.pid WHERE doFields.pid > ? AND ("));
+    }
+
+    @Test
+    public void testMatchAllKeyset() throws Exception {
+        FieldSearchResultSQLImpl result =
+                newResult(new FieldSearchQuery("*"), 10);
+        assertTrue(result.getQueryText().endsWith("doFieldValues.valuesPid "
+                + "ORDER BY doFields.pid"));
+        String token = result.getToken("demo:5", 10, future());
+        assertTrue(FieldSearchResultSQLImpl.resume(null, null, 100, 60, token)
+                .getQueryText().endsWith(" WHERE doFields.pid > ? "
+                        + "ORDER BY doFields.pid"));
+    }
+
+    @Test
+    public void testServerLimitReapplied() throws Exception {
+        FieldSearchQuery query = new FieldSearchQuery("*");
+        Date expires = future();
+        String token = newResult(query, 50).getToken("demo:5", 10, expires);
+        FieldSearchResultSQLImpl resumed =
+                FieldSearchResultSQLImpl.resume(null, null, 20, 60, token);
+        assertEquals(newResult(query, 20).getToken("demo:5", 10, expires),
+                     resumed.getToken("demo:5", 10, expires));
+    }
+
+    @Test
+    public void testExpiredToken() throws Exception {
+        String token =
+                newResult(new FieldSearchQuery("*"), 10)
+                        .getToken("demo:5", 10, new Date(1000));
+        assertUnknown(token);
+    }
+
+    @Test
+    public void testInvalidTokens() throws Exception {
+        assertUnknown("");
+        assertUnknown("not a token");
+        assertUnknown("0123456789abcdef0123456789abcdef");
+        String token =
+                newResult(new FieldSearchQuery("*"), 10)
+                        .getToken("demo:5", 10, future());
+        assertUnknown(token.substring(0, token.length() - 4));
+    }
+
+    private static void assertUnknown(String token) {
+        try {
+            FieldSearchResultSQLImpl.resume(null, null, 100, 60, token);
+            fail("Expected UnknownSessionTokenException for " + token);
+        } catch (UnknownSessionTokenException e) {
+            // expected
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TestFieldSearchResultSQLImpl.class);
+    }
+}
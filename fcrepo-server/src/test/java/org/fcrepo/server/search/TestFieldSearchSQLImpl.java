@@ -47,6 +47,8 @@ import org.fcrepo.server.storage.ServiceDeploymentReader;
 import org.fcrepo.server.storage.types.BasicDigitalObject;
 import org.fcrepo.server.storage.types.DatastreamXMLMetadata;
 import org.fcrepo.server.storage.types.DeploymentDSBindSpec;
+import org.fcrepo.server.utilities.DCField;
+import org.fcrepo.server.utilities.DCFields;
 import org.fcrepo.server.utilities.SQLUtility;
 import org.fcrepo.server.utilities.TableCreatingConnection;
 import org.fcrepo.server.utilities.TableSpec;
@@ -216,6 +218,28 @@ public class TestFieldSearchSQLImpl {
         checkExpectations();
     }
 
+    @Test
+    public void dcValuesRoundTrip() throws ServerException {
+        DCFields dc = new DCFields();
+        dc.titles().add(new DCField("Line one\nline \\two\r"));
+        dc.titles().add(new DCField("Second: title"));
+        dc.creators().add(new DCField("Someone"));
+        dc.rights().add(new DCField(""));
+        String dcValues = FieldSearchSQLImpl.getDCValues(dc);
+
+        ObjectFields fields =
+                new ObjectFields(new String[] {"title", "rights"});
+        FieldSearchSQLImpl.addDCValues(dcValues, fields);
+        assertEquals(2, fields.titles().size());
+        assertEquals("Line one\nline \\two\r", fields.titles().get(0)
+                .getValue());
+        assertEquals("Second: title", fields.titles().get(1).getValue());
+        // creator wasn't asked for
+        assertEquals(0, fields.creators().size());
+        assertEquals(1, fields.rights().size());
+        assertEquals("", fields.rights().get(0).getValue());
+    }
+
     private void updateRecord(ObjectData objectData, boolean longFields)
             throws ServerException {
         // Create a DC datastream if appropriate.
@@ -445,23 +469,41 @@ public class TestFieldSearchSQLImpl {
                     .toArray(new String[expectedValues.size()]);
         }
 
+        private String[] actualValuesRow;
+
         /**
          * If we get a replace call, store the columns and values for testing
-         * later. (If we get more then one call, only the last will be
-         * retained.)
+         * later. (If we get more then one call for a table, only the last
+         * will be retained.)
          */
         @Override
         protected void i_replaceInto(Connection conn, String table,
                 String[] columns, String[] values, String uniqueColumn,
                 boolean[] numeric) throws SQLException {
-            this.actualColumns = columns;
-            this.actualValues = values;
+            if (table.equals("doFieldValues")) {
+                assertEqualArrays("values column names",
+                        FieldSearchSQLImpl.VALUES_COLUMN_NAMES, columns);
+                this.actualValuesRow = values;
+            } else {
+                this.actualColumns = columns;
+                this.actualValues = values;
+            }
         }
 
         @Override
         public void checkExpectations() {
             assertEqualArrays("column names", expectedColumns, actualColumns);
             assertEqualValues(expectedColumns, expectedValues, actualValues);
+            // the original values are kept whether or not DC is indexed
+            assertEquals("values pid", expectedValues[0], actualValuesRow[0]);
+            assertEquals("values label", "myLabel", actualValuesRow[1]);
+            assertEquals("values ownerId", "theOwner", actualValuesRow[2]);
+            if (expectedValues[6].equals("0")) {
+                assertEquals("dc values", null, actualValuesRow[3]);
+            } else {
+                assertEquals("dc title", true, actualValuesRow[3]
+                        .contains("title:Sandy's Reference Object\n"));
+            }
         }
     }
 
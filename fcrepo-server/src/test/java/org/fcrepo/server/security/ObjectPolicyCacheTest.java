@@ -0,0 +1,159 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.sun.xacml.AbstractPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.xml.sax.SAXException;
+
+import org.fcrepo.server.errors.ValidationException;
+import org.fcrepo.server.storage.MockRepositoryReader;
+import org.fcrepo.server.storage.types.DigitalObject;
+import org.fcrepo.server.storage.types.ObjectBuilder;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ObjectPolicyCache
+ *
+ * @version $Id$
+ */
+public class ObjectPolicyCacheTest {
+
+    private MockRepositoryReader repo;
+
+    private CountingPolicyParser parser;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new MockRepositoryReader();
+        parser = new CountingPolicyParser();
+        repo.putObject(getObject("demo:1", true));
+        repo.putObject(getObject("demo:2", true));
+        repo.putObject(getObject("demo:3", false));
+    }
+
+    @Test
+    public void testPolicyIsParsedOnce() throws Exception {
+        ObjectPolicyCache cache = new ObjectPolicyCache(repo, parser, false, 10);
+        AbstractPolicy policy = cache.getPolicy("demo:1");
+        assertNotNull(policy);
+        assertSame(policy, cache.getPolicy("demo:1"));
+        assertSame(policy, cache.getPolicy("demo:1"));
+        assertEquals(1, parser.parses);
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testNoPolicyIsCached() throws Exception {
+        ObjectPolicyCache cache = new ObjectPolicyCache(repo, parser, false, 10);
+        assertNull(cache.getPolicy("demo:3"));
+        assertNull(cache.getPolicy("demo:3"));
+        assertEquals(0, parser.parses);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testUnchangedPolicyIsRevalidated() throws Exception {
+        ObjectPolicyCache cache = new ObjectPolicyCache(repo, parser, false, 10);
+        AbstractPolicy policy = cache.getPolicy("demo:1");
+        cache.objectChanged("demo:1");
+        assertSame(policy, cache.getPolicy("demo:1"));
+        assertEquals(1, parser.parses);
+        assertEquals(1, cache.getRevalidations());
+    }
+
+    @Test
+    public void testChangedPolicyIsParsedAgain() throws Exception {
+        ObjectPolicyCache cache = new ObjectPolicyCache(repo, parser, false, 10);
+        AbstractPolicy policy = cache.getPolicy("demo:1");
+
+        DigitalObject obj = repo.getObject("demo:1");
+        ObjectBuilder.addXDatastream(obj,
+                                     "POLICY",
+                                     TestPolicyParser.POLICY_GOODENOUGH);
+        cache.objectChanged("demo:1");
+
+        AbstractPolicy changed = cache.getPolicy("demo:1");
+        assertNotNull(changed);
+        assertNotSame(policy, changed);
+        assertEquals(2, parser.parses);
+        assertSame(changed, cache.getPolicy("demo:1"));
+    }
+
+    @Test
+    public void testCacheIsBounded() throws Exception {
+        ObjectPolicyCache cache = new ObjectPolicyCache(repo, parser, false, 2);
+        cache.getPolicy("demo:1");
+        cache.getPolicy("demo:2");
+        cache.getPolicy("demo:3");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testZeroSizeDisablesCaching() throws Exception {
+        ObjectPolicyCache cache = new ObjectPolicyCache(repo, parser, false, 0);
+        cache.getPolicy("demo:1");
+        cache.getPolicy("demo:1");
+        assertEquals(2, parser.parses);
+        assertEquals(0, cache.size());
+        assertTrue(cache.getHitRate() == 0);
+    }
+
+    private static DigitalObject getObject(String pid, boolean withPolicy) {
+        DigitalObject obj = ObjectBuilder.getTestObject(pid, "label");
+        if (withPolicy) {
+            ObjectBuilder.addXDatastream(obj,
+                                         "POLICY",
+                                         TestPolicyParser.POLICY_GOODENOUGH);
+        }
+        return obj;
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ObjectPolicyCacheTest.class);
+    }
+
+    /**
+     * Counts the policies parsed by it and its copies.
+     */
+    private static class CountingPolicyParser
+            extends MockPolicyParser {
+
+        int parses;
+
+        CountingPolicyParser() throws IOException, SAXException {
+        }
+
+        @Override
+        public PolicyParser copy() {
+            return this;
+        }
+
+        @Override
+        public synchronized AbstractPolicy parse(InputStream policyStream,
+                                                 boolean schemaValidate)
+                throws ValidationException {
+            parses++;
+            return super.parse(policyStream, schemaValidate);
+        }
+    }
+}
@@ -10,7 +10,13 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses( {org.fcrepo.server.storage.translation.AllUnitTests.class,
-                      org.fcrepo.server.storage.lowlevel.akubra.AllUnitTests.class})
+                      org.fcrepo.server.storage.lowlevel.AllUnitTests.class,
+                      CommitVerificationTest.class,
+                      DisseminationPlanCacheTest.class,
+                      DOReaderCacheTest.class,
+                      IndexUpdateQueueTest.class,
+                      ObjectRegistryTest.class,
+                      RepositoryHashTest.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -20,7 +26,13 @@ public class AllUnitTests {
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
 
         suite.addTest(org.fcrepo.server.storage.translation.AllUnitTests.suite());
-        suite.addTest(org.fcrepo.server.storage.lowlevel.akubra.AllUnitTests.suite());
+        suite.addTest(org.fcrepo.server.storage.lowlevel.AllUnitTests.suite());
+        suite.addTest(CommitVerificationTest.suite());
+        suite.addTest(DisseminationPlanCacheTest.suite());
+        suite.addTest(DOReaderCacheTest.suite());
+        suite.addTest(IndexUpdateQueueTest.suite());
+        suite.addTest(ObjectRegistryTest.suite());
+        suite.addTest(RepositoryHashTest.suite());
 
         return suite;
     }
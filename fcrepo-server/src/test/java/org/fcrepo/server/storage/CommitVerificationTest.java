@@ -0,0 +1,86 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.errors.ObjectIntegrityException;
+import org.fcrepo.server.utilities.ReadableByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the well-formedness check DefaultDOManager makes of an object's
+ * serialization before storing it.
+ *
+ * @version $Id$
+ */
+public class CommitVerificationTest {
+
+    @Test
+    public void testWellFormedIsAccepted() throws Exception {
+        CopyCountingStream out = serialization("<foxml:digitalObject"
+                + " xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\""
+                + " PID=\"demo:1\"/>");
+        DefaultDOManager.checkWellFormed("demo:1", out);
+        assertEquals(0, out.copies);
+    }
+
+    @Test(expected = ObjectIntegrityException.class)
+    public void testMismatchedTagsAreRejected() throws Exception {
+        DefaultDOManager.checkWellFormed("demo:1",
+                serialization("<digitalObject><a></b></digitalObject>"));
+    }
+
+    @Test(expected = ObjectIntegrityException.class)
+    public void testTruncatedIsRejected() throws Exception {
+        DefaultDOManager.checkWellFormed("demo:1",
+                serialization("<digitalObject><a/>"));
+    }
+
+    @Test
+    public void testRejectionDoesNotCopy() throws Exception {
+        CopyCountingStream out = serialization("<digitalObject>");
+        try {
+            DefaultDOManager.checkWellFormed("demo:1", out);
+        } catch (ObjectIntegrityException e) {
+        }
+        assertEquals(0, out.copies);
+    }
+
+    private static CopyCountingStream serialization(String xml)
+            throws Exception {
+        CopyCountingStream out = new CopyCountingStream();
+        out.write(xml.getBytes("UTF-8"));
+        return out;
+    }
+
+    /**
+     * Counts the copies made of its content.
+     */
+    private static class CopyCountingStream
+            extends ReadableByteArrayOutputStream {
+
+        int copies;
+
+        @Override
+        public synchronized byte[] toByteArray() {
+            copies++;
+            return super.toByteArray();
+        }
+
+        @Override
+        public synchronized String toString() {
+            copies++;
+            return super.toString();
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CommitVerificationTest.class);
+    }
+}
@@ -0,0 +1,135 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.storage;
+
+import org.junit.Test;
+
+import org.fcrepo.server.storage.types.DigitalObject;
+import org.fcrepo.server.storage.types.ObjectBuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link DOReaderCache}.
+ */
+public class DOReaderCacheTest {
+
+    private static DOReader reader(String pid) {
+        return reader(pid, 0);
+    }
+
+    private static DOReader reader(String pid, int xmlBytes) {
+        DigitalObject obj = ObjectBuilder.getTestObject(pid, "label");
+        if (xmlBytes > 0) {
+            StringBuilder xml = new StringBuilder("<x>");
+            while (xml.length() < xmlBytes) {
+                xml.append('a');
+            }
+            xml.append("</x>");
+            ObjectBuilder.addXDatastream(obj, "BIG", xml.toString());
+        }
+        return new MockDOReader(obj);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        DOReaderCache cache = new DOReaderCache(10, 60);
+        DOReader r = reader("demo:1");
+        cache.put(r);
+        assertSame(r, cache.get("demo:1"));
+        assertEquals(1, cache.size());
+        cache.remove("demo:1");
+        assertNull(cache.get("demo:1"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEstimatedBytes());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testReplaceKeepsAccounting() {
+        DOReaderCache cache = new DOReaderCache(10, 60);
+        cache.put(reader("demo:1"));
+        long bytes = cache.getEstimatedBytes();
+        DOReader r = reader("demo:1");
+        cache.put(r);
+        assertSame(r, cache.get("demo:1"));
+        assertEquals(1, cache.size());
+        assertEquals(bytes, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedBySize() {
+        DOReaderCache cache = new DOReaderCache(2, 60);
+        cache.put(reader("demo:1"));
+        cache.put(reader("demo:2"));
+        // demo:1 is used, so demo:2 should be the one to go
+        cache.get("demo:1");
+        cache.put(reader("demo:3"));
+        assertEquals(2, cache.size());
+        assertTrue(cache.get("demo:1") != null);
+        assertNull(cache.get("demo:2"));
+        assertTrue(cache.get("demo:3") != null);
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictsByWeight() {
+        long weight = DOReaderCache.estimateSize(reader("demo:1", 10000)
+                .getObject());
+        DOReaderCache cache = new DOReaderCache(100, weight * 2 + 1, 60);
+        cache.put(reader("demo:1", 10000));
+        cache.put(reader("demo:2", 10000));
+        assertEquals(2, cache.size());
+        cache.put(reader("demo:3", 10000));
+        assertEquals(2, cache.size());
+        assertTrue(cache.getEstimatedBytes() <= weight * 2 + 1);
+        assertNull(cache.get("demo:1"));
+    }
+
+    @Test
+    public void testTooLargeNotCached() {
+        DOReaderCache cache = new DOReaderCache(100, 5000, 60);
+        cache.put(reader("demo:1", 10000));
+        assertNull(cache.get("demo:1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEstimateCountsInlineXml() {
+        long small = DOReaderCache.estimateSize(reader("demo:1").getObject());
+        long large =
+                DOReaderCache.estimateSize(reader("demo:1", 10000).getObject());
+        assertTrue(large - small >= 10000);
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        DOReaderCache cache = new DOReaderCache(10, 0);
+        cache.put(reader("demo:1"));
+        Thread.sleep(5);
+        assertNull(cache.get("demo:1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testManyRemovalsDoNotLeak() {
+        DOReaderCache cache = new DOReaderCache(1000, 60);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(reader("demo:1"));
+            cache.remove("demo:1");
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEstimatedBytes());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(DOReaderCacheTest.class);
+    }
+}
@@ -0,0 +1,178 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+import java.util.Date;
+
+import org.jrdf.graph.URIReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fcrepo.common.Models;
+import org.fcrepo.server.ReadOnlyContext;
+import org.fcrepo.server.storage.types.DigitalObject;
+import org.fcrepo.server.storage.types.MethodDef;
+import org.fcrepo.server.storage.types.ObjectBuilder;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the DisseminationPlanCache
+ *
+ * @version $Id$
+ */
+public class DisseminationPlanCacheTest {
+
+    private static final String METHOD_MAP =
+            "<fmm:MethodMap xmlns:fmm=\"http://fedora.comm.nsdlib.org/service/methodmap\""
+                    + " name=\"MethodMap\">"
+                    + "<fmm:Method operationName=\"methodOne\"/>"
+                    + "</fmm:MethodMap>";
+
+    private DisseminationPlanCache cache;
+
+    private DigitalObject sDef;
+
+    @Before
+    public void setUp() {
+        cache = new DisseminationPlanCache();
+        sDef = getServiceObject("demo:sdef", Models.SERVICE_DEFINITION_3_0);
+        ObjectBuilder.addXDatastream(sDef, "METHODMAP", METHOD_MAP);
+    }
+
+    @Test
+    public void testPlanIsKeptUntilRemoved() {
+        assertNull(cache.get("demo:sdef"));
+        DisseminationPlanCache.Plan plan = read(sDef);
+        assertSame(plan, cache.get("demo:sdef"));
+        assertSame(sDef, plan.getObject());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.remove("demo:sdef");
+        assertNull(cache.get("demo:sdef"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPlanReadBeforeRemovalIsNotKept() {
+        Object reservation = cache.reserve("demo:sdef");
+        cache.remove("demo:sdef");
+        DisseminationPlanCache.Plan plan =
+                cache.put("demo:sdef", sDef, reservation);
+        assertSame(sDef, plan.getObject());
+        assertNull(cache.get("demo:sdef"));
+    }
+
+    @Test
+    public void testRemovalOfAnotherObjectDoesNotMatter() {
+        Object reservation = cache.reserve("demo:sdef");
+        cache.remove("demo:other");
+        DisseminationPlanCache.Plan plan =
+                cache.put("demo:sdef", sDef, reservation);
+        assertSame(plan, cache.get("demo:sdef"));
+    }
+
+    @Test
+    public void testCancelledReservationIsDropped() {
+        Object reservation = cache.reserve("demo:sdef");
+        cache.cancel("demo:sdef", reservation);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testOtherObjectsAreNotKept() {
+        DigitalObject obj = ObjectBuilder.getTestObject("demo:1", "label");
+        DisseminationPlanCache.Plan plan = read(obj);
+        assertSame(obj, plan.getObject());
+        assertNull(cache.get("demo:1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDeploymentsAreKept() {
+        DigitalObject sDep =
+                getServiceObject("demo:sdep", Models.SERVICE_DEPLOYMENT_3_0);
+        assertSame(read(sDep), cache.get("demo:sdep"));
+    }
+
+    @Test
+    public void testOtherFormOfPidIsNotKept() {
+        Object reservation = cache.reserve("info:fedora/demo:sdef");
+        cache.put("info:fedora/demo:sdef", sDef, reservation);
+        assertNull(cache.get("info:fedora/demo:sdef"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        cache = new DisseminationPlanCache(2);
+        for (int i = 0; i < 5; i++) {
+            DigitalObject obj =
+                    getServiceObject("demo:sdef" + i,
+                                     Models.SERVICE_DEFINITION_3_0);
+            read(obj);
+            assertTrue(cache.size() <= 2);
+        }
+        // the plan just made is never the one dropped
+        assertTrue(cache.get("demo:sdef4") != null);
+    }
+
+    @Test
+    public void testMethodsAreParsedOncePerPlan() throws Exception {
+        DisseminationPlanCache.Plan plan = read(sDef);
+        MethodDef[] methods = getReader(plan).getAbstractMethods(null);
+        assertEquals(1, methods.length);
+        assertEquals("methodOne", methods[0].methodName);
+        assertSame(methods, getReader(plan).getAbstractMethods(null));
+    }
+
+    @Test
+    public void testVersionedMethodsAreNotTakenFromPlan() throws Exception {
+        DisseminationPlanCache.Plan plan = read(sDef);
+        MethodDef[] methods = getReader(plan).getAbstractMethods(null);
+        MethodDef[] versioned =
+                getReader(plan).getAbstractMethods(new Date());
+        assertNotSame(methods, versioned);
+        assertEquals(methods[0].methodName, versioned[0].methodName);
+    }
+
+    private DisseminationPlanCache.Plan read(DigitalObject obj) {
+        Object reservation = cache.reserve(obj.getPid());
+        return cache.put(obj.getPid(), obj, reservation);
+    }
+
+    private static DigitalObject getServiceObject(String pid,
+                                                  URIReference model) {
+        Date now = new Date();
+        return ObjectBuilder.getTestObject(pid,
+                                           new URIReference[] {model},
+                                           "A",
+                                           "someOwnerId",
+                                           "label",
+                                           now,
+                                           now);
+    }
+
+    private SimpleServiceDefinitionReader getReader(DisseminationPlanCache.Plan plan) {
+        return new SimpleServiceDefinitionReader(ReadOnlyContext.EMPTY,
+                                                 null,
+                                                 null,
+                                                 null,
+                                                 "UTF-8",
+                                                 plan);
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DisseminationPlanCacheTest.class);
+    }
+}
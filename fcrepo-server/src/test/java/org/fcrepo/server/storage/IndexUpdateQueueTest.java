@@ -0,0 +1,163 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fcrepo.server.utilities.StreamUtility;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link IndexUpdateQueue}.
+ */
+public class IndexUpdateQueueTest {
+
+    private File m_dir;
+
+    private final List<String> m_replayed =
+            Collections.synchronizedList(new ArrayList<String>());
+
+    private final IndexUpdateQueue.Replayer m_replayer =
+            new IndexUpdateQueue.Replayer() {
+
+                public void replay(String pid, InputStream oldObject)
+                        throws Exception {
+                    if (oldObject == null) {
+                        m_replayed.add(pid);
+                    } else {
+                        m_replayed.add(pid + "="
+                                + new String(StreamUtility.getBytes(oldObject),
+                                             "UTF-8"));
+                    }
+                }
+            };
+
+    @Before
+    public void setUp() throws Exception {
+        m_dir = File.createTempFile("index-queue", "");
+        m_dir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = m_dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        m_dir.delete();
+    }
+
+    @Test
+    public void testUpdatesWaitForStart() throws Exception {
+        IndexUpdateQueue queue = new IndexUpdateQueue(m_dir, 2, m_replayer);
+        List<String> applied = new ArrayList<String>();
+        queue.submit(queue.persist("demo:1", null), record(applied, "demo:1"));
+        Thread.sleep(50);
+        assertEquals(0, applied.size());
+        assertEquals(1, queue.getDepth());
+        queue.start();
+        queue.flush("demo:1");
+        assertEquals(1, applied.size());
+        assertEquals(0, queue.getDepth());
+        assertEquals(0, queue.getLagMillis());
+        assertEquals(1, queue.getCompletedCount());
+        assertEquals(0, m_dir.listFiles().length);
+        queue.shutdown();
+    }
+
+    @Test
+    public void testSamePidAppliedInOrder() throws Exception {
+        IndexUpdateQueue queue = new IndexUpdateQueue(m_dir, 4, m_replayer);
+        List<String> applied =
+                Collections.synchronizedList(new ArrayList<String>());
+        for (int i = 0; i < 100; i++) {
+            queue.submit(queue.persist("demo:1", null),
+                         record(applied, Integer.toString(i)));
+        }
+        queue.start();
+        queue.flush("demo:1");
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), applied.get(i));
+        }
+        queue.shutdown();
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        IndexUpdateQueue queue = new IndexUpdateQueue(m_dir, 1, m_replayer);
+        queue.discard(queue.persist("demo:1", null));
+        assertEquals(0, queue.getDepth());
+        assertEquals(0, m_dir.listFiles().length);
+        queue.shutdown();
+    }
+
+    @Test
+    public void testUnappliedUpdatesReplayed() throws Exception {
+        IndexUpdateQueue queue = new IndexUpdateQueue(m_dir, 1, m_replayer);
+        queue.persist("demo:1", null);
+        queue.persist("demo:2", new ByteArrayInputStream("old".getBytes("UTF-8")));
+        // a failed update is also kept for replay
+        queue.submit(queue.persist("demo:3", null), new Callable<Void>() {
+
+            public Void call() throws Exception {
+                throw new Exception("index unavailable");
+            }
+        });
+        queue.start();
+        queue.flush("demo:3");
+        assertEquals(1, queue.getFailedCount());
+        queue.shutdown();
+
+        queue = new IndexUpdateQueue(m_dir, 1, m_replayer);
+        assertEquals(3, queue.getDepth());
+        queue.start();
+        queue.flush("demo:1");
+        assertEquals(3, m_replayed.size());
+        assertEquals("demo:1", m_replayed.get(0));
+        assertEquals("demo:2=old", m_replayed.get(1));
+        assertEquals("demo:3", m_replayed.get(2));
+        assertEquals(0, m_dir.listFiles().length);
+
+        // new entries don't reuse the sequence numbers of replayed ones
+        IndexUpdateQueue.Entry entry = queue.persist("demo:4", null);
+        assertEquals("demo:4", entry.getPid());
+        queue.shutdown();
+        m_replayed.clear();
+        queue = new IndexUpdateQueue(m_dir, 1, m_replayer);
+        queue.start();
+        queue.flush("demo:4");
+        assertEquals("demo:4", m_replayed.get(0));
+        queue.shutdown();
+    }
+
+    private static Callable<Void> record(final List<String> applied,
+                                         final String value) {
+        return new Callable<Void>() {
+
+            public Void call() {
+                applied.add(value);
+                return null;
+            }
+        };
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(IndexUpdateQueueTest.class);
+    }
+}
@@ -0,0 +1,131 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.storage;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link ObjectRegistry}, against an in-memory Derby
+ * database.
+ */
+public class ObjectRegistryTest {
+
+    private static ConnectionPool s_pool;
+
+    private ObjectRegistry m_registry;
+
+    @BeforeClass
+    public static void createDatabase() throws Exception {
+        s_pool =
+                new ConnectionPool("org.apache.derby.jdbc.EmbeddedDriver",
+                                   "jdbc:derby:memory:ObjectRegistryTest;create=true",
+                                   "",
+                                   "",
+                                   5,
+                                   5,
+                                   -1,
+                                   0,
+                                   -1,
+                                   0,
+                                   -1,
+                                   null,
+                                   false,
+                                   false,
+                                   false,
+                                   (byte) 1);
+        execute("CREATE TABLE doRegistry ("
+                + "doPID VARCHAR(64) NOT NULL PRIMARY KEY, "
+                + "systemVersion SMALLINT DEFAULT 0 NOT NULL, "
+                + "ownerId VARCHAR(64), "
+                + "objectState VARCHAR(1) DEFAULT 'A' NOT NULL, "
+                + "label VARCHAR(255) DEFAULT '')");
+    }
+
+    @AfterClass
+    public static void closePool() {
+        s_pool.close();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        execute("DELETE FROM doRegistry");
+        m_registry = new ObjectRegistry(s_pool);
+    }
+
+    @Test
+    public void testRegisterAndUnregister() throws Exception {
+        assertFalse(m_registry.exists("demo:1"));
+        m_registry.register("demo:1");
+        assertTrue(m_registry.exists("demo:1"));
+        m_registry.unregister("demo:1");
+        assertFalse(m_registry.exists("demo:1"));
+        // unregistering again does nothing
+        m_registry.unregister("demo:1");
+    }
+
+    @Test
+    public void testRegisterTwiceFails() throws Exception {
+        m_registry.register("demo:1");
+        try {
+            m_registry.register("demo:1");
+            fail("Registered the same PID twice");
+        } catch (java.sql.SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIncrementSystemVersion() throws Exception {
+        assertFalse(m_registry.incrementSystemVersion("demo:1"));
+        m_registry.register("demo:1");
+        assertTrue(m_registry.incrementSystemVersion("demo:1"));
+        assertTrue(m_registry.incrementSystemVersion("demo:1"));
+        assertEquals(2, getSystemVersion("demo:1"));
+    }
+
+    private int getSystemVersion(String pid) throws Exception {
+        Connection conn = s_pool.getReadOnlyConnection();
+        try {
+            Statement st = conn.createStatement();
+            ResultSet results =
+                    st.executeQuery("SELECT systemVersion FROM doRegistry "
+                            + "WHERE doPID = '" + pid + "'");
+            results.next();
+            int version = results.getInt(1);
+            st.close();
+            return version;
+        } finally {
+            s_pool.free(conn);
+        }
+    }
+
+    private static void execute(String sql) throws Exception {
+        Connection conn = s_pool.getReadWriteConnection();
+        try {
+            Statement st = conn.createStatement();
+            st.executeUpdate(sql);
+            st.close();
+        } finally {
+            s_pool.free(conn);
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ObjectRegistryTest.class);
+    }
+}
@@ -0,0 +1,94 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.storage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for {@link RepositoryHash}.
+ */
+public class RepositoryHashTest {
+
+    @Test
+    public void testFollowsChanges() {
+        RepositoryHash hash = new RepositoryHash(10, 1000);
+        assertEquals("10|1000", hash.getValue());
+
+        hash.objectRegistered();
+        assertEquals("11|1000", hash.getValue());
+        hash.objectCommitted(2000);
+        assertEquals("11|2000", hash.getValue());
+        hash.objectCommitted(1500);
+        assertEquals("11|2000", hash.getValue());
+
+        // an older object is purged; the latest date is unaffected
+        hash.objectUnregistered();
+        hash.objectPurged(1500L);
+        assertEquals("10|2000", hash.getValue());
+    }
+
+    @Test
+    public void testPurgeOfLatest() {
+        RepositoryHash hash = new RepositoryHash(10, 2000);
+        hash.objectUnregistered();
+        hash.objectPurged(2000L);
+        assertNull(hash.getValue());
+
+        long generation = hash.getGeneration();
+        hash.setLatestModDate(1500, generation);
+        assertEquals("9|1500", hash.getValue());
+    }
+
+    @Test
+    public void testPurgeOfUnknownDate() {
+        RepositoryHash hash = new RepositoryHash(10, 2000);
+        hash.objectPurged(null);
+        assertNull(hash.getValue());
+    }
+
+    @Test
+    public void testCommitDuringLookup() {
+        RepositoryHash hash = new RepositoryHash(10, 2000);
+        hash.objectPurged(2000L);
+        long generation = hash.getGeneration();
+        // committed after the database was read
+        hash.objectCommitted(1800);
+        hash.setLatestModDate(1500, generation);
+        assertEquals("10|1800", hash.getValue());
+    }
+
+    @Test
+    public void testPurgeDuringLookup() {
+        RepositoryHash hash = new RepositoryHash(10, 2000);
+        hash.objectPurged(2000L);
+        long generation = hash.getGeneration();
+        hash.objectPurged(1900L);
+        hash.setLatestModDate(1900, generation);
+        assertNull(hash.getValue());
+
+        generation = hash.getGeneration();
+        hash.setLatestModDate(1500, generation);
+        assertEquals("10|1500", hash.getValue());
+    }
+
+    @Test
+    public void testReset() {
+        RepositoryHash hash = new RepositoryHash(10, 2000);
+        hash.objectPurged(2000L);
+        long generation = hash.getGeneration();
+        hash.reset(5, 3000);
+        hash.setLatestModDate(1500, generation);
+        assertEquals("5|3000", hash.getValue());
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(RepositoryHashTest.class);
+    }
+}
@@ -0,0 +1,93 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage.lowlevel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link PathIndex}.
+ */
+public class PathIndexTest {
+
+    @Test
+    public void testPutGetRemove() {
+        PathIndex index = new PathIndex();
+        assertNull(index.get("demo:1"));
+        index.put("demo:1", "/data/objects/2011/0101/00/00/demo_1");
+        assertEquals("/data/objects/2011/0101/00/00/demo_1",
+                     index.get("demo:1"));
+        assertEquals(1, index.size());
+
+        index.put("demo:1", "C:\\data\\objects\\demo_1");
+        assertEquals("C:\\data\\objects\\demo_1", index.get("demo:1"));
+        assertEquals(1, index.size());
+
+        assertTrue(index.remove("demo:1"));
+        assertFalse(index.remove("demo:1"));
+        assertNull(index.get("demo:1"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testNonAsciiAndEmptyValues() {
+        PathIndex index = new PathIndex();
+        index.put("demo:\u00e9t\u00e9", "/data/\u00e9t\u00e9/\u4e2d");
+        index.put("demo:empty", "");
+        assertEquals("/data/\u00e9t\u00e9/\u4e2d", index.get("demo:\u00e9t\u00e9"));
+        assertEquals("", index.get("demo:empty"));
+        assertNull(index.get("demo:ete"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueTooLong() {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i <= PathIndex.MAX_LENGTH; i++) {
+            path.append('x');
+        }
+        new PathIndex().put("demo:1", path.toString());
+    }
+
+    @Test
+    public void testGrowthAndChurnAgainstMap() {
+        // enough entries to resize the table and fill several pages, with
+        // enough replacing and removing to force compaction
+        PathIndex index = new PathIndex(16);
+        Map<String, String> expected = new HashMap<String, String>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            String pid = "demo:" + random.nextInt(50000);
+            int op = random.nextInt(4);
+            if (op == 0) {
+                assertEquals(expected.remove(pid) != null, index.remove(pid));
+            } else {
+                String path = "/data/objects/" + i + "/" + pid.replace(':', '_');
+                index.put(pid, path);
+                expected.put(pid, path);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        for (int i = 0; i < 50000; i++) {
+            String pid = "demo:" + i;
+            assertEquals(expected.get(pid), index.get(pid));
+        }
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertNull(index.get("demo:1"));
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PathIndexTest.class);
+    }
+}
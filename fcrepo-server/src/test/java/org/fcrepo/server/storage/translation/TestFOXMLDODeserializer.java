@@ -5,8 +5,24 @@
 
 package org.fcrepo.server.storage.translation;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.fcrepo.common.Constants;
 import org.fcrepo.server.storage.translation.DODeserializer;
 import org.fcrepo.server.storage.translation.DOSerializer;
+import org.fcrepo.server.storage.types.Datastream;
+import org.fcrepo.server.storage.types.DatastreamManagedContent;
+import org.fcrepo.server.storage.types.DigitalObject;
+import org.fcrepo.server.utilities.StreamUtility;
+import org.fcrepo.utilities.Base64;
+
+import static org.fcrepo.common.Models.FEDORA_OBJECT_3_0;
 
 /**
  * Common unit tests for FOXML deserializers.
@@ -21,4 +37,46 @@ public abstract class TestFOXMLDODeserializer
         super(deserializer, associatedSerializer);
     }
 
+    @Test
+    public void testBinaryContentDecodedToTempFile() throws Exception {
+        byte[] content = new byte[100000];
+        new Random(42).nextBytes(content);
+        // line-wrapped, as the serializers write it
+        String encoded =
+                new String(Base64.encode(content), "UTF-8")
+                        .replaceAll("(.{76})", "$1\n");
+
+        String foxml =
+                new String(StreamUtility.getBytes(getStream(createTestObject(FEDORA_OBJECT_3_0))),
+                           "UTF-8");
+        String f = Constants.FOXML.prefix + ":";
+        String ds =
+                "<" + f + "datastream ID=\"BIN\" STATE=\"A\" CONTROL_GROUP=\"M\""
+                        + " VERSIONABLE=\"true\">\n<" + f
+                        + "datastreamVersion ID=\"BIN.0\" MIMETYPE=\"application/octet-stream\""
+                        + " LABEL=\"binary\">\n<" + f + "binaryContent>\n"
+                        + encoded + "\n</" + f + "binaryContent>\n</" + f
+                        + "datastreamVersion>\n</" + f + "datastream>\n";
+        int end = foxml.lastIndexOf("</" + f + "digitalObject>");
+        foxml = foxml.substring(0, end) + ds + foxml.substring(end);
+
+        DigitalObject obj =
+                doDeserialize(new ByteArrayInputStream(foxml.getBytes("UTF-8")));
+        Datastream bin = obj.datastreams("BIN").iterator().next();
+        assertTrue(bin instanceof DatastreamManagedContent);
+        assertTrue(bin.DSLocation.startsWith(DatastreamManagedContent.TEMP_SCHEME));
+        File file =
+                new File(bin.DSLocation.substring(DatastreamManagedContent.TEMP_SCHEME
+                        .length()));
+        try {
+            byte[] decoded = StreamUtility.getBytes(new FileInputStream(file));
+            assertEquals(content.length, decoded.length);
+            for (int i = 0; i < content.length; i++) {
+                assertEquals(content[i], decoded[i]);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
 }
@@ -0,0 +1,190 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.storage.translation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import java.util.Date;
+
+import org.fcrepo.common.Constants;
+import org.fcrepo.server.storage.types.BasicDigitalObject;
+import org.fcrepo.server.storage.types.DatastreamXMLMetadata;
+import org.fcrepo.server.storage.types.DigitalObject;
+
+import static org.fcrepo.common.Models.FEDORA_OBJECT_3_0;
+import static org.fcrepo.server.storage.translation.DOTranslationUtility.DESERIALIZE_INSTANCE;
+import static org.fcrepo.server.storage.translation.DOTranslationUtility.SERIALIZE_STORAGE_INTERNAL;
+
+/**
+ * Measures the per-object cost of serializing and deserializing a typical
+ * object in each supported format.
+ *
+ * <p>Not a unit test; run it from the command line with the test classpath,
+ * optionally giving the number of operations per measurement round (default
+ * 2000).  Each format is warmed up with one round, then timed over five
+ * rounds.  The mean and the best round are reported in microseconds per
+ * object, so that changes to the translation layer can be compared
+ * before and after.
+ *
+ * @version $Id$
+ */
+public class TranslationBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    private static final int DATASTREAMS = 10;
+
+    private static final int VERSIONS = 3;
+
+    private static Object[][] getFormats() {
+        return new Object[][] {
+                {"FOXML 1.0", new FOXML1_0DOSerializer(),
+                        new FOXML1_0DODeserializer()},
+                {"FOXML 1.1", new FOXML1_1DOSerializer(),
+                        new FOXML1_1DODeserializer()},
+                {"METS 1.0", new METSFedoraExt1_0DOSerializer(),
+                        new METSFedoraExt1_0DODeserializer()},
+                {"METS 1.1", new METSFedoraExt1_1DOSerializer(),
+                        new METSFedoraExt1_1DODeserializer()},
+                {"Atom 1.1", new Atom1_1DOSerializer(),
+                        new Atom1_1DODeserializer()}};
+    }
+
+    private final int m_opsPerRound;
+
+    public TranslationBenchmark(int opsPerRound) {
+        m_opsPerRound = opsPerRound;
+    }
+
+    /**
+     * Creates an object with several inline XML datastreams, each with
+     * several versions.
+     */
+    private static DigitalObject createObject() {
+        DigitalObject obj =
+                TranslationTest.createTestObject(FEDORA_OBJECT_3_0);
+        obj.setLabel("Translation benchmark object");
+        obj.setOwnerId("fedoraAdmin");
+        for (int i = 0; i < DATASTREAMS; i++) {
+            for (int v = 0; v < VERSIONS; v++) {
+                DatastreamXMLMetadata ds =
+                        TranslationTest.createXDatastream("DS" + i);
+                ds.DSVersionID = "DS" + i + "." + v;
+                ds.DSLabel = "Datastream " + i;
+                ds.DSMIME = "text/xml";
+                ds.DSCreateDT = new Date(v * 1000L);
+                StringBuilder xml = new StringBuilder("<doc>");
+                for (int j = 0; j < 20; j++) {
+                    xml.append("<field name=\"f" + j + "\">value " + j
+                            + " of version " + v + "</field>");
+                }
+                xml.append("</doc>");
+                ds.xmlContent = xml.toString().getBytes();
+                obj.addDatastreamVersion(ds, false);
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * Times one round of serializations, returning microseconds per object.
+     */
+    private double serializeRound(DOSerializer serializer, DigitalObject obj)
+            throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < m_opsPerRound; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16384);
+            serializer.getInstance().serialize(obj,
+                                               out,
+                                               "UTF-8",
+                                               SERIALIZE_STORAGE_INTERNAL);
+        }
+        return (System.nanoTime() - start) / 1000.0 / m_opsPerRound;
+    }
+
+    /**
+     * Times one round of deserializations, returning microseconds per object.
+     */
+    private double deserializeRound(DODeserializer deserializer, byte[] bytes)
+            throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < m_opsPerRound; i++) {
+            deserializer.getInstance().deserialize(new ByteArrayInputStream(bytes),
+                                                   new BasicDigitalObject(),
+                                                   "UTF-8",
+                                                   DESERIALIZE_INSTANCE);
+        }
+        return (System.nanoTime() - start) / 1000.0 / m_opsPerRound;
+    }
+
+    public void run() throws Exception {
+        DigitalObject obj = createObject();
+        System.out.println("format, bytes, serialize mean (us), serialize best (us), "
+                + "deserialize mean (us), deserialize best (us)");
+        for (Object[] format : getFormats()) {
+            DOSerializer serializer = (DOSerializer) format[1];
+            DODeserializer deserializer = (DODeserializer) format[2];
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.getInstance().serialize(obj,
+                                               out,
+                                               "UTF-8",
+                                               SERIALIZE_STORAGE_INTERNAL);
+            byte[] bytes = out.toByteArray();
+
+            serializeRound(serializer, obj);
+            deserializeRound(deserializer, bytes);
+            double[] ser = new double[ROUNDS];
+            double[] des = new double[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                ser[i] = serializeRound(serializer, obj);
+                des[i] = deserializeRound(deserializer, bytes);
+            }
+            System.out.println(format[0] + ", " + bytes.length + ", "
+                    + round(mean(ser)) + ", " + round(min(ser)) + ", "
+                    + round(mean(des)) + ", " + round(min(des)));
+        }
+    }
+
+    private static double mean(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total / values.length;
+    }
+
+    private static double min(double[] values) {
+        double min = values[0];
+        for (double value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static double round(double d) {
+        return Math.round(d * 10) / 10.0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int opsPerRound = 2000;
+        if (args.length > 0) {
+            try {
+                opsPerRound = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.out.println("USAGE: TranslationBenchmark [OPS-PER-ROUND]");
+                System.exit(1);
+            }
+        }
+        // as in TranslationTest, for DOTranslationUtility
+        System.setProperty("fedoraServerHost", "localhost");
+        System.setProperty("fedoraServerPort", "8080");
+        System.setProperty("fedoraAppServerContext",
+                           Constants.FEDORA_DEFAULT_APP_CONTEXT);
+        new TranslationBenchmark(opsPerRound).run();
+    }
+}
@@ -8,7 +8,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {TestDateUtility.class, DCFieldsTest.class, PIDStreamIterableWrapperTest.class})
+@Suite.SuiteClasses( {TestDateUtility.class, DCFieldsTest.class, PIDStreamIterableWrapperTest.class,
+        ReadableByteArrayOutputStreamTest.class, StripedLockTest.class})
 public class AllUnitTests {
 
 }
@@ -0,0 +1,71 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities;
+
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the ReadableByteArrayOutputStream
+ *
+ * @version $Id$
+ */
+public class ReadableByteArrayOutputStreamTest {
+
+    @Test
+    public void testReadBack() throws Exception {
+        ReadableByteArrayOutputStream out = new ReadableByteArrayOutputStream();
+        out.write("content".getBytes("UTF-8"));
+        assertEquals("content", read(out.toInputStream()));
+        // each stream starts again at the beginning
+        assertEquals("content", read(out.toInputStream()));
+    }
+
+    @Test
+    public void testStreamSharesBuffer() throws Exception {
+        BufferAccess out = new BufferAccess();
+        out.write("content".getBytes("UTF-8"));
+        InputStream in = out.toInputStream();
+        // a copy would not see a change to the buffer
+        out.buffer()[0] = (byte) 'C';
+        assertEquals("Content", read(in));
+    }
+
+    @Test
+    public void testStreamSeesContentWhenCreated() throws Exception {
+        ReadableByteArrayOutputStream out = new ReadableByteArrayOutputStream(64);
+        out.write("one".getBytes("UTF-8"));
+        InputStream in = out.toInputStream();
+        out.write("two".getBytes("UTF-8"));
+        assertEquals("one", read(in));
+        assertEquals("onetwo", read(out.toInputStream()));
+    }
+
+    private static String read(InputStream in) throws Exception {
+        StringBuilder text = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    private static class BufferAccess
+            extends ReadableByteArrayOutputStream {
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadableByteArrayOutputStreamTest.class);
+    }
+}
@@ -0,0 +1,85 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StripedLockTest {
+
+    @Test
+    public void testSizeRoundedToPowerOfTwo() {
+        assertEquals(1, new StripedLock(1).size());
+        assertEquals(8, new StripedLock(5).size());
+        assertEquals(64, new StripedLock(64).size());
+        assertEquals(StripedLock.DEFAULT_STRIPES, new StripedLock().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroStripes() {
+        new StripedLock(0);
+    }
+
+    @Test
+    public void testSameKeySameLock() {
+        StripedLock locks = new StripedLock();
+        assertSame(locks.get("demo:1"), locks.get(new String("demo:1")));
+        assertSame(locks.get(null), locks.get(null));
+    }
+
+    @Test
+    public void testKeysSpreadAcrossStripes() {
+        StripedLock locks = new StripedLock(16);
+        Set<Integer> used = new HashSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            used.add(locks.indexFor("demo:" + i));
+        }
+        assertEquals(16, used.size());
+    }
+
+    @Test
+    public void testOtherKeyNotBlocked() throws Exception {
+        final StripedLock locks = new StripedLock(1024);
+        String held = "demo:1";
+        String other = "demo:2";
+        // find a key that lands on a different stripe
+        for (int i = 2; locks.get(other) == locks.get(held); i++) {
+            other = "demo:" + i;
+        }
+        Lock lock = locks.get(held);
+        lock.lock();
+        try {
+            final String key = other;
+            final CountDownLatch acquired = new CountDownLatch(1);
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+                    Lock l = locks.get(key);
+                    l.lock();
+                    try {
+                        acquired.countDown();
+                    } finally {
+                        l.unlock();
+                    }
+                }
+            };
+            t.start();
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+            t.join();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -5,6 +5,11 @@
 package org.fcrepo.utilities;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -59,6 +64,47 @@ public class TestBase64 extends junit.framework.TestCase {
                      Base64.decodeToString(FOO_BYTES_ENCODED));
     }
 
+    @Test
+    public void testDecodingWriterInPieces() throws IOException {
+        byte[] data = new byte[10000];
+        new Random(42).nextBytes(data);
+        String encoded = new String(Base64.encode(data), "UTF-8");
+        // split at every possible point in a group, with whitespace between
+        for (int pieceLength = 1; pieceLength < 9; pieceLength++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer writer = new Base64DecodingWriter(out);
+            for (int i = 0; i < encoded.length(); i += pieceLength) {
+                char[] piece =
+                        encoded.substring(i, Math.min(encoded.length(),
+                                                      i + pieceLength))
+                                .toCharArray();
+                writer.write(piece, 0, piece.length);
+                writer.write("\n  ");
+            }
+            writer.close();
+            assertTrue(sameBytes(data, out.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testDecodingWriterPadding() throws IOException {
+        assertEquals("f", decodeWithWriter("Zg=="));
+        assertEquals("fo", decodeWithWriter("Zm8="));
+        assertEquals("foo", decodeWithWriter(" Zm9v\n"));
+        // unpadded final groups are decoded too
+        assertEquals("fo", decodeWithWriter("Zm8"));
+        // nothing after padding is decoded
+        assertEquals("f", decodeWithWriter("Zg==Zm9v"));
+    }
+
+    private static String decodeWithWriter(String encoded) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer writer = new Base64DecodingWriter(out);
+        writer.write(encoded);
+        writer.close();
+        return new String(out.toByteArray(), "UTF-8");
+    }
+
     private static final boolean sameBytes(byte[] a, byte[] b) {
         if (a.length != b.length) return false;
         for (int i = 0; i < a.length; i++) {
@@ -0,0 +1,128 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.utilities;
+
+import java.io.ByteArrayInputStream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.SAXParser;
+
+import org.junit.Test;
+
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link XmlParserUtility}.
+ */
+public class XmlParserUtilityTest {
+
+    private static final String DOC =
+            "<a:root xmlns:a=\"urn:a\"><a:child/></a:root>";
+
+    @Test
+    public void testSAXParserReusedAfterRelease() throws Exception {
+        SAXParser parser = XmlParserUtility.getSAXParser();
+        assertEquals("urn:a", parse(parser, DOC));
+        XmlParserUtility.releaseSAXParser(parser);
+
+        SAXParser again = XmlParserUtility.getSAXParser();
+        assertSame(parser, again);
+        assertEquals("urn:a", parse(again, DOC));
+        XmlParserUtility.releaseSAXParser(again);
+    }
+
+    @Test
+    public void testNestedSAXParsersDiffer() throws Exception {
+        SAXParser outer = XmlParserUtility.getSAXParser();
+        SAXParser inner = XmlParserUtility.getSAXParser();
+        assertNotSame(outer, inner);
+        XmlParserUtility.releaseSAXParser(inner);
+        XmlParserUtility.releaseSAXParser(outer);
+    }
+
+    @Test
+    public void testSAXParserReusableAfterError() throws Exception {
+        SAXParser parser = XmlParserUtility.getSAXParser();
+        try {
+            parse(parser, "<unclosed>");
+            fail("Parsed a document that isn't well-formed");
+        } catch (SAXException e) {
+            // expected
+        }
+        XmlParserUtility.releaseSAXParser(parser);
+        parser = XmlParserUtility.getSAXParser();
+        assertEquals("urn:a", parse(parser, DOC));
+        XmlParserUtility.releaseSAXParser(parser);
+    }
+
+    @Test
+    public void testSAXParsersNotSharedBetweenThreads() throws Exception {
+        SAXParser parser = XmlParserUtility.getSAXParser();
+        XmlParserUtility.releaseSAXParser(parser);
+        final SAXParser[] other = new SAXParser[1];
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    other[0] = XmlParserUtility.getSAXParser();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertTrue(other[0] != null);
+        assertNotSame(parser, other[0]);
+    }
+
+    @Test
+    public void testDocumentBuilderReusedAfterRelease() throws Exception {
+        DocumentBuilder builder = XmlParserUtility.getDocumentBuilder();
+        Document doc = builder.parse(new ByteArrayInputStream(DOC.getBytes("UTF-8")));
+        assertEquals("urn:a", doc.getDocumentElement().getNamespaceURI());
+        XmlParserUtility.releaseDocumentBuilder(builder);
+
+        DocumentBuilder again = XmlParserUtility.getDocumentBuilder();
+        assertSame(builder, again);
+        assertNotSame(builder, XmlParserUtility.getDocumentBuilder());
+        XmlParserUtility.releaseDocumentBuilder(again);
+    }
+
+    /**
+     * Parses the document, returning the namespace of the root element.
+     */
+    private static String parse(SAXParser parser, String xml) throws Exception {
+        final String[] uri = new String[1];
+        parser.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+                     new DefaultHandler() {
+
+                         @Override
+                         public void startElement(String namespaceURI,
+                                                  String localName,
+                                                  String qName,
+                                                  Attributes a) {
+                             if (uri[0] == null) {
+                                 uri[0] = namespaceURI;
+                             }
+                         }
+                     });
+        return uri[0];
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(XmlParserUtilityTest.class);
+    }
+}